@@ -0,0 +1,9 @@
+type TodayCardsListener = (cards: Array<string>) => void;
+
+export const subscribe = (onTodayCards: TodayCardsListener): EventSource => {
+  const source = new EventSource('http://localhost:8081/today/cards/stream');
+  source.addEventListener('today-cards', (event) => {
+    onTodayCards(JSON.parse((event as MessageEvent).data).cards);
+  });
+  return source;
+};
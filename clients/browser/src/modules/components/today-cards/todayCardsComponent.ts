@@ -1,4 +1,5 @@
 import { get } from '../../API/get';
+import { subscribe } from '../../API/subscribe';
 import { createNode } from '../../helpers/createNode';
 import { renderTodayCard } from './todayCardComponent';
 import { ErrorContainer, renderErrorContainer } from '../errorMessageComponent';
@@ -30,12 +31,23 @@ export class TodayCardsComponent {
     }
 
     if (data) {
-      const todayCardsList: TodayCardsList = data.cards;
-      todayCardsList.forEach((todayCardData) => {
-        const renderedTodayCard = renderTodayCard(todayCardData);
-        todayCardsContainer.append(renderedTodayCard);
+      this.renderCards(todayCardsContainer, data.cards);
+      // the server pushes the cards for today after every change
+      subscribe((todayCardsList: TodayCardsList) => {
+        this.renderCards(todayCardsContainer, todayCardsList);
       });
     }
     return todayCardsContainer;
   }
+
+  private renderCards(
+    todayCardsContainer: TodayCardsContainer,
+    todayCardsList: TodayCardsList
+  ): void {
+    todayCardsContainer.textContent = '';
+    todayCardsList.forEach((todayCardData) => {
+      const renderedTodayCard = renderTodayCard(todayCardData);
+      todayCardsContainer.append(renderedTodayCard);
+    });
+  }
 }
@@ -0,0 +1,90 @@
+package org.cards_tracker.controller;
+
+import org.cards_tracker.controller.dto.Card;
+import org.cards_tracker.controller.dto.Cards;
+import org.cards_tracker.controller.dto.CardPriorityTimeUnit;
+import org.cards_tracker.controller.dto.PriorityUpdateSchedule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the encoding and decoding time of the card and today cards bodies in every body format.
+ * The encoded size of the bodies is reported next to the time as the {@code cardsBodyBytes}
+ * and {@code cardBodyBytes} counters.
+ * <p>
+ * Run with: {@code gradle jmh}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BodyFormatBenchmark {
+
+    @Param({"JSON", "CBOR", "SMILE"})
+    public BodyFormat format;
+
+    @Param({"5", "1000"})
+    public int cardsCount;
+
+    private JsonCodec codec;
+    private Cards cards;
+    private byte[] encodedCards;
+    private byte[] encodedCard;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CardsBodySize {
+        public long cardsBodyBytes;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CardBodySize {
+        public long cardBodyBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void encodeBodies() throws Exception {
+        codec = new JsonCodec(JsonBinding.REFLECTION, format);
+        final List<String> titles = new ArrayList<>(cardsCount);
+        for (int i = 0; i < cardsCount; i++) {
+            titles.add("Prepare the quarterly report, part " + i);
+        }
+        cards = new Cards(titles);
+        encodedCards = codec.writeCards(cards);
+        // the card body is only read by the service, so it is written with the same codec just for the benchmark
+        final ByteArrayOutputStream cardBody = new ByteArrayOutputStream();
+        JsonCodec.createObjectMapper(JsonBinding.REFLECTION, format).writeValue(
+                cardBody,
+                new Card("Prepare the quarterly report", new PriorityUpdateSchedule(CardPriorityTimeUnit.DAYS, 2L))
+        );
+        encodedCard = cardBody.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeCards(final CardsBodySize size) throws IOException {
+        final byte[] body = codec.writeCards(cards);
+        size.cardsBodyBytes = body.length;
+        return body;
+    }
+
+    @Benchmark
+    public void decodeCards(final Blackhole blackhole) throws IOException {
+        blackhole.consume(codec.readCards(new ByteArrayInputStream(encodedCards)));
+    }
+
+    @Benchmark
+    public void decodeCard(final Blackhole blackhole, final CardBodySize size) throws IOException {
+        size.cardBodyBytes = encodedCard.length;
+        blackhole.consume(codec.readCard(new ByteArrayInputStream(encodedCard)));
+    }
+}
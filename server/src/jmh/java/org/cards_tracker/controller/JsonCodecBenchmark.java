@@ -0,0 +1,69 @@
+package org.cards_tracker.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.cards_tracker.controller.dto.Card;
+import org.cards_tracker.controller.dto.Cards;
+import org.cards_tracker.controller.dto.ErrorDto;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the allocation per request of the request and response bodies handling: the object mapper lookups
+ * of a body read as a string, as the request context does, against the prepared readers and writers of the codec.
+ * <p>
+ * Run with: {@code gradle jmh} (see the {@code gc.alloc.rate.norm} results).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonCodecBenchmark {
+
+    private static final String BATCH_SIZE_ERROR = "The list of up to 10000 cards is required";
+
+    @Param({"REFLECTION", "BLACKBIRD"})
+    public JsonBinding binding;
+
+    private ObjectMapper objectMapper;
+    private JsonCodec jsonCodec;
+    private byte[] cardBody;
+    private Cards todayCards;
+    private byte[] batchSizeError;
+
+    @Setup(Level.Trial)
+    public void prepareBodies() throws IOException {
+        objectMapper = JsonCodec.createObjectMapper(binding, BodyFormat.JSON);
+        jsonCodec = new JsonCodec(binding, BodyFormat.JSON);
+        cardBody = "{\"title\":\"card\",\"priorityUpdateSchedule\":{\"timeUnit\":\"DAYS\",\"period\":2}}"
+                .getBytes(StandardCharsets.UTF_8);
+        final List<String> cards = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            cards.add("card" + i);
+        }
+        todayCards = new Cards(cards);
+        batchSizeError = jsonCodec.writeError(BATCH_SIZE_ERROR);
+    }
+
+    @Benchmark
+    public void mapperRequest(final Blackhole blackhole) throws IOException {
+        blackhole.consume(objectMapper.readValue(new String(cardBody, StandardCharsets.UTF_8), Card.class));
+        blackhole.consume(objectMapper.writeValueAsBytes(todayCards));
+        blackhole.consume(objectMapper.writeValueAsBytes(new ErrorDto(BATCH_SIZE_ERROR)));
+    }
+
+    @Benchmark
+    public void codecRequest(final Blackhole blackhole) throws IOException {
+        blackhole.consume(jsonCodec.readCard(new ByteArrayInputStream(cardBody)));
+        blackhole.consume(jsonCodec.writeCards(todayCards));
+        blackhole.consume(batchSizeError);
+    }
+}
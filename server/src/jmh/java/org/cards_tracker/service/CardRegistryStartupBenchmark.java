@@ -0,0 +1,66 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.storage.FsyncPolicy;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the time from opening the storage of a large board until the first today cards are read.
+ * <p>
+ * Run with: {@code gradle jmh}
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class CardRegistryStartupBenchmark {
+
+    private static final CardPriority[] PRIORITIES = CardPriority.values();
+
+    @Param({"10000", "1000000"})
+    public int cardsCount;
+
+    private Path storageDirectory;
+
+    @Setup(Level.Trial)
+    public void writeStorage() throws Exception {
+        storageDirectory = Files.createTempDirectory("cards-startup-benchmark");
+        try (PersistentCardRegistry cardRegistry =
+                     new PersistentCardRegistry(storageDirectory, FsyncPolicy.PERIODIC, 1000L, 200L)) {
+            for (int i = 0; i < cardsCount; i++) {
+                cardRegistry.createCard(new Card("card" + i, PRIORITIES[i % PRIORITIES.length]));
+            }
+            cardRegistry.snapshot(List::of);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStorage() throws IOException {
+        try (Stream<Path> files = Files.walk(storageDirectory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void openAndReadTodayCards(final Blackhole blackhole) throws IOException {
+        try (PersistentCardRegistry cardRegistry =
+                     new PersistentCardRegistry(storageDirectory, FsyncPolicy.GROUP_COMMIT, 1000L, 200L)) {
+            blackhole.consume(cardRegistry.getTopPrioritizedCards(5));
+            blackhole.consume(cardRegistry.isCardExist("card" + (cardsCount - 1)));
+        }
+    }
+}
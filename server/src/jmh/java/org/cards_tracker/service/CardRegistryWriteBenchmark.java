@@ -0,0 +1,73 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.storage.FsyncPolicy;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures the latency of a durable card creation, the same as a card creation request waits for,
+ * by a lone writer and by concurrent writers sharing the forces of the log.
+ * <p>
+ * Run with: {@code gradle jmh}
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CardRegistryWriteBenchmark {
+
+    @Param({"PER_OPERATION", "GROUP_COMMIT"})
+    public FsyncPolicy fsyncPolicy;
+
+    @Param({"1", "200", "5000"})
+    public long groupCommitDelayMicros;
+
+    private final AtomicLong createdCards = new AtomicLong();
+    private Path storageDirectory;
+    private PersistentCardRegistry cardRegistry;
+
+    @Setup(Level.Trial)
+    public void openStorage() throws IOException {
+        storageDirectory = Files.createTempDirectory("cards-write-benchmark");
+        cardRegistry = new PersistentCardRegistry(storageDirectory, fsyncPolicy, 1000L, groupCommitDelayMicros);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStorage() throws IOException {
+        cardRegistry.close();
+        try (Stream<Path> files = Files.walk(storageDirectory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void createCard() throws Exception {
+        cardRegistry.createCard(
+                new Card("card" + createdCards.incrementAndGet(), CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
+        );
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void createCardByLoneWriter() throws Exception {
+        createCard();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void createCardByConcurrentWriters() throws Exception {
+        createCard();
+    }
+}
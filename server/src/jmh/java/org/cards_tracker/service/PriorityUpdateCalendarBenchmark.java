@@ -0,0 +1,56 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.error.IncorrectCardPriorityScheduleException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the next priority update calculation of every card of a large bucket firing
+ * with the local date time and with the epoch milliseconds calendar API.
+ * <p>
+ * Run with: {@code gradle jmh}, the allocations per firing are reported as {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PriorityUpdateCalendarBenchmark {
+
+    @Param({"100000"})
+    public int cardsCount;
+
+    private ScheduleBasedPriorityUpdateCalendar priorityUpdateCalendar;
+    private CardPriorityUpdateSchedule schedule;
+    private LocalDateTime firingTime;
+    private long firingEpochMillis;
+
+    @Setup(Level.Trial)
+    public void createCalendar() throws IncorrectCardPriorityScheduleException {
+        final ZoneId zoneId = ZoneId.of("Europe/Berlin");
+        priorityUpdateCalendar = new ScheduleBasedPriorityUpdateCalendar(zoneId);
+        schedule = new CardPriorityUpdateSchedule(TimeUnit.MINUTES, 1L);
+        firingTime = LocalDateTime.of(2022, 10, 17, 12, 40);
+        firingEpochMillis = firingTime.atZone(zoneId).toInstant().toEpochMilli();
+    }
+
+    @Benchmark
+    public void localDateTimeFiring(final Blackhole blackhole) {
+        for (int i = 0; i < cardsCount; i++) {
+            blackhole.consume(priorityUpdateCalendar.nextPriorityUpdateFrom(schedule, firingTime));
+        }
+    }
+
+    @Benchmark
+    public void epochMillisFiring(final Blackhole blackhole) {
+        for (int i = 0; i < cardsCount; i++) {
+            blackhole.consume(priorityUpdateCalendar.nextPriorityUpdateFrom(schedule, firingEpochMillis));
+        }
+    }
+}
@@ -1,22 +1,42 @@
 package org.cards_tracker;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import io.javalin.Javalin;
 import io.javalin.plugin.openapi.OpenApiOptions;
 import io.javalin.plugin.openapi.OpenApiPlugin;
 import io.javalin.plugin.openapi.ui.SwaggerOptions;
 import io.swagger.v3.oas.models.info.Info;
+import org.cards_tracker.controller.AdmissionControl;
+import org.cards_tracker.controller.BodyCodecs;
+import org.cards_tracker.controller.BodyFormat;
 import org.cards_tracker.controller.CardController;
 import org.cards_tracker.controller.DailyController;
+import org.cards_tracker.controller.IdempotencyCache;
+import org.cards_tracker.controller.JsonBinding;
+import org.cards_tracker.controller.JsonCodec;
+import org.cards_tracker.controller.MetricsController;
+import org.cards_tracker.controller.RequestDispatcher;
+import org.cards_tracker.controller.RequestHandling;
 import org.cards_tracker.controller.error.EndpointRegistrationException;
 import org.cards_tracker.error.IncorrectCardPriorityScheduleException;
+import org.cards_tracker.executor.ExecutorMetrics;
+import org.cards_tracker.executor.MonitoredScheduledExecutor;
+import org.cards_tracker.executor.PartitionedExecutor;
+import org.cards_tracker.executor.ServiceExecutor;
 import org.cards_tracker.service.*;
+import org.cards_tracker.storage.FsyncPolicy;
+import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class Main {
@@ -27,6 +47,167 @@ public class Main {
     private static final long PERIOD_DEFAULT = 1L;
     private static final TimeUnit TIME_UNIT_DEFAULT = TimeUnit.MINUTES;
 
+    private static final String STORAGE_DIRECTORY_PROPERTY = "cards.storage.directory";
+    private static final String STORAGE_FSYNC_POLICY_PROPERTY = "cards.storage.fsyncPolicy";
+    private static final FsyncPolicy STORAGE_FSYNC_POLICY_DEFAULT = FsyncPolicy.GROUP_COMMIT;
+    private static final String STORAGE_FLUSH_INTERVAL_PROPERTY = "cards.storage.flushIntervalMillis";
+    private static final long STORAGE_FLUSH_INTERVAL_DEFAULT = 1000L;
+    private static final String STORAGE_GROUP_COMMIT_DELAY_PROPERTY = "cards.storage.groupCommitDelayMicros";
+    private static final long STORAGE_GROUP_COMMIT_DELAY_DEFAULT = 200L;
+    private static final String STORAGE_SNAPSHOT_INTERVAL_PROPERTY = "cards.storage.snapshotIntervalMillis";
+    private static final long STORAGE_SNAPSHOT_INTERVAL_DEFAULT = 60_000L;
+
+    private static final long STORAGE_SNAPSHOT_SHUTDOWN_TIMEOUT_SECONDS = 30L;
+
+    private static final String SCHEDULER_TICK_PROPERTY = "cards.scheduler.tickMillis";
+    private static final long SCHEDULER_TICK_DEFAULT = 1000L;
+    private static final String SCHEDULER_SPREAD_WINDOW_PROPERTY = "cards.scheduler.spreadWindowMillis";
+    private static final long SCHEDULER_SPREAD_WINDOW_DEFAULT = 0L;
+
+    private static final String ESCALATION_WORKERS_PROPERTY = "cards.executor.escalationWorkers";
+    private static final long ESCALATION_WORKERS_DEFAULT = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final String REQUEST_THREADS_PROPERTY = "cards.executor.requestThreads";
+    // the same as the Jetty default
+    private static final long REQUEST_THREADS_DEFAULT = 200L;
+
+    private static final String STREAM_THREADS_PROPERTY = "cards.executor.streamThreads";
+    private static final long STREAM_THREADS_DEFAULT = 4L;
+    private static final String STREAM_CLIENT_BUFFER_PROPERTY = "cards.stream.clientBufferSize";
+    private static final long STREAM_CLIENT_BUFFER_DEFAULT = 16L;
+    private static final String STREAM_WRITE_TIMEOUT_PROPERTY = "cards.stream.writeTimeoutMillis";
+    private static final long STREAM_WRITE_TIMEOUT_DEFAULT = 5000L;
+
+    private static final String REQUEST_HANDLING_PROPERTY = "cards.request.handling";
+    private static final RequestHandling REQUEST_HANDLING_DEFAULT = RequestHandling.SYNCHRONOUS;
+    private static final String SERVICE_THREADS_PROPERTY = "cards.executor.serviceThreads";
+    private static final long SERVICE_THREADS_DEFAULT = 64L;
+    private static final String SERVICE_QUEUE_SIZE_PROPERTY = "cards.executor.serviceQueueSize";
+    private static final long SERVICE_QUEUE_SIZE_DEFAULT = 1000L;
+
+    private static final String ADMISSION_CLIENT_RATE_PROPERTY = "cards.admission.clientRequestsPerSecond";
+    private static final long ADMISSION_CLIENT_RATE_DEFAULT = 50L;
+    private static final String ADMISSION_CLIENT_BURST_PROPERTY = "cards.admission.clientBurst";
+    private static final long ADMISSION_CLIENT_BURST_DEFAULT = 100L;
+    private static final String ADMISSION_CONCURRENT_REQUESTS_PROPERTY = "cards.admission.concurrentRequests";
+    private static final long ADMISSION_CONCURRENT_REQUESTS_DEFAULT = 32L;
+    private static final String ADMISSION_MAX_BACKLOG_PROPERTY = "cards.admission.maxBacklog";
+    private static final long ADMISSION_MAX_BACKLOG_DEFAULT = 10_000L;
+
+    private static final String IDEMPOTENCY_TIME_TO_LIVE_PROPERTY = "cards.idempotency.timeToLiveMillis";
+    private static final long IDEMPOTENCY_TIME_TO_LIVE_DEFAULT = 3_600_000L;
+    private static final String IDEMPOTENCY_MAX_RESPONSES_PROPERTY = "cards.idempotency.maxResponses";
+    private static final long IDEMPOTENCY_MAX_RESPONSES_DEFAULT = 100_000L;
+    private static final String IDEMPOTENCY_MAX_BYTES_PROPERTY = "cards.idempotency.maxBytes";
+    private static final long IDEMPOTENCY_MAX_BYTES_DEFAULT = 32L * 1024 * 1024;
+
+    private static final String JSON_BINDING_PROPERTY = "cards.json.binding";
+    private static final JsonBinding JSON_BINDING_DEFAULT = JsonBinding.REFLECTION;
+
+    private static final String TODAY_CONSISTENCY_CHECK_PROPERTY = "cards.today.consistencyCheckMillis";
+    // the cards for today follow the registry changes, so they are not checked by default
+    private static final long TODAY_CONSISTENCY_CHECK_DEFAULT = 0L;
+
+    private static final MonitoredScheduledExecutor storageSnapshotExecutor = new MonitoredScheduledExecutor("snapshot", 1);
+
+    private static long readPositiveLongProperty(@NotNull final String property, final long defaultValue) {
+        final String value = System.getProperty(property);
+        if (value == null) {
+            log.debug(property + " property was not provided, default value: " + defaultValue + " will be used.");
+            return defaultValue;
+        }
+        try {
+            final long parsedValue = Long.parseLong(value);
+            if (parsedValue <= 0) {
+                log.warn("Incorrect " + property + " property was provided, default value: " + defaultValue + " will be used.");
+                return defaultValue;
+            }
+            log.debug(property + " property value is: " + parsedValue);
+            return parsedValue;
+        } catch (NumberFormatException e) {
+            log.warn(
+                    "Unable to read the " + property + " property because of: " + e.getMessage()
+                            + ", so, the default value: " + defaultValue + " will be used."
+            );
+            return defaultValue;
+        }
+    }
+
+    @NotNull
+    private static <T extends Enum<T>> T readEnumProperty(@NotNull final String property,
+                                                          @NotNull final Class<T> enumType,
+                                                          @NotNull final T defaultValue) {
+        final String value = System.getProperty(property);
+        if (value == null) {
+            log.debug(property + " property was not provided, default value: " + defaultValue + " will be used.");
+            return defaultValue;
+        }
+        try {
+            final T parsedValue = Enum.valueOf(enumType, value);
+            log.debug(property + " property value is: " + parsedValue);
+            return parsedValue;
+        } catch (IllegalArgumentException e) {
+            log.warn(
+                    "Unable to read the " + property + " property because of: " + e.getMessage()
+                            + ", so, the default value: " + defaultValue + " will be used."
+            );
+            return defaultValue;
+        }
+    }
+
+    @Nullable
+    private static CardRegistry createCardRegistry() {
+        final String storageDirectory = System.getProperty(STORAGE_DIRECTORY_PROPERTY);
+        if (storageDirectory == null) {
+            log.debug("Storage directory was not provided, the cards will be kept in memory only.");
+            return new InMemoryCardRegistry();
+        }
+        final FsyncPolicy fsyncPolicy =
+                readEnumProperty(STORAGE_FSYNC_POLICY_PROPERTY, FsyncPolicy.class, STORAGE_FSYNC_POLICY_DEFAULT);
+        final long flushIntervalMillis =
+                readPositiveLongProperty(STORAGE_FLUSH_INTERVAL_PROPERTY, STORAGE_FLUSH_INTERVAL_DEFAULT);
+        final long groupCommitDelayMicros =
+                readPositiveLongProperty(STORAGE_GROUP_COMMIT_DELAY_PROPERTY, STORAGE_GROUP_COMMIT_DELAY_DEFAULT);
+        final PersistentCardRegistry cardRegistry;
+        try {
+            cardRegistry = new PersistentCardRegistry(
+                    Paths.get(storageDirectory), fsyncPolicy, flushIntervalMillis, groupCommitDelayMicros
+            );
+        } catch (IOException e) {
+            log.error("Unable to open the cards storage: " + storageDirectory + " because of: " + e.getMessage());
+            return null;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            storageSnapshotExecutor.shutdown();
+            try {
+                storageSnapshotExecutor.awaitTermination(STORAGE_SNAPSHOT_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                cardRegistry.close();
+            } catch (IOException e) {
+                log.warn("Unable to close the cards storage because of: " + e.getMessage());
+            }
+        }));
+        log.debug("Cards storage: " + storageDirectory + " was opened.");
+        return cardRegistry;
+    }
+
+    private static void scheduleStorageSnapshots(@NotNull final PersistentCardRegistry cardRegistry,
+                                                 @NotNull final CardsUpdateScheduler priorityUpdateScheduler) {
+        final long snapshotIntervalMillis =
+                readPositiveLongProperty(STORAGE_SNAPSHOT_INTERVAL_PROPERTY, STORAGE_SNAPSHOT_INTERVAL_DEFAULT);
+        // snapshots are written on their own thread to not delay the scheduled card updates
+        storageSnapshotExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                cardRegistry.snapshot(priorityUpdateScheduler::getScheduledPriorityUpdates);
+            } catch (Exception e) {
+                log.warn("Unable to write the cards snapshot because of: " + e.getMessage());
+            }
+        }, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        log.debug("Cards snapshot schedule: once per " + snapshotIntervalMillis + " ms was configured.");
+    }
+
 
     public static void main(String[] args) {
         int maxCardsForToday;
@@ -108,8 +289,44 @@ public class Main {
             );
             timeUnit = TIME_UNIT_DEFAULT;
         }
+        final CardRegistry storedCardRegistry = createCardRegistry();
+        if (storedCardRegistry == null) {
+            return;
+        }
+        // all the changes go through the observable registry, so the cards for today follow them
+        final ObservableCardRegistry cardRegistry = new ObservableCardRegistry(storedCardRegistry);
+
+        // every subsystem works on its own executor, so a long escalation does not delay the today cards and the requests
+        final QueuedThreadPool requestThreadPool =
+                new QueuedThreadPool((int) readPositiveLongProperty(REQUEST_THREADS_PROPERTY, REQUEST_THREADS_DEFAULT));
+        requestThreadPool.setName("cards-request");
+        final MonitoredScheduledExecutor schedulerExecutor = new MonitoredScheduledExecutor("scheduler", 1);
+        final PartitionedExecutor escalationWorkers = new PartitionedExecutor(
+                "escalation", (int) readPositiveLongProperty(ESCALATION_WORKERS_PROPERTY, ESCALATION_WORKERS_DEFAULT)
+        );
+        final MonitoredScheduledExecutor todayCardsExecutor = new MonitoredScheduledExecutor("today", 1);
+        // a slow stream client holds a push thread only until its write times out and it is disconnected,
+        // the timeouts are watched on their own thread, which is never blocked by the writes
+        final MonitoredScheduledExecutor streamExecutor = new MonitoredScheduledExecutor(
+                "stream", (int) readPositiveLongProperty(STREAM_THREADS_PROPERTY, STREAM_THREADS_DEFAULT)
+        );
+        final MonitoredScheduledExecutor streamTimeoutExecutor = new MonitoredScheduledExecutor("stream-timeout", 1);
+
+        final long todayConsistencyCheckMillis =
+                readPositiveLongProperty(TODAY_CONSISTENCY_CHECK_PROPERTY, TODAY_CONSISTENCY_CHECK_DEFAULT);
+        final ScheduledInMemoryTodayCardsService todayCardsService =
+                new ScheduledInMemoryTodayCardsService(
+                        todayCardsExecutor,
+                        cardRegistry,
+                        TimeUnit.MILLISECONDS, todayConsistencyCheckMillis > 0 ? todayConsistencyCheckMillis : null,
+                        maxCardsForToday
+                );
+        // the listener is added before the cards can be changed, so no change is missed,
+        // and its events are handled on the today cards executor, so the writers do not wait for them
+        cardRegistry.addListener(todayCardsService, todayCardsExecutor);
 
         final Javalin app = Javalin.create(config -> {
+            config.server(() -> new Server(requestThreadPool));
             config.registerPlugin(
                     new OpenApiPlugin(
                             new OpenApiOptions
@@ -125,61 +342,167 @@ public class Main {
             }
         }).start(8081);
 
-        final ObjectMapper objectMapper = new ObjectMapper();
-        final CardRegistry cardRegistry = new InMemoryCardRegistry();
-        final ScheduledExecutorService applicationExecutorService = Executors.newSingleThreadScheduledExecutor();
+        // the request and response bodies of the card and today endpoints can be JSON or one of the binary formats
+        final BodyCodecs bodyCodecs =
+                new BodyCodecs(readEnumProperty(JSON_BINDING_PROPERTY, JsonBinding.class, JSON_BINDING_DEFAULT));
+        final JsonCodec jsonCodec = bodyCodecs.getCodec(BodyFormat.JSON);
+        // the asynchronous requests free the request thread at once and wait for the service calls on their own executor
+        final ServiceExecutor serviceExecutor =
+                readEnumProperty(REQUEST_HANDLING_PROPERTY, RequestHandling.class, REQUEST_HANDLING_DEFAULT) == RequestHandling.ASYNCHRONOUS
+                        ? new ServiceExecutor(
+                                "service",
+                                (int) readPositiveLongProperty(SERVICE_THREADS_PROPERTY, SERVICE_THREADS_DEFAULT),
+                                (int) readPositiveLongProperty(SERVICE_QUEUE_SIZE_PROPERTY, SERVICE_QUEUE_SIZE_DEFAULT)
+                        )
+                        : null;
+        final RequestDispatcher requestDispatcher;
+        try {
+            requestDispatcher = new RequestDispatcher(bodyCodecs, serviceExecutor);
+        } catch (JsonProcessingException e) {
+            log.error("Request dispatcher was not created because of: " + e.getMessage() + ".");
+            return;
+        }
+        // the writes are rejected before the scheduler and the priority increase workers fall behind
+        final AdmissionControl admissionControl;
+        try {
+            admissionControl = new AdmissionControl(
+                    bodyCodecs,
+                    readPositiveLongProperty(ADMISSION_CLIENT_RATE_PROPERTY, ADMISSION_CLIENT_RATE_DEFAULT),
+                    readPositiveLongProperty(ADMISSION_CLIENT_BURST_PROPERTY, ADMISSION_CLIENT_BURST_DEFAULT),
+                    (int) readPositiveLongProperty(ADMISSION_CONCURRENT_REQUESTS_PROPERTY, ADMISSION_CONCURRENT_REQUESTS_DEFAULT),
+                    () -> schedulerExecutor.getQueueDepth() + escalationWorkers.getQueueDepth(),
+                    (int) readPositiveLongProperty(ADMISSION_MAX_BACKLOG_PROPERTY, ADMISSION_MAX_BACKLOG_DEFAULT)
+            );
+        } catch (JsonProcessingException e) {
+            log.error("Admission control was not created because of: " + e.getMessage() + ".");
+            return;
+        }
+        // the retried card creation gets the original response instead of the already existing card error
+        final IdempotencyCache idempotencyCache;
+        try {
+            idempotencyCache = new IdempotencyCache(
+                    bodyCodecs,
+                    TimeUnit.MILLISECONDS, readPositiveLongProperty(IDEMPOTENCY_TIME_TO_LIVE_PROPERTY, IDEMPOTENCY_TIME_TO_LIVE_DEFAULT),
+                    (int) readPositiveLongProperty(IDEMPOTENCY_MAX_RESPONSES_PROPERTY, IDEMPOTENCY_MAX_RESPONSES_DEFAULT),
+                    readPositiveLongProperty(IDEMPOTENCY_MAX_BYTES_PROPERTY, IDEMPOTENCY_MAX_BYTES_DEFAULT)
+            );
+        } catch (JsonProcessingException e) {
+            log.error("Idempotency cache was not created because of: " + e.getMessage() + ".");
+            return;
+        }
         final PriorityUpdateCalendar priorityUpdateCalendar = new ScheduleBasedPriorityUpdateCalendar();
-        final CardsUpdateScheduler priorityUpdateScheduler;
+        final TimingWheelCardsUpdateScheduler priorityUpdateScheduler;
         try {
-            priorityUpdateScheduler = new InMemoryCardsUpdateScheduler(
-                    applicationExecutorService,
+            final long schedulerTickMillis = readPositiveLongProperty(SCHEDULER_TICK_PROPERTY, SCHEDULER_TICK_DEFAULT);
+            final long schedulerSpreadWindowMillis =
+                    readPositiveLongProperty(SCHEDULER_SPREAD_WINDOW_PROPERTY, SCHEDULER_SPREAD_WINDOW_DEFAULT);
+            priorityUpdateScheduler = new TimingWheelCardsUpdateScheduler(
+                    schedulerExecutor,
                     priorityUpdateCalendar,
                     cardRegistry,
-                    timeUnit, period
+                    timeUnit, period,
+                    schedulerTickMillis, schedulerSpreadWindowMillis,
+                    // the schedule is recorded in the same storage as the cards
+                    storedCardRegistry instanceof PersistentCardRegistry ? (PersistentCardRegistry) storedCardRegistry : null,
+                    escalationWorkers
             );
         } catch (IncorrectCardPriorityScheduleException e) {
             log.error(e.getMessage());
             return;
         }
-        final TodayCardsService todayCardsService =
-                new ScheduledInMemoryTodayCardsService(
-                        applicationExecutorService,
-                        cardRegistry,
-                        timeUnit, period,
-                        maxCardsForToday
-                );
+        if (storedCardRegistry instanceof PersistentCardRegistry) {
+            final PersistentCardRegistry persistentCardRegistry = (PersistentCardRegistry) storedCardRegistry;
+            // the snapshot is read completely to restore the schedule, so the requests are not delayed by it,
+            // the missed priority updates are caught up before the first tick on the same executor
+            schedulerExecutor.execute(() -> priorityUpdateScheduler.restorePriorityUpdates(
+                    persistentCardRegistry.getRecoveredPriorityUpdates(priorityUpdateScheduler::spreadOffset)
+            ));
+            scheduleStorageSnapshots(persistentCardRegistry, priorityUpdateScheduler);
+        }
 
         try {
-            CardController.registerCreateScheduledCardEndpoint(app, objectMapper, cardRegistry, priorityUpdateScheduler);
+            CardController.registerCreateScheduledCardEndpoint(
+                    app, bodyCodecs, requestDispatcher, admissionControl, idempotencyCache, cardRegistry, priorityUpdateScheduler
+            );
             log.debug("Create card API has been registered.");
         } catch (EndpointRegistrationException e) {
             log.warn(e.getMessage());
         }
         try {
-            DailyController.registerCompleteCardEndpoint(app, objectMapper, todayCardsService);
+            CardController.registerCreateScheduledCardsBatchEndpoint(app, bodyCodecs, requestDispatcher, admissionControl, cardRegistry, priorityUpdateScheduler);
+            log.debug("Create cards batch API has been registered.");
+        } catch (EndpointRegistrationException e) {
+            log.warn(e.getMessage());
+        }
+        try {
+            CardController.registerDeleteCardsBatchEndpoint(app, bodyCodecs, requestDispatcher, admissionControl, cardRegistry, priorityUpdateScheduler, todayCardsService);
+            log.debug("Delete cards batch API has been registered.");
+        } catch (EndpointRegistrationException e) {
+            log.warn(e.getMessage());
+        }
+        try {
+            DailyController.registerCompleteCardEndpoint(app, bodyCodecs, requestDispatcher, admissionControl, todayCardsService);
             log.debug("Complete today card API has been registered.");
         } catch (EndpointRegistrationException e) {
             log.warn(e.getMessage());
         }
         try {
-            CardController.registerDeleteCardEndpoint(app, objectMapper, cardRegistry, todayCardsService);
+            CardController.registerDeleteCardEndpoint(app, bodyCodecs, requestDispatcher, admissionControl, cardRegistry, priorityUpdateScheduler, todayCardsService);
             log.debug("Create card API has been registered.");
         } catch (EndpointRegistrationException e) {
             log.warn(e.getMessage());
         }
         try {
-            DailyController.registerGetCardsEndpoint(app, objectMapper, todayCardsService);
+            DailyController.registerGetCardsEndpoint(app, bodyCodecs, requestDispatcher, todayCardsService);
             log.debug("Get today cards API has been registered.");
         } catch (EndpointRegistrationException e) {
             log.warn(e.getMessage());
         }
         try {
-            DailyController.registerAddAdditionalCardEndpoint(app, objectMapper, todayCardsService);
+            DailyController.registerGetCardsStreamEndpoint(
+                    app, jsonCodec, todayCardsService, streamExecutor, streamTimeoutExecutor,
+                    readPositiveLongProperty(STREAM_WRITE_TIMEOUT_PROPERTY, STREAM_WRITE_TIMEOUT_DEFAULT),
+                    (int) readPositiveLongProperty(STREAM_CLIENT_BUFFER_PROPERTY, STREAM_CLIENT_BUFFER_DEFAULT)
+            );
+            log.debug("Get today cards stream API has been registered.");
+        } catch (EndpointRegistrationException e) {
+            log.warn(e.getMessage());
+        }
+        try {
+            DailyController.registerAddAdditionalCardEndpoint(app, bodyCodecs, requestDispatcher, admissionControl, todayCardsService);
+        } catch (EndpointRegistrationException e) {
+            log.warn(e.getMessage());
+        }
+        try {
+            DailyController.registerReshuffleCardsEndpoint(app, bodyCodecs, requestDispatcher, admissionControl, todayCardsService);
+        } catch (EndpointRegistrationException e) {
+            log.warn(e.getMessage());
+        }
+        try {
+            MetricsController.registerGetExecutorsMetricsEndpoint(app, jsonCodec, () -> {
+                final List<ExecutorMetrics> metrics = new ArrayList<>();
+                // Jetty does not expose the waiting time of the queued requests
+                metrics.add(new ExecutorMetrics(
+                        "request",
+                        requestThreadPool.getThreads(), requestThreadPool.getBusyThreads(),
+                        requestThreadPool.getQueueSize(), -1, -1, -1
+                ));
+                metrics.add(schedulerExecutor.getMetrics());
+                metrics.addAll(escalationWorkers.getMetrics());
+                metrics.add(todayCardsExecutor.getMetrics());
+                metrics.add(streamExecutor.getMetrics());
+                metrics.add(streamTimeoutExecutor.getMetrics());
+                if (serviceExecutor != null) metrics.add(serviceExecutor.getMetrics());
+                metrics.add(storageSnapshotExecutor.getMetrics());
+                return metrics;
+            });
+            log.debug("Get executors metrics API has been registered.");
         } catch (EndpointRegistrationException e) {
             log.warn(e.getMessage());
         }
         try {
-            DailyController.registerReshuffleCardsEndpoint(app, objectMapper, todayCardsService);
+            MetricsController.registerGetAdmissionMetricsEndpoint(app, jsonCodec, admissionControl::getMetrics);
+            log.debug("Get admission metrics API has been registered.");
         } catch (EndpointRegistrationException e) {
             log.warn(e.getMessage());
         }
@@ -0,0 +1,215 @@
+package org.cards_tracker.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HttpCode;
+import org.cards_tracker.controller.dto.AdmissionMetrics;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Admits the write requests before their handlers are executed, so a flood of the writes is rejected
+ * instead of growing the queues of the scheduler and the priority increase workers.
+ * <p>
+ * A request is rejected with the too many requests error and the Retry-After header when its client has spent
+ * its token bucket, when the configured number of the write requests are already executed,
+ * or when the backlog of the executors the writes feed is over the limit.
+ * <p>
+ * The requests are admitted before they are dispatched to the service executor, and the admitted request
+ * is counted as executed until its response is completed.
+ */
+public class AdmissionControl {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+    // the least recently seen clients are forgotten over this number of clients
+    private static final int MAX_TRACKED_CLIENTS = 10_000;
+    private static final long BUSY_RETRY_AFTER_SECONDS = 1L;
+
+    @NotNull
+    private final BodyCodecs bodyCodecs;
+    private final double clientTokensPerNano;
+    private final double clientBurst;
+    private final int maxConcurrentRequests;
+    @NotNull
+    private final Semaphore concurrentRequests;
+    @NotNull
+    private final IntSupplier backlog;
+    private final int maxBacklog;
+    private final int maxTrackedClients;
+    @NotNull
+    private final LongSupplier nanoTime;
+    // the access order is the order the clients were seen in
+    @NotNull
+    private final LinkedHashMap<String, TokenBucket> clients = new LinkedHashMap<>(16, 0.75f, true);
+    @NotNull
+    private final Map<BodyFormat, byte[]> tooManyRequestsErrors;
+
+    @NotNull
+    private final AtomicLong admittedRequests = new AtomicLong();
+    @NotNull
+    private final AtomicLong rateLimitedRequests = new AtomicLong();
+    @NotNull
+    private final AtomicLong concurrencyLimitedRequests = new AtomicLong();
+    @NotNull
+    private final AtomicLong backlogLimitedRequests = new AtomicLong();
+
+    private final class TokenBucket {
+        private double tokens = clientBurst;
+        private long refilledNanos = nanoTime.getAsLong();
+
+        /**
+         * @return 0 if the token was taken or the seconds until the next token is refilled
+         */
+        private synchronized long take() {
+            final long now = nanoTime.getAsLong();
+            tokens = Math.min(clientBurst, tokens + (now - refilledNanos) * clientTokensPerNano);
+            refilledNanos = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            final double nanosUntilToken = (1 - tokens) / clientTokensPerNano;
+            return Math.max(1, (long) Math.ceil(nanosUntilToken / TimeUnit.SECONDS.toNanos(1)));
+        }
+    }
+
+    /**
+     * @param backlog the number of the tasks waiting in the queues of the executors the writes feed
+     */
+    public AdmissionControl(@NotNull final BodyCodecs bodyCodecs,
+                            final long clientRequestsPerSecond,
+                            final long clientBurst,
+                            final int maxConcurrentRequests,
+                            @NotNull final IntSupplier backlog,
+                            final int maxBacklog) throws JsonProcessingException {
+        this(
+                bodyCodecs, clientRequestsPerSecond, clientBurst, maxConcurrentRequests,
+                backlog, maxBacklog, MAX_TRACKED_CLIENTS, System::nanoTime
+        );
+    }
+
+    AdmissionControl(@NotNull final BodyCodecs bodyCodecs,
+                     final long clientRequestsPerSecond,
+                     final long clientBurst,
+                     final int maxConcurrentRequests,
+                     @NotNull final IntSupplier backlog,
+                     final int maxBacklog,
+                     final int maxTrackedClients,
+                     @NotNull final LongSupplier nanoTime) throws JsonProcessingException {
+        if (clientRequestsPerSecond <= 0 || clientBurst <= 0 || maxConcurrentRequests <= 0 || maxBacklog <= 0) {
+            throw new IllegalArgumentException(
+                    "Admission control client rate: " + clientRequestsPerSecond + ", client burst: " + clientBurst
+                            + ", concurrent requests: " + maxConcurrentRequests + " and backlog: " + maxBacklog
+                            + " have to be positive."
+            );
+        }
+        this.bodyCodecs = bodyCodecs;
+        this.clientTokensPerNano = (double) clientRequestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.clientBurst = clientBurst;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.concurrentRequests = new Semaphore(maxConcurrentRequests);
+        this.backlog = backlog;
+        this.maxBacklog = maxBacklog;
+        this.maxTrackedClients = maxTrackedClients;
+        this.nanoTime = nanoTime;
+        this.tooManyRequestsErrors = bodyCodecs.writeErrors("Too many requests, try again later");
+    }
+
+    /**
+     * @param handler the handler executed on the request thread or the handler dispatching the request,
+     *                which completes the request future when the request is handled
+     */
+    @NotNull
+    public Handler admit(@NotNull final Handler handler) {
+        return ctx -> {
+            final int currentBacklog = backlog.getAsInt();
+            if (currentBacklog > maxBacklog) {
+                backlogLimitedRequests.incrementAndGet();
+                log.debug("Request: " + ctx.method() + " " + ctx.path() + " was rejected, the backlog is: " + currentBacklog + ".");
+                reject(ctx, BUSY_RETRY_AFTER_SECONDS);
+                return;
+            }
+            if (!concurrentRequests.tryAcquire()) {
+                concurrencyLimitedRequests.incrementAndGet();
+                log.debug("Request: " + ctx.method() + " " + ctx.path() + " was rejected, " + maxConcurrentRequests + " requests are executed.");
+                reject(ctx, BUSY_RETRY_AFTER_SECONDS);
+                return;
+            }
+            // the token is taken last, so the client does not spend it on the request rejected for the service load
+            final String client = ctx.ip();
+            final long retryAfterSeconds = clientBucket(client).take();
+            if (retryAfterSeconds > 0) {
+                concurrentRequests.release();
+                rateLimitedRequests.incrementAndGet();
+                log.debug("Request: " + ctx.method() + " " + ctx.path() + " of client: " + client + " was over its rate limit.");
+                reject(ctx, retryAfterSeconds);
+                return;
+            }
+            admittedRequests.incrementAndGet();
+            try {
+                handler.handle(ctx);
+            } catch (Exception e) {
+                concurrentRequests.release();
+                throw e;
+            }
+            // the future of the request handled on the request thread is already completed
+            ctx.resultFuture().whenComplete((result, failure) -> concurrentRequests.release());
+        };
+    }
+
+    @NotNull
+    private TokenBucket clientBucket(@NotNull final String client) {
+        synchronized (clients) {
+            final TokenBucket bucket = clients.get(client);
+            if (bucket != null) return bucket;
+            final TokenBucket newBucket = new TokenBucket();
+            clients.put(client, newBucket);
+            if (clients.size() > maxTrackedClients) {
+                final Iterator<String> leastRecentClients = clients.keySet().iterator();
+                log.debug("Client: " + leastRecentClients.next() + " was not seen for the longest time and was forgotten.");
+                leastRecentClients.remove();
+            }
+            return newBucket;
+        }
+    }
+
+    private void reject(@NotNull final Context ctx, final long retryAfterSeconds) {
+        final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
+        ctx
+                .status(HttpCode.TOO_MANY_REQUESTS)
+                .header("Retry-After", String.valueOf(retryAfterSeconds))
+                .contentType(responseCodec.getContentType())
+                .result(tooManyRequestsErrors.get(responseCodec.getFormat()));
+    }
+
+    @NotNull
+    public AdmissionMetrics getMetrics() {
+        return new AdmissionMetrics(
+                admittedRequests.get(),
+                rateLimitedRequests.get(),
+                concurrencyLimitedRequests.get(),
+                backlogLimitedRequests.get(),
+                maxConcurrentRequests - concurrentRequests.availablePermits(),
+                backlog.getAsInt(),
+                trackedClients()
+        );
+    }
+
+    private int trackedClients() {
+        synchronized (clients) {
+            return clients.size();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.cards_tracker.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chooses the codec of the request body by its Content-Type header and the codec of the response body
+ * by the Accept header. The JSON codec is used when the headers are missing or do not name a supported format,
+ * so the clients which do not negotiate the format keep working as before.
+ */
+public class BodyCodecs {
+
+    private static final Logger log = LoggerFactory.getLogger(BodyCodecs.class);
+
+    @NotNull
+    private final Map<BodyFormat, JsonCodec> codecs = new EnumMap<>(BodyFormat.class);
+
+    public BodyCodecs(@NotNull final JsonBinding binding) {
+        for (BodyFormat format : BodyFormat.values()) {
+            codecs.put(format, new JsonCodec(binding, format));
+        }
+    }
+
+    @NotNull
+    public JsonCodec getCodec(@NotNull final BodyFormat format) {
+        return codecs.get(format);
+    }
+
+    /**
+     * Writes the error in every format, so the caller can write the errors with the fixed details once
+     * and keep them for all the requests.
+     */
+    @NotNull
+    public Map<BodyFormat, byte[]> writeErrors(@NotNull final String details) throws JsonProcessingException {
+        final Map<BodyFormat, byte[]> errors = new EnumMap<>(BodyFormat.class);
+        for (Map.Entry<BodyFormat, JsonCodec> codec : codecs.entrySet()) {
+            errors.put(codec.getKey(), codec.getValue().writeError(details));
+        }
+        return errors;
+    }
+
+    @NotNull
+    public JsonCodec forRequest(@Nullable final String contentType) {
+        if (contentType == null) return codecs.get(BodyFormat.JSON);
+        final BodyFormat format = findFormat(mediaType(contentType));
+        return codecs.get(format == null ? BodyFormat.JSON : format);
+    }
+
+    /**
+     * @return the codec of the supported format with the highest quality in the Accept header,
+     * the earlier format is chosen from the formats with the same quality, the wildcard stands for the first format
+     * which is not excluded with the zero quality, JSON if no supported format is accepted
+     */
+    @NotNull
+    public JsonCodec forResponse(@Nullable final String accept) {
+        if (accept == null) return codecs.get(BodyFormat.JSON);
+        final String[] mediaRanges = accept.split(",");
+        final Set<BodyFormat> excludedFormats = EnumSet.noneOf(BodyFormat.class);
+        for (String mediaRange : mediaRanges) {
+            final BodyFormat format = findFormat(mediaType(mediaRange));
+            if (format != null && quality(mediaRange) <= 0) excludedFormats.add(format);
+        }
+        BodyFormat acceptedFormat = null;
+        double acceptedQuality = 0;
+        for (String mediaRange : mediaRanges) {
+            final String mediaType = mediaType(mediaRange);
+            final BodyFormat format = mediaType.equals("*/*") || mediaType.equals("application/*")
+                    ? firstFormatExcept(excludedFormats)
+                    : findFormat(mediaType);
+            if (format == null) continue;
+            final double quality = quality(mediaRange);
+            if (quality > acceptedQuality) {
+                acceptedFormat = format;
+                acceptedQuality = quality;
+            }
+        }
+        return codecs.get(acceptedFormat == null ? BodyFormat.JSON : acceptedFormat);
+    }
+
+    @Nullable
+    private static BodyFormat firstFormatExcept(@NotNull final Set<BodyFormat> excludedFormats) {
+        for (BodyFormat format : BodyFormat.values()) {
+            if (!excludedFormats.contains(format)) return format;
+        }
+        return null;
+    }
+
+    @NotNull
+    private static String mediaType(@NotNull final String header) {
+        final int parametersStart = header.indexOf(';');
+        return (parametersStart < 0 ? header : header.substring(0, parametersStart)).trim().toLowerCase();
+    }
+
+    @Nullable
+    private static BodyFormat findFormat(@NotNull final String mediaType) {
+        for (BodyFormat format : BodyFormat.values()) {
+            if (format.getContentType().equals(mediaType)) return format;
+        }
+        return null;
+    }
+
+    private static double quality(@NotNull final String mediaRange) {
+        for (String parameter : mediaRange.split(";")) {
+            final String trimmedParameter = parameter.trim();
+            if (!trimmedParameter.startsWith("q=")) continue;
+            try {
+                return Double.parseDouble(trimmedParameter.substring(2));
+            } catch (NumberFormatException e) {
+                log.debug("Accept header quality: " + trimmedParameter + " was incorrect, so, it is ignored.");
+                return 1;
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,23 @@
+package org.cards_tracker.controller;
+
+import org.jetbrains.annotations.NotNull;
+
+public enum BodyFormat {
+    // the default format, used when the request does not ask for another one
+    JSON("application/json"),
+    // the binary formats of the same data, for the services calling the API at high rates
+    CBOR("application/cbor"),
+    SMILE("application/x-jackson-smile");
+
+    @NotNull
+    private final String contentType;
+
+    BodyFormat(@NotNull final String contentType) {
+        this.contentType = contentType;
+    }
+
+    @NotNull
+    public String getContentType() {
+        return contentType;
+    }
+}
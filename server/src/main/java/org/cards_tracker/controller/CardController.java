@@ -1,13 +1,11 @@
 package org.cards_tracker.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.javalin.Javalin;
 import io.javalin.http.HttpCode;
 import io.javalin.plugin.openapi.dsl.OpenApiBuilder;
 import io.javalin.plugin.openapi.dsl.OpenApiDocumentation;
-import org.cards_tracker.controller.dto.Card;
-import org.cards_tracker.controller.dto.PriorityUpdateSchedule;
-import org.cards_tracker.controller.dto.ErrorDto;
+import org.cards_tracker.controller.dto.*;
 import org.cards_tracker.controller.error.EndpointRegistrationException;
 import org.cards_tracker.domain.CardPriority;
 import org.cards_tracker.domain.CardPriorityUpdateSchedule;
@@ -23,36 +21,51 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.*;
+
 public class CardController {
 
     private static final Logger log = LoggerFactory.getLogger(CardController.class);
 
+    private static final int MAX_BATCH_SIZE = 10_000;
+
     public static void registerCreateScheduledCardEndpoint(@NotNull final Javalin app,
-                                                           @NotNull final ObjectMapper objectMapper,
+                                                           @NotNull final BodyCodecs bodyCodecs,
+                                                           @NotNull final RequestDispatcher requestDispatcher,
+                                                           @NotNull final AdmissionControl admissionControl,
+                                                           @NotNull final IdempotencyCache idempotencyCache,
                                                            @NotNull final CardRegistry cardRegistry,
                                                            @NotNull final CardsUpdateScheduler priorityUpdateScheduler)
             throws EndpointRegistrationException {
         final OpenApiDocumentation apiDocumentation = OpenApiBuilder
                 .document()
                 .operation(operation -> {
-                    operation.description("Create brand new scheduled card (task).");
+                    operation.description(
+                            "Create brand new scheduled card (task), the request retried with the same "
+                                    + IdempotencyCache.IDEMPOTENCY_KEY_HEADER + " header gets the original response."
+                    );
                 })
+                .header(IdempotencyCache.IDEMPOTENCY_KEY_HEADER, String.class)
                 .body(Card.class)
                 .json(String.valueOf(HttpCode.BAD_REQUEST.getStatus()), ErrorDto.class)
+                .json(String.valueOf(HttpCode.CONFLICT.getStatus()), ErrorDto.class)
                 .json(String.valueOf(HttpCode.INTERNAL_SERVER_ERROR.getStatus()), ErrorDto.class)
                 .result(String.valueOf(HttpCode.CREATED.getStatus()));
         final String path = "/card";
         try {
-            app.post(path, OpenApiBuilder.documented(apiDocumentation, ctx -> {
+            app.post(path, OpenApiBuilder.documented(apiDocumentation, admissionControl.admit(requestDispatcher.dispatch(idempotencyCache.replay(ctx -> {
                 log.debug("Create scheduled card request has been triggered.");
+                final JsonCodec requestCodec = bodyCodecs.forRequest(ctx.header("Content-Type"));
+                final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
                 final Card cardToCreate;
                 try {
-                    cardToCreate = ctx.bodyAsClass(Card.class);
+                    cardToCreate = requestCodec.readCard(ctx.bodyAsInputStream());
                 } catch (Exception e) {
                     log.debug("Create card request body was incorrect because of: " + e.getMessage());
                     ctx
                             .status(HttpCode.BAD_REQUEST)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
                     return;
                 }
                 log.debug("Create scheduled card request body: " + cardToCreate + ".");
@@ -64,13 +77,15 @@ public class CardController {
                     log.debug("Card: " + cardTitle + " was not created because of: " + e.getMessage() + ".");
                     ctx
                             .status(HttpCode.BAD_REQUEST)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
                     return;
                 } catch (CardAlreadyExistsException e) {
                     log.error("Card: " + cardTitle + " was not created because of: " + e.getMessage() + ".");
                     ctx
                             .status(HttpCode.INTERNAL_SERVER_ERROR)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
                     return;
                 }
                 log.debug("Card: " + cardTitle + " was created.");
@@ -85,7 +100,8 @@ public class CardController {
                         log.error("Card: " + cardTitle + " next priority update was not scheduled because of: " + e.getMessage() + ".");
                         ctx
                                 .status(HttpCode.INTERNAL_SERVER_ERROR)
-                                .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                                .contentType(responseCodec.getContentType())
+                                .result(responseCodec.writeError(e.getMessage()));
                         return;
                     }
                 } else {
@@ -95,22 +111,26 @@ public class CardController {
                         log.error("Card: " + cardTitle + " next priority update was not scheduled because of: " + e.getMessage() + ".");
                         ctx
                                 .status(HttpCode.INTERNAL_SERVER_ERROR)
-                                .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                                .contentType(responseCodec.getContentType())
+                                .result(responseCodec.writeError(e.getMessage()));
                         return;
                     }
                 }
                 log.debug("Card: " + cardTitle + " next priority update was scheduled.");
                 ctx.status(HttpCode.CREATED);
                 log.info("Create card request for card: " + cardTitle + " was successful.");
-            }));
+            })))));
         } catch (Exception e) {
             throw new EndpointRegistrationException(path, HttpMethod.POST, e);
         }
     }
 
     public static void registerDeleteCardEndpoint(@NotNull final Javalin app,
-                                                  @NotNull final ObjectMapper objectMapper,
+                                                  @NotNull final BodyCodecs bodyCodecs,
+                                                  @NotNull final RequestDispatcher requestDispatcher,
+                                                  @NotNull final AdmissionControl admissionControl,
                                                   @NotNull final CardRegistry cardRegistry,
+                                                  @NotNull final CardsUpdateScheduler priorityUpdateScheduler,
                                                   @NotNull final TodayCardsService todayCardsService)
             throws EndpointRegistrationException {
         final OpenApiDocumentation apiDocumentation = OpenApiBuilder
@@ -123,16 +143,19 @@ public class CardController {
                 .result(String.valueOf(HttpCode.NO_CONTENT.getStatus()));
         final String path = "/card";
         try {
-            app.delete(path, OpenApiBuilder.documented(apiDocumentation, ctx -> {
+            app.delete(path, OpenApiBuilder.documented(apiDocumentation, admissionControl.admit(requestDispatcher.dispatch(ctx -> {
                 log.debug("Delete card request has been triggered.");
+                final JsonCodec requestCodec = bodyCodecs.forRequest(ctx.header("Content-Type"));
+                final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
                 final Card cardToCreate;
                 try {
-                    cardToCreate = ctx.bodyAsClass(Card.class);
+                    cardToCreate = requestCodec.readCard(ctx.bodyAsInputStream());
                 } catch (Exception e) {
                     log.debug("Delete card request body was incorrect because of: " + e.getMessage() + ".");
                     ctx
                             .status(HttpCode.BAD_REQUEST)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
                     return;
                 }
                 String cardTitle = cardToCreate.getTitle();
@@ -142,11 +165,220 @@ public class CardController {
                 } catch (NotExistingCardException e) {
                     log.debug("Today card: " + cardTitle + " was not completed because of: " + e.getMessage() + ".");
                 }
+                // the priority update executed meanwhile does not schedule the removed card again
+                priorityUpdateScheduler.unschedulePriorityUpdate(cardTitle);
                 cardRegistry.removeCard(cardTitle);
                 log.debug("Card: " + cardTitle + " was deleted.");
                 ctx.status(HttpCode.NO_CONTENT);
                 log.info("Delete card request for card: " + cardTitle + " was successful.");
-            }));
+            }))));
+        } catch (Exception e) {
+            throw new EndpointRegistrationException(path, HttpMethod.DELETE, e);
+        }
+    }
+
+    public static void registerCreateScheduledCardsBatchEndpoint(@NotNull final Javalin app,
+                                                                 @NotNull final BodyCodecs bodyCodecs,
+                                                                 @NotNull final RequestDispatcher requestDispatcher,
+                                                                 @NotNull final AdmissionControl admissionControl,
+                                                                 @NotNull final CardRegistry cardRegistry,
+                                                                 @NotNull final CardsUpdateScheduler priorityUpdateScheduler)
+            throws EndpointRegistrationException {
+        final OpenApiDocumentation apiDocumentation = OpenApiBuilder
+                .document()
+                .operation(operation -> {
+                    operation.description(
+                            "Create up to " + MAX_BATCH_SIZE + " brand new scheduled cards (tasks) at once, "
+                                    + "the result of every card is reported in the request order."
+                    );
+                })
+                .body(CardsBatch.class)
+                .json(String.valueOf(HttpCode.BAD_REQUEST.getStatus()), ErrorDto.class)
+                .json(String.valueOf(HttpCode.OK.getStatus()), CardsBatchResult.class);
+        final String path = "/cards/batch";
+        try {
+            // the error is the same for all the requests, so it is written once in every format
+            final Map<BodyFormat, byte[]> batchSizeErrors =
+                    bodyCodecs.writeErrors("The list of up to " + MAX_BATCH_SIZE + " cards is required");
+            app.post(path, OpenApiBuilder.documented(apiDocumentation, admissionControl.admit(requestDispatcher.dispatch(ctx -> {
+                log.debug("Create scheduled cards batch request has been triggered.");
+                final JsonCodec requestCodec = bodyCodecs.forRequest(ctx.header("Content-Type"));
+                final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
+                final JsonNode cardsToCreate;
+                try {
+                    cardsToCreate = requestCodec.readTree(ctx.bodyAsInputStream()).get("cards");
+                } catch (Exception e) {
+                    log.debug("Create cards batch request body was incorrect because of: " + e.getMessage());
+                    ctx
+                            .status(HttpCode.BAD_REQUEST)
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
+                    return;
+                }
+                if (cardsToCreate == null || !cardsToCreate.isArray() || cardsToCreate.size() > MAX_BATCH_SIZE) {
+                    log.debug("Create cards batch request body does not contain a list of up to " + MAX_BATCH_SIZE + " cards.");
+                    ctx
+                            .status(HttpCode.BAD_REQUEST)
+                            .contentType(responseCodec.getContentType())
+                            .result(batchSizeErrors.get(responseCodec.getFormat()));
+                    return;
+                }
+                final CardPriority initialCardPriority = cardRegistry.getInitialCardPriority();
+                final CardBatchItemResult[] results = new CardBatchItemResult[cardsToCreate.size()];
+                final Map<String, Integer> cardIndexes = new HashMap<>();
+                final List<org.cards_tracker.domain.Card> cards = new ArrayList<>(cardsToCreate.size());
+                final Map<CardPriorityUpdateSchedule, List<String>> scheduledTitles = new LinkedHashMap<>();
+                final List<String> defaultScheduledTitles = new ArrayList<>();
+                // every card is validated separately, so one incorrect card does not reject the whole batch
+                for (int i = 0; i < results.length; i++) {
+                    final JsonNode cardNode = cardsToCreate.get(i);
+                    final String cardTitle = cardNode.path("title").isTextual() ? cardNode.get("title").asText() : null;
+                    final org.cards_tracker.domain.Card card;
+                    final CardPriorityUpdateSchedule cardSchedule;
+                    try {
+                        final Card cardToCreate = requestCodec.treeToCard(cardNode);
+                        card = new org.cards_tracker.domain.Card(cardToCreate.getTitle(), initialCardPriority);
+                        final PriorityUpdateSchedule priorityUpdateSchedule = cardToCreate.getPriorityUpdateSchedule();
+                        cardSchedule = priorityUpdateSchedule == null
+                                ? null
+                                : new CardPriorityUpdateSchedule(priorityUpdateSchedule.getSdkTimeUnit(), priorityUpdateSchedule.getPeriod());
+                    } catch (Exception e) {
+                        log.debug("Card: " + cardTitle + " of the batch was incorrect because of: " + e.getMessage() + ".");
+                        results[i] = new CardBatchItemResult(cardTitle, CardBatchItemStatus.INVALID, e.getMessage());
+                        continue;
+                    }
+                    if (cardIndexes.putIfAbsent(card.getTitle(), i) != null) {
+                        results[i] = new CardBatchItemResult(
+                                card.getTitle(), CardBatchItemStatus.ALREADY_EXISTS, "The card is repeated in the batch"
+                        );
+                        continue;
+                    }
+                    cards.add(card);
+                    if (cardSchedule == null) {
+                        defaultScheduledTitles.add(card.getTitle());
+                    } else {
+                        scheduledTitles.computeIfAbsent(cardSchedule, schedule -> new ArrayList<>()).add(card.getTitle());
+                    }
+                }
+                final Set<String> existingTitles = cardRegistry.createCards(cards);
+                for (String existingTitle : existingTitles) {
+                    results[cardIndexes.get(existingTitle)] = new CardBatchItemResult(
+                            existingTitle, CardBatchItemStatus.ALREADY_EXISTS, null
+                    );
+                }
+                final Set<String> notScheduledTitles = new HashSet<>();
+                defaultScheduledTitles.removeAll(existingTitles);
+                notScheduledTitles.addAll(priorityUpdateScheduler.scheduleDefaultPriorityUpdates(defaultScheduledTitles));
+                for (Map.Entry<CardPriorityUpdateSchedule, List<String>> schedule : scheduledTitles.entrySet()) {
+                    final List<String> titles = schedule.getValue();
+                    titles.removeAll(existingTitles);
+                    notScheduledTitles.addAll(priorityUpdateScheduler.schedulePriorityUpdates(titles, schedule.getKey()));
+                }
+                for (org.cards_tracker.domain.Card card : cards) {
+                    final String cardTitle = card.getTitle();
+                    if (existingTitles.contains(cardTitle)) continue;
+                    if (notScheduledTitles.contains(cardTitle)) {
+                        log.error("Card: " + cardTitle + " next priority update was not scheduled because it was removed.");
+                        results[cardIndexes.get(cardTitle)] = new CardBatchItemResult(
+                                cardTitle, CardBatchItemStatus.NOT_SCHEDULED, "The card was removed before it was scheduled"
+                        );
+                    } else {
+                        results[cardIndexes.get(cardTitle)] = new CardBatchItemResult(
+                                cardTitle, CardBatchItemStatus.CREATED, null
+                        );
+                    }
+                }
+                ctx
+                        .contentType(responseCodec.getContentType())
+                        .result(responseCodec.writeCardsBatchResult(new CardsBatchResult(Arrays.asList(results))));
+                ctx.status(HttpCode.OK);
+                log.info(
+                        "Create cards batch request was completed, " + (cards.size() - existingTitles.size())
+                                + " of " + results.length + " cards were created."
+                );
+            }))));
+        } catch (Exception e) {
+            throw new EndpointRegistrationException(path, HttpMethod.POST, e);
+        }
+    }
+
+    public static void registerDeleteCardsBatchEndpoint(@NotNull final Javalin app,
+                                                        @NotNull final BodyCodecs bodyCodecs,
+                                                        @NotNull final RequestDispatcher requestDispatcher,
+                                                        @NotNull final AdmissionControl admissionControl,
+                                                        @NotNull final CardRegistry cardRegistry,
+                                                        @NotNull final CardsUpdateScheduler priorityUpdateScheduler,
+                                                        @NotNull final TodayCardsService todayCardsService)
+            throws EndpointRegistrationException {
+        final OpenApiDocumentation apiDocumentation = OpenApiBuilder
+                .document()
+                .operation(operation -> {
+                    operation.description(
+                            "Delete up to " + MAX_BATCH_SIZE + " cards completely at once, "
+                                    + "the result of every card is reported in the request order."
+                    );
+                })
+                .body(Cards.class)
+                .json(String.valueOf(HttpCode.BAD_REQUEST.getStatus()), ErrorDto.class)
+                .json(String.valueOf(HttpCode.OK.getStatus()), CardsBatchResult.class);
+        final String path = "/cards/batch";
+        try {
+            // the error is the same for all the requests, so it is written once in every format
+            final Map<BodyFormat, byte[]> batchSizeErrors =
+                    bodyCodecs.writeErrors("The list of up to " + MAX_BATCH_SIZE + " cards is required");
+            app.delete(path, OpenApiBuilder.documented(apiDocumentation, admissionControl.admit(requestDispatcher.dispatch(ctx -> {
+                log.debug("Delete cards batch request has been triggered.");
+                final JsonCodec requestCodec = bodyCodecs.forRequest(ctx.header("Content-Type"));
+                final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
+                final Cards cardsToDelete;
+                try {
+                    cardsToDelete = requestCodec.readCards(ctx.bodyAsInputStream());
+                } catch (Exception e) {
+                    log.debug("Delete cards batch request body was incorrect because of: " + e.getMessage() + ".");
+                    ctx
+                            .status(HttpCode.BAD_REQUEST)
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
+                    return;
+                }
+                final List<String> cardTitles = cardsToDelete.getCards();
+                if (cardTitles.size() > MAX_BATCH_SIZE) {
+                    log.debug("Delete cards batch request contains more than " + MAX_BATCH_SIZE + " cards.");
+                    ctx
+                            .status(HttpCode.BAD_REQUEST)
+                            .contentType(responseCodec.getContentType())
+                            .result(batchSizeErrors.get(responseCodec.getFormat()));
+                    return;
+                }
+                final Set<String> todayCards = new HashSet<>(todayCardsService.getCardsForToday());
+                for (String cardTitle : cardTitles) {
+                    if (!todayCards.remove(cardTitle)) continue;
+                    try {
+                        todayCardsService.completeCardForToday(cardTitle);
+                        log.debug("Today card: " + cardTitle + " was completed.");
+                    } catch (NotExistingCardException e) {
+                        log.debug("Today card: " + cardTitle + " was not completed because of: " + e.getMessage() + ".");
+                    }
+                }
+                priorityUpdateScheduler.unschedulePriorityUpdates(cardTitles);
+                final Set<String> missingTitles = cardRegistry.removeCards(cardTitles);
+                final List<CardBatchItemResult> results = new ArrayList<>(cardTitles.size());
+                for (String cardTitle : cardTitles) {
+                    results.add(new CardBatchItemResult(
+                            cardTitle,
+                            missingTitles.contains(cardTitle) ? CardBatchItemStatus.NOT_FOUND : CardBatchItemStatus.DELETED,
+                            null
+                    ));
+                }
+                ctx
+                        .contentType(responseCodec.getContentType())
+                        .result(responseCodec.writeCardsBatchResult(new CardsBatchResult(results)));
+                ctx.status(HttpCode.OK);
+                log.info(
+                        "Delete cards batch request was completed, " + (cardTitles.size() - missingTitles.size())
+                                + " of " + cardTitles.size() + " cards were deleted."
+                );
+            }))));
         } catch (Exception e) {
             throw new EndpointRegistrationException(path, HttpMethod.DELETE, e);
         }
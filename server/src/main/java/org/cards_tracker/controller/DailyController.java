@@ -1,6 +1,5 @@
 package org.cards_tracker.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.Javalin;
 import io.javalin.http.HttpCode;
 import io.javalin.plugin.openapi.dsl.OpenApiBuilder;
@@ -12,54 +11,166 @@ import org.cards_tracker.controller.error.EndpointRegistrationException;
 import org.cards_tracker.error.CardAlreadyExistsException;
 import org.cards_tracker.error.NotExistingCardException;
 import org.cards_tracker.service.TodayCardsService;
+import org.cards_tracker.service.VersionedTodayCards;
 import org.eclipse.jetty.http.HttpMethod;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DailyController {
 
     private static final Logger log = LoggerFactory.getLogger(DailyController.class);
 
+    // the versions of the cards for today start from zero after every restart
+    @NotNull
+    private static final String TODAY_CARDS_ETAG_PREFIX = Long.toHexString(System.currentTimeMillis());
+
+    /**
+     * The response body of one version of the cards for today, so the same cards are serialized only once.
+     */
+    private static final class EncodedTodayCards {
+        private final long version;
+        @NotNull
+        private final String etag;
+        @NotNull
+        private final byte[] body;
+
+        private EncodedTodayCards(final long version, @NotNull final String etag, @NotNull final byte[] body) {
+            this.version = version;
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Every format of the same cards is a different representation, so it has a different entity tag.
+     */
+    @NotNull
+    private static String todayCardsEtag(final long version, @NotNull final BodyFormat format) {
+        final String formatSuffix = format == BodyFormat.JSON ? "" : "-" + format.name().toLowerCase();
+        return "\"" + TODAY_CARDS_ETAG_PREFIX + "-" + version + formatSuffix + "\"";
+    }
+
+    /**
+     * @return true if the If-None-Match header value contains the entity tag or any entity tag
+     */
+    private static boolean isNotModified(@Nullable final String ifNoneMatch, @NotNull final String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String requestedTag : ifNoneMatch.split(",")) {
+            String tag = requestedTag.trim();
+            // the weak comparison is used for GET requests
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
     public static void registerGetCardsEndpoint(@NotNull final Javalin app,
-                                                @NotNull final ObjectMapper objectMapper,
+                                                @NotNull final BodyCodecs bodyCodecs,
+                                                @NotNull final RequestDispatcher requestDispatcher,
                                                 @NotNull final TodayCardsService todayCardsService)
             throws EndpointRegistrationException {
         final OpenApiDocumentation apiDocumentation = OpenApiBuilder
                 .document()
                 .operation(operation -> {
-                    operation.description("Get cards for today.");
+                    operation.description("Get cards for today, the cards are not sent again while their ETag is the same.");
                 })
+                .header("If-None-Match", String.class)
+                .result(String.valueOf(HttpCode.NOT_MODIFIED.getStatus()))
                 .result(String.valueOf(HttpCode.INTERNAL_SERVER_ERROR.getStatus()), ErrorDto.class)
                 .result(String.valueOf(HttpCode.OK.getStatus()), Cards.class);
         final String path = "/today/cards";
+        // every format of the cards is cached separately, the formats which are not requested are not serialized
+        final Map<BodyFormat, AtomicReference<EncodedTodayCards>> encodedTodayCards = new EnumMap<>(BodyFormat.class);
+        for (BodyFormat format : BodyFormat.values()) {
+            encodedTodayCards.put(format, new AtomicReference<>());
+        }
         try {
-            app.get(path, OpenApiBuilder.documented(apiDocumentation, ctx -> {
+            app.get(path, OpenApiBuilder.documented(apiDocumentation, requestDispatcher.dispatch(ctx -> {
                 log.debug("Get today cards request has been triggered.");
-                final List<String> cardsForToday = todayCardsService.getCardsForToday();
-                try {
-                    final Cards responseBody = new Cards(cardsForToday);
-                    log.debug("Get today cards response body: " + responseBody + ".");
-                    ctx.json(responseBody);
-                } catch (Exception e) {
-                    log.error("Get today cards request was not successful because of: " + e.getMessage() + ".");
-                    ctx
-                            .status(HttpCode.INTERNAL_SERVER_ERROR)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
+                final VersionedTodayCards cardsForToday = todayCardsService.getVersionedCardsForToday();
+                final AtomicReference<EncodedTodayCards> encodedFormatCards = encodedTodayCards.get(responseCodec.getFormat());
+                EncodedTodayCards responseBody = encodedFormatCards.get();
+                if (responseBody == null || responseBody.version != cardsForToday.getVersion()) {
+                    try {
+                        responseBody = new EncodedTodayCards(
+                                cardsForToday.getVersion(),
+                                todayCardsEtag(cardsForToday.getVersion(), responseCodec.getFormat()),
+                                responseCodec.writeCards(new Cards(cardsForToday.getCards()))
+                        );
+                    } catch (Exception e) {
+                        log.error("Get today cards request was not successful because of: " + e.getMessage() + ".");
+                        ctx
+                                .status(HttpCode.INTERNAL_SERVER_ERROR)
+                                .contentType(responseCodec.getContentType())
+                                .result(responseCodec.writeError(e.getMessage()));
+                        return;
+                    }
+                    // a concurrent request can replace it with an older version, which is only serialized once more
+                    encodedFormatCards.set(responseBody);
+                    log.debug("Get today cards response body: " + cardsForToday + " was serialized.");
+                }
+                ctx.header("ETag", responseBody.etag);
+                // the caches keep the cards of every format apart
+                ctx.header("Vary", "Accept");
+                if (isNotModified(ctx.header("If-None-Match"), responseBody.etag)) {
+                    ctx.status(HttpCode.NOT_MODIFIED);
+                    log.info("Get today cards request was successful, the cards were not modified.");
                     return;
                 }
+                ctx
+                        .contentType(responseCodec.getContentType())
+                        .result(responseBody.body);
                 ctx.status(HttpCode.OK);
                 log.info("Get today cards request was successful.");
-            }));
+            })));
+        } catch (Exception e) {
+            throw new EndpointRegistrationException(path, HttpMethod.GET, e);
+        }
+    }
+
+    /**
+     * The cards for today are pushed on connect and after every change, as the events with the cards version id.
+     * The endpoint is not described in the API documentation, which does not support the server-sent events.
+     * The events are text, so the cards are always pushed as JSON.
+     * The client which does not take a push in the write timeout is disconnected.
+     */
+    public static void registerGetCardsStreamEndpoint(@NotNull final Javalin app,
+                                                      @NotNull final JsonCodec jsonCodec,
+                                                      @NotNull final TodayCardsService todayCardsService,
+                                                      @NotNull final ExecutorService pushExecutor,
+                                                      @NotNull final ScheduledExecutorService writeTimeoutExecutor,
+                                                      final long writeTimeoutMillis,
+                                                      final int clientBufferSize)
+            throws EndpointRegistrationException {
+        final String path = "/today/cards/stream";
+        try {
+            final TodayCardsStream todayCardsStream = new TodayCardsStream(
+                    jsonCodec, pushExecutor, writeTimeoutExecutor, writeTimeoutMillis, clientBufferSize
+            );
+            todayCardsService.addListener(todayCardsStream);
+            app.sse(path, client -> {
+                log.debug("Get today cards stream request has been triggered.");
+                todayCardsStream.connect(client, todayCardsService.getVersionedCardsForToday());
+                log.info("Get today cards stream request was successful.");
+            });
         } catch (Exception e) {
             throw new EndpointRegistrationException(path, HttpMethod.GET, e);
         }
     }
 
     public static void registerReshuffleCardsEndpoint(@NotNull final Javalin app,
-                                                      @NotNull final ObjectMapper objectMapper,
+                                                      @NotNull final BodyCodecs bodyCodecs,
+                                                      @NotNull final RequestDispatcher requestDispatcher,
+                                                      @NotNull final AdmissionControl admissionControl,
                                                       @NotNull final TodayCardsService todayCardsService)
             throws EndpointRegistrationException {
         final OpenApiDocumentation apiDocumentation = OpenApiBuilder
@@ -73,16 +184,19 @@ public class DailyController {
                 .result(String.valueOf(HttpCode.OK.getStatus()));
         final String path = "/today/cards";
         try {
-            app.put(path, OpenApiBuilder.documented(apiDocumentation, ctx -> {
+            app.put(path, OpenApiBuilder.documented(apiDocumentation, admissionControl.admit(requestDispatcher.dispatch(ctx -> {
                 log.debug("Reshuffle today cards request has been triggered.");
+                final JsonCodec requestCodec = bodyCodecs.forRequest(ctx.header("Content-Type"));
+                final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
                 final Cards orderedCards;
                 try {
-                    orderedCards = ctx.bodyAsClass(Cards.class);
+                    orderedCards = requestCodec.readCards(ctx.bodyAsInputStream());
                 } catch (Exception e) {
                     log.debug("Reshuffle today cards request body was incorrect because of: " + e.getMessage());
                     ctx
                             .status(HttpCode.BAD_REQUEST)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
                     return;
                 }
                 log.debug("Reshuffle today cards request body: " + orderedCards + ".");
@@ -92,20 +206,23 @@ public class DailyController {
                     log.debug("Reshuffling of today cards was not completed because of: " + e.getMessage() + ".");
                     ctx
                             .status(HttpCode.BAD_REQUEST)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
                     return;
                 }
                 log.debug("Reshuffling of today cards was completed.");
                 ctx.status(HttpCode.OK);
                 log.info("Reshuffle today cards request was successful.");
-            }));
+            }))));
         } catch (Exception e) {
             throw new EndpointRegistrationException(path, HttpMethod.PUT, e);
         }
     }
 
     public static void registerCompleteCardEndpoint(@NotNull final Javalin app,
-                                                    @NotNull final ObjectMapper objectMapper,
+                                                    @NotNull final BodyCodecs bodyCodecs,
+                                                    @NotNull final RequestDispatcher requestDispatcher,
+                                                    @NotNull final AdmissionControl admissionControl,
                                                     @NotNull final TodayCardsService todayCardsService)
             throws EndpointRegistrationException {
         final OpenApiDocumentation apiDocumentation = OpenApiBuilder
@@ -119,16 +236,19 @@ public class DailyController {
                 .result(String.valueOf(HttpCode.NO_CONTENT.getStatus()));
         final String path = "/today/card";
         try {
-            app.delete(path, OpenApiBuilder.documented(apiDocumentation, ctx -> {
+            app.delete(path, OpenApiBuilder.documented(apiDocumentation, admissionControl.admit(requestDispatcher.dispatch(ctx -> {
                 log.debug("Complete today card request has been triggered.");
+                final JsonCodec requestCodec = bodyCodecs.forRequest(ctx.header("Content-Type"));
+                final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
                 final Card cardToCreate;
                 try {
-                    cardToCreate = ctx.bodyAsClass(Card.class);
+                    cardToCreate = requestCodec.readCard(ctx.bodyAsInputStream());
                 } catch (Exception e) {
                     log.debug("Complete today card request body was incorrect because of: " + e.getMessage());
                     ctx
                             .status(HttpCode.BAD_REQUEST)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
                     return;
                 }
                 log.debug("Complete today card request body: " + cardToCreate + ".");
@@ -139,20 +259,23 @@ public class DailyController {
                     log.debug("Today card: " + cardTitle + " was not completed because of: " + e.getMessage() + ".");
                     ctx
                             .status(HttpCode.NOT_FOUND)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
                     return;
                 }
                 log.debug("Today card: " + cardTitle + " was completed.");
                 ctx.status(HttpCode.NO_CONTENT);
                 log.info("Complete today card request for card: " + cardTitle + " was successful.");
-            }));
+            }))));
         } catch (Exception e) {
             throw new EndpointRegistrationException(path, HttpMethod.DELETE, e);
         }
     }
 
     public static void registerAddAdditionalCardEndpoint(@NotNull final Javalin app,
-                                                         @NotNull final ObjectMapper objectMapper,
+                                                         @NotNull final BodyCodecs bodyCodecs,
+                                                         @NotNull final RequestDispatcher requestDispatcher,
+                                                         @NotNull final AdmissionControl admissionControl,
                                                          @NotNull final TodayCardsService todayCardsService)
             throws EndpointRegistrationException {
         final OpenApiDocumentation apiDocumentation = OpenApiBuilder
@@ -166,16 +289,19 @@ public class DailyController {
                 .result(String.valueOf(HttpCode.CREATED.getStatus()));
         final String path = "/today/card";
         try {
-            app.post(path, OpenApiBuilder.documented(apiDocumentation, ctx -> {
+            app.post(path, OpenApiBuilder.documented(apiDocumentation, admissionControl.admit(requestDispatcher.dispatch(ctx -> {
                 log.debug("Add additional card for today request has been triggered.");
+                final JsonCodec requestCodec = bodyCodecs.forRequest(ctx.header("Content-Type"));
+                final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
                 final Card cardToAdd;
                 try {
-                    cardToAdd = ctx.bodyAsClass(Card.class);
+                    cardToAdd = requestCodec.readCard(ctx.bodyAsInputStream());
                 } catch (Exception e) {
                     log.debug("Add additional card for today request body was incorrect because of: " + e.getMessage());
                     ctx
                             .status(HttpCode.BAD_REQUEST)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
                     return;
                 }
                 log.debug("Add additional card for today request body: " + cardToAdd + ".");
@@ -186,13 +312,14 @@ public class DailyController {
                     log.debug("An additional card: " + cardTitle + " was not added for today because of: " + e.getMessage() + ".");
                     ctx
                             .status(HttpCode.NOT_FOUND)
-                            .result(objectMapper.writeValueAsBytes(new ErrorDto(e.getMessage())));
+                            .contentType(responseCodec.getContentType())
+                            .result(responseCodec.writeError(e.getMessage()));
                     return;
                 }
                 log.debug("An additional card: " + cardTitle + " was added for today.");
                 ctx.status(HttpCode.CREATED);
                 log.info("Add additional card for today request for card: " + cardTitle + " was successful.");
-            }));
+            }))));
         } catch (Exception e) {
             throw new EndpointRegistrationException(path, HttpMethod.POST, e);
         }
@@ -0,0 +1,280 @@
+package org.cards_tracker.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HttpCode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the responses of the requests with the Idempotency-Key header, so the retried request is answered
+ * with the original response without executing the handler again.
+ * <p>
+ * The key is scoped by the client and the endpoint. The responses are kept for the configured time
+ * and the oldest ones are evicted earlier when the number of the responses or their size is over the limit.
+ * The request with the key of the request which is still handled is rejected with the conflict error.
+ * The request with the key of the kept response and another body is rejected with the unprocessable entity error.
+ * The responses of the requests which were rejected before they were handled are not kept, so they can be retried.
+ */
+public class IdempotencyCache {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyCache.class);
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 255;
+    // the approximate size of a kept response besides its key and body
+    private static final long RESPONSE_OVERHEAD_BYTES = 128L;
+    private static final String BODY_HASH_ALGORITHM = "SHA-256";
+
+    @NotNull
+    private final BodyCodecs bodyCodecs;
+    private final long timeToLiveNanos;
+    private final int maxResponses;
+    private final long maxBytes;
+    @NotNull
+    private final LongSupplier nanoTime;
+    @NotNull
+    private final Map<BodyFormat, byte[]> inProgressErrors;
+    @NotNull
+    private final Map<BodyFormat, byte[]> anotherBodyErrors;
+    @NotNull
+    private final Map<BodyFormat, byte[]> incorrectKeyErrors;
+
+    // the responses are kept for the same time, so the insertion order is the expiration order
+    @NotNull
+    private final LinkedHashMap<String, RecordedResponse> responses = new LinkedHashMap<>();
+    @NotNull
+    private final Set<String> inProgressKeys = new HashSet<>();
+    private long responsesBytes;
+
+    private static final class RecordedResponse {
+        private final int status;
+        @Nullable
+        private final String contentType;
+        @NotNull
+        private final byte[] body;
+        @NotNull
+        private final byte[] requestBodyHash;
+        private final long expirationNanos;
+        private final long bytes;
+
+        private RecordedResponse(final int status,
+                                 @Nullable final String contentType,
+                                 @NotNull final byte[] body,
+                                 @NotNull final byte[] requestBodyHash,
+                                 final long expirationNanos,
+                                 final long bytes) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+            this.requestBodyHash = requestBodyHash;
+            this.expirationNanos = expirationNanos;
+            this.bytes = bytes;
+        }
+    }
+
+    public IdempotencyCache(@NotNull final BodyCodecs bodyCodecs,
+                            @NotNull final TimeUnit timeUnit, final long timeToLive,
+                            final int maxResponses,
+                            final long maxBytes) throws JsonProcessingException {
+        this(bodyCodecs, timeUnit, timeToLive, maxResponses, maxBytes, System::nanoTime);
+    }
+
+    IdempotencyCache(@NotNull final BodyCodecs bodyCodecs,
+                     @NotNull final TimeUnit timeUnit, final long timeToLive,
+                     final int maxResponses,
+                     final long maxBytes,
+                     @NotNull final LongSupplier nanoTime) throws JsonProcessingException {
+        if (timeToLive <= 0 || maxResponses <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException(
+                    "Idempotency cache time to live: " + timeToLive + ", responses: " + maxResponses
+                            + " and size: " + maxBytes + " have to be positive."
+            );
+        }
+        this.bodyCodecs = bodyCodecs;
+        this.timeToLiveNanos = timeUnit.toNanos(timeToLive);
+        this.maxResponses = maxResponses;
+        this.maxBytes = maxBytes;
+        this.nanoTime = nanoTime;
+        this.inProgressErrors = bodyCodecs.writeErrors("The request with the same idempotency key is still handled");
+        this.anotherBodyErrors = bodyCodecs.writeErrors(
+                "The idempotency key was already used for the request with another body"
+        );
+        this.incorrectKeyErrors = bodyCodecs.writeErrors(
+                "The idempotency key has to be from 1 to " + MAX_KEY_LENGTH + " characters long"
+        );
+    }
+
+    @NotNull
+    public Handler replay(@NotNull final Handler handler) {
+        return ctx -> {
+            final String idempotencyKey = ctx.header(IDEMPOTENCY_KEY_HEADER);
+            if (idempotencyKey == null) {
+                handler.handle(ctx);
+                return;
+            }
+            if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+                log.debug("Request: " + ctx.method() + " " + ctx.path() + " idempotency key was incorrect.");
+                reject(ctx, HttpCode.BAD_REQUEST, incorrectKeyErrors);
+                return;
+            }
+            final String key = ctx.ip() + " " + ctx.method() + " " + ctx.path() + " " + idempotencyKey;
+            final byte[] requestBody = ctx.bodyAsBytes();
+            final byte[] requestBodyHash = hash(requestBody);
+            final RecordedResponse recordedResponse;
+            synchronized (this) {
+                removeExpiredResponses(nanoTime.getAsLong());
+                recordedResponse = responses.get(key);
+                if (recordedResponse == null && !inProgressKeys.add(key)) {
+                    log.debug("Request: " + ctx.method() + " " + ctx.path() + " with idempotency key: " + idempotencyKey + " is still handled.");
+                    reject(ctx, HttpCode.CONFLICT, inProgressErrors);
+                    return;
+                }
+            }
+            if (recordedResponse != null && !MessageDigest.isEqual(recordedResponse.requestBodyHash, requestBodyHash)) {
+                log.debug("Request: " + ctx.method() + " " + ctx.path() + " with idempotency key: " + idempotencyKey + " had another body.");
+                reject(ctx, HttpCode.UNPROCESSABLE_ENTITY, anotherBodyErrors);
+                return;
+            }
+            if (recordedResponse != null) {
+                log.debug("Request: " + ctx.method() + " " + ctx.path() + " with idempotency key: " + idempotencyKey + " was replayed.");
+                ctx.status(recordedResponse.status);
+                if (recordedResponse.contentType != null) ctx.contentType(recordedResponse.contentType);
+                ctx.header("Idempotent-Replayed", "true");
+                if (recordedResponse.body.length != 0) ctx.result(recordedResponse.body);
+                return;
+            }
+            try {
+                // the body was already read for the hash, so the handler reads it again from the kept bytes
+                final Context handlerCtx = RequestDispatcher.handlerContext(ctx, new BodyRequest(ctx.req, requestBody), ctx.res);
+                handler.handle(handlerCtx);
+                record(key, requestBodyHash, handlerCtx, ctx);
+            } finally {
+                synchronized (this) {
+                    inProgressKeys.remove(key);
+                }
+            }
+        };
+    }
+
+    private void reject(@NotNull final Context ctx,
+                        @NotNull final HttpCode status,
+                        @NotNull final Map<BodyFormat, byte[]> errors) {
+        final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
+        ctx
+                .status(status)
+                .contentType(responseCodec.getContentType())
+                .result(errors.get(responseCodec.getFormat()));
+    }
+
+    private void record(@NotNull final String key,
+                        @NotNull final byte[] requestBodyHash,
+                        @NotNull final Context handlerCtx,
+                        @NotNull final Context ctx) throws Exception {
+        final InputStream result = handlerCtx.resultStream();
+        final int status = ctx.status();
+        // the rejected requests were not handled, so their retries have to be handled
+        if (status == HttpCode.TOO_MANY_REQUESTS.getStatus() || status == HttpCode.SERVICE_UNAVAILABLE.getStatus()) {
+            if (result != null) ctx.result(result);
+            return;
+        }
+        final byte[] body = result == null ? new byte[0] : result.readAllBytes();
+        // the result stream is read once, so the response gets the same body again
+        if (result != null) ctx.result(body);
+        final long bytes = RESPONSE_OVERHEAD_BYTES + 2L * key.length() + requestBodyHash.length + body.length;
+        if (bytes > maxBytes) {
+            log.debug("Response of the idempotency key: " + key + " is larger than the cache and was not kept.");
+            return;
+        }
+        final long now = nanoTime.getAsLong();
+        synchronized (this) {
+            final RecordedResponse previous = responses.put(
+                    key,
+                    new RecordedResponse(status, ctx.res.getContentType(), body, requestBodyHash, now + timeToLiveNanos, bytes)
+            );
+            if (previous != null) responsesBytes -= previous.bytes;
+            responsesBytes += bytes;
+            // the oldest responses are evicted first, they are the closest to their expiration anyway
+            final Iterator<RecordedResponse> oldestResponses = responses.values().iterator();
+            while ((responses.size() > maxResponses || responsesBytes > maxBytes) && oldestResponses.hasNext()) {
+                responsesBytes -= oldestResponses.next().bytes;
+                oldestResponses.remove();
+            }
+        }
+    }
+
+    private void removeExpiredResponses(final long now) {
+        final Iterator<RecordedResponse> oldestResponses = responses.values().iterator();
+        while (oldestResponses.hasNext()) {
+            final RecordedResponse response = oldestResponses.next();
+            if (response.expirationNanos - now > 0) return;
+            responsesBytes -= response.bytes;
+            oldestResponses.remove();
+        }
+    }
+
+    @NotNull
+    private static byte[] hash(@NotNull final byte[] body) {
+        try {
+            return MessageDigest.getInstance(BODY_HASH_ALGORITHM).digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Request body hash algorithm: " + BODY_HASH_ALGORITHM + " is not supported.", e);
+        }
+    }
+
+    private static final class BodyRequest extends HttpServletRequestWrapper {
+        @NotNull
+        private final byte[] body;
+
+        private BodyRequest(@NotNull final HttpServletRequest request, @NotNull final byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            final ByteArrayInputStream bodyStream = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return bodyStream.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(final ReadListener readListener) {
+                    throw new UnsupportedOperationException("Request body is already read.");
+                }
+
+                @Override
+                public int read() {
+                    return bodyStream.read();
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) {
+                    return bodyStream.read(b, off, len);
+                }
+            };
+        }
+    }
+}
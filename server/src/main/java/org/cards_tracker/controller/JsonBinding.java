@@ -0,0 +1,8 @@
+package org.cards_tracker.controller;
+
+public enum JsonBinding {
+    // the request and response bodies are bound by the Jackson reflection
+    REFLECTION,
+    // the getters, setters and constructors of the bodies are called through the generated lambdas
+    BLACKBIRD
+}
@@ -0,0 +1,143 @@
+package org.cards_tracker.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.cards_tracker.controller.dto.AdmissionMetrics;
+import org.cards_tracker.controller.dto.Card;
+import org.cards_tracker.controller.dto.Cards;
+import org.cards_tracker.controller.dto.CardsBatchResult;
+import org.cards_tracker.controller.dto.ErrorDto;
+import org.cards_tracker.controller.dto.ExecutorsMetrics;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the request bodies and writes the response bodies of the endpoints in one of the body formats.
+ * <p>
+ * The readers and the writers of every body are prepared once, so a request does not look up the serializers
+ * of its body again, and the request bodies are read straight from the request input stream without copying it.
+ */
+public class JsonCodec {
+
+    private static final Logger log = LoggerFactory.getLogger(JsonCodec.class);
+
+    @NotNull
+    private final BodyFormat format;
+    @NotNull
+    private final ObjectReader cardReader;
+    @NotNull
+    private final ObjectReader cardsReader;
+    @NotNull
+    private final ObjectReader treeReader;
+    @NotNull
+    private final ObjectWriter cardsWriter;
+    @NotNull
+    private final ObjectWriter cardsBatchResultWriter;
+    @NotNull
+    private final ObjectWriter executorsMetricsWriter;
+    @NotNull
+    private final ObjectWriter admissionMetricsWriter;
+    @NotNull
+    private final ObjectWriter errorWriter;
+
+    public JsonCodec(@NotNull final JsonBinding binding, @NotNull final BodyFormat format) {
+        final ObjectMapper objectMapper = createObjectMapper(binding, format);
+        this.format = format;
+        this.cardReader = objectMapper.readerFor(Card.class);
+        this.cardsReader = objectMapper.readerFor(Cards.class);
+        this.treeReader = objectMapper.readerFor(JsonNode.class);
+        this.cardsWriter = objectMapper.writerFor(Cards.class);
+        this.cardsBatchResultWriter = objectMapper.writerFor(CardsBatchResult.class);
+        this.executorsMetricsWriter = objectMapper.writerFor(ExecutorsMetrics.class);
+        this.admissionMetricsWriter = objectMapper.writerFor(AdmissionMetrics.class);
+        this.errorWriter = objectMapper.writerFor(ErrorDto.class);
+    }
+
+    @NotNull
+    public static ObjectMapper createObjectMapper(@NotNull final JsonBinding binding, @NotNull final BodyFormat format) {
+        final ObjectMapper objectMapper;
+        switch (format) {
+            case CBOR:
+                objectMapper = new ObjectMapper(new CBORFactory());
+                break;
+            case SMILE:
+                objectMapper = new ObjectMapper(new SmileFactory());
+                break;
+            default:
+                objectMapper = new ObjectMapper();
+        }
+        if (binding == JsonBinding.BLACKBIRD) {
+            objectMapper.registerModule(new BlackbirdModule());
+        }
+        log.debug(format + " object mapper with the " + binding + " binding was created.");
+        return objectMapper;
+    }
+
+    @NotNull
+    public BodyFormat getFormat() {
+        return format;
+    }
+
+    @NotNull
+    public String getContentType() {
+        return format.getContentType();
+    }
+
+    @NotNull
+    public Card readCard(@NotNull final InputStream body) throws IOException {
+        return cardReader.readValue(body);
+    }
+
+    @NotNull
+    public Cards readCards(@NotNull final InputStream body) throws IOException {
+        return cardsReader.readValue(body);
+    }
+
+    @NotNull
+    public JsonNode readTree(@NotNull final InputStream body) throws IOException {
+        return treeReader.readTree(body);
+    }
+
+    @NotNull
+    public Card treeToCard(@NotNull final JsonNode node) throws IOException {
+        return cardReader.readValue(node);
+    }
+
+    @NotNull
+    public byte[] writeCards(@NotNull final Cards cards) throws JsonProcessingException {
+        return cardsWriter.writeValueAsBytes(cards);
+    }
+
+    @NotNull
+    public byte[] writeCardsBatchResult(@NotNull final CardsBatchResult result) throws JsonProcessingException {
+        return cardsBatchResultWriter.writeValueAsBytes(result);
+    }
+
+    @NotNull
+    public byte[] writeExecutorsMetrics(@NotNull final ExecutorsMetrics metrics) throws JsonProcessingException {
+        return executorsMetricsWriter.writeValueAsBytes(metrics);
+    }
+
+    @NotNull
+    public byte[] writeAdmissionMetrics(@NotNull final AdmissionMetrics metrics) throws JsonProcessingException {
+        return admissionMetricsWriter.writeValueAsBytes(metrics);
+    }
+
+    /**
+     * Writes the error on every call, the caller keeps the written error if its details are fixed.
+     */
+    @NotNull
+    public byte[] writeError(@NotNull final String details) throws JsonProcessingException {
+        return errorWriter.writeValueAsBytes(new ErrorDto(details));
+    }
+}
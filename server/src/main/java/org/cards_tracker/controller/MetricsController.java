@@ -0,0 +1,95 @@
+package org.cards_tracker.controller;
+
+import io.javalin.Javalin;
+import io.javalin.http.HttpCode;
+import io.javalin.plugin.openapi.dsl.OpenApiBuilder;
+import io.javalin.plugin.openapi.dsl.OpenApiDocumentation;
+import org.cards_tracker.controller.dto.AdmissionMetrics;
+import org.cards_tracker.controller.dto.ErrorDto;
+import org.cards_tracker.controller.dto.ExecutorsMetrics;
+import org.cards_tracker.controller.error.EndpointRegistrationException;
+import org.cards_tracker.executor.ExecutorMetrics;
+import org.eclipse.jetty.http.HttpMethod;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+public class MetricsController {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsController.class);
+
+    public static void registerGetExecutorsMetricsEndpoint(@NotNull final Javalin app,
+                                                           @NotNull final JsonCodec jsonCodec,
+                                                           @NotNull final Supplier<List<ExecutorMetrics>> executorsMetrics)
+            throws EndpointRegistrationException {
+        final OpenApiDocumentation apiDocumentation = OpenApiBuilder
+                .document()
+                .operation(operation -> {
+                    operation.description("Get the queue depth and the lag of the service executors.");
+                })
+                .result(String.valueOf(HttpCode.INTERNAL_SERVER_ERROR.getStatus()), ErrorDto.class)
+                .result(String.valueOf(HttpCode.OK.getStatus()), ExecutorsMetrics.class);
+        final String path = "/metrics/executors";
+        try {
+            app.get(path, OpenApiBuilder.documented(apiDocumentation, ctx -> {
+                log.debug("Get executors metrics request has been triggered.");
+                try {
+                    final ExecutorsMetrics responseBody = new ExecutorsMetrics(executorsMetrics.get());
+                    log.debug("Get executors metrics response body: " + responseBody + ".");
+                    ctx
+                            .contentType("application/json")
+                            .result(jsonCodec.writeExecutorsMetrics(responseBody));
+                } catch (Exception e) {
+                    log.error("Get executors metrics request was not successful because of: " + e.getMessage() + ".");
+                    ctx
+                            .status(HttpCode.INTERNAL_SERVER_ERROR)
+                            .result(jsonCodec.writeError(e.getMessage()));
+                    return;
+                }
+                ctx.status(HttpCode.OK);
+                log.debug("Get executors metrics request was successful.");
+            }));
+        } catch (Exception e) {
+            throw new EndpointRegistrationException(path, HttpMethod.GET, e);
+        }
+    }
+
+    public static void registerGetAdmissionMetricsEndpoint(@NotNull final Javalin app,
+                                                           @NotNull final JsonCodec jsonCodec,
+                                                           @NotNull final Supplier<AdmissionMetrics> admissionMetrics)
+            throws EndpointRegistrationException {
+        final OpenApiDocumentation apiDocumentation = OpenApiBuilder
+                .document()
+                .operation(operation -> {
+                    operation.description("Get the number of the admitted and the rejected write requests.");
+                })
+                .result(String.valueOf(HttpCode.INTERNAL_SERVER_ERROR.getStatus()), ErrorDto.class)
+                .result(String.valueOf(HttpCode.OK.getStatus()), AdmissionMetrics.class);
+        final String path = "/metrics/admission";
+        try {
+            app.get(path, OpenApiBuilder.documented(apiDocumentation, ctx -> {
+                log.debug("Get admission metrics request has been triggered.");
+                try {
+                    final AdmissionMetrics responseBody = admissionMetrics.get();
+                    log.debug("Get admission metrics response body: " + responseBody + ".");
+                    ctx
+                            .contentType("application/json")
+                            .result(jsonCodec.writeAdmissionMetrics(responseBody));
+                } catch (Exception e) {
+                    log.error("Get admission metrics request was not successful because of: " + e.getMessage() + ".");
+                    ctx
+                            .status(HttpCode.INTERNAL_SERVER_ERROR)
+                            .result(jsonCodec.writeError(e.getMessage()));
+                    return;
+                }
+                ctx.status(HttpCode.OK);
+                log.debug("Get admission metrics request was successful.");
+            }));
+        } catch (Exception e) {
+            throw new EndpointRegistrationException(path, HttpMethod.GET, e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.cards_tracker.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HttpCode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executes the endpoint handlers on the request threads or dispatches them to the service executor.
+ * <p>
+ * The dispatched handler is executed with its own context of the request, which records the response instead
+ * of changing the request context, and its response body completes the request future. The request context is
+ * changed only by the callback of the future, so the handler never changes it concurrently with the server,
+ * and the request thread is returned to the server at once. The dispatched handler context keeps
+ * the application attributes, so the handler resolves the client ip the same way. The request which the service
+ * executor does not accept is answered with the service unavailable error.
+ */
+public class RequestDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestDispatcher.class);
+
+    @NotNull
+    private final BodyCodecs bodyCodecs;
+    @Nullable
+    private final Executor serviceExecutor;
+    @NotNull
+    private final Map<BodyFormat, byte[]> overloadedErrors;
+
+    /**
+     * The response of the dispatched handler, which is applied to the request context when the handler is completed.
+     */
+    static final class RecordedResponse extends HttpServletResponseWrapper {
+        private int status = HttpCode.OK.getStatus();
+        @Nullable
+        private String contentType;
+        @NotNull
+        private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        RecordedResponse(@NotNull final HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setStatus(final int status) {
+            this.status = status;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public void setContentType(@Nullable final String contentType) {
+            this.contentType = contentType;
+        }
+
+        @Override
+        @Nullable
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public void setHeader(@NotNull final String name, @Nullable final String value) {
+            if (value == null) {
+                headers.remove(name);
+            } else {
+                headers.put(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(@NotNull final String name, @NotNull final String value) {
+            headers.merge(name, value, (previous, added) -> previous + ", " + added);
+        }
+
+        @Override
+        @Nullable
+        public String getHeader(@NotNull final String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public boolean containsHeader(@NotNull final String name) {
+            return headers.containsKey(name);
+        }
+
+        @Override
+        @NotNull
+        public Collection<String> getHeaderNames() {
+            return new ArrayList<>(headers.keySet());
+        }
+
+        void applyTo(@NotNull final Context ctx) {
+            ctx.status(status);
+            if (contentType != null) ctx.contentType(contentType);
+            headers.forEach(ctx::header);
+        }
+    }
+
+    /**
+     * @param serviceExecutor the executor of the handlers or null if they are executed on the request threads
+     */
+    public RequestDispatcher(@NotNull final BodyCodecs bodyCodecs,
+                             @Nullable final Executor serviceExecutor) throws JsonProcessingException {
+        this.bodyCodecs = bodyCodecs;
+        this.serviceExecutor = serviceExecutor;
+        this.overloadedErrors = bodyCodecs.writeErrors("The service is overloaded, try again later");
+    }
+
+    @NotNull
+    public Handler dispatch(@NotNull final Handler handler) {
+        if (serviceExecutor == null) return handler;
+        return ctx -> {
+            final RecordedResponse response = new RecordedResponse(ctx.res);
+            final Context handlerCtx = handlerContext(ctx, ctx.req, response);
+            final CompletableFuture<InputStream> body = new CompletableFuture<>();
+            ctx.future(body, result -> respond(ctx, response, result));
+            try {
+                serviceExecutor.execute(() -> {
+                    try {
+                        handler.handle(handlerCtx);
+                        body.complete(handlerCtx.resultStream());
+                    } catch (Exception e) {
+                        body.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("Request: " + ctx.method() + " " + ctx.path() + " was rejected because of: " + e.getMessage() + ".");
+                final JsonCodec responseCodec = bodyCodecs.forResponse(ctx.header("Accept"));
+                handlerCtx
+                        .status(HttpCode.SERVICE_UNAVAILABLE)
+                        .contentType(responseCodec.getContentType())
+                        .result(overloadedErrors.get(responseCodec.getFormat()));
+                body.complete(handlerCtx.resultStream());
+            }
+        };
+    }
+
+    /**
+     * Creates another context of the request with the application attributes of the request context,
+     * which are needed to resolve the client ip and the other application settings.
+     */
+    @NotNull
+    static Context handlerContext(@NotNull final Context ctx,
+                                  @NotNull final HttpServletRequest request,
+                                  @NotNull final HttpServletResponse response) {
+        // Javalin keeps the application attributes internal, its Kotlin accessor is the only way to pass all of them
+        return new Context(request, response, ctx.getAppAttributes$javalin());
+    }
+
+    /**
+     * The callback of the request future, which is called by the server when the dispatched handler is completed.
+     */
+    static void respond(@NotNull final Context ctx,
+                        @NotNull final RecordedResponse response,
+                        @Nullable final Object body) {
+        response.applyTo(ctx);
+        if (body != null) ctx.result((InputStream) body);
+    }
+}
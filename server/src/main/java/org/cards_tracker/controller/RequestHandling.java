@@ -0,0 +1,8 @@
+package org.cards_tracker.controller;
+
+public enum RequestHandling {
+    // the service calls of a request are executed on the request thread
+    SYNCHRONOUS,
+    // the service calls of a request are executed on the service executor, the request thread is freed at once
+    ASYNCHRONOUS
+}
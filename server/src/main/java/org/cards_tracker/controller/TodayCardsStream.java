@@ -0,0 +1,309 @@
+package org.cards_tracker.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.javalin.http.sse.SseClient;
+import org.eclipse.jetty.server.Request;
+import org.cards_tracker.controller.dto.Cards;
+import org.cards_tracker.service.TodayCardsListener;
+import org.cards_tracker.service.VersionedTodayCards;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pushes the cards for today to the connected clients as server-sent events.
+ * <p>
+ * The changes of the cards are coalesced: a burst of changes is serialized and pushed once, with the latest cards,
+ * and a client which is still busy with the previous push gets only the latest cards queued meanwhile.
+ * Every client has a bounded buffer of the queued pushes, the client which does not keep up and overflows it
+ * is disconnected, so it can reconnect and get the actual cards.
+ * <p>
+ * The push to a client is a blocking write, so it is bounded by the write timeout: the client which does not take
+ * the push in time is disconnected and its write is aborted, so a slow client holds a push thread only until then.
+ */
+class TodayCardsStream implements TodayCardsListener {
+
+    private static final Logger log = LoggerFactory.getLogger(TodayCardsStream.class);
+
+    static final String TODAY_CARDS_EVENT = "today-cards";
+
+    @NotNull
+    private final JsonCodec jsonCodec;
+    @NotNull
+    private final Executor pushExecutor;
+    @NotNull
+    private final ScheduledExecutorService writeTimeoutExecutor;
+    private final long writeTimeoutMillis;
+    private final int clientBufferSize;
+    @NotNull
+    private final Set<StreamClient> clients = ConcurrentHashMap.newKeySet();
+    @NotNull
+    private final AtomicReference<VersionedTodayCards> latestCards = new AtomicReference<>();
+    @NotNull
+    private final AtomicReference<TodayCardsEvent> latestEvent = new AtomicReference<>();
+    @NotNull
+    private final AtomicBoolean broadcastScheduled = new AtomicBoolean();
+
+    private static final class TodayCardsEvent {
+        private final long version;
+        @NotNull
+        private final byte[] data;
+
+        private TodayCardsEvent(final long version, @NotNull final byte[] data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+
+    /**
+     * The connection of the stream client, which the events are written to.
+     */
+    interface Connection {
+
+        /**
+         * Blocks until the event is written or the connection is aborted.
+         */
+        void send(@NotNull final String event, @NotNull final byte[] data, @NotNull final String id) throws Exception;
+
+        void onClose(@NotNull final Runnable callback);
+
+        void close() throws Exception;
+
+        /**
+         * Closes the connection at once, so the blocked write fails.
+         */
+        void abort();
+
+        @NotNull
+        String address();
+    }
+
+    private static final class SseConnection implements Connection {
+        @NotNull
+        private final SseClient client;
+
+        private SseConnection(@NotNull final SseClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public void send(@NotNull final String event, @NotNull final byte[] data, @NotNull final String id) {
+            client.sendEvent(event, new ByteArrayInputStream(data), id);
+        }
+
+        @Override
+        public void onClose(@NotNull final Runnable callback) {
+            client.onClose(callback);
+        }
+
+        @Override
+        public void close() {
+            client.close();
+        }
+
+        @Override
+        public void abort() {
+            final Request request = Request.getBaseRequest(client.ctx.req);
+            if (request == null) {
+                client.close();
+                return;
+            }
+            request.getHttpChannel().abort(new TimeoutException("Today cards stream write timed out."));
+        }
+
+        @Override
+        @NotNull
+        public String address() {
+            return client.ctx.ip();
+        }
+    }
+
+    private final class StreamClient {
+        @NotNull
+        private final Connection client;
+        @NotNull
+        private final BlockingQueue<TodayCardsEvent> events = new ArrayBlockingQueue<>(clientBufferSize);
+        @NotNull
+        private final AtomicBoolean pushScheduled = new AtomicBoolean();
+        @NotNull
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // only changed by the push task, which is never run concurrently for the same client
+        private long pushedVersion = -1;
+
+        private StreamClient(@NotNull final Connection client) {
+            this.client = client;
+        }
+
+        private void offer(@NotNull final TodayCardsEvent event) {
+            if (closed.get()) return;
+            if (!events.offer(event)) {
+                log.warn(
+                        "Today cards stream client: " + client.address() + " did not keep up with "
+                                + clientBufferSize + " pushes and was disconnected."
+                );
+                close();
+                return;
+            }
+            if (pushScheduled.compareAndSet(false, true)) pushExecutor.execute(this::push);
+        }
+
+        private void push() {
+            final List<TodayCardsEvent> queuedEvents = new ArrayList<>(clientBufferSize);
+            do {
+                events.drainTo(queuedEvents);
+                TodayCardsEvent latestQueuedEvent = null;
+                for (TodayCardsEvent event : queuedEvents) {
+                    if (latestQueuedEvent == null || event.version > latestQueuedEvent.version) latestQueuedEvent = event;
+                }
+                queuedEvents.clear();
+                if (latestQueuedEvent != null && latestQueuedEvent.version > pushedVersion && !closed.get()) {
+                    send(latestQueuedEvent);
+                }
+                pushScheduled.set(false);
+                // the events offered after the drain are pushed by this task, unless another one was scheduled
+            } while (!events.isEmpty() && pushScheduled.compareAndSet(false, true));
+        }
+
+        private void send(@NotNull final TodayCardsEvent event) {
+            final ScheduledFuture<?> writeTimeout = writeTimeoutExecutor.schedule(
+                    this::abort, writeTimeoutMillis, TimeUnit.MILLISECONDS
+            );
+            try {
+                client.send(TODAY_CARDS_EVENT, event.data, String.valueOf(event.version));
+                if (!closed.get()) pushedVersion = event.version;
+            } catch (Exception e) {
+                log.debug("Today cards were not pushed to the client because of: " + e.getMessage() + ".");
+                close();
+            } finally {
+                writeTimeout.cancel(false);
+            }
+        }
+
+        private void abort() {
+            if (!closed.compareAndSet(false, true)) return;
+            clients.remove(this);
+            events.clear();
+            log.warn(
+                    "Today cards stream client: " + client.address() + " did not take the push in "
+                            + writeTimeoutMillis + " milliseconds and was disconnected."
+            );
+            client.abort();
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            clients.remove(this);
+            events.clear();
+            try {
+                client.close();
+            } catch (Exception e) {
+                log.debug("Today cards stream client was not closed because of: " + e.getMessage() + ".");
+            }
+        }
+    }
+
+    /**
+     * @param writeTimeoutExecutor the executor which aborts the timed out writes, it must not be the push executor,
+     *                             which threads can all be blocked by the writes
+     */
+    TodayCardsStream(@NotNull final JsonCodec jsonCodec,
+                     @NotNull final Executor pushExecutor,
+                     @NotNull final ScheduledExecutorService writeTimeoutExecutor,
+                     final long writeTimeoutMillis,
+                     final int clientBufferSize) {
+        if (clientBufferSize <= 0) {
+            throw new IllegalArgumentException("Today cards stream client buffer size: " + clientBufferSize + " has to be positive.");
+        }
+        if (writeTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Today cards stream write timeout: " + writeTimeoutMillis + " has to be positive.");
+        }
+        this.jsonCodec = jsonCodec;
+        this.pushExecutor = pushExecutor;
+        this.writeTimeoutExecutor = writeTimeoutExecutor;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.clientBufferSize = clientBufferSize;
+    }
+
+    int getClientsCount() {
+        return clients.size();
+    }
+
+    void connect(@NotNull final SseClient client, @NotNull final VersionedTodayCards currentCards) {
+        connect(new SseConnection(client), currentCards);
+    }
+
+    /**
+     * Registers the client and pushes the current cards to it.
+     */
+    void connect(@NotNull final Connection client, @NotNull final VersionedTodayCards currentCards) {
+        final StreamClient streamClient = new StreamClient(client);
+        client.onClose(() -> {
+            streamClient.closed.set(true);
+            clients.remove(streamClient);
+            log.debug("Today cards stream client: " + client.address() + " was disconnected.");
+        });
+        clients.add(streamClient);
+        log.debug("Today cards stream client: " + client.address() + " was connected, " + clients.size() + " clients are connected.");
+        // the newer cards could be published before the client was added
+        final VersionedTodayCards latest = latestCards.get();
+        final TodayCardsEvent event = toEvent(latest != null && latest.getVersion() > currentCards.getVersion() ? latest : currentCards);
+        if (event != null) streamClient.offer(event);
+    }
+
+    @Override
+    public void onTodayCardsChanged(@NotNull final VersionedTodayCards cards) {
+        latestCards.accumulateAndGet(
+                cards, (latest, changed) -> latest == null || changed.getVersion() > latest.getVersion() ? changed : latest
+        );
+        if (broadcastScheduled.compareAndSet(false, true)) pushExecutor.execute(this::broadcast);
+    }
+
+    private void broadcast() {
+        // the changes published after this point schedule one more broadcast
+        broadcastScheduled.set(false);
+        final VersionedTodayCards cards = latestCards.get();
+        if (cards == null || clients.isEmpty()) return;
+        final TodayCardsEvent event = toEvent(cards);
+        if (event == null) return;
+        for (StreamClient client : clients) {
+            client.offer(event);
+        }
+        log.debug("Today cards version: " + cards.getVersion() + " was pushed to " + clients.size() + " clients.");
+    }
+
+    /**
+     * @return the serialized cards, which are shared by all the clients, or null if they can not be serialized
+     */
+    @Nullable
+    private TodayCardsEvent toEvent(@NotNull final VersionedTodayCards cards) {
+        final TodayCardsEvent latest = latestEvent.get();
+        if (latest != null && latest.version == cards.getVersion()) return latest;
+        final TodayCardsEvent event;
+        try {
+            event = new TodayCardsEvent(cards.getVersion(), jsonCodec.writeCards(new Cards(cards.getCards())));
+        } catch (JsonProcessingException e) {
+            log.error("Today cards version: " + cards.getVersion() + " was not serialized because of: " + e.getMessage() + ".");
+            return null;
+        }
+        latestEvent.accumulateAndGet(
+                event, (previous, serialized) -> previous == null || serialized.version > previous.version ? serialized : previous
+        );
+        return event;
+    }
+}
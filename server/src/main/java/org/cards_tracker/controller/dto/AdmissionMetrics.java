@@ -0,0 +1,68 @@
+package org.cards_tracker.controller.dto;
+
+public class AdmissionMetrics {
+    private final long admittedRequests;
+    private final long rateLimitedRequests;
+    private final long concurrencyLimitedRequests;
+    private final long backlogLimitedRequests;
+    private final int concurrentRequests;
+    private final int backlog;
+    private final int clients;
+
+    public AdmissionMetrics(final long admittedRequests,
+                            final long rateLimitedRequests,
+                            final long concurrencyLimitedRequests,
+                            final long backlogLimitedRequests,
+                            final int concurrentRequests,
+                            final int backlog,
+                            final int clients) {
+        this.admittedRequests = admittedRequests;
+        this.rateLimitedRequests = rateLimitedRequests;
+        this.concurrencyLimitedRequests = concurrencyLimitedRequests;
+        this.backlogLimitedRequests = backlogLimitedRequests;
+        this.concurrentRequests = concurrentRequests;
+        this.backlog = backlog;
+        this.clients = clients;
+    }
+
+    public long getAdmittedRequests() {
+        return admittedRequests;
+    }
+
+    public long getRateLimitedRequests() {
+        return rateLimitedRequests;
+    }
+
+    public long getConcurrencyLimitedRequests() {
+        return concurrencyLimitedRequests;
+    }
+
+    public long getBacklogLimitedRequests() {
+        return backlogLimitedRequests;
+    }
+
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public int getClients() {
+        return clients;
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionMetrics{" +
+                "admittedRequests=" + admittedRequests +
+                ", rateLimitedRequests=" + rateLimitedRequests +
+                ", concurrencyLimitedRequests=" + concurrencyLimitedRequests +
+                ", backlogLimitedRequests=" + backlogLimitedRequests +
+                ", concurrentRequests=" + concurrentRequests +
+                ", backlog=" + backlog +
+                ", clients=" + clients +
+                '}';
+    }
+}
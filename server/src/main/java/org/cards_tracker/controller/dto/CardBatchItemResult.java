@@ -0,0 +1,47 @@
+package org.cards_tracker.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CardBatchItemResult {
+    @Nullable
+    private final String title;
+    @NotNull
+    private final CardBatchItemStatus status;
+    @Nullable
+    private final String details;
+
+    public CardBatchItemResult(@Nullable final String title,
+                               @NotNull final CardBatchItemStatus status,
+                               @Nullable final String details) {
+        this.title = title;
+        this.status = status;
+        this.details = details;
+    }
+
+    @Nullable
+    public String getTitle() {
+        return title;
+    }
+
+    @NotNull
+    public CardBatchItemStatus getStatus() {
+        return status;
+    }
+
+    @Nullable
+    public String getDetails() {
+        return details;
+    }
+
+    @Override
+    public String toString() {
+        return "CardBatchItemResult{" +
+                "title='" + title + '\'' +
+                ", status=" + status +
+                ", details='" + details + '\'' +
+                '}';
+    }
+}
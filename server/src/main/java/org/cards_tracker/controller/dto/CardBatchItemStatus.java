@@ -0,0 +1,6 @@
+package org.cards_tracker.controller.dto;
+
+@SuppressWarnings("unused")
+public enum CardBatchItemStatus {
+    CREATED, DELETED, ALREADY_EXISTS, NOT_FOUND, NOT_SCHEDULED, INVALID
+}
@@ -0,0 +1,29 @@
+package org.cards_tracker.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+public class CardsBatch {
+    @NotNull
+    private final List<Card> cards;
+
+    @JsonCreator
+    public CardsBatch(@JsonProperty(value = "cards", required = true) @NotNull final List<Card> cards) {
+        this.cards = cards;
+    }
+
+    @NotNull
+    public List<Card> getCards() {
+        return cards;
+    }
+
+    @Override
+    public String toString() {
+        return "CardsBatch{" +
+                "cards=" + cards.size() +
+                '}';
+    }
+}
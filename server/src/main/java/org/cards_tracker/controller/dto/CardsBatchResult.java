@@ -0,0 +1,26 @@
+package org.cards_tracker.controller.dto;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+public class CardsBatchResult {
+    @NotNull
+    private final List<CardBatchItemResult> results;
+
+    public CardsBatchResult(@NotNull final List<CardBatchItemResult> results) {
+        this.results = results;
+    }
+
+    @NotNull
+    public List<CardBatchItemResult> getResults() {
+        return results;
+    }
+
+    @Override
+    public String toString() {
+        return "CardsBatchResult{" +
+                "results=" + results.size() +
+                '}';
+    }
+}
@@ -0,0 +1,27 @@
+package org.cards_tracker.controller.dto;
+
+import org.cards_tracker.executor.ExecutorMetrics;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+public class ExecutorsMetrics {
+    @NotNull
+    private final List<ExecutorMetrics> executors;
+
+    public ExecutorsMetrics(@NotNull final List<ExecutorMetrics> executors) {
+        this.executors = executors;
+    }
+
+    @NotNull
+    public List<ExecutorMetrics> getExecutors() {
+        return executors;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutorsMetrics{" +
+                "executors=" + executors +
+                '}';
+    }
+}
@@ -3,6 +3,7 @@ package org.cards_tracker.domain;
 import org.cards_tracker.error.IncorrectCardPriorityScheduleException;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 public class CardPriorityUpdateSchedule {
@@ -34,6 +35,19 @@ public class CardPriorityUpdateSchedule {
         return period;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CardPriorityUpdateSchedule that = (CardPriorityUpdateSchedule) o;
+        return timeUnit == that.timeUnit && period.equals(that.period);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timeUnit, period);
+    }
+
     @Override
     @NotNull
     public String toString() {
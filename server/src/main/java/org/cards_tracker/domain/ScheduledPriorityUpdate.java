@@ -0,0 +1,61 @@
+package org.cards_tracker.domain;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+public class ScheduledPriorityUpdate {
+    @NotNull
+    private final String title;
+    @NotNull
+    private final CardPriorityUpdateSchedule schedule;
+    @NotNull
+    private final LocalDateTime nextUpdate;
+
+    public ScheduledPriorityUpdate(@NotNull final String title,
+                                   @NotNull final CardPriorityUpdateSchedule schedule,
+                                   @NotNull final LocalDateTime nextUpdate) {
+        this.title = title;
+        this.schedule = schedule;
+        this.nextUpdate = nextUpdate;
+    }
+
+    @NotNull
+    public String getTitle() {
+        return title;
+    }
+
+    @NotNull
+    public CardPriorityUpdateSchedule getSchedule() {
+        return schedule;
+    }
+
+    @NotNull
+    public LocalDateTime getNextUpdate() {
+        return nextUpdate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ScheduledPriorityUpdate that = (ScheduledPriorityUpdate) o;
+        return title.equals(that.title) && schedule.equals(that.schedule) && nextUpdate.equals(that.nextUpdate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(title, schedule, nextUpdate);
+    }
+
+    @Override
+    @NotNull
+    public String toString() {
+        return "ScheduledPriorityUpdate{" +
+                "title='" + title + '\'' +
+                ", schedule=" + schedule +
+                ", nextUpdate=" + nextUpdate +
+                '}';
+    }
+}
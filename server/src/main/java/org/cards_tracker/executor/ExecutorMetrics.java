@@ -0,0 +1,75 @@
+package org.cards_tracker.executor;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The state of an executor at the moment the metrics were taken, -1 stands for a value the executor does not measure.
+ */
+public class ExecutorMetrics {
+    @NotNull
+    private final String name;
+    private final int threads;
+    private final int activeThreads;
+    private final int queueDepth;
+    private final long completedTasks;
+    private final long lastLagMillis;
+    private final long maxLagMillis;
+
+    public ExecutorMetrics(@NotNull final String name,
+                           final int threads,
+                           final int activeThreads,
+                           final int queueDepth,
+                           final long completedTasks,
+                           final long lastLagMillis,
+                           final long maxLagMillis) {
+        this.name = name;
+        this.threads = threads;
+        this.activeThreads = activeThreads;
+        this.queueDepth = queueDepth;
+        this.completedTasks = completedTasks;
+        this.lastLagMillis = lastLagMillis;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutorMetrics{" +
+                "name='" + name + '\'' +
+                ", threads=" + threads +
+                ", activeThreads=" + activeThreads +
+                ", queueDepth=" + queueDepth +
+                ", completedTasks=" + completedTasks +
+                ", lastLagMillis=" + lastLagMillis +
+                ", maxLagMillis=" + maxLagMillis +
+                '}';
+    }
+}
@@ -0,0 +1,84 @@
+package org.cards_tracker.executor;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scheduled executor of one service subsystem with named daemon threads, which measures its own backlog.
+ * <p>
+ * The lag of a task is the time between the moment it had to start and the moment it was started:
+ * the queueing time of the submitted tasks and the delay of the periodic ones.
+ */
+public class MonitoredScheduledExecutor extends ScheduledThreadPoolExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(MonitoredScheduledExecutor.class);
+
+    @NotNull
+    private final String name;
+    @NotNull
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    @NotNull
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    public MonitoredScheduledExecutor(@NotNull final String name, final int threads) {
+        super(threads, namedDaemonThreads(name));
+        this.name = name;
+        // the cancelled tasks would be counted in the queue depth until their time comes
+        setRemoveOnCancelPolicy(true);
+        log.debug("Executor: " + name + " with " + threads + " threads was created.");
+    }
+
+    @NotNull
+    private static ThreadFactory namedDaemonThreads(@NotNull final String name) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "cards-" + name + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    protected void beforeExecute(@NotNull final Thread thread, @NotNull final Runnable task) {
+        super.beforeExecute(thread, task);
+        if (task instanceof Delayed) {
+            final long lag = Math.max(0, -((Delayed) task).getDelay(TimeUnit.MILLISECONDS));
+            lastLagMillis.set(lag);
+            maxLagMillis.accumulateAndGet(lag, Math::max);
+        }
+    }
+
+    /**
+     * @return the number of the tasks which are due to start, but wait for a free thread
+     */
+    public int getQueueDepth() {
+        int dueTasks = 0;
+        for (Runnable task : getQueue()) {
+            if (task instanceof Delayed && ((Delayed) task).getDelay(TimeUnit.MILLISECONDS) <= 0) dueTasks++;
+        }
+        return dueTasks;
+    }
+
+    @NotNull
+    public ExecutorMetrics getMetrics() {
+        return new ExecutorMetrics(
+                name,
+                getPoolSize(), getActiveCount(),
+                getQueueDepth(), getCompletedTaskCount(),
+                lastLagMillis.get(), maxLagMillis.get()
+        );
+    }
+}
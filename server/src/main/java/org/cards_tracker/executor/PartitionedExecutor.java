@@ -0,0 +1,67 @@
+package org.cards_tracker.executor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Fixed set of single-threaded workers, every key is always handled by the same worker,
+ * so the tasks of one key are executed in order and never concurrently.
+ */
+public class PartitionedExecutor {
+
+    @NotNull
+    private final MonitoredScheduledExecutor[] partitions;
+
+    public PartitionedExecutor(@NotNull final String name, final int partitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Executor: " + name + " partitions: " + partitions + " have to be positive.");
+        }
+        this.partitions = new MonitoredScheduledExecutor[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            this.partitions[partition] = new MonitoredScheduledExecutor(name + "-" + partition, 1);
+        }
+    }
+
+    public int getPartitions() {
+        return partitions.length;
+    }
+
+    public int partitionOf(@NotNull final String key) {
+        // the multiplicative hash mixes the bits of the similar keys
+        return (int) (Integer.toUnsignedLong(key.hashCode() * 0x9E3779B9) % partitions.length);
+    }
+
+    @NotNull
+    public ExecutorService partition(final int partition) {
+        return partitions[partition];
+    }
+
+    /**
+     * @return the number of the tasks which are due to start in all the partitions
+     */
+    public int getQueueDepth() {
+        int queueDepth = 0;
+        for (MonitoredScheduledExecutor partition : partitions) {
+            queueDepth += partition.getQueueDepth();
+        }
+        return queueDepth;
+    }
+
+    @NotNull
+    public List<ExecutorMetrics> getMetrics() {
+        final List<ExecutorMetrics> metrics = new ArrayList<>(partitions.length);
+        for (MonitoredScheduledExecutor partition : partitions) {
+            metrics.add(partition.getMetrics());
+        }
+        return metrics;
+    }
+
+    public void shutdown() {
+        for (MonitoredScheduledExecutor partition : partitions) {
+            partition.shutdown();
+        }
+    }
+}
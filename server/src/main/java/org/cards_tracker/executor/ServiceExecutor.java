@@ -0,0 +1,152 @@
+package org.cards_tracker.executor;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executor of the service calls of the requests, which measures its own backlog.
+ * <p>
+ * At most the configured number of threads plus the queue size of the tasks are accepted at once,
+ * the next tasks are rejected until some of them are completed. The tasks are executed on the virtual threads
+ * when the JDK has them, then every accepted task is started at once, otherwise on the fixed pool of threads,
+ * where the tasks over the number of threads wait in the queue.
+ */
+public class ServiceExecutor implements Executor {
+
+    private static final Logger log = LoggerFactory.getLogger(ServiceExecutor.class);
+
+    @NotNull
+    private final String name;
+    private final int threads;
+    private final int capacity;
+    @NotNull
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    @NotNull
+    private final Semaphore acceptedTasks;
+    @NotNull
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    @NotNull
+    private final AtomicLong completedTasks = new AtomicLong();
+    @NotNull
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    @NotNull
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    public ServiceExecutor(@NotNull final String name, final int threads, final int queueSize) {
+        if (threads <= 0 || queueSize < 0) {
+            throw new IllegalArgumentException(
+                    "Executor: " + name + " threads: " + threads + " have to be positive and queue size: "
+                            + queueSize + " can not be negative."
+            );
+        }
+        this.name = name;
+        this.threads = threads;
+        this.capacity = threads + queueSize;
+        this.acceptedTasks = new Semaphore(capacity);
+        final ExecutorService virtualThreadsExecutor = createVirtualThreadsExecutor(name);
+        this.virtualThreads = virtualThreadsExecutor != null;
+        this.executor = virtualThreadsExecutor != null
+                ? virtualThreadsExecutor
+                : Executors.newFixedThreadPool(threads, namedDaemonThreads(name));
+        log.debug(
+                "Executor: " + name + " accepting " + capacity + " tasks on the "
+                        + (virtualThreads ? "virtual threads" : threads + " threads") + " was created."
+        );
+    }
+
+    /**
+     * The virtual threads are looked up at runtime, so the service still runs on the JDK which does not have them.
+     *
+     * @return the executor starting a virtual thread per task or null if the JDK does not have the virtual threads
+     */
+    @Nullable
+    private static ExecutorService createVirtualThreadsExecutor(@NotNull final String name) {
+        try {
+            final Class<?> threadBuilder = Class.forName("java.lang.Thread$Builder");
+            Object virtualThreadBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtualThreadBuilder = threadBuilder
+                    .getMethod("name", String.class, long.class)
+                    .invoke(virtualThreadBuilder, "cards-" + name + "-", 0L);
+            final ThreadFactory threadFactory = (ThreadFactory) threadBuilder.getMethod("factory").invoke(virtualThreadBuilder);
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Executor: " + name + " virtual threads are not available because of: " + e + ".");
+            return null;
+        }
+    }
+
+    @NotNull
+    private static ThreadFactory namedDaemonThreads(@NotNull final String name) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "cards-" + name + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @throws RejectedExecutionException if the executor has already accepted as many tasks as it can
+     */
+    @Override
+    public void execute(@NotNull final Runnable task) {
+        if (!acceptedTasks.tryAcquire()) {
+            throw new RejectedExecutionException("Executor: " + name + " can not accept more tasks.");
+        }
+        final long acceptedNanos = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                final long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acceptedNanos);
+                lastLagMillis.set(lag);
+                maxLagMillis.accumulateAndGet(lag, Math::max);
+                runningTasks.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    runningTasks.decrementAndGet();
+                    // the completed task can be followed by the next one at once
+                    acceptedTasks.release();
+                    completedTasks.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            acceptedTasks.release();
+            throw e;
+        }
+    }
+
+    @NotNull
+    public ExecutorMetrics getMetrics() {
+        final int running = runningTasks.get();
+        // the accepted tasks which are not started yet are waiting for a thread
+        final int queueDepth = Math.max(0, capacity - acceptedTasks.availablePermits() - running);
+        return new ExecutorMetrics(
+                name,
+                virtualThreads ? running : threads, running,
+                queueDepth, completedTasks.get(),
+                lastLagMillis.get(), maxLagMillis.get()
+        );
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
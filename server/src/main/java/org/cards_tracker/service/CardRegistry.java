@@ -6,6 +6,7 @@ import org.cards_tracker.error.CardAlreadyExistsException;
 import org.cards_tracker.error.NotExistingCardException;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -13,6 +14,14 @@ public interface CardRegistry {
 
     void createCard(@NotNull final Card card) throws CardAlreadyExistsException;
 
+    /**
+     * Creates all the cards which do not exist yet in one pass.
+     *
+     * @return the titles of the cards which already existed and were not created
+     */
+    @NotNull
+    Set<String> createCards(@NotNull final Collection<Card> cards);
+
     boolean isCardExist(@NotNull final String title);
 
     @NotNull
@@ -21,9 +30,19 @@ public interface CardRegistry {
     @NotNull
     Set<Card> getAllCards();
 
+    /**
+     * @return the cards from the highest priority to the lowest one, the cards of the same priority are ordered
+     * by the time they reached it and then by the time they were created, so the order is stable between the reads
+     */
     @NotNull
     List<Card> getPrioritizedCards();
 
+    /**
+     * @return the first cards of the prioritized cards order, read without ordering the other cards
+     */
+    @NotNull
+    List<Card> getTopPrioritizedCards(final int limit);
+
     @NotNull
     CardPriority getInitialCardPriority();
 
@@ -36,7 +55,31 @@ public interface CardRegistry {
 
     void bottomCardPriority(@NotNull final String title) throws NotExistingCardException;
 
+    /**
+     * Bottoms the priority of all the existing cards in one pass.
+     *
+     * @return the titles of the cards which did not exist
+     */
+    @NotNull
+    Set<String> bottomCardPriorities(@NotNull final Collection<String> titles);
+
     void increaseCardPriority(@NotNull final String title) throws NotExistingCardException;
 
+    /**
+     * Increases the priority of all the existing cards in one pass.
+     *
+     * @return the titles of the cards which did not exist
+     */
+    @NotNull
+    Set<String> increaseCardPriorities(@NotNull final Collection<String> titles);
+
     void removeCard(@NotNull final String title);
+
+    /**
+     * Removes all the existing cards in one pass.
+     *
+     * @return the titles of the cards which did not exist
+     */
+    @NotNull
+    Set<String> removeCards(@NotNull final Collection<String> titles);
 }
@@ -0,0 +1,23 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.Card;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+/**
+ * Receives the changes of the card registry after they were applied.
+ * <p>
+ * The events are delivered on the executor of the listener after the change was applied, so the events
+ * of the concurrent changes of the same card can be delivered in a different order than the changes were
+ * applied and the card can be changed again before its event is delivered: the listener which depends
+ * on the order has to read the current state of the card from the registry.
+ */
+public interface CardRegistryListener {
+
+    void onCardsCreated(@NotNull final Collection<Card> cards);
+
+    void onCardsPriorityChanged(@NotNull final Collection<String> titles);
+
+    void onCardsRemoved(@NotNull final Collection<String> titles);
+}
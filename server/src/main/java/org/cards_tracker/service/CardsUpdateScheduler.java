@@ -1,9 +1,14 @@
 package org.cards_tracker.service;
 
 import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
 import org.cards_tracker.error.NotExistingCardException;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 public interface CardsUpdateScheduler {
 
     void scheduleDefaultPriorityUpdate(@NotNull final String title) throws NotExistingCardException;
@@ -11,4 +16,40 @@ public interface CardsUpdateScheduler {
     void schedulePriorityUpdate(@NotNull final String title,
                                 @NotNull final CardPriorityUpdateSchedule priorityUpdateSchedule)
             throws NotExistingCardException;
+
+    /**
+     * Schedules the default priority update of all the cards in one pass.
+     *
+     * @return the titles of the cards which did not exist and were not scheduled
+     */
+    @NotNull
+    Set<String> scheduleDefaultPriorityUpdates(@NotNull final Collection<String> titles);
+
+    /**
+     * Schedules the priority update of all the cards with the same schedule in one pass.
+     *
+     * @return the titles of the cards which did not exist and were not scheduled
+     */
+    @NotNull
+    Set<String> schedulePriorityUpdates(@NotNull final Collection<String> titles,
+                                        @NotNull final CardPriorityUpdateSchedule priorityUpdateSchedule);
+
+    /**
+     * Cancels the next priority update of the card, does nothing if the card is not scheduled.
+     */
+    void unschedulePriorityUpdate(@NotNull final String title);
+
+    /**
+     * Cancels the next priority updates of all the cards in one pass.
+     */
+    void unschedulePriorityUpdates(@NotNull final Collection<String> titles);
+
+    @NotNull
+    List<ScheduledPriorityUpdate> getScheduledPriorityUpdates();
+
+    /**
+     * Schedules the previously exported priority updates again, the registry cards without a stored
+     * priority update get the default one.
+     */
+    void restorePriorityUpdates(@NotNull final Collection<ScheduledPriorityUpdate> priorityUpdates);
 }
@@ -6,11 +6,16 @@ import org.cards_tracker.error.CardAlreadyExistsException;
 import org.cards_tracker.error.IncorrectCardTitleException;
 import org.cards_tracker.error.NotExistingCardException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import static org.cards_tracker.domain.CardPriority.*;
@@ -20,14 +25,17 @@ public class InMemoryCardRegistry implements CardRegistry {
 
     private static final Logger log = LoggerFactory.getLogger(InMemoryCardRegistry.class);
 
-    private static final List<CardPriority> PRIORITIES_ORDER = List.of(
+    // the bigger batches of cards are changed in parallel on the common fork-join pool
+    static final int PARALLEL_TRANSITION_THRESHOLD = 10_000;
+
+    static final List<CardPriority> PRIORITIES_ORDER = List.of(
             I_NEED_TO_DO_IT_TODAY_OR_TOMORROW,
             WOW_I_NEEDED_TO_DO_IT_YESTERDAY,
             LEAVE_EVERYTHING_AND_START_WORKING_ON_IT
     );
 
     @NotNull
-    private static CardPriority nextPriorityLevel(@NotNull final CardPriority currentPriority) {
+    static CardPriority nextPriorityLevel(@NotNull final CardPriority currentPriority) {
         int nextPriorityIndex = PRIORITIES_ORDER.indexOf(currentPriority) + 1;
         if (nextPriorityIndex == PRIORITIES_ORDER.size()) {
             log.debug("Card max possible priority has been achieved.");
@@ -36,21 +44,254 @@ public class InMemoryCardRegistry implements CardRegistry {
         return PRIORITIES_ORDER.get(nextPriorityIndex);
     }
 
+    /**
+     * The card with its rank among the cards of the same priority: the cards which reached the priority earlier
+     * go first, the cards which reached it at once go in the order they were created.
+     */
+    private static final class RankedCard implements Comparable<RankedCard> {
+        @NotNull
+        private final Card card;
+        private final long prioritySequence;
+        private final long creationSequence;
+
+        private RankedCard(@NotNull final Card card, final long prioritySequence, final long creationSequence) {
+            this.card = card;
+            this.prioritySequence = prioritySequence;
+            this.creationSequence = creationSequence;
+        }
+
+        @Override
+        public int compareTo(@NotNull final RankedCard other) {
+            final int byPriorityTime = Long.compare(prioritySequence, other.prioritySequence);
+            return byPriorityTime != 0 ? byPriorityTime : Long.compare(creationSequence, other.creationSequence);
+        }
+    }
+
+    @NotNull
+    private final Map<String, RankedCard> allCards = new ConcurrentHashMap<>();
+    // cards split by their priority (indexed by the priority ordinal) and ordered by their rank,
+    // so the prioritized cards are read in the same order without sorting
+    @NotNull
+    private final List<NavigableMap<RankedCard, Card>> priorityBuckets = new ArrayList<>(CardPriority.values().length);
+    // the logical time of the cards creation and priority changes, the creation of a card is unique
+    @NotNull
+    private final AtomicLong sequence = new AtomicLong();
+
+    public InMemoryCardRegistry() {
+        for (int i = 0; i < CardPriority.values().length; i++) {
+            priorityBuckets.add(new ConcurrentSkipListMap<>());
+        }
+    }
+
+    @NotNull
+    private NavigableMap<RankedCard, Card> priorityBucket(@NotNull final CardPriority priority) {
+        return priorityBuckets.get(priority.ordinal());
+    }
+
+    @NotNull
+    private RankedCard newRankedCard(@NotNull final Card card) {
+        final long creationSequence = sequence.incrementAndGet();
+        return new RankedCard(card, creationSequence, creationSequence);
+    }
+
+    /**
+     * @return the changed card, which keeps its rank unless its priority was changed
+     */
+    @NotNull
+    private static RankedCard rerank(@NotNull final RankedCard previousCard,
+                                     @NotNull final Card updatedCard,
+                                     final long prioritySequence) {
+        if (previousCard.card.getCardPriority() == updatedCard.getCardPriority()) {
+            return new RankedCard(updatedCard, previousCard.prioritySequence, previousCard.creationSequence);
+        }
+        return new RankedCard(updatedCard, prioritySequence, previousCard.creationSequence);
+    }
+
+    /**
+     * Has to be called inside the atomic change of the card, so the changes of one card are applied
+     * to the buckets in the same order as to all the cards.
+     */
+    private void moveBetweenPriorityBuckets(@NotNull final RankedCard previousCard, @NotNull final RankedCard updatedCard) {
+        // the card of the same rank is only replaced in its bucket
+        if (previousCard.compareTo(updatedCard) != 0) {
+            priorityBucket(previousCard.card.getCardPriority()).remove(previousCard);
+        }
+        priorityBucket(updatedCard.card.getCardPriority()).put(updatedCard, updatedCard.card);
+    }
+
+    /**
+     * @return the card with the priority, or the same card when it already has the priority
+     */
+    @NotNull
+    private static Card withPriority(@NotNull final Card card, @NotNull final CardPriority priority) {
+        if (card.getCardPriority() == priority) return card;
+        try {
+            return new Card(card.getTitle(), priority);
+        } catch (IncorrectCardTitleException e) {
+            log.warn("Card with incorrect title: " + card.getTitle() + ", exists.");
+            // impossible use case, unless the developer's mistake
+            return card;
+        }
+    }
+
+    /**
+     * Atomically replaces the existing card with the result of the transition, so the concurrent changes
+     * of the same card are never lost.
+     *
+     * @param prioritySequence the time the card reaches its new priority, if it is changed
+     * @return the updated card or null if the card does not exist
+     */
+    @Nullable
+    private Card transitCard(@NotNull final String title,
+                             @NotNull final UnaryOperator<Card> transition,
+                             final long prioritySequence) {
+        final RankedCard rankedCard = allCards.computeIfPresent(title, (existingTitle, existingCard) -> {
+            final Card updatedCard = transition.apply(existingCard.card);
+            if (updatedCard == existingCard.card) return existingCard;
+            final RankedCard updatedRankedCard = rerank(existingCard, updatedCard, prioritySequence);
+            moveBetweenPriorityBuckets(existingCard, updatedRankedCard);
+            return updatedRankedCard;
+        });
+        return rankedCard == null ? null : rankedCard.card;
+    }
+
+    @Nullable
+    private Card transitCard(@NotNull final String title, @NotNull final UnaryOperator<Card> transition) {
+        return transitCard(title, transition, sequence.incrementAndGet());
+    }
+
+    /**
+     * Applies the transition to every existing card, every card is changed atomically on its own.
+     * The cards reach their new priorities at once, so they keep the order of their creation.
+     *
+     * @return the titles of the cards which did not exist
+     */
+    @NotNull
+    private Set<String> transitCards(@NotNull final Collection<String> titles, @NotNull final UnaryOperator<Card> transition) {
+        final long prioritySequence = sequence.incrementAndGet();
+        if (titles.size() < PARALLEL_TRANSITION_THRESHOLD) {
+            final Set<String> missingTitles = new HashSet<>();
+            for (String title : titles) {
+                if (transitCard(title, transition, prioritySequence) == null) missingTitles.add(title);
+            }
+            return missingTitles;
+        }
+        return titles.parallelStream()
+                .filter(title -> transitCard(title, transition, prioritySequence) == null)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * @return false if the card with the same title already exists
+     */
+    private boolean insertCard(@NotNull final Card card) {
+        final AtomicBoolean created = new AtomicBoolean();
+        allCards.computeIfAbsent(card.getTitle(), newTitle -> {
+            final RankedCard rankedCard = newRankedCard(card);
+            priorityBucket(card.getCardPriority()).put(rankedCard, card);
+            created.set(true);
+            return rankedCard;
+        });
+        return created.get();
+    }
+
+    /**
+     * Bulk loads the cards recovered from a storage, without the per card validation and logging.
+     */
+    void restoreCards(@NotNull final Collection<Card> cards) {
+        for (Card card : cards) {
+            restoreCard(card);
+        }
+        log.info(cards.size() + " cards were restored.");
+    }
+
+    /**
+     * Puts the card restored from a storage, replacing the existing one if any.
+     * The restored cards are ranked in the order they are restored.
+     */
+    void restoreCard(@NotNull final Card card) {
+        allCards.compute(card.getTitle(), (title, previousCard) -> {
+            if (previousCard != null) {
+                final RankedCard rankedCard = rerank(previousCard, card, sequence.incrementAndGet());
+                moveBetweenPriorityBuckets(previousCard, rankedCard);
+                return rankedCard;
+            }
+            final RankedCard rankedCard = newRankedCard(card);
+            priorityBucket(card.getCardPriority()).put(rankedCard, card);
+            return rankedCard;
+        });
+    }
+
+    /**
+     * @return live read-only view of the cards with the priority, in the order of their rank
+     */
+    @NotNull
+    Collection<Card> cardsWithPriority(@NotNull final CardPriority priority) {
+        return Collections.unmodifiableCollection(priorityBucket(priority).values());
+    }
+
+    int size() {
+        return allCards.size();
+    }
+
+    /**
+     * @return live read-only view of the cards, which can be iterated while the cards are being changed
+     */
     @NotNull
-    private final Map<String, Card> allCards = new ConcurrentHashMap<>();
+    Collection<Card> cardsView() {
+        final Collection<RankedCard> rankedCards = allCards.values();
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Card> iterator() {
+                final Iterator<RankedCard> rankedCardsIterator = rankedCards.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return rankedCardsIterator.hasNext();
+                    }
+
+                    @Override
+                    public Card next() {
+                        return rankedCardsIterator.next().card;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return rankedCards.size();
+            }
+        };
+    }
 
     @Override
     public void createCard(@NotNull final Card card) throws CardAlreadyExistsException {
         final String title = card.getTitle();
         log.debug("Attempt to create a new card with title: " + title + " started.");
-        if (allCards.get(title) != null) {
+        if (!insertCard(card)) {
             log.debug("Card with title: " + title + " already exists.");
             throw new CardAlreadyExistsException(title);
         }
-        allCards.put(title, card);
         log.info("New card created with title: " + title + ".");
     }
 
+    @Override
+    @NotNull
+    public Set<String> createCards(@NotNull final Collection<Card> cards) {
+        log.debug("Attempt to create " + cards.size() + " new cards started.");
+        final Set<String> existingTitles = new HashSet<>();
+        final Set<String> createdTitles = new HashSet<>();
+        for (Card card : cards) {
+            if (insertCard(card)) {
+                createdTitles.add(card.getTitle());
+            } else if (!createdTitles.contains(card.getTitle())) {
+                existingTitles.add(card.getTitle());
+            }
+        }
+        log.info(createdTitles.size() + " new cards were created.");
+        return existingTitles;
+    }
+
     @Override
     public boolean isCardExist(@NotNull final String title) {
         return allCards.get(title) != null;
@@ -59,17 +300,17 @@ public class InMemoryCardRegistry implements CardRegistry {
     @Override
     @NotNull
     public Card getCard(@NotNull final String title) throws NotExistingCardException {
-        final Card existingCard = allCards.get(title);
+        final RankedCard existingCard = allCards.get(title);
         if (existingCard == null) {
             throw new NotExistingCardException(title);
         }
-        return existingCard;
+        return existingCard.card;
     }
 
     @Override
     @NotNull
     public Set<Card> getAllCards() {
-        return new HashSet<>(allCards.values());
+        return new HashSet<>(cardsView());
     }
 
     @NotNull
@@ -86,51 +327,44 @@ public class InMemoryCardRegistry implements CardRegistry {
     @Override
     @NotNull
     public List<Card> getPrioritizedCards() {
-        return allCards.values().stream()
-                .sorted((firstEntry, secondEntry) -> {
-                    int compareResult =
-                            PRIORITIES_ORDER.indexOf(secondEntry.getCardPriority()) -
-                                    PRIORITIES_ORDER.indexOf(firstEntry.getCardPriority());
-                    if (compareResult == 0) {
-                        log.debug("Card: " + firstEntry.getTitle() + " and card: " + secondEntry.getTitle() + " has equal priorities.");
-                    } else if (compareResult > 0) {
-                        log.debug("Card: " + firstEntry.getTitle() + " is more prioritized than card: " + secondEntry.getTitle() + ".");
-                    } else {
-                        log.debug("Card: " + secondEntry.getTitle() + " is more prioritized than card: " + firstEntry.getTitle() + ".");
-                    }
-                    return compareResult;
-                })
-                .collect(Collectors.toList());
+        final List<Card> prioritizedCards = new ArrayList<>(allCards.size());
+        for (int i = PRIORITIES_ORDER.size() - 1; i >= 0; i--) {
+            prioritizedCards.addAll(priorityBucket(PRIORITIES_ORDER.get(i)).values());
+        }
+        return prioritizedCards;
+    }
+
+    @Override
+    @NotNull
+    public List<Card> getTopPrioritizedCards(final int limit) {
+        final List<Card> topCards = new ArrayList<>(Math.max(0, Math.min(limit, allCards.size())));
+        for (int i = PRIORITIES_ORDER.size() - 1; i >= 0 && topCards.size() < limit; i--) {
+            for (Card card : priorityBucket(PRIORITIES_ORDER.get(i)).values()) {
+                if (topCards.size() == limit) break;
+                topCards.add(card);
+            }
+        }
+        return topCards;
     }
 
     @Override
     public void updateCard(@NotNull final Card updatedCard) throws NotExistingCardException {
         final String title = updatedCard.getTitle();
         log.debug("Attempt to update a card with title: " + title + " started.");
-        if (allCards.get(title) == null) {
+        if (transitCard(title, existingCard -> updatedCard) == null) {
             log.debug("Card with title: " + title + " was not found.");
             throw new NotExistingCardException(title);
         }
-        allCards.replace(title, updatedCard);
         log.info("Card updated with title: " + title + ".");
     }
 
     @Override
     public void updateCardPriority(@NotNull String title, @NotNull CardPriority updatedPriority) throws NotExistingCardException {
         log.debug("Attempt to update a card with title: " + title + " started.");
-        if (allCards.get(title) == null) {
+        if (transitCard(title, existingCard -> withPriority(existingCard, updatedPriority)) == null) {
             log.debug("Card with title: " + title + " was not found.");
             throw new NotExistingCardException(title);
         }
-        final Card cardToUpdate;
-        try {
-            cardToUpdate = new Card(title, updatedPriority);
-        } catch (IncorrectCardTitleException e) {
-            log.warn("Card with incorrect title: " + title + ", exists.");
-            // impossible use case, unless the developer's mistake
-            return;
-        }
-        allCards.replace(title, cardToUpdate);
         log.info("Card updated with title: " + title + ".");
     }
 
@@ -146,26 +380,71 @@ public class InMemoryCardRegistry implements CardRegistry {
     @Override
     public void increaseCardPriority(@NotNull String title) throws NotExistingCardException {
         log.debug("Attempt to increase card priority with title: " + title + " started.");
-        final Card existingCard = allCards.get(title);
-        if (existingCard == null) {
+        // the next level is computed from the current card, so a concurrent bottom is never overwritten
+        final Card increasedCard = transitCard(
+                title, existingCard -> withPriority(existingCard, nextPriorityLevel(existingCard.getCardPriority()))
+        );
+        if (increasedCard == null) {
             log.debug("Card with title: " + title + " was not found.");
             throw new NotExistingCardException(title);
         }
-        final CardPriority nextPriority = nextPriorityLevel(existingCard.getCardPriority());
-        updateCardPriority(title, nextPriority);
-        log.info("Card with title: " + title + " priority was increased to priority: " + nextPriority + ".");
+        log.info(
+                "Card with title: " + title + " priority was increased to priority: "
+                        + increasedCard.getCardPriority() + "."
+        );
+    }
+
+    @Override
+    @NotNull
+    public Set<String> bottomCardPriorities(@NotNull final Collection<String> titles) {
+        log.debug("Attempt to bottom " + titles.size() + " cards priorities started.");
+        final CardPriority initialPriority = getInitialCardPriority();
+        final Set<String> missingTitles = transitCards(titles, existingCard -> withPriority(existingCard, initialPriority));
+        log.info((titles.size() - missingTitles.size()) + " cards priorities were bottomed to priority: " + initialPriority + ".");
+        return missingTitles;
+    }
+
+    @Override
+    @NotNull
+    public Set<String> increaseCardPriorities(@NotNull final Collection<String> titles) {
+        log.debug("Attempt to increase " + titles.size() + " cards priorities started.");
+        final Set<String> missingTitles = transitCards(
+                titles, existingCard -> withPriority(existingCard, nextPriorityLevel(existingCard.getCardPriority()))
+        );
+        log.info((titles.size() - missingTitles.size()) + " cards priorities were increased.");
+        return missingTitles;
     }
 
     @Override
     public void removeCard(@NotNull final String title) {
         log.debug("Attempt to remove card with title: " + title + " started.");
-        if (allCards.get(title) == null) {
+        final RankedCard removedCard = allCards.remove(title);
+        if (removedCard == null) {
             log.debug("Card with title: " + title + " was not found and does need to be removed.");
             return;
         }
-        if (allCards.remove(title) != null) {
-            log.debug("Card with title: " + title + " was removed from the global storage.");
-        }
+        // only this card instance is removed, the card created again meanwhile has another rank
+        priorityBucket(removedCard.card.getCardPriority()).remove(removedCard);
+        log.debug("Card with title: " + title + " was removed from the global storage.");
         log.info("Card with title: " + title + " was removed.");
     }
+
+    @Override
+    @NotNull
+    public Set<String> removeCards(@NotNull final Collection<String> titles) {
+        log.debug("Attempt to remove " + titles.size() + " cards started.");
+        final Set<String> missingTitles = new HashSet<>();
+        final Set<String> removedTitles = new HashSet<>();
+        for (String title : titles) {
+            final RankedCard removedCard = allCards.remove(title);
+            if (removedCard != null) {
+                priorityBucket(removedCard.card.getCardPriority()).remove(removedCard);
+                removedTitles.add(title);
+            } else if (!removedTitles.contains(title)) {
+                missingTitles.add(title);
+            }
+        }
+        log.info(removedTitles.size() + " cards were removed.");
+        return missingTitles;
+    }
 }
@@ -1,6 +1,8 @@
 package org.cards_tracker.service;
 
+import org.cards_tracker.domain.Card;
 import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
 import org.cards_tracker.error.IncorrectCardPriorityScheduleException;
 import org.cards_tracker.error.NotExistingCardException;
 import org.jetbrains.annotations.NotNull;
@@ -10,8 +12,11 @@ import org.slf4j.LoggerFactory;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @SuppressWarnings("unused")
 public class InMemoryCardsUpdateScheduler implements CardsUpdateScheduler {
@@ -27,21 +32,48 @@ public class InMemoryCardsUpdateScheduler implements CardsUpdateScheduler {
     @NotNull
     private final PriorityUpdateCalendar priorityUpdateCalendar;
     @NotNull
-    private final Map<LocalDateTime, ScheduledDetails> scheduledCards = new HashMap<>();
+    private final Map<LocalDateTime, ScheduledDetails> scheduledCards = new ConcurrentHashMap<>();
+    // the time of the scheduled execution of every card, so a card is unscheduled without looking through all of them
+    @NotNull
+    private final Map<String, LocalDateTime> cardScheduleTimes = new ConcurrentHashMap<>();
 
     static class ScheduledDetails {
+        // the cards grouped by their schedule, every group is moved to its next execution as a whole
         @NotNull
-        private final CardPriorityUpdateSchedule schedule;
-        @NotNull
-        private final Set<String> scheduledCards;
+        private final Map<CardPriorityUpdateSchedule, Set<String>> scheduledCards = new ConcurrentHashMap<>();
+
+        void addCards(@NotNull final CardPriorityUpdateSchedule schedule, @NotNull final Collection<String> titles) {
+            scheduledCards.computeIfAbsent(schedule, newSchedule -> ConcurrentHashMap.newKeySet()).addAll(titles);
+        }
+
+        /**
+         * Adds the group of cards without copying it, unless the cards with the same schedule already exist.
+         */
+        void moveCards(@NotNull final CardPriorityUpdateSchedule schedule, @NotNull final Set<String> titles) {
+            scheduledCards.merge(schedule, titles, (existingTitles, movedTitles) -> {
+                existingTitles.addAll(movedTitles);
+                return existingTitles;
+            });
+        }
+
+        void removeCards(@NotNull final Collection<String> titles) {
+            scheduledCards.values().removeIf(scheduleCards -> {
+                for (String title : titles) {
+                    scheduleCards.remove(title);
+                }
+                return scheduleCards.isEmpty();
+            });
+        }
 
-        public ScheduledDetails(@NotNull final CardPriorityUpdateSchedule schedule) {
-            this.schedule = schedule;
-            this.scheduledCards = new HashSet<>();
+        boolean isEmpty() {
+            return scheduledCards.isEmpty();
         }
 
-        void addCard(@NotNull final String title) {
-            scheduledCards.add(title);
+        @NotNull
+        Set<String> getAllCards() {
+            final Set<String> allCards = new HashSet<>();
+            scheduledCards.values().forEach(allCards::addAll);
+            return allCards;
         }
     }
 
@@ -79,53 +111,176 @@ public class InMemoryCardsUpdateScheduler implements CardsUpdateScheduler {
             throw new NotExistingCardException(title);
         }
         final LocalDateTime nextPriorityUpdate = priorityUpdateCalendar.nextPriorityUpdateFrom(priorityUpdateSchedule, from);
-        if (scheduledCards.containsKey(nextPriorityUpdate)) {
-            scheduledCards.get(nextPriorityUpdate).addCard(title);
-            log.debug("New card with title: " + title + " was added to scheduled execution at: " + nextPriorityUpdate + ".");
-        } else {
-            final ScheduledDetails scheduledDetails = new ScheduledDetails(priorityUpdateSchedule);
-            scheduledDetails.addCard(title);
-            scheduledCards.put(nextPriorityUpdate, scheduledDetails);
+        addToSchedule(from, nextPriorityUpdate, title, priorityUpdateSchedule);
+        log.info("Card: " + title + " priority update was scheduled.");
+    }
+
+    private void addToSchedule(@NotNull final LocalDateTime from,
+                               @NotNull final LocalDateTime nextPriorityUpdate,
+                               @NotNull final String title,
+                               @NotNull final CardPriorityUpdateSchedule priorityUpdateSchedule) {
+        addToSchedule(from, nextPriorityUpdate, List.of(title), priorityUpdateSchedule);
+        log.debug("Card with title: " + title + " was scheduled to execute at: " + nextPriorityUpdate + ".");
+    }
+
+    /**
+     * Adds the cards to the execution at the same time, at most one executor task is scheduled for them.
+     * A card has one scheduled update, so the update scheduled again replaces the previous one.
+     */
+    private void addToSchedule(@NotNull final LocalDateTime from,
+                               @NotNull final LocalDateTime nextPriorityUpdate,
+                               @NotNull final Collection<String> titles,
+                               @NotNull final CardPriorityUpdateSchedule priorityUpdateSchedule) {
+        addToSchedule(from, nextPriorityUpdate, scheduledDetails -> scheduledDetails.addCards(priorityUpdateSchedule, titles));
+        for (String title : titles) {
+            final LocalDateTime previousScheduleTime = cardScheduleTimes.put(title, nextPriorityUpdate);
+            if (previousScheduleTime != null && !previousScheduleTime.equals(nextPriorityUpdate)) {
+                removeFromSchedule(previousScheduleTime, List.of(title));
+            }
+        }
+    }
+
+    private void removeFromSchedule(@NotNull final LocalDateTime scheduleTime, @NotNull final Collection<String> titles) {
+        // the execution left without cards is evicted, unless new cards were added meanwhile
+        scheduledCards.computeIfPresent(scheduleTime, (time, scheduledDetails) -> {
+            scheduledDetails.removeCards(titles);
+            return scheduledDetails.isEmpty() ? null : scheduledDetails;
+        });
+    }
+
+    private void addToSchedule(@NotNull final LocalDateTime from,
+                               @NotNull final LocalDateTime nextPriorityUpdate,
+                               @NotNull final Consumer<ScheduledDetails> addition) {
+        final AtomicBoolean newExecution = new AtomicBoolean();
+        // the cards are added atomically, so they are never added to the execution which is being evicted
+        scheduledCards.compute(nextPriorityUpdate, (scheduleTime, existingDetails) -> {
+            final ScheduledDetails scheduledDetails = existingDetails != null ? existingDetails : new ScheduledDetails();
+            addition.accept(scheduledDetails);
+            newExecution.set(existingDetails == null);
+            return scheduledDetails;
+        });
+        if (newExecution.get()) {
             scheduledTasksExecutor.schedule(
                     () -> updateCardsNewPriorityLevel(nextPriorityUpdate),
-                    from.until(nextPriorityUpdate, ChronoUnit.MILLIS), TimeUnit.MILLISECONDS
+                    Math.max(0, from.until(nextPriorityUpdate, ChronoUnit.MILLIS)), TimeUnit.MILLISECONDS
             );
-            log.debug("New card with title: " + title + " was scheduled to execute at: " + nextPriorityUpdate + ".");
+            log.debug("New scheduled execution at: " + nextPriorityUpdate + " was created.");
         }
-        log.info("Card: " + title + " priority update was scheduled.");
+    }
+
+    @Override
+    @NotNull
+    public Set<String> scheduleDefaultPriorityUpdates(@NotNull final Collection<String> titles) {
+        return schedulePriorityUpdates(titles, defaultPriorityUpdateSchedule);
+    }
+
+    @Override
+    @NotNull
+    public Set<String> schedulePriorityUpdates(@NotNull final Collection<String> titles,
+                                               @NotNull final CardPriorityUpdateSchedule priorityUpdateSchedule) {
+        final LocalDateTime from = LocalDateTime.now();
+        log.debug("Attempt to schedule " + titles.size() + " cards priority updates started at: " + from + ".");
+        final Set<String> missingTitles = new HashSet<>();
+        final List<String> existingTitles = new ArrayList<>(titles.size());
+        for (String title : titles) {
+            if (cardRegistry.isCardExist(title)) {
+                existingTitles.add(title);
+            } else {
+                missingTitles.add(title);
+            }
+        }
+        if (!existingTitles.isEmpty()) {
+            final LocalDateTime nextPriorityUpdate =
+                    priorityUpdateCalendar.nextPriorityUpdateFrom(priorityUpdateSchedule, from);
+            addToSchedule(from, nextPriorityUpdate, existingTitles, priorityUpdateSchedule);
+        }
+        log.info(existingTitles.size() + " cards priority updates were scheduled.");
+        return missingTitles;
+    }
+
+    @Override
+    public void unschedulePriorityUpdate(@NotNull final String title) {
+        unschedulePriorityUpdates(List.of(title));
+    }
+
+    @Override
+    public void unschedulePriorityUpdates(@NotNull final Collection<String> titles) {
+        log.debug("Attempt to unschedule " + titles.size() + " cards priority updates started.");
+        // only the executions of the cards are changed, a card moved by its execution meanwhile
+        // is dropped by the next execution as a missing one
+        final Map<LocalDateTime, List<String>> titlesByScheduleTime = new HashMap<>();
+        for (String title : titles) {
+            final LocalDateTime scheduleTime = cardScheduleTimes.remove(title);
+            if (scheduleTime == null) continue;
+            titlesByScheduleTime.computeIfAbsent(scheduleTime, time -> new ArrayList<>()).add(title);
+        }
+        titlesByScheduleTime.forEach(this::removeFromSchedule);
+        log.info(titles.size() + " cards priority updates were unscheduled.");
+    }
+
+    @Override
+    @NotNull
+    public List<ScheduledPriorityUpdate> getScheduledPriorityUpdates() {
+        final List<ScheduledPriorityUpdate> priorityUpdates = new ArrayList<>();
+        scheduledCards.forEach((scheduleTime, scheduledDetails) -> scheduledDetails.scheduledCards.forEach(
+                (schedule, titles) -> titles.forEach(
+                        title -> priorityUpdates.add(new ScheduledPriorityUpdate(title, schedule, scheduleTime))
+                )
+        ));
+        return priorityUpdates;
+    }
+
+    @Override
+    public void restorePriorityUpdates(@NotNull final Collection<ScheduledPriorityUpdate> priorityUpdates) {
+        final LocalDateTime now = LocalDateTime.now();
+        // the cards created while the schedule is restored are already scheduled
+        final Set<String> restoredCards = new HashSet<>();
+        scheduledCards.values().forEach(scheduledDetails -> restoredCards.addAll(scheduledDetails.getAllCards()));
+        final int alreadyScheduledCards = restoredCards.size();
+        for (ScheduledPriorityUpdate priorityUpdate : priorityUpdates) {
+            if (restoredCards.contains(priorityUpdate.getTitle())) continue;
+            if (!cardRegistry.isCardExist(priorityUpdate.getTitle())) {
+                log.debug("Card: " + priorityUpdate.getTitle() + " was not found to restore a priority update.");
+                continue;
+            }
+            // the updates missed while the service was stopped are executed right away
+            addToSchedule(now, priorityUpdate.getNextUpdate(), priorityUpdate.getTitle(), priorityUpdate.getSchedule());
+            restoredCards.add(priorityUpdate.getTitle());
+        }
+        for (Card card : cardRegistry.getAllCards()) {
+            if (restoredCards.contains(card.getTitle())) continue;
+            final LocalDateTime nextPriorityUpdate =
+                    priorityUpdateCalendar.nextPriorityUpdateFrom(defaultPriorityUpdateSchedule, now);
+            addToSchedule(now, nextPriorityUpdate, card.getTitle(), defaultPriorityUpdateSchedule);
+        }
+        log.info((restoredCards.size() - alreadyScheduledCards) + " card priority updates were restored.");
     }
 
     void updateCardsNewPriorityLevel(@NotNull final LocalDateTime from) {
         log.debug("Cards sync started at: " + from + ".");
-        ScheduledDetails scheduledDetails = scheduledCards.get(from);
+        // the execution is evicted before the cards are updated, the cards added later get a new execution
+        final ScheduledDetails scheduledDetails = scheduledCards.remove(from);
         if (scheduledDetails == null) {
             log.debug("No scheduled cards found for the time: " + from + ".");
             return;
         }
-        final Set<String> cards = scheduledDetails.scheduledCards;
-        log.debug("Cards sync started at: " + from + " for cards: " + String.join(",", cards) + ".");
-        cards.forEach((title) -> {
-            try {
-                cardRegistry.increaseCardPriority(title);
-            } catch (NotExistingCardException e) {
+        scheduledDetails.scheduledCards.forEach((schedule, titles) -> {
+            log.debug("Cards sync started at: " + from + " for " + titles.size() + " cards with schedule: " + schedule + ".");
+            final Set<String> missingTitles = cardRegistry.increaseCardPriorities(titles);
+            for (String title : missingTitles) {
                 log.debug("Unable to update card " + title + " priority, because it was not found.");
-                return;
+                titles.remove(title);
+                cardScheduleTimes.remove(title, from);
             }
-            log.debug("Card: " + title + " priority was updated.");
-            final LocalDateTime nextPriorityUpdate = priorityUpdateCalendar.nextPriorityUpdateFrom(scheduledDetails.schedule, from);
-            if (scheduledCards.containsKey(nextPriorityUpdate)) {
-                scheduledCards.get(nextPriorityUpdate).addCard(title);
-                log.debug("Card with title: " + title + " was added to scheduled execution at: " + nextPriorityUpdate + ".");
-            } else {
-                final ScheduledDetails nextTimeSchedule = new ScheduledDetails(scheduledDetails.schedule);
-                nextTimeSchedule.addCard(title);
-                scheduledCards.put(nextPriorityUpdate, nextTimeSchedule);
-                scheduledTasksExecutor.schedule(
-                        () -> updateCardsNewPriorityLevel(nextPriorityUpdate),
-                        from.until(nextPriorityUpdate, ChronoUnit.MILLIS), TimeUnit.MILLISECONDS
-                );
-                log.debug("Card with title: " + title + " was scheduled to execute at: " + nextPriorityUpdate + ".");
+            if (titles.isEmpty()) return;
+            // all the cards of the group share the next execution, so the group is moved there as a whole
+            final LocalDateTime nextPriorityUpdate = priorityUpdateCalendar.nextPriorityUpdateFrom(schedule, from);
+            addToSchedule(from, nextPriorityUpdate, nextDetails -> nextDetails.moveCards(schedule, titles));
+            for (String title : titles) {
+                // the card scheduled again meanwhile keeps its new execution
+                cardScheduleTimes.replace(title, from, nextPriorityUpdate);
             }
+            log.debug(titles.size() + " cards were scheduled to execute at: " + nextPriorityUpdate + ".");
         });
         log.info("Cards sync started at: " + from + " was completed.");
     }
@@ -134,6 +289,6 @@ public class InMemoryCardsUpdateScheduler implements CardsUpdateScheduler {
     Set<String> getActiveScheduleFor(@NotNull final LocalDateTime scheduleTime) {
         final ScheduledDetails scheduledDetails = scheduledCards.get(scheduleTime);
         if (scheduledDetails == null) return new HashSet<>();
-        return scheduledDetails.scheduledCards;
+        return scheduledDetails.getAllCards();
     }
 }
@@ -0,0 +1,368 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.cards_tracker.error.CardAlreadyExistsException;
+import org.cards_tracker.error.NotExistingCardException;
+import org.cards_tracker.storage.MappedCardsSnapshot;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Card registry which serves the cards of the memory-mapped snapshot and keeps the later changes in memory.
+ * <p>
+ * The snapshot cards are never copied in advance: a snapshot card is moved to the in-memory changes
+ * when it is changed, and hidden in the snapshot when it is changed or removed.
+ * The changes are expected to be made by one thread at a time, the reads are safe from any thread.
+ */
+@SuppressWarnings("unused")
+class MappedSnapshotCardRegistry implements CardRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedSnapshotCardRegistry.class);
+
+    @Nullable
+    private final MappedCardsSnapshot snapshot;
+    @NotNull
+    private final InMemoryCardRegistry changedCards = new InMemoryCardRegistry();
+    // bitmap of the snapshot cards which were changed or removed, indexed by their position in the snapshot
+    @NotNull
+    private final AtomicLongArray hiddenSnapshotCards;
+    // the position in the snapshot priority order before which all the cards of the priority are hidden,
+    // indexed by the priority ordinal; the hidden cards never become visible again, so it only moves forward
+    @NotNull
+    private final AtomicIntegerArray visiblePriorityOrderStarts;
+    // the snapshot card which is being moved to the changes, it is hidden in the snapshot and not changed yet
+    @Nullable
+    private volatile Card movingCard;
+
+    MappedSnapshotCardRegistry(@Nullable final MappedCardsSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.hiddenSnapshotCards = new AtomicLongArray(snapshot == null ? 0 : (snapshot.size() + Long.SIZE - 1) / Long.SIZE);
+        this.visiblePriorityOrderStarts = new AtomicIntegerArray(CardPriority.values().length);
+        if (snapshot != null) {
+            for (CardPriority priority : CardPriority.values()) {
+                visiblePriorityOrderStarts.set(priority.ordinal(), snapshot.priorityOrderStart(priority));
+            }
+        }
+    }
+
+    private boolean isHidden(final int snapshotIndex) {
+        return (hiddenSnapshotCards.get(snapshotIndex / Long.SIZE) & (1L << (snapshotIndex % Long.SIZE))) != 0;
+    }
+
+    private void hide(final int snapshotIndex) {
+        final int word = snapshotIndex / Long.SIZE;
+        final long mask = 1L << (snapshotIndex % Long.SIZE);
+        long current;
+        do {
+            current = hiddenSnapshotCards.get(word);
+        } while ((current & mask) == 0 && !hiddenSnapshotCards.compareAndSet(word, current, current | mask));
+    }
+
+    private int visibleSnapshotIndexOf(@NotNull final String title) {
+        if (snapshot == null) return -1;
+        final int snapshotIndex = snapshot.indexOf(title);
+        if (snapshotIndex < 0 || isHidden(snapshotIndex)) return -1;
+        return snapshotIndex;
+    }
+
+    /**
+     * Moves the snapshot card into the changes before it is changed.
+     */
+    private void moveToChanges(@NotNull final String title) {
+        if (changedCards.isCardExist(title)) return;
+        final int snapshotIndex = visibleSnapshotIndexOf(title);
+        if (snapshotIndex < 0) return;
+        // the card is hidden first, so it is never read twice, and stays readable as the moving card meanwhile
+        final Card card = snapshot.cardAt(snapshotIndex);
+        movingCard = card;
+        hide(snapshotIndex);
+        changedCards.restoreCard(card);
+        movingCard = null;
+        log.debug("Card with title: " + title + " was moved from the snapshot to the changed cards.");
+    }
+
+    private void hideInSnapshot(@NotNull final String title) {
+        if (snapshot == null) return;
+        final int snapshotIndex = snapshot.indexOf(title);
+        if (snapshotIndex >= 0) hide(snapshotIndex);
+    }
+
+    /**
+     * Applies the cards recovered from the log written after the snapshot.
+     *
+     * @param cards        the cards which were created or changed after the snapshot
+     * @param removedTitles the cards which were removed after the snapshot
+     */
+    void restoreChanges(@NotNull final Collection<Card> cards, @NotNull final Collection<String> removedTitles) {
+        for (String title : removedTitles) {
+            hideInSnapshot(title);
+        }
+        for (Card card : cards) {
+            changedCards.restoreCard(card);
+            hideInSnapshot(card.getTitle());
+        }
+        log.info(
+                (snapshot == null ? 0 : snapshot.size()) + " snapshot cards were mapped and "
+                        + cards.size() + " changed cards were restored."
+        );
+    }
+
+    /**
+     * @return live read-only view of the cards, the snapshot cards in their snapshot order and then the changed ones,
+     * which can be iterated while the cards are being changed
+     */
+    @NotNull
+    Iterable<Card> cardsView() {
+        return () -> new Iterator<>() {
+            private int snapshotIndex = nextVisibleSnapshotIndex(0);
+            @Nullable
+            private Iterator<Card> changedCardsIterator;
+
+            @Override
+            public boolean hasNext() {
+                return snapshotIndex >= 0 || changedCardsIterator().hasNext();
+            }
+
+            @Override
+            public Card next() {
+                if (snapshotIndex < 0) return changedCardsIterator().next();
+                final Card card = snapshot.cardAt(snapshotIndex);
+                snapshotIndex = nextVisibleSnapshotIndex(snapshotIndex + 1);
+                return card;
+            }
+
+            // the changed cards are read after the snapshot ones, so the cards moved meanwhile are not missed
+            @NotNull
+            private Iterator<Card> changedCardsIterator() {
+                if (changedCardsIterator == null) changedCardsIterator = changedCards.cardsView().iterator();
+                return changedCardsIterator;
+            }
+        };
+    }
+
+    private int nextVisibleSnapshotIndex(final int from) {
+        if (snapshot == null) return -1;
+        for (int i = from; i < snapshot.size(); i++) {
+            if (!isHidden(i)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the priority updates of the visible snapshot cards and the snapshot cards which were changed later
+     */
+    @NotNull
+    List<ScheduledPriorityUpdate> getSnapshotPriorityUpdates() {
+        final List<ScheduledPriorityUpdate> priorityUpdates = new ArrayList<>();
+        if (snapshot == null) return priorityUpdates;
+        for (int i = 0; i < snapshot.size(); i++) {
+            final ScheduledPriorityUpdate priorityUpdate = snapshot.scheduledUpdateAt(i);
+            if (priorityUpdate != null && (!isHidden(i) || changedCards.isCardExist(priorityUpdate.getTitle()))) {
+                priorityUpdates.add(priorityUpdate);
+            }
+        }
+        return priorityUpdates;
+    }
+
+    @Override
+    public void createCard(@NotNull final Card card) throws CardAlreadyExistsException {
+        if (visibleSnapshotIndexOf(card.getTitle()) >= 0) {
+            log.debug("Card with title: " + card.getTitle() + " already exists in the snapshot.");
+            throw new CardAlreadyExistsException(card.getTitle());
+        }
+        changedCards.createCard(card);
+    }
+
+    @Override
+    @NotNull
+    public Set<String> createCards(@NotNull final Collection<Card> cards) {
+        final Set<String> existingTitles = new HashSet<>();
+        final List<Card> newCards = new ArrayList<>(cards.size());
+        for (Card card : cards) {
+            if (visibleSnapshotIndexOf(card.getTitle()) >= 0) {
+                existingTitles.add(card.getTitle());
+            } else {
+                newCards.add(card);
+            }
+        }
+        existingTitles.addAll(changedCards.createCards(newCards));
+        return existingTitles;
+    }
+
+    /**
+     * @return the card with the title if it is being moved from the snapshot to the changes
+     */
+    @Nullable
+    private Card movingCard(@NotNull final String title) {
+        final Card card = movingCard;
+        return card != null && card.getTitle().equals(title) ? card : null;
+    }
+
+    @Override
+    public boolean isCardExist(@NotNull final String title) {
+        return changedCards.isCardExist(title)
+                || visibleSnapshotIndexOf(title) >= 0
+                || movingCard(title) != null
+                // the card could be moved to the changes meanwhile
+                || changedCards.isCardExist(title);
+    }
+
+    @Override
+    @NotNull
+    public Card getCard(@NotNull final String title) throws NotExistingCardException {
+        if (changedCards.isCardExist(title)) {
+            return changedCards.getCard(title);
+        }
+        final int snapshotIndex = visibleSnapshotIndexOf(title);
+        if (snapshotIndex < 0) {
+            // the card could be moved to the changes meanwhile
+            final Card card = movingCard(title);
+            return card != null ? card : changedCards.getCard(title);
+        }
+        return snapshot.cardAt(snapshotIndex);
+    }
+
+    @Override
+    @NotNull
+    public Set<Card> getAllCards() {
+        final Set<Card> allCards = new HashSet<>();
+        for (Card card : cardsView()) {
+            allCards.add(card);
+        }
+        return allCards;
+    }
+
+    @Override
+    @NotNull
+    public List<Card> getPrioritizedCards() {
+        return getTopPrioritizedCards(Integer.MAX_VALUE);
+    }
+
+    @Override
+    @NotNull
+    public List<Card> getTopPrioritizedCards(final int limit) {
+        final int cardsCount = changedCards.size() + (snapshot == null ? 0 : snapshot.size());
+        final List<Card> topCards = new ArrayList<>(Math.max(0, Math.min(limit, cardsCount)));
+        final List<CardPriority> prioritiesOrder = InMemoryCardRegistry.PRIORITIES_ORDER;
+        for (int i = prioritiesOrder.size() - 1; i >= 0 && topCards.size() < limit; i--) {
+            final CardPriority priority = prioritiesOrder.get(i);
+            // the snapshot cards reached their priority before the changed ones, so they go first in the snapshot order
+            final Collection<Card> changedCardsWithPriority = changedCards.cardsWithPriority(priority);
+            Set<String> snapshotTitles = null;
+            if (snapshot != null) {
+                // only the cards with the priority are read, starting after the ones which are known to be hidden
+                final int end = snapshot.priorityOrderEnd(priority);
+                boolean leadingHidden = true;
+                for (int position = visiblePriorityOrderStarts.get(priority.ordinal());
+                     position < end && topCards.size() < limit;
+                     position++) {
+                    final int snapshotIndex = snapshot.priorityOrderAt(position);
+                    if (isHidden(snapshotIndex)) {
+                        if (leadingHidden) {
+                            visiblePriorityOrderStarts.accumulateAndGet(priority.ordinal(), position + 1, Math::max);
+                        }
+                        continue;
+                    }
+                    leadingHidden = false;
+                    final Card card = snapshot.cardAt(snapshotIndex);
+                    topCards.add(card);
+                    if (changedCardsWithPriority.isEmpty()) continue;
+                    if (snapshotTitles == null) snapshotTitles = new HashSet<>();
+                    snapshotTitles.add(card.getTitle());
+                }
+            }
+            for (Card card : changedCardsWithPriority) {
+                if (topCards.size() == limit) break;
+                // the snapshot card could be moved to the changes after it was read
+                if (snapshotTitles != null && snapshotTitles.contains(card.getTitle())) continue;
+                topCards.add(card);
+            }
+        }
+        return topCards;
+    }
+
+    @Override
+    @NotNull
+    public CardPriority getInitialCardPriority() {
+        return changedCards.getInitialCardPriority();
+    }
+
+    @Override
+    @NotNull
+    public CardPriority getMaxCardPriority() {
+        return changedCards.getMaxCardPriority();
+    }
+
+    @Override
+    public void updateCard(@NotNull final Card updatedCard) throws NotExistingCardException {
+        moveToChanges(updatedCard.getTitle());
+        changedCards.updateCard(updatedCard);
+    }
+
+    @Override
+    public void updateCardPriority(@NotNull final String title,
+                                   @NotNull final CardPriority updatedPriority) throws NotExistingCardException {
+        moveToChanges(title);
+        changedCards.updateCardPriority(title, updatedPriority);
+    }
+
+    @Override
+    public void bottomCardPriority(@NotNull final String title) throws NotExistingCardException {
+        moveToChanges(title);
+        changedCards.bottomCardPriority(title);
+    }
+
+    @Override
+    public void increaseCardPriority(@NotNull final String title) throws NotExistingCardException {
+        moveToChanges(title);
+        changedCards.increaseCardPriority(title);
+    }
+
+    @Override
+    @NotNull
+    public Set<String> bottomCardPriorities(@NotNull final Collection<String> titles) {
+        for (String title : titles) {
+            moveToChanges(title);
+        }
+        return changedCards.bottomCardPriorities(titles);
+    }
+
+    @Override
+    @NotNull
+    public Set<String> increaseCardPriorities(@NotNull final Collection<String> titles) {
+        for (String title : titles) {
+            moveToChanges(title);
+        }
+        return changedCards.increaseCardPriorities(titles);
+    }
+
+    @Override
+    public void removeCard(@NotNull final String title) {
+        changedCards.removeCard(title);
+        hideInSnapshot(title);
+    }
+
+    @Override
+    @NotNull
+    public Set<String> removeCards(@NotNull final Collection<String> titles) {
+        final Set<String> snapshotTitles = new HashSet<>();
+        for (String title : titles) {
+            final int snapshotIndex = visibleSnapshotIndexOf(title);
+            if (snapshotIndex >= 0) {
+                hide(snapshotIndex);
+                snapshotTitles.add(title);
+            }
+        }
+        final Set<String> missingTitles = changedCards.removeCards(titles);
+        missingTitles.removeAll(snapshotTitles);
+        return missingTitles;
+    }
+}
@@ -0,0 +1,218 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.error.CardAlreadyExistsException;
+import org.cards_tracker.error.NotExistingCardException;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Card registry which publishes the changes of the cards to the listeners after every successful change
+ * of the registry it wraps.
+ * <p>
+ * Every listener receives its events on its own executor, so a slow listener does not delay the writers.
+ */
+@SuppressWarnings("unused")
+public class ObservableCardRegistry implements CardRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ObservableCardRegistry.class);
+
+    @NotNull
+    private final CardRegistry cardRegistry;
+    @NotNull
+    private final List<ListenerRegistration> listeners = new CopyOnWriteArrayList<>();
+
+    private static final class ListenerRegistration {
+        @NotNull
+        private final CardRegistryListener listener;
+        @NotNull
+        private final Executor executor;
+
+        private ListenerRegistration(@NotNull final CardRegistryListener listener, @NotNull final Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    public ObservableCardRegistry(@NotNull final CardRegistry cardRegistry) {
+        this.cardRegistry = cardRegistry;
+    }
+
+    /**
+     * @param executor the executor which delivers the events to the listener, the single threaded executor
+     *                 delivers them in the order they were published
+     */
+    public void addListener(@NotNull final CardRegistryListener listener, @NotNull final Executor executor) {
+        listeners.add(new ListenerRegistration(listener, executor));
+        log.debug("Card registry listener: " + listener.getClass().getSimpleName() + " was added.");
+    }
+
+    /**
+     * The failed listener does not fail the change, which was already applied, and the other listeners.
+     */
+    private void publish(@NotNull final Consumer<CardRegistryListener> event) {
+        for (ListenerRegistration registration : listeners) {
+            final CardRegistryListener listener = registration.listener;
+            try {
+                registration.executor.execute(() -> {
+                    try {
+                        event.accept(listener);
+                    } catch (RuntimeException e) {
+                        log.error(
+                                "Card registry listener: " + listener.getClass().getSimpleName()
+                                        + " failed because of: " + e.getMessage() + "."
+                        );
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn(
+                        "Card registry listener: " + listener.getClass().getSimpleName()
+                                + " event was rejected because of: " + e.getMessage() + "."
+                );
+            }
+        }
+    }
+
+    @NotNull
+    private static List<String> existingTitles(@NotNull final Collection<String> titles,
+                                               @NotNull final Set<String> missingTitles) {
+        final List<String> existingTitles = new ArrayList<>(titles.size() - Math.min(titles.size(), missingTitles.size()));
+        for (String title : titles) {
+            if (!missingTitles.contains(title)) existingTitles.add(title);
+        }
+        return existingTitles;
+    }
+
+    @Override
+    public void createCard(@NotNull final Card card) throws CardAlreadyExistsException {
+        cardRegistry.createCard(card);
+        publish(listener -> listener.onCardsCreated(List.of(card)));
+    }
+
+    @Override
+    @NotNull
+    public Set<String> createCards(@NotNull final Collection<Card> cards) {
+        final Set<String> existingTitles = cardRegistry.createCards(cards);
+        if (listeners.isEmpty()) return existingTitles;
+        final Set<String> createdTitles = new HashSet<>();
+        final List<Card> createdCards = new ArrayList<>(cards.size());
+        for (Card card : cards) {
+            // the first card of the repeated titles is the created one
+            if (existingTitles.contains(card.getTitle()) || !createdTitles.add(card.getTitle())) continue;
+            createdCards.add(card);
+        }
+        if (!createdCards.isEmpty()) publish(listener -> listener.onCardsCreated(createdCards));
+        return existingTitles;
+    }
+
+    @Override
+    public boolean isCardExist(@NotNull final String title) {
+        return cardRegistry.isCardExist(title);
+    }
+
+    @Override
+    @NotNull
+    public Card getCard(@NotNull final String title) throws NotExistingCardException {
+        return cardRegistry.getCard(title);
+    }
+
+    @Override
+    @NotNull
+    public Set<Card> getAllCards() {
+        return cardRegistry.getAllCards();
+    }
+
+    @Override
+    @NotNull
+    public List<Card> getPrioritizedCards() {
+        return cardRegistry.getPrioritizedCards();
+    }
+
+    @Override
+    @NotNull
+    public List<Card> getTopPrioritizedCards(final int limit) {
+        return cardRegistry.getTopPrioritizedCards(limit);
+    }
+
+    @Override
+    @NotNull
+    public CardPriority getInitialCardPriority() {
+        return cardRegistry.getInitialCardPriority();
+    }
+
+    @Override
+    @NotNull
+    public CardPriority getMaxCardPriority() {
+        return cardRegistry.getMaxCardPriority();
+    }
+
+    @Override
+    public void updateCard(@NotNull final Card updatedCard) throws NotExistingCardException {
+        cardRegistry.updateCard(updatedCard);
+        publish(listener -> listener.onCardsPriorityChanged(List.of(updatedCard.getTitle())));
+    }
+
+    @Override
+    public void updateCardPriority(@NotNull final String title,
+                                   @NotNull final CardPriority updatedPriority) throws NotExistingCardException {
+        cardRegistry.updateCardPriority(title, updatedPriority);
+        publish(listener -> listener.onCardsPriorityChanged(List.of(title)));
+    }
+
+    @Override
+    public void bottomCardPriority(@NotNull final String title) throws NotExistingCardException {
+        cardRegistry.bottomCardPriority(title);
+        publish(listener -> listener.onCardsPriorityChanged(List.of(title)));
+    }
+
+    @Override
+    @NotNull
+    public Set<String> bottomCardPriorities(@NotNull final Collection<String> titles) {
+        final Set<String> missingTitles = cardRegistry.bottomCardPriorities(titles);
+        if (listeners.isEmpty()) return missingTitles;
+        final List<String> changedTitles = existingTitles(titles, missingTitles);
+        if (!changedTitles.isEmpty()) publish(listener -> listener.onCardsPriorityChanged(changedTitles));
+        return missingTitles;
+    }
+
+    @Override
+    public void increaseCardPriority(@NotNull final String title) throws NotExistingCardException {
+        cardRegistry.increaseCardPriority(title);
+        publish(listener -> listener.onCardsPriorityChanged(List.of(title)));
+    }
+
+    @Override
+    @NotNull
+    public Set<String> increaseCardPriorities(@NotNull final Collection<String> titles) {
+        final Set<String> missingTitles = cardRegistry.increaseCardPriorities(titles);
+        if (listeners.isEmpty()) return missingTitles;
+        final List<String> changedTitles = existingTitles(titles, missingTitles);
+        if (!changedTitles.isEmpty()) publish(listener -> listener.onCardsPriorityChanged(changedTitles));
+        return missingTitles;
+    }
+
+    @Override
+    public void removeCard(@NotNull final String title) {
+        cardRegistry.removeCard(title);
+        // the removal of a not existing card is not reported by the registry, so the listeners check it themselves
+        publish(listener -> listener.onCardsRemoved(List.of(title)));
+    }
+
+    @Override
+    @NotNull
+    public Set<String> removeCards(@NotNull final Collection<String> titles) {
+        final Set<String> missingTitles = cardRegistry.removeCards(titles);
+        if (listeners.isEmpty()) return missingTitles;
+        final List<String> removedTitles = existingTitles(titles, missingTitles);
+        if (!removedTitles.isEmpty()) publish(listener -> listener.onCardsRemoved(removedTitles));
+        return missingTitles;
+    }
+}
@@ -0,0 +1,519 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.cards_tracker.error.CardAlreadyExistsException;
+import org.cards_tracker.error.IncorrectCardTitleException;
+import org.cards_tracker.error.NotExistingCardException;
+import org.cards_tracker.storage.CardsStorage;
+import org.cards_tracker.storage.FsyncPolicy;
+import org.cards_tracker.storage.LogRecordHandler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Card registry which keeps the cards in memory and records every change into the write-ahead log,
+ * so the registry state is recovered after a restart.
+ * <p>
+ * A change is checked against the current cards and appended to the log first, and applied in memory only when it was
+ * appended, so a change which failed to be logged is never applied. The writer returns only when its change is forced
+ * to the disk, but the change is applied in memory before that: the readers, the today cards and their stream can see
+ * a change which is not durable yet and which a crash before the force would lose.
+ * The log refuses to append anything after it failed to force the records, so the registry stops accepting changes then.
+ * <p>
+ * All the changes are made under one mutation lock, which keeps the log records in the order the changes were applied.
+ * It is a known limitation: the priority transitions of the cards in different buckets and the bulk escalations
+ * do not run concurrently in the persistent registry as they do in memory, only the forces of the log are shared.
+ * <p>
+ * The log is compacted by the periodic snapshots: the writers are switched to a new log segment
+ * and the registry image is written without blocking them, after which the older segments are removed.
+ * <p>
+ * The scheduled card priority updates are logged too: a new update is logged per card, while the executed updates
+ * are logged as one move of all the updates with the same schedule and time.
+ */
+@SuppressWarnings("unused")
+public class PersistentCardRegistry implements CardRegistry, PriorityUpdateJournal, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistentCardRegistry.class);
+
+    @NotNull
+    private final MappedSnapshotCardRegistry cardRegistry;
+    @NotNull
+    private final CardsStorage storage;
+    // keeps the log records in the same order as the changes were applied to the registry
+    @NotNull
+    private final Object mutationLock = new Object();
+    // only one snapshot is written at a time
+    @NotNull
+    private final Object snapshotLock = new Object();
+    // the priority updates restored from the snapshots of the first format and the log
+    @NotNull
+    private final Map<String, RecoveredPriorityUpdate> recoveredPriorityUpdates;
+    // the priority updates moves restored from the log, in the order they were written
+    @NotNull
+    private final List<PriorityUpdatesMove> recoveredMoves;
+    // the thread running a batch of changes and the log position the batch has to make durable,
+    // both are changed only under the mutation lock
+    @Nullable
+    private Thread batchThread;
+    private long batchLogPosition = -1;
+
+    private interface LogAppend {
+        long append() throws IOException;
+    }
+
+    private static final class RecoveredPriorityUpdate {
+        @NotNull
+        private final ScheduledPriorityUpdate priorityUpdate;
+        // the moves restored before the update do not apply to it
+        private final int firstMove;
+
+        RecoveredPriorityUpdate(@NotNull final ScheduledPriorityUpdate priorityUpdate, final int firstMove) {
+            this.priorityUpdate = priorityUpdate;
+            this.firstMove = firstMove;
+        }
+    }
+
+    private static final class PriorityUpdatesMove {
+        @NotNull
+        private final CardPriorityUpdateSchedule schedule;
+        @NotNull
+        private final LocalDateTime from;
+        private final long spreadOffsetMillis;
+        @NotNull
+        private final LocalDateTime nextUpdate;
+
+        PriorityUpdatesMove(@NotNull final CardPriorityUpdateSchedule schedule,
+                            @NotNull final LocalDateTime from,
+                            final long spreadOffsetMillis,
+                            @NotNull final LocalDateTime nextUpdate) {
+            this.schedule = schedule;
+            this.from = from;
+            this.spreadOffsetMillis = spreadOffsetMillis;
+            this.nextUpdate = nextUpdate;
+        }
+    }
+
+    public PersistentCardRegistry(@NotNull final Path storageDirectory,
+                                  @NotNull final FsyncPolicy fsyncPolicy,
+                                  final long flushIntervalMillis,
+                                  final long groupCommitDelayMicros) throws IOException {
+        final Map<String, CardPriority> recoveredCards = new LinkedHashMap<>();
+        final Map<String, RecoveredPriorityUpdate> recoveredUpdates = new HashMap<>();
+        final List<PriorityUpdatesMove> moves = new ArrayList<>();
+        this.storage = CardsStorage.open(
+                storageDirectory,
+                fsyncPolicy, flushIntervalMillis, groupCommitDelayMicros,
+                new LogRecordHandler() {
+                    @Override
+                    public void onCardCreated(@NotNull final String title, @NotNull final CardPriority priority) {
+                        recoveredCards.put(title, priority);
+                    }
+
+                    @Override
+                    public void onCardUpdated(@NotNull final String title, @NotNull final CardPriority priority) {
+                        recoveredCards.put(title, priority);
+                    }
+
+                    @Override
+                    public void onCardRemoved(@NotNull final String title) {
+                        // the removed cards are kept until the end of the recovery to hide them in the snapshot
+                        recoveredCards.put(title, null);
+                        recoveredUpdates.remove(title);
+                    }
+
+                    @Override
+                    public void onPriorityUpdateScheduled(@NotNull final ScheduledPriorityUpdate priorityUpdate) {
+                        recoveredUpdates.put(
+                                priorityUpdate.getTitle(), new RecoveredPriorityUpdate(priorityUpdate, moves.size())
+                        );
+                    }
+
+                    @Override
+                    public void onPriorityUpdatesMoved(@NotNull final CardPriorityUpdateSchedule schedule,
+                                                       @NotNull final LocalDateTime from,
+                                                       final long spreadOffsetMillis,
+                                                       @NotNull final LocalDateTime nextUpdate) {
+                        moves.add(new PriorityUpdatesMove(schedule, from, spreadOffsetMillis, nextUpdate));
+                    }
+                }
+        );
+        final List<Card> cards = new ArrayList<>(recoveredCards.size());
+        final List<String> removedTitles = new ArrayList<>();
+        for (Map.Entry<String, CardPriority> recoveredCard : recoveredCards.entrySet()) {
+            if (recoveredCard.getValue() == null) {
+                removedTitles.add(recoveredCard.getKey());
+                continue;
+            }
+            try {
+                cards.add(new Card(recoveredCard.getKey(), recoveredCard.getValue()));
+            } catch (IncorrectCardTitleException e) {
+                log.warn("Card with incorrect title: " + recoveredCard.getKey() + " was found in the log and skipped.");
+            }
+        }
+        this.cardRegistry = new MappedSnapshotCardRegistry(storage.getRecoveredSnapshot());
+        cardRegistry.restoreChanges(cards, removedTitles);
+        recoveredUpdates.keySet().removeAll(removedTitles);
+        this.recoveredPriorityUpdates = recoveredUpdates;
+        this.recoveredMoves = moves;
+    }
+
+    /**
+     * Reads all the card priority updates which were scheduled before the restart: the updates of the latest
+     * recovered snapshot replaced by the updates scheduled later, all of them moved by the logged executions.
+     * The snapshot is read lazily, so the call takes time proportional to the number of the cards.
+     * <p>
+     * A move is applied to the updates of its spread offset only. The moves logged with the offsets
+     * of another spread window are not matched, so their updates are restored at the time before the moves.
+     *
+     * @param spreadOffsets provides the spread offset of the card priority updates by the card title
+     */
+    @NotNull
+    public List<ScheduledPriorityUpdate> getRecoveredPriorityUpdates(@NotNull final ToLongFunction<String> spreadOffsets) {
+        final List<ScheduledPriorityUpdate> priorityUpdates = new ArrayList<>();
+        for (ScheduledPriorityUpdate snapshotUpdate : cardRegistry.getSnapshotPriorityUpdates()) {
+            if (recoveredPriorityUpdates.containsKey(snapshotUpdate.getTitle())) continue;
+            priorityUpdates.add(applyRecoveredMoves(snapshotUpdate, 0, spreadOffsets));
+        }
+        for (RecoveredPriorityUpdate recoveredUpdate : recoveredPriorityUpdates.values()) {
+            priorityUpdates.add(
+                    applyRecoveredMoves(recoveredUpdate.priorityUpdate, recoveredUpdate.firstMove, spreadOffsets)
+            );
+        }
+        log.debug(
+                priorityUpdates.size() + " card priority updates were recovered with "
+                        + recoveredMoves.size() + " logged moves."
+        );
+        return priorityUpdates;
+    }
+
+    @NotNull
+    private ScheduledPriorityUpdate applyRecoveredMoves(@NotNull final ScheduledPriorityUpdate priorityUpdate,
+                                                        final int firstMove,
+                                                        @NotNull final ToLongFunction<String> spreadOffsets) {
+        ScheduledPriorityUpdate movedUpdate = priorityUpdate;
+        final long spreadOffsetMillis = spreadOffsets.applyAsLong(priorityUpdate.getTitle());
+        // a move already contained in the snapshot does not match the update anymore, so it is not applied twice
+        for (int i = firstMove; i < recoveredMoves.size(); i++) {
+            final PriorityUpdatesMove move = recoveredMoves.get(i);
+            if (move.schedule.equals(movedUpdate.getSchedule()) && move.from.equals(movedUpdate.getNextUpdate())
+                    && move.spreadOffsetMillis == spreadOffsetMillis) {
+                movedUpdate = new ScheduledPriorityUpdate(movedUpdate.getTitle(), move.schedule, move.nextUpdate);
+            }
+        }
+        return movedUpdate;
+    }
+
+    /**
+     * Writes the snapshot of the registry and removes the log segments it replaces.
+     * Skipped when nothing was changed since the previous snapshot.
+     *
+     * @param scheduledUpdates provides the card priority updates to be kept together with the cards
+     */
+    public void snapshot(@NotNull final Supplier<Collection<ScheduledPriorityUpdate>> scheduledUpdates) throws IOException {
+        synchronized (snapshotLock) {
+            final long snapshotSequence;
+            synchronized (mutationLock) {
+                if (!storage.hasChangesSinceSnapshot()) {
+                    log.debug("Card registry was not changed since the previous snapshot.");
+                    return;
+                }
+                snapshotSequence = storage.rollLog();
+            }
+            // the cards which are changed while the snapshot is written are also present in the new log segment,
+            // the cards are written in their priority order, so the cards of the same priority keep their order
+            storage.writeSnapshot(snapshotSequence, cardRegistry.getPrioritizedCards(), scheduledUpdates.get());
+        }
+    }
+
+    private long appendToLog(@NotNull final LogAppend logAppend) {
+        try {
+            return logAppend.append();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Card registry change was not logged because of: " + e.getMessage(), e);
+        }
+    }
+
+    private void ensureCardExists(@NotNull final String title) throws NotExistingCardException {
+        if (!cardRegistry.isCardExist(title)) {
+            log.debug("Card with title: " + title + " does not exist.");
+            throw new NotExistingCardException(title);
+        }
+    }
+
+    private void awaitDurable(final long logPosition) {
+        if (batchThread == Thread.currentThread()) {
+            // the change is made inside a batch, so it is forced together with the whole batch
+            batchLogPosition = Math.max(batchLogPosition, logPosition);
+            return;
+        }
+        try {
+            storage.awaitDurable(logPosition);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Card registry change was not persisted because of: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void createCard(@NotNull final Card card) throws CardAlreadyExistsException {
+        final long logPosition;
+        synchronized (mutationLock) {
+            if (cardRegistry.isCardExist(card.getTitle())) {
+                log.debug("Card with title: " + card.getTitle() + " already exists.");
+                throw new CardAlreadyExistsException(card.getTitle());
+            }
+            logPosition = appendToLog(() -> storage.appendCardCreated(card.getTitle(), card.getCardPriority()));
+            cardRegistry.createCard(card);
+        }
+        awaitDurable(logPosition);
+    }
+
+    @Override
+    @NotNull
+    public Set<String> createCards(@NotNull final Collection<Card> cards) {
+        final Set<String> existingTitles;
+        long logPosition = -1;
+        synchronized (mutationLock) {
+            final Set<String> createdTitles = new HashSet<>();
+            for (Card card : cards) {
+                if (cardRegistry.isCardExist(card.getTitle())) continue;
+                // the first card of the repeated titles is the created one
+                if (!createdTitles.add(card.getTitle())) continue;
+                logPosition = appendToLog(() -> storage.appendCardCreated(card.getTitle(), card.getCardPriority()));
+            }
+            existingTitles = cardRegistry.createCards(cards);
+        }
+        // the whole batch is forced at once
+        if (logPosition >= 0) awaitDurable(logPosition);
+        return existingTitles;
+    }
+
+    @Override
+    public boolean isCardExist(@NotNull final String title) {
+        return cardRegistry.isCardExist(title);
+    }
+
+    @Override
+    @NotNull
+    public Card getCard(@NotNull final String title) throws NotExistingCardException {
+        return cardRegistry.getCard(title);
+    }
+
+    @Override
+    @NotNull
+    public Set<Card> getAllCards() {
+        return cardRegistry.getAllCards();
+    }
+
+    @Override
+    @NotNull
+    public List<Card> getPrioritizedCards() {
+        return cardRegistry.getPrioritizedCards();
+    }
+
+    @Override
+    @NotNull
+    public List<Card> getTopPrioritizedCards(final int limit) {
+        return cardRegistry.getTopPrioritizedCards(limit);
+    }
+
+    @Override
+    @NotNull
+    public CardPriority getInitialCardPriority() {
+        return cardRegistry.getInitialCardPriority();
+    }
+
+    @Override
+    @NotNull
+    public CardPriority getMaxCardPriority() {
+        return cardRegistry.getMaxCardPriority();
+    }
+
+    @Override
+    public void updateCard(@NotNull final Card updatedCard) throws NotExistingCardException {
+        final long logPosition;
+        synchronized (mutationLock) {
+            ensureCardExists(updatedCard.getTitle());
+            logPosition = appendToLog(
+                    () -> storage.appendCardUpdated(updatedCard.getTitle(), updatedCard.getCardPriority())
+            );
+            cardRegistry.updateCard(updatedCard);
+        }
+        awaitDurable(logPosition);
+    }
+
+    @Override
+    public void updateCardPriority(@NotNull final String title,
+                                   @NotNull final CardPriority updatedPriority) throws NotExistingCardException {
+        final long logPosition;
+        synchronized (mutationLock) {
+            ensureCardExists(title);
+            logPosition = appendToLog(() -> storage.appendCardUpdated(title, updatedPriority));
+            cardRegistry.updateCardPriority(title, updatedPriority);
+        }
+        awaitDurable(logPosition);
+    }
+
+    @Override
+    public void bottomCardPriority(@NotNull final String title) throws NotExistingCardException {
+        updateCardPriority(title, getInitialCardPriority());
+    }
+
+    @Override
+    public void increaseCardPriority(@NotNull final String title) throws NotExistingCardException {
+        final long logPosition;
+        synchronized (mutationLock) {
+            final CardPriority increasedPriority = InMemoryCardRegistry.nextPriorityLevel(
+                    cardRegistry.getCard(title).getCardPriority()
+            );
+            logPosition = appendToLog(() -> storage.appendCardUpdated(title, increasedPriority));
+            cardRegistry.increaseCardPriority(title);
+        }
+        awaitDurable(logPosition);
+    }
+
+    @Override
+    @NotNull
+    public Set<String> bottomCardPriorities(@NotNull final Collection<String> titles) {
+        final CardPriority initialPriority = getInitialCardPriority();
+        return updateCardPriorities(titles, priority -> initialPriority, cardRegistry::bottomCardPriorities);
+    }
+
+    @Override
+    @NotNull
+    public Set<String> increaseCardPriorities(@NotNull final Collection<String> titles) {
+        return updateCardPriorities(titles, InMemoryCardRegistry::nextPriorityLevel, cardRegistry::increaseCardPriorities);
+    }
+
+    /**
+     * Logs the resulting priority of every card which is going to be changed, then changes the cards priorities
+     * in memory. The cards keeping their priority are not logged.
+     *
+     * @param priorityChange the priority the card gets from its current priority, the same as the update makes
+     */
+    @NotNull
+    private Set<String> updateCardPriorities(@NotNull final Collection<String> titles,
+                                             @NotNull final UnaryOperator<CardPriority> priorityChange,
+                                             @NotNull final Function<Collection<String>, Set<String>> update) {
+        final Set<String> missingTitles;
+        long logPosition = -1;
+        synchronized (mutationLock) {
+            final Set<String> loggedTitles = new HashSet<>();
+            for (String title : titles) {
+                if (!cardRegistry.isCardExist(title) || !loggedTitles.add(title)) continue;
+                final CardPriority currentPriority;
+                try {
+                    currentPriority = cardRegistry.getCard(title).getCardPriority();
+                } catch (NotExistingCardException e) {
+                    // impossible use case, the cards are changed only under the mutation lock
+                    log.warn("Card with title: " + title + " to be updated was not found.");
+                    continue;
+                }
+                final CardPriority updatedPriority = priorityChange.apply(currentPriority);
+                if (updatedPriority == currentPriority) continue;
+                logPosition = appendToLog(() -> storage.appendCardUpdated(title, updatedPriority));
+            }
+            missingTitles = update.apply(titles);
+        }
+        if (logPosition >= 0) awaitDurable(logPosition);
+        return missingTitles;
+    }
+
+    @Override
+    public void removeCard(@NotNull final String title) {
+        final long logPosition;
+        synchronized (mutationLock) {
+            if (!cardRegistry.isCardExist(title)) {
+                log.debug("Card with title: " + title + " was not found and does need to be removed.");
+                return;
+            }
+            logPosition = appendToLog(() -> storage.appendCardRemoved(title));
+            cardRegistry.removeCard(title);
+        }
+        awaitDurable(logPosition);
+    }
+
+    @Override
+    @NotNull
+    public Set<String> removeCards(@NotNull final Collection<String> titles) {
+        final Set<String> missingTitles;
+        long logPosition = -1;
+        synchronized (mutationLock) {
+            final Set<String> removedTitles = new HashSet<>();
+            for (String title : titles) {
+                if (!cardRegistry.isCardExist(title) || !removedTitles.add(title)) continue;
+                logPosition = appendToLog(() -> storage.appendCardRemoved(title));
+            }
+            missingTitles = cardRegistry.removeCards(titles);
+        }
+        if (logPosition >= 0) awaitDurable(logPosition);
+        return missingTitles;
+    }
+
+    @Override
+    public void recordPriorityUpdatesScheduled(@NotNull final Collection<ScheduledPriorityUpdate> priorityUpdates) {
+        long logPosition = -1;
+        synchronized (mutationLock) {
+            for (ScheduledPriorityUpdate priorityUpdate : priorityUpdates) {
+                logPosition = appendToLog(() -> storage.appendPriorityUpdateScheduled(priorityUpdate));
+            }
+        }
+        if (logPosition >= 0) awaitDurable(logPosition);
+    }
+
+    @Override
+    public void recordPriorityUpdatesMoved(@NotNull final CardPriorityUpdateSchedule schedule,
+                                           @NotNull final LocalDateTime from,
+                                           final long spreadOffsetMillis,
+                                           @NotNull final LocalDateTime nextUpdate) {
+        final long logPosition;
+        synchronized (mutationLock) {
+            logPosition = appendToLog(
+                    () -> storage.appendPriorityUpdatesMoved(schedule, from, spreadOffsetMillis, nextUpdate)
+            );
+        }
+        awaitDurable(logPosition);
+    }
+
+    @Override
+    public <T> T recordInBatch(@NotNull final Supplier<T> changes) {
+        final T result;
+        final long logPosition;
+        synchronized (mutationLock) {
+            if (batchThread == Thread.currentThread()) return changes.get();
+            batchThread = Thread.currentThread();
+            try {
+                result = changes.get();
+            } finally {
+                logPosition = batchLogPosition;
+                batchThread = null;
+                batchLogPosition = -1;
+            }
+        }
+        if (logPosition >= 0) awaitDurable(logPosition);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (snapshotLock) {
+            storage.close();
+        }
+        log.info("Card registry storage was closed.");
+    }
+}
@@ -8,4 +8,11 @@ import java.time.LocalDateTime;
 public interface PriorityUpdateCalendar {
     @NotNull
     LocalDateTime nextPriorityUpdateFrom(@NotNull final CardPriorityUpdateSchedule schedule, @NotNull final LocalDateTime from);
+
+    /**
+     * Same as the local date time calculation in the calendar time zone, but without allocations on the hot path.
+     *
+     * @return the next priority update as the epoch milliseconds
+     */
+    long nextPriorityUpdateFrom(@NotNull final CardPriorityUpdateSchedule schedule, final long fromEpochMillis);
 }
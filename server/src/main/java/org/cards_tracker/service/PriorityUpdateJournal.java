@@ -0,0 +1,39 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Records the changes of the scheduled card priority updates, so the schedule survives a restart.
+ */
+public interface PriorityUpdateJournal {
+
+    /**
+     * Records the new priority updates, which replace the previous ones of the same cards.
+     */
+    void recordPriorityUpdatesScheduled(@NotNull final Collection<ScheduledPriorityUpdate> priorityUpdates);
+
+    /**
+     * Records that all the priority updates with the schedule, the next update at the given time
+     * and the spread offset were executed and moved to the next update. The updates of one time
+     * with different spread offsets come from different calendar times, so they move to different updates.
+     */
+    void recordPriorityUpdatesMoved(@NotNull final CardPriorityUpdateSchedule schedule,
+                                    @NotNull final LocalDateTime from,
+                                    final long spreadOffsetMillis,
+                                    @NotNull final LocalDateTime nextUpdate);
+
+    /**
+     * Runs the changes as one batch: the cards changes and the records made by them are logged under one lock,
+     * so no snapshot is taken in the middle of the batch, and they are forced to the disk together once
+     * the changes are done. The changes of the batch are made by the calling thread only.
+     *
+     * @return the result of the changes
+     */
+    <T> T recordInBatch(@NotNull final Supplier<T> changes);
+}
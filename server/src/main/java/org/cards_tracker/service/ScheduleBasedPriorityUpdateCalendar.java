@@ -3,10 +3,56 @@ package org.cards_tracker.service;
 import org.cards_tracker.domain.CardPriorityUpdateSchedule;
 import org.jetbrains.annotations.NotNull;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.TimeUnit;
 
 public class ScheduleBasedPriorityUpdateCalendar implements PriorityUpdateCalendar {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The period of time when the zone offset stays the same.
+     */
+    private static final class ZoneOffsetPeriod {
+        private final long fromEpochMillis;
+        private final long untilEpochMillis;
+        private final long offsetMillis;
+
+        ZoneOffsetPeriod(final long fromEpochMillis, final long untilEpochMillis, final long offsetMillis) {
+            this.fromEpochMillis = fromEpochMillis;
+            this.untilEpochMillis = untilEpochMillis;
+            this.offsetMillis = offsetMillis;
+        }
+
+        boolean contains(final long epochMillis) {
+            return epochMillis >= fromEpochMillis && epochMillis < untilEpochMillis;
+        }
+    }
+
+    @NotNull
+    private final ZoneId zoneId;
+    @NotNull
+    private final ZoneRules zoneRules;
+    // replaced only when the zone offset changes, so the epoch calculations do not allocate in between
+    @NotNull
+    private volatile ZoneOffsetPeriod zoneOffsetPeriod;
+
+    public ScheduleBasedPriorityUpdateCalendar() {
+        this(ZoneId.systemDefault());
+    }
+
+    public ScheduleBasedPriorityUpdateCalendar(@NotNull final ZoneId zoneId) {
+        this.zoneId = zoneId;
+        this.zoneRules = zoneId.getRules();
+        this.zoneOffsetPeriod = zoneOffsetPeriodAt(System.currentTimeMillis());
+    }
+
     @Override
     @NotNull
     public LocalDateTime nextPriorityUpdateFrom(@NotNull final CardPriorityUpdateSchedule schedule,
@@ -22,4 +68,56 @@ public class ScheduleBasedPriorityUpdateCalendar implements PriorityUpdateCalend
                 return from.plus(schedule.getPeriod(), ChronoUnit.SECONDS).truncatedTo(ChronoUnit.SECONDS);
         }
     }
+
+    @Override
+    public long nextPriorityUpdateFrom(@NotNull final CardPriorityUpdateSchedule schedule, final long fromEpochMillis) {
+        ZoneOffsetPeriod offsetPeriod = zoneOffsetPeriod;
+        if (!offsetPeriod.contains(fromEpochMillis)) {
+            offsetPeriod = zoneOffsetPeriodAt(fromEpochMillis);
+            zoneOffsetPeriod = offsetPeriod;
+        }
+        final long unitMillis = truncationUnitMillis(schedule.getTimeUnit());
+        // the local time is calculated as the epoch time shifted by the zone offset
+        final long localFromMillis = fromEpochMillis + offsetPeriod.offsetMillis;
+        final long localNextMillis = Math.floorDiv(
+                Math.addExact(localFromMillis, Math.multiplyExact(schedule.getPeriod(), unitMillis)), unitMillis
+        ) * unitMillis;
+        final long nextEpochMillis = localNextMillis - offsetPeriod.offsetMillis;
+        // the local time close to an offset change can be skipped or repeated, it is resolved as the local date time
+        if (nextEpochMillis >= offsetPeriod.fromEpochMillis + DAY_MILLIS
+                && nextEpochMillis < offsetPeriod.untilEpochMillis - DAY_MILLIS) {
+            return nextEpochMillis;
+        }
+        final LocalDateTime nextUpdate = nextPriorityUpdateFrom(
+                schedule, LocalDateTime.ofInstant(Instant.ofEpochMilli(fromEpochMillis), zoneId)
+        );
+        return nextUpdate.atZone(zoneId).toInstant().toEpochMilli();
+    }
+
+    private static long truncationUnitMillis(@NotNull final TimeUnit timeUnit) {
+        switch (timeUnit) {
+            case MINUTES:
+            case HOURS:
+            case DAYS:
+                return timeUnit.toMillis(1);
+            default:
+                return TimeUnit.SECONDS.toMillis(1);
+        }
+    }
+
+    @NotNull
+    private ZoneOffsetPeriod zoneOffsetPeriodAt(final long epochMillis) {
+        if (zoneRules.isFixedOffset()) {
+            final ZoneOffset offset = zoneRules.getOffset(Instant.EPOCH);
+            return new ZoneOffsetPeriod(Long.MIN_VALUE, Long.MAX_VALUE, offset.getTotalSeconds() * 1000L);
+        }
+        final Instant instant = Instant.ofEpochMilli(epochMillis);
+        final ZoneOffsetTransition previousTransition = zoneRules.previousTransition(instant.plusMillis(1));
+        final ZoneOffsetTransition nextTransition = zoneRules.nextTransition(instant);
+        return new ZoneOffsetPeriod(
+                previousTransition == null ? Long.MIN_VALUE : previousTransition.toEpochSecond() * 1000L,
+                nextTransition == null ? Long.MAX_VALUE : nextTransition.toEpochSecond() * 1000L,
+                zoneRules.getOffset(instant).getTotalSeconds() * 1000L
+        );
+    }
 }
@@ -1,24 +1,44 @@
 package org.cards_tracker.service;
 
 import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
 import org.cards_tracker.error.CardAlreadyExistsException;
 import org.cards_tracker.error.NotExistingCardException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.cards_tracker.util.Util.findFirstDistinct;
 import static org.cards_tracker.util.Util.findFirstDuplicate;
 
+/**
+ * Keeps the most prioritized cards for today up to date with the registry changes: a changed card only takes,
+ * leaves or changes its own position and the free positions are filled with the next prioritized cards.
+ * <p>
+ * The cards added for today in addition to the prioritized ones are kept until they are completed or removed,
+ * the completed cards do not come back for today until their priority is increased again.
+ * <p>
+ * The cards for today are formed from the registry once on start and, optionally, on a schedule
+ * to check that they are consistent with the registry.
+ * <p>
+ * The today cards state is immutable: the changes are applied one at a time to a copy of the current state,
+ * which replaces it only if something was changed. So the readers never wait and never copy the cards,
+ * and the registry is read by every change only once.
+ * <p>
+ * The version of the cards for today is increased only when the shown cards or their order are changed,
+ * so the clients can tell whether the cards they have are still actual. The new versions are published
+ * to the listeners after the change, out of the change lock, so the listeners never hold up the changes.
+ */
 @SuppressWarnings("unused")
-public class ScheduledInMemoryTodayCardsService implements TodayCardsService {
+public class ScheduledInMemoryTodayCardsService implements TodayCardsService, CardRegistryListener {
 
     private static final Logger log = LoggerFactory.getLogger(ScheduledInMemoryTodayCardsService.class);
 
@@ -27,33 +47,407 @@ public class ScheduledInMemoryTodayCardsService implements TodayCardsService {
     @NotNull
     private final Integer maxCardsForToday;
     @NotNull
-    private List<String> cardsForToday = new ArrayList<>();
+    private final AtomicReference<TodayCards> todayCards = new AtomicReference<>(
+            new TodayCards(new VersionedTodayCards(0, List.of()), Map.of(), Set.of(), Map.of())
+    );
+    @NotNull
+    private final Object changeLock = new Object();
+    @NotNull
+    private final List<TodayCardsListener> listeners = new CopyOnWriteArrayList<>();
+    // only one change publishes at a time, the version published last is changed only under the lock
+    @NotNull
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private volatile long publishedVersion;
+
+    private static final class TodayCards {
+        @NotNull
+        private final VersionedTodayCards versionedCards;
+        // the cards for today which were taken by their priority, with the priority they were taken with
+        @NotNull
+        private final Map<String, CardPriority> prioritizedCards;
+        @NotNull
+        private final Set<String> additionalCards;
+        // the completed cards with the priority they were completed with
+        @NotNull
+        private final Map<String, CardPriority> completedCards;
+
+        private TodayCards(@NotNull final VersionedTodayCards versionedCards,
+                           @NotNull final Map<String, CardPriority> prioritizedCards,
+                           @NotNull final Set<String> additionalCards,
+                           @NotNull final Map<String, CardPriority> completedCards) {
+            this.versionedCards = versionedCards;
+            this.prioritizedCards = prioritizedCards;
+            this.additionalCards = additionalCards;
+            this.completedCards = completedCards;
+        }
+    }
+
+    private interface TodayCardsChange<E extends Exception> {
+        void apply(@NotNull final MutableTodayCards cards) throws E;
+    }
+
+    /**
+     * The copy of the today cards state which the change is applied to.
+     */
+    private final class MutableTodayCards {
+        @NotNull
+        private final TodayCards initialState;
+        @NotNull
+        private final VersionedTodayCards initialCards;
+        @NotNull
+        private final List<String> cards;
+        @NotNull
+        private final Map<String, CardPriority> prioritizedCards;
+        @NotNull
+        private final Set<String> additionalCards;
+        @NotNull
+        private final Map<String, CardPriority> completedCards;
+
+        private MutableTodayCards(@NotNull final TodayCards todayCards) {
+            this.initialState = todayCards;
+            this.initialCards = todayCards.versionedCards;
+            this.cards = new ArrayList<>(initialCards.getCards());
+            this.prioritizedCards = new HashMap<>(todayCards.prioritizedCards);
+            this.additionalCards = new HashSet<>(todayCards.additionalCards);
+            this.completedCards = new HashMap<>(todayCards.completedCards);
+        }
+
+        private boolean isChanged() {
+            return !cards.equals(initialCards.getCards())
+                    || !prioritizedCards.equals(initialState.prioritizedCards)
+                    || !additionalCards.equals(initialState.additionalCards)
+                    || !completedCards.equals(initialState.completedCards);
+        }
+
+        @NotNull
+        private TodayCards toTodayCards() {
+            // the unchanged cards keep their version, even though the other state could be changed
+            final VersionedTodayCards versionedCards = cards.equals(initialCards.getCards())
+                    ? initialCards
+                    : new VersionedTodayCards(initialCards.getVersion() + 1, Collections.unmodifiableList(cards));
+            return new TodayCards(
+                    versionedCards,
+                    Collections.unmodifiableMap(prioritizedCards),
+                    Collections.unmodifiableSet(additionalCards),
+                    Collections.unmodifiableMap(completedCards)
+            );
+        }
+
+        /**
+         * @return the number of the registry top cards, which contains the required number of the cards
+         * not shown and not completed, if the registry has them
+         */
+        private int candidatesLimit(final int requiredCards) {
+            final long limit = (long) prioritizedCards.size() + additionalCards.size() + completedCards.size() + requiredCards;
+            return (int) Math.min(Integer.MAX_VALUE, limit);
+        }
 
+        /**
+         * Puts the card before the first prioritized card with a lower priority.
+         */
+        private void insertPrioritizedCard(@NotNull final Card card) {
+            int position = cards.size();
+            for (int i = 0; i < cards.size(); i++) {
+                final CardPriority priority = prioritizedCards.get(cards.get(i));
+                if (priority != null && priority.compareTo(card.getCardPriority()) < 0) {
+                    position = i;
+                    break;
+                }
+            }
+            cards.add(position, card.getTitle());
+            prioritizedCards.put(card.getTitle(), card.getCardPriority());
+        }
+
+        private void removePrioritizedCard(@NotNull final String title) {
+            prioritizedCards.remove(title);
+            cards.remove(title);
+        }
+
+        private void fillFreePositions() {
+            final int freePositions = maxCardsForToday - prioritizedCards.size();
+            if (freePositions <= 0) return;
+            for (Card card : cardRegistry.getTopPrioritizedCards(candidatesLimit(freePositions))) {
+                if (prioritizedCards.size() >= maxCardsForToday) break;
+                final String title = card.getTitle();
+                if (prioritizedCards.containsKey(title) || additionalCards.contains(title) || completedCards.containsKey(title)) continue;
+                insertPrioritizedCard(card);
+                log.debug("Card: " + title + " was added for today to the free position.");
+            }
+        }
+
+        /**
+         * Applies the current state of the card in the registry to the cards for today.
+         */
+        private void refreshCard(@NotNull final String title) {
+            final Card card = findCard(title);
+            if (card == null) {
+                dropCard(title);
+                return;
+            }
+            if (additionalCards.contains(title)) return;
+            final CardPriority priority = card.getCardPriority();
+            final CardPriority completedPriority = completedCards.get(title);
+            if (completedPriority != null) {
+                if (priority.compareTo(completedPriority) <= 0) return;
+                completedCards.remove(title);
+                log.debug("Completed card: " + title + " priority was increased, so it can be taken for today again.");
+            }
+            final CardPriority shownPriority = prioritizedCards.get(title);
+            if (shownPriority != null) {
+                if (priority == shownPriority) return;
+                removePrioritizedCard(title);
+                if (priority.compareTo(shownPriority) > 0) {
+                    insertPrioritizedCard(card);
+                } else {
+                    // the card with the lowered priority can be outrun by a card which is not shown
+                    fillFreePositions();
+                }
+                log.debug("Today card: " + title + " priority was changed to: " + priority + ".");
+                return;
+            }
+            if (prioritizedCards.size() < maxCardsForToday) {
+                insertPrioritizedCard(card);
+                log.debug("Card: " + title + " was added for today.");
+                return;
+            }
+            final String lowestTitle = lowestPrioritizedCard(cards, prioritizedCards);
+            if (lowestTitle != null && priority.compareTo(prioritizedCards.get(lowestTitle)) > 0) {
+                removePrioritizedCard(lowestTitle);
+                insertPrioritizedCard(card);
+                log.debug("Card: " + title + " was added for today instead of the card: " + lowestTitle + ".");
+            }
+        }
+
+        private void dropCard(@NotNull final String title) {
+            completedCards.remove(title);
+            if (additionalCards.remove(title)) {
+                cards.remove(title);
+                log.debug("Removed card: " + title + " was removed from today.");
+            } else if (prioritizedCards.containsKey(title)) {
+                removePrioritizedCard(title);
+                log.debug("Removed card: " + title + " was removed from today.");
+                fillFreePositions();
+            }
+        }
+    }
+
+    /**
+     * @param period the period of the consistency check, or null if the cards for today are formed only once
+     */
     public ScheduledInMemoryTodayCardsService(@NotNull final ScheduledExecutorService scheduledTaskExecutor,
                                               @NotNull final CardRegistry cardRegistry,
-                                              @NotNull final TimeUnit timeUnit, @NotNull final Long period,
+                                              @NotNull final TimeUnit timeUnit, @Nullable final Long period,
                                               @NotNull final Integer maxCardsForToday) {
         this.cardRegistry = cardRegistry;
         this.maxCardsForToday = maxCardsForToday;
-        scheduledTaskExecutor.scheduleAtFixedRate(this::fillTheCardsForToday, 0, period, timeUnit);
-        log.debug("Today cards preparation schedule: once per " + period + " " + timeUnit + " was configured.");
+        if (period == null) {
+            scheduledTaskExecutor.execute(this::fillTheCardsForToday);
+            log.debug("Today cards consistency check was not configured.");
+        } else {
+            scheduledTaskExecutor.scheduleAtFixedRate(this::fillTheCardsForToday, 0, period, timeUnit);
+            log.debug("Today cards consistency check schedule: once per " + period + " " + timeUnit + " was configured.");
+        }
         log.debug("Today max cards number: " + maxCardsForToday + " was configured.");
     }
 
+    /**
+     * Applies the change to the current today cards and replaces them. The changes are applied one at a time,
+     * so the registry state read by the change is not overwritten by a change which read it before.
+     * The new version is published when the change lock is released.
+     *
+     * @return the current today cards if nothing was changed
+     */
+    @NotNull
+    private <E extends Exception> TodayCards changeTodayCards(@NotNull final TodayCardsChange<E> change) throws E {
+        final TodayCards updatedCards;
+        final boolean versionChanged;
+        synchronized (changeLock) {
+            final TodayCards currentCards = todayCards.get();
+            final MutableTodayCards changedCards = new MutableTodayCards(currentCards);
+            change.apply(changedCards);
+            if (!changedCards.isChanged()) return currentCards;
+            updatedCards = changedCards.toTodayCards();
+            todayCards.set(updatedCards);
+            versionChanged = updatedCards.versionedCards != currentCards.versionedCards;
+        }
+        if (versionChanged) publishLatest();
+        return updatedCards;
+    }
+
+    /**
+     * Publishes the latest version unless another change is publishing already, that change publishes
+     * the latest version again when it is done. So the versions are published in their order, and a slow
+     * listener holds up only the change which is publishing.
+     */
+    private void publishLatest() {
+        do {
+            if (!publishLock.tryLock()) return;
+            try {
+                final VersionedTodayCards latestCards = todayCards.get().versionedCards;
+                if (latestCards.getVersion() > publishedVersion) {
+                    publishedVersion = latestCards.getVersion();
+                    publish(latestCards);
+                }
+            } finally {
+                publishLock.unlock();
+            }
+            // the change which failed to take the lock before it was released left its version to be published here
+        } while (todayCards.get().versionedCards.getVersion() > publishedVersion);
+    }
+
+    /**
+     * The failed listener does not fail the change, which was already applied, and the other listeners.
+     */
+    private void publish(@NotNull final VersionedTodayCards cards) {
+        for (TodayCardsListener listener : listeners) {
+            try {
+                listener.onTodayCardsChanged(cards);
+            } catch (RuntimeException e) {
+                log.error(
+                        "Today cards listener: " + listener.getClass().getSimpleName()
+                                + " failed because of: " + e.getMessage() + "."
+                );
+            }
+        }
+    }
+
+    @Override
+    public void addListener(@NotNull final TodayCardsListener listener) {
+        listeners.add(listener);
+        log.debug("Today cards listener: " + listener.getClass().getSimpleName() + " was added.");
+    }
+
+    /**
+     * Forms the prioritized cards for today from the registry, unless they already are the most prioritized ones.
+     */
     void fillTheCardsForToday() {
-        log.debug("List of cards for today with a limit of: " + maxCardsForToday +" started to being formed.");
-        cardsForToday = cardRegistry.getPrioritizedCards().stream()
-                .map(Card::getTitle)
-                .limit(maxCardsForToday)
-                .peek(title -> log.debug("Card: " + title + " was added for today."))
-                .collect(Collectors.toList());
-        log.debug("Cards for today were formed with " + cardsForToday.size() + " cards.");
+        log.debug("List of cards for today with a limit of: " + maxCardsForToday + " started to being checked.");
+        final TodayCards formedCards = changeTodayCards(cards -> {
+            final List<Card> topCards = new ArrayList<>(Math.min(maxCardsForToday, 128));
+            for (Card card : cardRegistry.getTopPrioritizedCards(cards.candidatesLimit(maxCardsForToday))) {
+                if (topCards.size() == maxCardsForToday) break;
+                if (cards.additionalCards.contains(card.getTitle()) || cards.completedCards.containsKey(card.getTitle())) continue;
+                topCards.add(card);
+            }
+            if (isPrioritizedCardsConsistent(cards.prioritizedCards, topCards)) {
+                log.debug("Cards for today are consistent with the registry.");
+                return;
+            }
+            for (String title : new ArrayList<>(cards.prioritizedCards.keySet())) {
+                cards.removePrioritizedCard(title);
+            }
+            for (Card card : topCards) {
+                cards.insertPrioritizedCard(card);
+                log.debug("Card: " + card.getTitle() + " was added for today.");
+            }
+        });
+        log.debug("Cards for today were checked with " + formedCards.versionedCards.getCards().size() + " cards.");
+    }
+
+    /**
+     * The cards of the same priority are interchangeable, so only the priorities of the cards are compared.
+     */
+    private boolean isPrioritizedCardsConsistent(@NotNull final Map<String, CardPriority> prioritizedCards,
+                                                 @NotNull final List<Card> topCards) {
+        if (topCards.size() != prioritizedCards.size()) return false;
+        final Map<String, CardPriority> topPriorities = new HashMap<>(topCards.size());
+        final List<CardPriority> expectedPriorities = new ArrayList<>(topCards.size());
+        for (Card card : topCards) {
+            topPriorities.put(card.getTitle(), card.getCardPriority());
+            expectedPriorities.add(card.getCardPriority());
+        }
+        final List<CardPriority> actualPriorities = new ArrayList<>(prioritizedCards.size());
+        for (Map.Entry<String, CardPriority> prioritizedCard : prioritizedCards.entrySet()) {
+            CardPriority registryPriority = topPriorities.get(prioritizedCard.getKey());
+            if (registryPriority == null) {
+                final Card card = findCard(prioritizedCard.getKey());
+                registryPriority = card == null ? null : card.getCardPriority();
+            }
+            if (registryPriority != prioritizedCard.getValue()) return false;
+            actualPriorities.add(prioritizedCard.getValue());
+        }
+        expectedPriorities.sort(Comparator.reverseOrder());
+        actualPriorities.sort(Comparator.reverseOrder());
+        return expectedPriorities.equals(actualPriorities);
+    }
+
+    @Nullable
+    private Card findCard(@NotNull final String title) {
+        try {
+            return cardRegistry.getCard(title);
+        } catch (NotExistingCardException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the last shown prioritized card with the lowest priority, or null if there are no prioritized cards
+     */
+    @Nullable
+    private static String lowestPrioritizedCard(@NotNull final List<String> cards,
+                                                @NotNull final Map<String, CardPriority> prioritizedCards) {
+        String lowestTitle = null;
+        CardPriority lowestPriority = null;
+        for (int i = cards.size() - 1; i >= 0; i--) {
+            final String title = cards.get(i);
+            final CardPriority priority = prioritizedCards.get(title);
+            if (priority != null && (lowestPriority == null || priority.compareTo(lowestPriority) < 0)) {
+                lowestTitle = title;
+                lowestPriority = priority;
+            }
+        }
+        return lowestTitle;
+    }
+
+    @Override
+    public void onCardsCreated(@NotNull final Collection<Card> cards) {
+        changeTodayCards(changedCards -> {
+            // the cards are filtered by the change, so no other change can take the free position meanwhile
+            final TodayCards currentCards = todayCards.get();
+            // most of the new cards are not prioritized enough to be checked in the registry,
+            // the later change of a card is delivered by its own event
+            final String lowestTitle = currentCards.prioritizedCards.size() < maxCardsForToday
+                    ? null
+                    : lowestPrioritizedCard(currentCards.versionedCards.getCards(), currentCards.prioritizedCards);
+            for (Card card : cards) {
+                if (lowestTitle != null
+                        && card.getCardPriority().compareTo(currentCards.prioritizedCards.get(lowestTitle)) <= 0) continue;
+                changedCards.refreshCard(card.getTitle());
+            }
+        });
+    }
+
+    @Override
+    public void onCardsPriorityChanged(@NotNull final Collection<String> titles) {
+        changeTodayCards(changedCards -> {
+            for (String title : titles) {
+                changedCards.refreshCard(title);
+            }
+        });
+    }
+
+    @Override
+    public void onCardsRemoved(@NotNull final Collection<String> titles) {
+        changeTodayCards(changedCards -> {
+            for (String title : titles) {
+                changedCards.refreshCard(title);
+            }
+        });
     }
 
+    /**
+     * @return the read-only cards for today
+     */
     @Override
     @NotNull
     public List<String> getCardsForToday() {
-        return new ArrayList<>(cardsForToday);
+        return todayCards.get().versionedCards.getCards();
+    }
+
+    @Override
+    @NotNull
+    public VersionedTodayCards getVersionedCardsForToday() {
+        return todayCards.get().versionedCards;
     }
 
     @Override
@@ -65,14 +459,17 @@ public class ScheduledInMemoryTodayCardsService implements TodayCardsService {
             log.debug("Card with title: " + cardTitle + " is duplicated.");
             throw new CardAlreadyExistsException(cardTitle);
         }
-        final Optional<String> distinct = findFirstDistinct(cardsForToday, orderedCards);
-        if (distinct.isPresent()) {
-            final String cardTitle = distinct.get();
-            log.debug("Card with a title: " + cardTitle + " does not exist.");
-            throw new NotExistingCardException(cardTitle);
-        }
-        this.cardsForToday = orderedCards;
-        log.info("Today cards has been reshuffled with a new order: " + String.join(", ", cardsForToday) + ".");
+        changeTodayCards(cards -> {
+            final Optional<String> distinct = findFirstDistinct(cards.cards, orderedCards);
+            if (distinct.isPresent()) {
+                final String cardTitle = distinct.get();
+                log.debug("Card with a title: " + cardTitle + " does not exist.");
+                throw new NotExistingCardException(cardTitle);
+            }
+            cards.cards.clear();
+            cards.cards.addAll(orderedCards);
+        });
+        log.info("Today cards has been reshuffled with a new order: " + String.join(", ", orderedCards) + ".");
     }
 
     @Override
@@ -82,21 +479,33 @@ public class ScheduledInMemoryTodayCardsService implements TodayCardsService {
             log.debug("Card with a title: " + title + " does not exist.");
             throw new NotExistingCardException(title);
         }
-        if (cardsForToday.stream().noneMatch(card -> card.equals(title))) {
-            cardsForToday.add(title);
-            log.info("Card with title: " + title + " was added for today.");
-        } else {
+        if (todayCards.get().versionedCards.getCards().contains(title)) {
             log.debug("Card with title: " + title + " already exists in the today cards list.");
+            return;
         }
+        changeTodayCards(cards -> {
+            // the card could be taken for today meanwhile
+            if (cards.cards.contains(title)) return;
+            cards.completedCards.remove(title);
+            cards.additionalCards.add(title);
+            cards.cards.add(title);
+        });
+        log.info("Card with title: " + title + " was added for today.");
     }
 
     @Override
     public void completeCardForToday(@NotNull final String title) throws NotExistingCardException {
         log.debug("Attempt to complete today card with title: " + title + " started.");
-        if (!cardsForToday.removeIf((dayCardTitle) -> dayCardTitle.equals(title))) {
-            log.debug("Card with a title: " + title + " does not exist in the today cards list.");
-            throw new NotExistingCardException(title);
-        }
+        final CardPriority completedPriority = cardRegistry.getInitialCardPriority();
+        changeTodayCards(cards -> {
+            if (!cards.cards.remove(title)) {
+                log.debug("Card with a title: " + title + " does not exist in the today cards list.");
+                throw new NotExistingCardException(title);
+            }
+            cards.additionalCards.remove(title);
+            cards.completedCards.put(title, completedPriority);
+            if (cards.prioritizedCards.remove(title) != null) cards.fillFreePositions();
+        });
         try {
             cardRegistry.bottomCardPriority(title);
         } catch (NotExistingCardException e) {
@@ -0,0 +1,720 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.cards_tracker.error.IncorrectCardPriorityScheduleException;
+import org.cards_tracker.error.NotExistingCardException;
+import org.cards_tracker.executor.PartitionedExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Cards update scheduler based on a hierarchical timing wheel keyed by the epoch ticks.
+ * <p>
+ * The wheel is advanced by one periodic executor task per tick, no matter how many cards and schedules exist.
+ * The producers never touch the wheel: a new priority update is registered in the concurrent map of the scheduled
+ * cards and queued, the queue is moved into the wheel by the ticking task. A card priority update is cancelled
+ * by replacing or removing it in the map, the cancelled wheel entries are skipped when their slot is reached
+ * and purged once there are more of them than the scheduled cards, so the wheel size is bounded by the live cards.
+ * <p>
+ * With a journal every new and executed priority update is recorded. The priorities increased by the updates
+ * of one tick are recorded in one batch together with the moves of the updates, so a restart never executes
+ * the recorded updates again. The updates missed while the service was stopped are caught up on restore:
+ * the missed periods are counted with the calendar up to the maximum priority and applied as a few bulk
+ * priority increases, then the cards continue from their next update in the future.
+ * <p>
+ * With a spread window the priority update of every card is delayed by a stable offset within the window,
+ * which depends only on the card title. The cards of one schedule are updated at the same calendar moments,
+ * but not all at once, so neither the ticking task nor the concurrent requests are stalled on the schedule
+ * boundaries. The offset is kept between the updates: the next update is calculated from the undelayed one.
+ * <p>
+ * With the escalation workers the priorities of the updated cards are increased by the worker of every card
+ * in parallel, the ticking task waits for all of them before the cards are moved to their next updates.
+ * The workers are used only without a journal: the journalled registry logs every change under one lock,
+ * so the batch of a tick is changed by the ticking task alone.
+ */
+@SuppressWarnings("unused")
+public class TimingWheelCardsUpdateScheduler implements CardsUpdateScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(TimingWheelCardsUpdateScheduler.class);
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    // 6 levels of 64 slots cover 2^36 ticks, more than 2000 years of 1 second ticks
+    private static final int WHEEL_LEVELS = 6;
+    // the cancelled entries are purged from the wheel once they outnumber the scheduled cards and this minimum
+    private static final int CANCELLED_ENTRIES_PURGE_MIN = 1024;
+    // the priority is not increased over the maximum one, so more missed updates change nothing
+    private static final int MAX_MISSED_PRIORITY_UPDATES = CardPriority.values().length - 1;
+
+    private static final class CaughtUpUpdate {
+        private final int missedUpdates;
+        private final long nextUpdateMillis;
+
+        CaughtUpUpdate(final int missedUpdates, final long nextUpdateMillis) {
+            this.missedUpdates = missedUpdates;
+            this.nextUpdateMillis = nextUpdateMillis;
+        }
+    }
+
+    static final class WheelEntry {
+        @NotNull
+        private final String title;
+        @NotNull
+        private final CardPriorityUpdateSchedule schedule;
+        // the entry is moved to the next priority update by the ticking task instead of being allocated again
+        private volatile long nextUpdateMillis;
+        private long deadlineTick;
+
+        WheelEntry(@NotNull final String title,
+                   @NotNull final CardPriorityUpdateSchedule schedule,
+                   final long nextUpdateMillis,
+                   final long deadlineTick) {
+            this.title = title;
+            this.schedule = schedule;
+            this.nextUpdateMillis = nextUpdateMillis;
+            this.deadlineTick = deadlineTick;
+        }
+
+        void moveTo(final long nextUpdateMillis, final long deadlineTick) {
+            this.nextUpdateMillis = nextUpdateMillis;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    @NotNull
+    private final CardRegistry cardRegistry;
+    @NotNull
+    private final CardPriorityUpdateSchedule defaultPriorityUpdateSchedule;
+    @NotNull
+    private final PriorityUpdateCalendar priorityUpdateCalendar;
+    @Nullable
+    private final PriorityUpdateJournal priorityUpdateJournal;
+    @Nullable
+    private final PartitionedExecutor escalationWorkers;
+    @NotNull
+    private final Clock clock;
+    @NotNull
+    private final ZoneId zoneId;
+    private final long tickMillis;
+    // the number of the ticks the priority updates are spread over, the updates are not spread with 1
+    private final long spreadTicks;
+    // the only live priority update of every scheduled card, the wheel entries missing here are cancelled
+    @NotNull
+    private final Map<String, WheelEntry> scheduledCards = new ConcurrentHashMap<>();
+    @NotNull
+    private final Queue<WheelEntry> pendingEntries = new ConcurrentLinkedQueue<>();
+    @NotNull
+    private final AtomicInteger cancelledEntries = new AtomicInteger();
+    // accessed only by the ticking task
+    @NotNull
+    private final ArrayDeque<WheelEntry>[][] wheels;
+    private long currentTick;
+
+    public TimingWheelCardsUpdateScheduler(@NotNull final ScheduledExecutorService scheduledTasksExecutor,
+                                           @NotNull final PriorityUpdateCalendar priorityUpdateCalendar,
+                                           @NotNull final CardRegistry cardRegistry,
+                                           @NotNull final TimeUnit applicationDayTimeUnit,
+                                           @NotNull final Long updateSchedulePeriod,
+                                           final long tickMillis,
+                                           final long spreadWindowMillis) throws IncorrectCardPriorityScheduleException {
+        this(
+                scheduledTasksExecutor, priorityUpdateCalendar, cardRegistry,
+                applicationDayTimeUnit, updateSchedulePeriod,
+                tickMillis, spreadWindowMillis, null, null, Clock.systemDefaultZone()
+        );
+    }
+
+    /**
+     * @param spreadWindowMillis    the priority updates of one schedule are spread over this window, 0 to disable
+     * @param priorityUpdateJournal records the scheduled and executed priority updates to restore them after a restart
+     * @param escalationWorkers     increase the cards priorities, partitioned by the card title
+     */
+    public TimingWheelCardsUpdateScheduler(@NotNull final ScheduledExecutorService scheduledTasksExecutor,
+                                           @NotNull final PriorityUpdateCalendar priorityUpdateCalendar,
+                                           @NotNull final CardRegistry cardRegistry,
+                                           @NotNull final TimeUnit applicationDayTimeUnit,
+                                           @NotNull final Long updateSchedulePeriod,
+                                           final long tickMillis,
+                                           final long spreadWindowMillis,
+                                           @Nullable final PriorityUpdateJournal priorityUpdateJournal,
+                                           @Nullable final PartitionedExecutor escalationWorkers)
+            throws IncorrectCardPriorityScheduleException {
+        this(
+                scheduledTasksExecutor, priorityUpdateCalendar, cardRegistry,
+                applicationDayTimeUnit, updateSchedulePeriod,
+                tickMillis, spreadWindowMillis, priorityUpdateJournal, escalationWorkers, Clock.systemDefaultZone()
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    TimingWheelCardsUpdateScheduler(@NotNull final ScheduledExecutorService scheduledTasksExecutor,
+                                    @NotNull final PriorityUpdateCalendar priorityUpdateCalendar,
+                                    @NotNull final CardRegistry cardRegistry,
+                                    @NotNull final TimeUnit applicationDayTimeUnit,
+                                    @NotNull final Long updateSchedulePeriod,
+                                    final long tickMillis,
+                                    final long spreadWindowMillis,
+                                    @Nullable final PriorityUpdateJournal priorityUpdateJournal,
+                                    @Nullable final PartitionedExecutor escalationWorkers,
+                                    @NotNull final Clock clock) throws IncorrectCardPriorityScheduleException {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Timing wheel tick: " + tickMillis + " has to be positive.");
+        }
+        if (spreadWindowMillis < 0) {
+            throw new IllegalArgumentException("Priority updates spread window: " + spreadWindowMillis + " cannot be negative.");
+        }
+        this.cardRegistry = cardRegistry;
+        this.priorityUpdateCalendar = priorityUpdateCalendar;
+        this.priorityUpdateJournal = priorityUpdateJournal;
+        this.escalationWorkers = escalationWorkers;
+        this.defaultPriorityUpdateSchedule = new CardPriorityUpdateSchedule(applicationDayTimeUnit, updateSchedulePeriod);
+        this.clock = clock;
+        this.zoneId = clock.getZone();
+        this.tickMillis = tickMillis;
+        this.spreadTicks = Math.max(1, spreadWindowMillis / tickMillis);
+        this.wheels = (ArrayDeque<WheelEntry>[][]) new ArrayDeque<?>[WHEEL_LEVELS][WHEEL_SIZE];
+        for (ArrayDeque<WheelEntry>[] wheel : wheels) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheel[slot] = new ArrayDeque<>();
+            }
+        }
+        this.currentTick = Math.floorDiv(clock.millis(), tickMillis);
+        scheduledTasksExecutor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        log.debug("Default card priority update schedule: " + defaultPriorityUpdateSchedule + " was configured.");
+        log.debug("Timing wheel tick: " + tickMillis + " ms was configured.");
+        log.debug("Priority updates spread window: " + spreadTicks * tickMillis + " ms was configured.");
+    }
+
+    /**
+     * @return the stable delay of the card priority updates, a whole number of ticks within the spread window
+     */
+    public long spreadOffset(@NotNull final String title) {
+        if (spreadTicks == 1) return 0;
+        // the multiplicative hash mixes the bits of the similar titles, the title hash is the same in every run
+        return Integer.toUnsignedLong(title.hashCode() * 0x9E3779B9) % spreadTicks * tickMillis;
+    }
+
+    /**
+     * @param fromEpochMillis the previous priority update, delayed by the spread offset
+     */
+    private long nextPriorityUpdateFrom(@NotNull final CardPriorityUpdateSchedule schedule,
+                                        final long fromEpochMillis,
+                                        final long spreadOffset) {
+        return priorityUpdateCalendar.nextPriorityUpdateFrom(schedule, fromEpochMillis - spreadOffset) + spreadOffset;
+    }
+
+    private long toTick(final long epochMillis) {
+        // the tick is rounded up, so the update is never executed before its time
+        return Math.floorDiv(epochMillis + tickMillis - 1, tickMillis);
+    }
+
+    private long toEpochMillis(@NotNull final LocalDateTime time) {
+        return time.atZone(zoneId).toInstant().toEpochMilli();
+    }
+
+    @NotNull
+    private LocalDateTime toLocalDateTime(final long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), zoneId);
+    }
+
+    /**
+     * Increases the cards priorities in bulk, by the worker of every card when the workers are configured
+     * and the changes are not journalled. The journalled registry makes all the changes under one lock,
+     * so the partitions would only wait for each other there.
+     *
+     * @return the titles of the cards which were not found
+     */
+    @NotNull
+    private Set<String> increaseCardPriorities(@NotNull final List<String> titles) {
+        if (escalationWorkers == null
+                || escalationWorkers.getPartitions() == 1
+                || titles.size() == 1
+                || priorityUpdateJournal != null) {
+            return cardRegistry.increaseCardPriorities(titles);
+        }
+        final List<List<String>> partitionTitles = new ArrayList<>(escalationWorkers.getPartitions());
+        for (int partition = 0; partition < escalationWorkers.getPartitions(); partition++) {
+            partitionTitles.add(new ArrayList<>());
+        }
+        for (String title : titles) {
+            partitionTitles.get(escalationWorkers.partitionOf(title)).add(title);
+        }
+        final List<Future<Set<String>>> partitionResults = new ArrayList<>(partitionTitles.size());
+        for (int partition = 0; partition < partitionTitles.size(); partition++) {
+            final List<String> currentTitles = partitionTitles.get(partition);
+            if (currentTitles.isEmpty()) continue;
+            partitionResults.add(escalationWorkers.partition(partition).submit(
+                    () -> cardRegistry.increaseCardPriorities(currentTitles)
+            ));
+        }
+        final Set<String> missingTitles = new HashSet<>();
+        for (Future<Set<String>> partitionResult : partitionResults) {
+            try {
+                missingTitles.addAll(partitionResult.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Cards priorities increase was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(
+                        "Cards priorities were not increased because of: " + e.getCause().getMessage(), e.getCause()
+                );
+            }
+        }
+        return missingTitles;
+    }
+
+    /**
+     * Runs the changes in one journal batch, or just runs them without a journal.
+     */
+    private <T> T inJournalBatch(@NotNull final Supplier<T> changes) {
+        return priorityUpdateJournal == null ? changes.get() : priorityUpdateJournal.recordInBatch(changes);
+    }
+
+    private void recordScheduled(@NotNull final Collection<WheelEntry> entries) {
+        if (priorityUpdateJournal == null || entries.isEmpty()) return;
+        final List<ScheduledPriorityUpdate> priorityUpdates = new ArrayList<>(entries.size());
+        for (WheelEntry entry : entries) {
+            priorityUpdates.add(new ScheduledPriorityUpdate(
+                    entry.title, entry.schedule, toLocalDateTime(entry.nextUpdateMillis)
+            ));
+        }
+        try {
+            priorityUpdateJournal.recordPriorityUpdatesScheduled(priorityUpdates);
+        } catch (RuntimeException e) {
+            // the schedule is still kept in memory and gets persisted with the next snapshot
+            log.error(priorityUpdates.size() + " cards priority updates were not recorded because of: " + e.getMessage() + ".");
+        }
+    }
+
+    private void recordMoved(@NotNull final CardPriorityUpdateSchedule schedule,
+                             final long fromEpochMillis,
+                             final long spreadOffset,
+                             final long nextUpdateEpochMillis) {
+        if (priorityUpdateJournal == null) return;
+        try {
+            priorityUpdateJournal.recordPriorityUpdatesMoved(
+                    schedule, toLocalDateTime(fromEpochMillis), spreadOffset, toLocalDateTime(nextUpdateEpochMillis)
+            );
+        } catch (RuntimeException e) {
+            // the schedule is still kept in memory and gets persisted with the next snapshot
+            log.error(
+                    "Cards priority updates with schedule: " + schedule + " moved from: " + fromEpochMillis
+                            + " ms were not recorded because of: " + e.getMessage() + "."
+            );
+        }
+    }
+
+    @Override
+    public void scheduleDefaultPriorityUpdate(@NotNull final String title) throws NotExistingCardException {
+        scheduleCardPriorityUpdateFrom(clock.millis(), title, defaultPriorityUpdateSchedule);
+    }
+
+    @Override
+    public void schedulePriorityUpdate(@NotNull final String title,
+                                       @NotNull final CardPriorityUpdateSchedule priorityUpdateSchedule)
+            throws NotExistingCardException {
+        scheduleCardPriorityUpdateFrom(clock.millis(), title, priorityUpdateSchedule);
+    }
+
+    void scheduleCardPriorityUpdateFrom(final long fromEpochMillis,
+                                        @NotNull final String title,
+                                        @NotNull final CardPriorityUpdateSchedule priorityUpdateSchedule)
+            throws NotExistingCardException {
+        log.debug("Attempt to schedule a card: " + title + " priority update started at: " + fromEpochMillis + " ms.");
+        if (!cardRegistry.isCardExist(title)) {
+            log.debug("Card: " + title + " was not found to schedule a priority update.");
+            throw new NotExistingCardException(title);
+        }
+        final long nextPriorityUpdate = priorityUpdateCalendar.nextPriorityUpdateFrom(priorityUpdateSchedule, fromEpochMillis)
+                + spreadOffset(title);
+        final WheelEntry entry = new WheelEntry(title, priorityUpdateSchedule, nextPriorityUpdate, toTick(nextPriorityUpdate));
+        addToSchedule(entry);
+        recordScheduled(List.of(entry));
+        log.info("Card: " + title + " priority update was scheduled.");
+    }
+
+    /**
+     * Replaces the previous priority update of the card, if any, and queues the entry for the wheel.
+     */
+    private void addToSchedule(@NotNull final WheelEntry entry) {
+        if (scheduledCards.put(entry.title, entry) != null) {
+            cancelledEntries.incrementAndGet();
+        }
+        pendingEntries.add(entry);
+        log.debug("Card with title: " + entry.title + " was scheduled to execute at: " + entry.nextUpdateMillis + " ms.");
+    }
+
+    @Override
+    @NotNull
+    public Set<String> scheduleDefaultPriorityUpdates(@NotNull final Collection<String> titles) {
+        return schedulePriorityUpdates(titles, defaultPriorityUpdateSchedule);
+    }
+
+    @Override
+    @NotNull
+    public Set<String> schedulePriorityUpdates(@NotNull final Collection<String> titles,
+                                               @NotNull final CardPriorityUpdateSchedule priorityUpdateSchedule) {
+        final long from = clock.millis();
+        log.debug("Attempt to schedule " + titles.size() + " cards priority updates started at: " + from + " ms.");
+        final long nextPriorityUpdate = priorityUpdateCalendar.nextPriorityUpdateFrom(priorityUpdateSchedule, from);
+        final Set<String> missingTitles = new HashSet<>();
+        final List<WheelEntry> scheduledEntries = new ArrayList<>(titles.size());
+        for (String title : titles) {
+            if (cardRegistry.isCardExist(title)) {
+                final long spreadPriorityUpdate = nextPriorityUpdate + spreadOffset(title);
+                final WheelEntry entry = new WheelEntry(
+                        title, priorityUpdateSchedule, spreadPriorityUpdate, toTick(spreadPriorityUpdate)
+                );
+                addToSchedule(entry);
+                scheduledEntries.add(entry);
+            } else {
+                missingTitles.add(title);
+            }
+        }
+        recordScheduled(scheduledEntries);
+        log.info((titles.size() - missingTitles.size()) + " cards priority updates were scheduled.");
+        return missingTitles;
+    }
+
+    @Override
+    public void unschedulePriorityUpdate(@NotNull final String title) {
+        if (scheduledCards.remove(title) != null) {
+            cancelledEntries.incrementAndGet();
+            log.info("Card: " + title + " priority update was unscheduled.");
+        }
+    }
+
+    @Override
+    public void unschedulePriorityUpdates(@NotNull final Collection<String> titles) {
+        log.debug("Attempt to unschedule " + titles.size() + " cards priority updates started.");
+        int unscheduledCards = 0;
+        for (String title : titles) {
+            if (scheduledCards.remove(title) != null) unscheduledCards++;
+        }
+        cancelledEntries.addAndGet(unscheduledCards);
+        log.info(unscheduledCards + " cards priority updates were unscheduled.");
+    }
+
+    @Override
+    @NotNull
+    public List<ScheduledPriorityUpdate> getScheduledPriorityUpdates() {
+        final List<ScheduledPriorityUpdate> priorityUpdates = new ArrayList<>(scheduledCards.size());
+        for (WheelEntry entry : scheduledCards.values()) {
+            priorityUpdates.add(new ScheduledPriorityUpdate(
+                    entry.title, entry.schedule, toLocalDateTime(entry.nextUpdateMillis)
+            ));
+        }
+        return priorityUpdates;
+    }
+
+    @Override
+    public void restorePriorityUpdates(@NotNull final Collection<ScheduledPriorityUpdate> priorityUpdates) {
+        final long now = clock.millis();
+        // the cards created while the schedule is restored are already scheduled
+        final Set<String> restoredCards = new HashSet<>(scheduledCards.keySet());
+        final int alreadyScheduledCards = restoredCards.size();
+        // the overdue updates are grouped by the schedule and the time, the missed periods are counted once per group
+        final Map<CardPriorityUpdateSchedule, Map<Long, List<String>>> overdueUpdates = new HashMap<>();
+        for (ScheduledPriorityUpdate priorityUpdate : priorityUpdates) {
+            final String title = priorityUpdate.getTitle();
+            if (restoredCards.contains(title)) continue;
+            if (!cardRegistry.isCardExist(title)) {
+                log.debug("Card: " + title + " was not found to restore a priority update.");
+                continue;
+            }
+            final long nextPriorityUpdate = toEpochMillis(priorityUpdate.getNextUpdate());
+            if (nextPriorityUpdate <= now) {
+                overdueUpdates
+                        .computeIfAbsent(priorityUpdate.getSchedule(), schedule -> new TreeMap<>())
+                        .computeIfAbsent(nextPriorityUpdate, from -> new ArrayList<>())
+                        .add(title);
+            } else {
+                addToSchedule(new WheelEntry(title, priorityUpdate.getSchedule(), nextPriorityUpdate, toTick(nextPriorityUpdate)));
+            }
+            restoredCards.add(title);
+        }
+        catchUpOverdueUpdates(overdueUpdates, now);
+        final long nextDefaultPriorityUpdate =
+                priorityUpdateCalendar.nextPriorityUpdateFrom(defaultPriorityUpdateSchedule, now);
+        final List<WheelEntry> defaultEntries = new ArrayList<>();
+        for (Card card : cardRegistry.getAllCards()) {
+            if (restoredCards.contains(card.getTitle())) continue;
+            final long spreadPriorityUpdate = nextDefaultPriorityUpdate + spreadOffset(card.getTitle());
+            final WheelEntry entry = new WheelEntry(
+                    card.getTitle(), defaultPriorityUpdateSchedule, spreadPriorityUpdate, toTick(spreadPriorityUpdate)
+            );
+            addToSchedule(entry);
+            defaultEntries.add(entry);
+        }
+        recordScheduled(defaultEntries);
+        log.info(
+                (restoredCards.size() - alreadyScheduledCards) + " card priority updates were restored, "
+                        + defaultEntries.size() + " cards got the default priority update."
+        );
+    }
+
+    /**
+     * Applies the priority updates missed while the service was stopped in one bulk priority increase
+     * per missed period, then schedules the cards from their first update in the future,
+     * so the overdue updates are not executed one by one on the next ticks.
+     */
+    private void catchUpOverdueUpdates(@NotNull final Map<CardPriorityUpdateSchedule, Map<Long, List<String>>> overdueUpdates,
+                                       final long now) {
+        if (overdueUpdates.isEmpty()) return;
+        // the titles of the cards which missed at least the index + 1 updates
+        final List<List<String>> titlesByMissedUpdates = new ArrayList<>(MAX_MISSED_PRIORITY_UPDATES);
+        for (int i = 0; i < MAX_MISSED_PRIORITY_UPDATES; i++) {
+            titlesByMissedUpdates.add(new ArrayList<>());
+        }
+        final List<WheelEntry> caughtUpEntries = new ArrayList<>();
+        for (Map.Entry<CardPriorityUpdateSchedule, Map<Long, List<String>>> scheduleUpdates : overdueUpdates.entrySet()) {
+            final CardPriorityUpdateSchedule schedule = scheduleUpdates.getKey();
+            for (Map.Entry<Long, List<String>> timeUpdates : scheduleUpdates.getValue().entrySet()) {
+                final long from = timeUpdates.getKey();
+                // the cards of one group have the same spread offset, unless the spread window was changed
+                final Map<Long, CaughtUpUpdate> caughtUpUpdates = new HashMap<>();
+                for (String title : timeUpdates.getValue()) {
+                    final CaughtUpUpdate caughtUpUpdate = caughtUpUpdates.computeIfAbsent(
+                            spreadOffset(title), spreadOffset -> catchUp(schedule, from, spreadOffset, now)
+                    );
+                    for (int i = 0; i < Math.min(caughtUpUpdate.missedUpdates, MAX_MISSED_PRIORITY_UPDATES); i++) {
+                        titlesByMissedUpdates.get(i).add(title);
+                    }
+                    caughtUpEntries.add(new WheelEntry(
+                            title, schedule, caughtUpUpdate.nextUpdateMillis, toTick(caughtUpUpdate.nextUpdateMillis)
+                    ));
+                }
+            }
+        }
+        // the increased priorities and the caught up updates are recorded in one batch,
+        // so the catch-up is not repeated after a restart
+        final Set<String> missingTitles = inJournalBatch(() -> {
+            final Set<String> batchMissingTitles = new HashSet<>();
+            for (List<String> titles : titlesByMissedUpdates) {
+                if (titles.isEmpty()) break;
+                titles.removeAll(batchMissingTitles);
+                batchMissingTitles.addAll(increaseCardPriorities(titles));
+            }
+            final List<WheelEntry> scheduledEntries = new ArrayList<>(caughtUpEntries.size());
+            for (WheelEntry entry : caughtUpEntries) {
+                if (batchMissingTitles.contains(entry.title)) continue;
+                addToSchedule(entry);
+                scheduledEntries.add(entry);
+            }
+            recordScheduled(scheduledEntries);
+            return batchMissingTitles;
+        });
+        log.info(
+                caughtUpEntries.size() + " overdue card priority updates were caught up, "
+                        + missingTitles.size() + " of their cards were not found."
+        );
+    }
+
+    /**
+     * Counts the missed updates only up to the ones which still change the priority, then jumps straight
+     * to the first update after now, so a long downtime with a short schedule period costs the same.
+     */
+    @NotNull
+    private CaughtUpUpdate catchUp(@NotNull final CardPriorityUpdateSchedule schedule,
+                                   final long fromEpochMillis,
+                                   final long spreadOffset,
+                                   final long now) {
+        int missedUpdates = 0;
+        long nextPriorityUpdate = fromEpochMillis;
+        while (nextPriorityUpdate <= now && missedUpdates < MAX_MISSED_PRIORITY_UPDATES) {
+            nextPriorityUpdate = nextPriorityUpdateFrom(schedule, nextPriorityUpdate, spreadOffset);
+            missedUpdates++;
+        }
+        if (nextPriorityUpdate <= now) {
+            // the rest of the missed updates change nothing, the cards continue as the ones scheduled at now
+            nextPriorityUpdate = nextPriorityUpdateFrom(schedule, now, spreadOffset);
+        }
+        log.debug(
+                "Cards with schedule: " + schedule + " missed " + missedUpdates
+                        + " priority updates since: " + fromEpochMillis + " ms."
+        );
+        return new CaughtUpUpdate(missedUpdates, nextPriorityUpdate);
+    }
+
+    private void tick() {
+        try {
+            advanceTo(clock.millis());
+        } catch (RuntimeException e) {
+            // the periodic task is never executed again after a failure, so the error is only logged
+            log.error("Timing wheel tick failed because of: " + e.getMessage() + ".", e);
+        }
+    }
+
+    /**
+     * Advances the wheel tick by tick up to the time, the ticks missed by a late executor are caught up.
+     */
+    synchronized void advanceTo(final long epochMillis) {
+        final long targetTick = Math.floorDiv(epochMillis, tickMillis);
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+            transferPendingEntries();
+            expireCurrentSlot();
+        }
+        final int cancelled = cancelledEntries.get();
+        if (cancelled > CANCELLED_ENTRIES_PURGE_MIN && cancelled > scheduledCards.size()) {
+            purgeCancelledEntries();
+        }
+    }
+
+    private void purgeCancelledEntries() {
+        // the entries cancelled during the purge are counted for the next one
+        final int cancelled = cancelledEntries.getAndSet(0);
+        int purgedEntries = 0;
+        for (ArrayDeque<WheelEntry>[] wheel : wheels) {
+            for (ArrayDeque<WheelEntry> slot : wheel) {
+                final int slotSize = slot.size();
+                slot.removeIf(entry -> !isScheduled(entry));
+                purgedEntries += slotSize - slot.size();
+            }
+        }
+        log.debug(purgedEntries + " of " + cancelled + " cancelled cards priority updates were purged.");
+    }
+
+    /**
+     * Moves the entries of the upper level slots reached by the current tick to the lower levels.
+     */
+    private void cascade() {
+        for (int level = 1; level < WHEEL_LEVELS; level++) {
+            final int shift = WHEEL_BITS * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) return;
+            final ArrayDeque<WheelEntry> slot = wheels[level][(int) ((currentTick >>> shift) & WHEEL_MASK)];
+            // the entries of the top level far in the future can be placed into the same slot again
+            for (int entries = slot.size(); entries > 0; entries--) {
+                final WheelEntry entry = slot.poll();
+                if (isScheduled(entry)) place(entry, currentTick);
+            }
+        }
+    }
+
+    private void transferPendingEntries() {
+        WheelEntry entry;
+        while ((entry = pendingEntries.poll()) != null) {
+            if (isScheduled(entry)) place(entry, currentTick);
+        }
+    }
+
+    /**
+     * @param earliestTick the tick of the overdue entries, the current tick or the next one
+     *                     when the current slot is being expired
+     */
+    private void place(@NotNull final WheelEntry entry, final long earliestTick) {
+        final long delay = entry.deadlineTick - currentTick;
+        if (delay < WHEEL_SIZE) {
+            wheels[0][(int) (Math.max(entry.deadlineTick, earliestTick) & WHEEL_MASK)].add(entry);
+            return;
+        }
+        int level = 1;
+        while (level < WHEEL_LEVELS - 1 && delay >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        wheels[level][(int) ((entry.deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK)].add(entry);
+    }
+
+    private boolean isScheduled(@NotNull final WheelEntry entry) {
+        return scheduledCards.get(entry.title) == entry;
+    }
+
+    /**
+     * @return the number of the entries in the wheel, including the cancelled ones
+     */
+    synchronized int getWheelSize() {
+        int wheelSize = 0;
+        for (ArrayDeque<WheelEntry>[] wheel : wheels) {
+            for (ArrayDeque<WheelEntry> slot : wheel) {
+                wheelSize += slot.size();
+            }
+        }
+        return wheelSize;
+    }
+
+    private void expireCurrentSlot() {
+        final ArrayDeque<WheelEntry> slot = wheels[0][(int) (currentTick & WHEEL_MASK)];
+        if (slot.isEmpty()) return;
+        log.debug("Cards sync started at tick: " + currentTick + " for " + slot.size() + " cards.");
+        final List<WheelEntry> firedEntries = new ArrayList<>(slot.size());
+        final List<String> firedTitles = new ArrayList<>(slot.size());
+        for (int entries = slot.size(); entries > 0; entries--) {
+            final WheelEntry entry = slot.poll();
+            if (isScheduled(entry)) {
+                firedEntries.add(entry);
+                firedTitles.add(entry.title);
+            }
+        }
+        if (firedEntries.isEmpty()) return;
+        final Set<String> missingTitles;
+        try {
+            // the priorities and the moves of the updates are recorded in one batch, and the entries are moved
+            // inside it, so a snapshot never keeps the increased priorities with the updates not moved yet
+            missingTitles = inJournalBatch(() -> {
+                final Set<String> batchMissingTitles = increaseCardPriorities(firedTitles);
+                moveFiredEntries(firedEntries, batchMissingTitles);
+                return batchMissingTitles;
+            });
+        } catch (RuntimeException e) {
+            // the polled entries are kept: the moved ones wait for their next update, the others are retried
+            for (WheelEntry entry : firedEntries) {
+                place(entry, currentTick + 1);
+            }
+            throw e;
+        }
+        for (WheelEntry entry : firedEntries) {
+            if (missingTitles.contains(entry.title)) {
+                log.debug("Unable to update card " + entry.title + " priority, because it was not found.");
+                scheduledCards.remove(entry.title, entry);
+                continue;
+            }
+            // the card could be scheduled again or unscheduled meanwhile, then the entry is skipped later
+            place(entry, currentTick + 1);
+        }
+        log.info("Cards sync started at tick: " + currentTick + " was completed.");
+    }
+
+    /**
+     * Moves the entries of the found cards to their next updates and records the moves.
+     */
+    private void moveFiredEntries(@NotNull final List<WheelEntry> firedEntries, @NotNull final Set<String> missingTitles) {
+        // the entries of one bulk schedule are adjacent, so the next update is calculated once for all of them
+        CardPriorityUpdateSchedule schedule = null;
+        long from = 0;
+        long spreadOffset = 0;
+        long nextPriorityUpdate = 0;
+        for (WheelEntry entry : firedEntries) {
+            if (missingTitles.contains(entry.title)) continue;
+            final long entrySpreadOffset = spreadOffset(entry.title);
+            if (!entry.schedule.equals(schedule) || entry.nextUpdateMillis != from || entrySpreadOffset != spreadOffset) {
+                schedule = entry.schedule;
+                from = entry.nextUpdateMillis;
+                spreadOffset = entrySpreadOffset;
+                nextPriorityUpdate = nextPriorityUpdateFrom(schedule, from, spreadOffset);
+                recordMoved(schedule, from, spreadOffset, nextPriorityUpdate);
+            }
+            entry.moveTo(nextPriorityUpdate, toTick(nextPriorityUpdate));
+        }
+    }
+}
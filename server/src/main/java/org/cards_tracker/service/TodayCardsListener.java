@@ -0,0 +1,16 @@
+package org.cards_tracker.service;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives the new version of the cards for today after it replaced the previous one.
+ * <p>
+ * The versions are delivered one at a time and in their order by the thread of a change after the change
+ * was applied. The versions replaced by the concurrent changes meanwhile are delivered by the same thread,
+ * only the latest of them, so the listener can miss the intermediate versions but always gets the latest one.
+ * The slow listener delays the delivery of the next versions, but not the changes of the cards for today.
+ */
+public interface TodayCardsListener {
+
+    void onTodayCardsChanged(@NotNull final VersionedTodayCards cards);
+}
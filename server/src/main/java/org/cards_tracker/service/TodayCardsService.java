@@ -12,6 +12,14 @@ public interface TodayCardsService {
     @NotNull
     List<String> getCardsForToday();
 
+    /**
+     * @return the cards for today with their version, read at once
+     */
+    @NotNull
+    VersionedTodayCards getVersionedCardsForToday();
+
+    void addListener(@NotNull final TodayCardsListener listener);
+
     void reshuffleTodayCards(@NotNull final List<String> todayCards) throws NotExistingCardException, CardAlreadyExistsException;
 
     void completeCardForToday(final @NotNull String title) throws NotExistingCardException;
@@ -0,0 +1,37 @@
+package org.cards_tracker.service;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * The cards for today with the version, which is increased on every change of the cards or their order.
+ */
+public class VersionedTodayCards {
+
+    private final long version;
+    @NotNull
+    private final List<String> cards;
+
+    public VersionedTodayCards(final long version, @NotNull final List<String> cards) {
+        this.version = version;
+        this.cards = cards;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @NotNull
+    public List<String> getCards() {
+        return cards;
+    }
+
+    @Override
+    public String toString() {
+        return "VersionedTodayCards{" +
+                "version=" + version +
+                ", cards=" + cards +
+                '}';
+    }
+}
@@ -0,0 +1,116 @@
+package org.cards_tracker.storage;
+
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.cards_tracker.error.IncorrectCardPriorityScheduleException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Point-in-time image of the card registry and the scheduled priority updates in the first snapshot format,
+ * which is only read to upgrade the existing storages: the new snapshots are {@link MappedCardsSnapshot}.
+ * <p>
+ * The file is a sequence of tagged entries (cards and scheduled updates) closed by the end tag
+ * and the CRC32 of all the preceding bytes.
+ */
+class CardsSnapshot {
+
+    private static final int MAGIC = 0x43534E50;
+    static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final byte END_TAG = 0;
+    private static final byte CARD_TAG = 1;
+    private static final byte SCHEDULED_UPDATE_TAG = 2;
+
+    private static final CardPriority[] PRIORITIES = CardPriority.values();
+    private static final TimeUnit[] TIME_UNITS = TimeUnit.values();
+
+    /**
+     * @return the format version of the snapshot file, either this one or the memory-mapped one
+     */
+    static int readVersion(@NotNull final Path snapshotFile) throws IOException {
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(snapshotFile, StandardOpenOption.READ))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("File: " + snapshotFile + " is not a cards snapshot");
+            }
+            return input.readInt();
+        } catch (EOFException e) {
+            throw new IOException("Cards snapshot: " + snapshotFile + " is incomplete", e);
+        }
+    }
+
+    static void read(@NotNull final Path snapshotFile,
+                     @NotNull final LogRecordHandler recoveryHandler) throws IOException {
+        final CRC32 checksum = new CRC32();
+        try (DataInputStream input = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotFile, StandardOpenOption.READ), BUFFER_SIZE),
+                checksum))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("File: " + snapshotFile + " is not a supported cards snapshot");
+            }
+            byte tag;
+            while ((tag = input.readByte()) != END_TAG) {
+                switch (tag) {
+                    case CARD_TAG:
+                        final int priority = input.readUnsignedByte();
+                        if (priority >= PRIORITIES.length) {
+                            throw new IOException("Cards snapshot: " + snapshotFile + " has an unknown card priority");
+                        }
+                        recoveryHandler.onCardCreated(readString(input), PRIORITIES[priority]);
+                        break;
+                    case SCHEDULED_UPDATE_TAG:
+                        recoveryHandler.onPriorityUpdateScheduled(readScheduledUpdate(snapshotFile, input));
+                        break;
+                    default:
+                        throw new IOException("Cards snapshot: " + snapshotFile + " has an unknown entry: " + tag);
+                }
+            }
+            final int actualChecksum = (int) checksum.getValue();
+            if (input.readInt() != actualChecksum) {
+                throw new IOException("Cards snapshot: " + snapshotFile + " is corrupted");
+            }
+        } catch (EOFException e) {
+            throw new IOException("Cards snapshot: " + snapshotFile + " is incomplete", e);
+        }
+    }
+
+    @NotNull
+    private static ScheduledPriorityUpdate readScheduledUpdate(@NotNull final Path snapshotFile,
+                                                               @NotNull final DataInputStream input) throws IOException {
+        final String title = readString(input);
+        final int timeUnit = input.readUnsignedByte();
+        final long period = input.readLong();
+        final LocalDateTime nextUpdate = LocalDateTime.ofEpochSecond(input.readLong(), input.readInt(), ZoneOffset.UTC);
+        if (timeUnit >= TIME_UNITS.length) {
+            throw new IOException("Cards snapshot: " + snapshotFile + " has an unknown schedule time unit");
+        }
+        try {
+            return new ScheduledPriorityUpdate(
+                    title, new CardPriorityUpdateSchedule(TIME_UNITS[timeUnit], period), nextUpdate
+            );
+        } catch (IncorrectCardPriorityScheduleException e) {
+            throw new IOException("Cards snapshot: " + snapshotFile + " has an incorrect schedule", e);
+        }
+    }
+
+    @NotNull
+    private static String readString(@NotNull final DataInputStream input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) throw new IOException("Incorrect string length: " + length);
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
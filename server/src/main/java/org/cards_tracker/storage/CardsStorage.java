@@ -0,0 +1,314 @@
+package org.cards_tracker.storage;
+
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage directory of the card registry: a sequence of numbered log segments and the snapshots.
+ * <p>
+ * A snapshot with the sequence N contains the state which, together with the records of the
+ * log segments starting from N, restores the registry. The snapshot is taken after the writers
+ * were switched to the segment N, so the image may already contain some changes of the segment N:
+ * replaying them again is safe, because every record sets the resulting state of a card.
+ */
+public class CardsStorage implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(CardsStorage.class);
+
+    private static final String LEGACY_LOG_FILE_NAME = "cards.log";
+    private static final String FILE_PREFIX = "cards-";
+    private static final String LOG_FILE_SUFFIX = ".log";
+    private static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    private static final LogRecordHandler NO_RECORDS_HANDLER = new LogRecordHandler() {
+        @Override
+        public void onCardCreated(@NotNull final String title, @NotNull final CardPriority priority) {
+        }
+
+        @Override
+        public void onCardUpdated(@NotNull final String title, @NotNull final CardPriority priority) {
+        }
+
+        @Override
+        public void onCardRemoved(@NotNull final String title) {
+        }
+
+        @Override
+        public void onPriorityUpdateScheduled(@NotNull final ScheduledPriorityUpdate priorityUpdate) {
+        }
+
+        @Override
+        public void onPriorityUpdatesMoved(@NotNull final CardPriorityUpdateSchedule schedule,
+                                           @NotNull final LocalDateTime from,
+                                           final long spreadOffsetMillis,
+                                           @NotNull final LocalDateTime nextUpdate) {
+        }
+    };
+
+    @NotNull
+    private final Path storageDirectory;
+    @NotNull
+    private final FsyncPolicy fsyncPolicy;
+    private final long flushIntervalMillis;
+    private final long groupCommitDelayMicros;
+    @NotNull
+    private volatile CardsWriteAheadLog currentLog;
+    private volatile long currentSequence;
+    @Nullable
+    private final MappedCardsSnapshot recoveredSnapshot;
+
+    private CardsStorage(@NotNull final Path storageDirectory,
+                         @NotNull final FsyncPolicy fsyncPolicy,
+                         final long flushIntervalMillis,
+                         final long groupCommitDelayMicros,
+                         @NotNull final CardsWriteAheadLog currentLog,
+                         final long currentSequence,
+                         @Nullable final MappedCardsSnapshot recoveredSnapshot) {
+        this.storageDirectory = storageDirectory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.groupCommitDelayMicros = groupCommitDelayMicros;
+        this.currentLog = currentLog;
+        this.currentSequence = currentSequence;
+        this.recoveredSnapshot = recoveredSnapshot;
+    }
+
+    /**
+     * Opens the storage directory, restoring all the log segments written after the latest snapshot
+     * into the recovery handler. The latest snapshot is memory-mapped and available with
+     * {@link #getRecoveredSnapshot()}, the snapshots of the first format are restored into the handler too.
+     */
+    @NotNull
+    public static CardsStorage open(@NotNull final Path storageDirectory,
+                                    @NotNull final FsyncPolicy fsyncPolicy,
+                                    final long flushIntervalMillis,
+                                    final long groupCommitDelayMicros,
+                                    @NotNull final LogRecordHandler recoveryHandler) throws IOException {
+        Files.createDirectories(storageDirectory);
+        final Path legacyLog = storageDirectory.resolve(LEGACY_LOG_FILE_NAME);
+        if (Files.exists(legacyLog) && listSequences(storageDirectory, LOG_FILE_SUFFIX).isEmpty()) {
+            Files.move(legacyLog, logPath(storageDirectory, 0));
+            log.info("Cards log: " + legacyLog + " was converted into the first log segment.");
+        }
+        deleteTemporaryFiles(storageDirectory);
+
+        final TreeSet<Long> snapshotSequences = listSequences(storageDirectory, SNAPSHOT_FILE_SUFFIX);
+        long startSequence = 0;
+        MappedCardsSnapshot recoveredSnapshot = null;
+        if (!snapshotSequences.isEmpty()) {
+            startSequence = snapshotSequences.last();
+            final long startedAt = System.currentTimeMillis();
+            final Path snapshotFile = snapshotPath(storageDirectory, startSequence);
+            if (CardsSnapshot.readVersion(snapshotFile) == CardsSnapshot.VERSION) {
+                CardsSnapshot.read(snapshotFile, recoveryHandler);
+            } else {
+                recoveredSnapshot = MappedCardsSnapshot.open(snapshotFile);
+            }
+            log.info(
+                    "Cards snapshot: " + startSequence + " was restored in "
+                            + (System.currentTimeMillis() - startedAt) + " ms."
+            );
+        }
+        final List<Long> segmentSequences = listSequences(storageDirectory, LOG_FILE_SUFFIX)
+                .tailSet(startSequence, true).stream()
+                .collect(Collectors.toList());
+        long expectedSequence = startSequence;
+        for (Long segmentSequence : segmentSequences) {
+            if (segmentSequence != expectedSequence) {
+                throw new IOException("Cards log segment: " + expectedSequence + " is missing in: " + storageDirectory);
+            }
+            expectedSequence++;
+        }
+        final long currentSequence = segmentSequences.isEmpty()
+                ? startSequence
+                : segmentSequences.get(segmentSequences.size() - 1);
+        for (Long segmentSequence : segmentSequences) {
+            if (segmentSequence != currentSequence) {
+                CardsWriteAheadLog.replay(logPath(storageDirectory, segmentSequence), recoveryHandler);
+            }
+        }
+        final CardsWriteAheadLog currentLog = CardsWriteAheadLog.open(
+                logPath(storageDirectory, currentSequence),
+                fsyncPolicy, flushIntervalMillis, groupCommitDelayMicros, 0L,
+                recoveryHandler
+        );
+        deleteObsoleteFiles(storageDirectory, startSequence);
+        return new CardsStorage(
+                storageDirectory, fsyncPolicy, flushIntervalMillis, groupCommitDelayMicros,
+                currentLog, currentSequence, recoveredSnapshot
+        );
+    }
+
+    /**
+     * @return the memory-mapped snapshot the storage was opened with, the log records restored
+     * into the recovery handler were written after it
+     */
+    @Nullable
+    public MappedCardsSnapshot getRecoveredSnapshot() {
+        return recoveredSnapshot;
+    }
+
+    @NotNull
+    private static Path logPath(@NotNull final Path storageDirectory, final long sequence) {
+        return storageDirectory.resolve(String.format("%s%020d%s", FILE_PREFIX, sequence, LOG_FILE_SUFFIX));
+    }
+
+    @NotNull
+    private static Path snapshotPath(@NotNull final Path storageDirectory, final long sequence) {
+        return storageDirectory.resolve(String.format("%s%020d%s", FILE_PREFIX, sequence, SNAPSHOT_FILE_SUFFIX));
+    }
+
+    @Nullable
+    private static Long parseSequence(@NotNull final Path file, @NotNull final String suffix) {
+        final String fileName = file.getFileName().toString();
+        if (!fileName.startsWith(FILE_PREFIX) || !fileName.endsWith(suffix)) return null;
+        try {
+            return Long.parseLong(fileName.substring(FILE_PREFIX.length(), fileName.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @NotNull
+    private static TreeSet<Long> listSequences(@NotNull final Path storageDirectory,
+                                               @NotNull final String suffix) throws IOException {
+        final TreeSet<Long> sequences = new TreeSet<>();
+        try (Stream<Path> files = Files.list(storageDirectory)) {
+            files.forEach(file -> {
+                final Long sequence = parseSequence(file, suffix);
+                if (sequence != null) sequences.add(sequence);
+            });
+        }
+        return sequences;
+    }
+
+    private static void deleteTemporaryFiles(@NotNull final Path storageDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(storageDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(TEMPORARY_FILE_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static void deleteObsoleteFiles(@NotNull final Path storageDirectory,
+                                            final long firstRequiredSequence) throws IOException {
+        try (Stream<Path> files = Files.list(storageDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Long sequence = parseSequence(file, LOG_FILE_SUFFIX);
+                if (sequence == null) sequence = parseSequence(file, SNAPSHOT_FILE_SUFFIX);
+                if (sequence != null && sequence < firstRequiredSequence) {
+                    Files.deleteIfExists(file);
+                    log.debug("Obsolete cards storage file: " + file + " was deleted.");
+                }
+            }
+        }
+    }
+
+    public long appendCardCreated(@NotNull final String title, @NotNull final CardPriority priority) throws IOException {
+        return currentLog.appendCardCreated(title, priority);
+    }
+
+    public long appendCardUpdated(@NotNull final String title, @NotNull final CardPriority priority) throws IOException {
+        return currentLog.appendCardUpdated(title, priority);
+    }
+
+    public long appendCardRemoved(@NotNull final String title) throws IOException {
+        return currentLog.appendCardRemoved(title);
+    }
+
+    public long appendPriorityUpdateScheduled(@NotNull final ScheduledPriorityUpdate priorityUpdate) throws IOException {
+        return currentLog.appendPriorityUpdateScheduled(priorityUpdate);
+    }
+
+    public long appendPriorityUpdatesMoved(@NotNull final CardPriorityUpdateSchedule schedule,
+                                           @NotNull final LocalDateTime from,
+                                           final long spreadOffsetMillis,
+                                           @NotNull final LocalDateTime nextUpdate) throws IOException {
+        return currentLog.appendPriorityUpdatesMoved(schedule, from, spreadOffsetMillis, nextUpdate);
+    }
+
+    public void awaitDurable(final long position) throws IOException {
+        currentLog.awaitDurable(position);
+    }
+
+    /**
+     * @return true if any change was recorded since the latest log segment was started
+     */
+    public boolean hasChangesSinceSnapshot() {
+        return currentLog.hasAppendedRecords();
+    }
+
+    /**
+     * Switches the writers to the next log segment. The caller has to make sure no records are appended
+     * while the log is being rolled.
+     *
+     * @return the sequence of the new log segment, which the next snapshot has to be written for
+     */
+    public long rollLog() throws IOException {
+        final CardsWriteAheadLog previousLog = currentLog;
+        final long nextSequence = currentSequence + 1;
+        // the previous segment is forced completely, so every position it returned is already durable
+        previousLog.close();
+        currentLog = CardsWriteAheadLog.open(
+                logPath(storageDirectory, nextSequence),
+                fsyncPolicy, flushIntervalMillis, groupCommitDelayMicros, previousLog.getAppendedPosition(),
+                NO_RECORDS_HANDLER
+        );
+        currentSequence = nextSequence;
+        log.debug("Cards log was rolled to the segment: " + nextSequence + ".");
+        return nextSequence;
+    }
+
+    /**
+     * Writes the snapshot for the given log segment and removes all the files it makes obsolete.
+     * The cards may keep changing while they are being written.
+     */
+    public void writeSnapshot(final long sequence,
+                              @NotNull final Iterable<Card> cards,
+                              @NotNull final Collection<ScheduledPriorityUpdate> scheduledUpdates) throws IOException {
+        final long startedAt = System.currentTimeMillis();
+        final Path snapshotFile = snapshotPath(storageDirectory, sequence);
+        final Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + TEMPORARY_FILE_SUFFIX);
+        MappedCardsSnapshot.write(temporaryFile, cards, scheduledUpdates);
+        Files.move(temporaryFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+        deleteObsoleteFiles(storageDirectory, sequence);
+        log.info(
+                "Cards snapshot: " + sequence + " was written in " + (System.currentTimeMillis() - startedAt) + " ms."
+        );
+    }
+
+    private void forceDirectory() {
+        try (FileChannel directory = FileChannel.open(storageDirectory, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // not every platform allows to force a directory, the snapshot file itself is already forced
+            log.debug("Cards storage directory was not forced because of: " + e.getMessage() + ".");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        currentLog.close();
+    }
+}
@@ -0,0 +1,571 @@
+package org.cards_tracker.storage;
+
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.cards_tracker.error.IncorrectCardPriorityScheduleException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log (segment) of the card registry changes.
+ * <p>
+ * Every record has the layout: payload length (int), record type (byte), payload, CRC32 of type and payload (int).
+ * Records are accumulated in memory and written by a single flusher at a time, so concurrent writers
+ * share one write and one force of the file in the {@link FsyncPolicy#GROUP_COMMIT} mode.
+ * The writer which forces the file while other writers wait for it first gives the writers appending right now
+ * the group commit delay to join the same force, at most a half of the previous force time, so a fast disk is not
+ * slowed down by the delay. A lone writer never waits for the delay, it pays for one force of its own records,
+ * which is the price of the change being durable when the writer returns.
+ * <p>
+ * Positions returned to the writers are logical: they start from the position base given on open,
+ * so the positions keep growing when the writers are switched to the next log segment.
+ */
+public class CardsWriteAheadLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(CardsWriteAheadLog.class);
+
+    private static final int MAGIC = 0x4357414C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int RECORD_OVERHEAD = Integer.BYTES + Byte.BYTES + Integer.BYTES;
+    private static final int MAX_PAYLOAD_SIZE = 64 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    // pending records get written without waiting for the flush interval when the buffer grows over this size
+    private static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+    private static final byte CARD_CREATED = 1;
+    private static final byte CARD_UPDATED = 2;
+    private static final byte CARD_REMOVED = 3;
+    private static final byte PRIORITY_UPDATE_SCHEDULED = 4;
+    private static final byte PRIORITY_UPDATES_MOVED = 5;
+
+    // time unit ordinal byte and period long
+    private static final int SCHEDULE_SIZE = Byte.BYTES + Long.BYTES;
+    // epoch seconds long and nanoseconds int of the UTC local date time, the same as in the snapshots
+    private static final int TIME_SIZE = Long.BYTES + Integer.BYTES;
+
+    private static final CardPriority[] PRIORITIES = CardPriority.values();
+    private static final TimeUnit[] TIME_UNITS = TimeUnit.values();
+
+    @NotNull
+    private final Path logFile;
+    @NotNull
+    private final FileChannel channel;
+    @NotNull
+    private final FsyncPolicy fsyncPolicy;
+    @Nullable
+    private final ScheduledExecutorService flushExecutor;
+    private final long groupCommitDelayNanos;
+    // the writers waiting for their records to be forced, the force is delayed only when they are not alone
+    @NotNull
+    private final AtomicInteger awaitingWriters = new AtomicInteger();
+    @NotNull
+    private final Object appendLock = new Object();
+    @NotNull
+    private final Object flushLock = new Object();
+    @NotNull
+    private final CRC32 checksum = new CRC32();
+    @NotNull
+    private ByteBuffer pendingRecords = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    @Nullable
+    private ByteBuffer spareBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private final long startPosition;
+    private long appendedPosition;
+    private volatile long durablePosition;
+    // the time the previous force took, which bounds the group commit delay
+    private volatile long lastForceNanos;
+    @Nullable
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    private CardsWriteAheadLog(@NotNull final Path logFile,
+                               @NotNull final FileChannel channel,
+                               @NotNull final FsyncPolicy fsyncPolicy,
+                               final long flushIntervalMillis,
+                               final long groupCommitDelayMicros,
+                               final long startPosition) {
+        this.logFile = logFile;
+        this.channel = channel;
+        this.fsyncPolicy = fsyncPolicy;
+        this.groupCommitDelayNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitDelayMicros);
+        this.startPosition = startPosition;
+        this.appendedPosition = startPosition;
+        this.durablePosition = startPosition;
+        if (fsyncPolicy == FsyncPolicy.PERIODIC) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread flusher = new Thread(runnable, "cards-log-flusher");
+                flusher.setDaemon(true);
+                return flusher;
+            });
+            flushExecutor.scheduleWithFixedDelay(
+                    this::flushQuietly,
+                    flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS
+            );
+        } else {
+            flushExecutor = null;
+        }
+    }
+
+    /**
+     * Opens the log file for appending, replaying all of its valid records into the recovery handler first.
+     * A torn or corrupted tail (e.g. after a crash in the middle of a write) is truncated.
+     *
+     * @param groupCommitDelayMicros the longest time the force of the waiting writers is delayed for the other writers
+     *                               to join it in the {@link FsyncPolicy#GROUP_COMMIT} mode, zero to never delay it,
+     *                               the delay is not longer than a half of the previous force anyway
+     */
+    @NotNull
+    public static CardsWriteAheadLog open(@NotNull final Path logFile,
+                                          @NotNull final FsyncPolicy fsyncPolicy,
+                                          final long flushIntervalMillis,
+                                          final long groupCommitDelayMicros,
+                                          final long positionBase,
+                                          @NotNull final LogRecordHandler recoveryHandler) throws IOException {
+        final FileChannel channel = FileChannel.open(
+                logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+        try {
+            final long validLength = recover(logFile, channel, recoveryHandler);
+            channel.position(validLength);
+            log.debug("Cards log: " + logFile + " was opened with fsync policy: " + fsyncPolicy + ".");
+            return new CardsWriteAheadLog(
+                    logFile, channel, fsyncPolicy, flushIntervalMillis, groupCommitDelayMicros, positionBase + validLength
+            );
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Replays the records of an already closed log segment without opening it for appending.
+     */
+    public static void replay(@NotNull final Path logFile,
+                              @NotNull final LogRecordHandler recoveryHandler) throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                log.warn("Cards log: " + logFile + " has no header and will be skipped.");
+                return;
+            }
+            readHeader(logFile, channel);
+            final long validLength = replay(channel, recoveryHandler);
+            if (validLength < fileSize) {
+                log.warn(
+                        "Cards log: " + logFile + " has " + (fileSize - validLength)
+                                + " bytes of incomplete records after position: " + validLength + "."
+                );
+            }
+        }
+    }
+
+    private static void readHeader(@NotNull final Path logFile, @NotNull final FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) ;
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("File: " + logFile + " is not a supported cards log");
+        }
+    }
+
+    private static long recover(@NotNull final Path logFile,
+                                @NotNull final FileChannel channel,
+                                @NotNull final LogRecordHandler recoveryHandler) throws IOException {
+        final long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+            return HEADER_SIZE;
+        }
+        readHeader(logFile, channel);
+        final long startedAt = System.nanoTime();
+        final long validLength = replay(channel, recoveryHandler);
+        if (validLength < fileSize) {
+            log.warn(
+                    "Cards log: " + logFile + " has " + (fileSize - validLength)
+                            + " bytes of incomplete records after position: " + validLength + ", they will be discarded."
+            );
+            channel.truncate(validLength);
+            channel.force(true);
+        }
+        log.info(
+                "Cards log: " + logFile + " was replayed in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms."
+        );
+        return validLength;
+    }
+
+    private static long replay(@NotNull final FileChannel channel,
+                               @NotNull final LogRecordHandler recoveryHandler) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        buffer.flip();
+        final byte[] payload = new byte[MAX_PAYLOAD_SIZE];
+        final CRC32 recordChecksum = new CRC32();
+        long readPosition = HEADER_SIZE;
+        long validPosition = HEADER_SIZE;
+        while (true) {
+            readPosition = fill(channel, buffer, readPosition, Integer.BYTES);
+            if (buffer.remaining() < Integer.BYTES) break;
+            final int payloadLength = buffer.getInt(buffer.position());
+            if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_SIZE) break;
+            final int recordLength = RECORD_OVERHEAD + payloadLength;
+            readPosition = fill(channel, buffer, readPosition, recordLength);
+            if (buffer.remaining() < recordLength) break;
+            buffer.getInt();
+            final byte type = buffer.get();
+            buffer.get(payload, 0, payloadLength);
+            final int expectedChecksum = buffer.getInt();
+            recordChecksum.reset();
+            recordChecksum.update(type);
+            recordChecksum.update(payload, 0, payloadLength);
+            if ((int) recordChecksum.getValue() != expectedChecksum) break;
+            if (!dispatch(type, payload, payloadLength, recoveryHandler)) break;
+            validPosition += recordLength;
+        }
+        return validPosition;
+    }
+
+    private static long fill(@NotNull final FileChannel channel,
+                             @NotNull final ByteBuffer buffer,
+                             long readPosition,
+                             final int requiredBytes) throws IOException {
+        if (buffer.remaining() >= requiredBytes) return readPosition;
+        buffer.compact();
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, readPosition);
+            if (read < 0) break;
+            readPosition += read;
+        }
+        buffer.flip();
+        return readPosition;
+    }
+
+    private static boolean dispatch(final byte type,
+                                    final byte[] payload,
+                                    final int payloadLength,
+                                    @NotNull final LogRecordHandler recoveryHandler) {
+        switch (type) {
+            case CARD_CREATED:
+            case CARD_UPDATED:
+                if (payloadLength < 1 || payload[0] < 0 || payload[0] >= PRIORITIES.length) return false;
+                final String title = new String(payload, 1, payloadLength - 1, StandardCharsets.UTF_8);
+                if (type == CARD_CREATED) {
+                    recoveryHandler.onCardCreated(title, PRIORITIES[payload[0]]);
+                } else {
+                    recoveryHandler.onCardUpdated(title, PRIORITIES[payload[0]]);
+                }
+                return true;
+            case CARD_REMOVED:
+                recoveryHandler.onCardRemoved(new String(payload, 0, payloadLength, StandardCharsets.UTF_8));
+                return true;
+            case PRIORITY_UPDATE_SCHEDULED: {
+                if (payloadLength < SCHEDULE_SIZE + TIME_SIZE) return false;
+                final ByteBuffer record = ByteBuffer.wrap(payload, 0, payloadLength);
+                final CardPriorityUpdateSchedule schedule = readSchedule(record);
+                if (schedule == null) return false;
+                final LocalDateTime nextUpdate = readTime(record);
+                final String scheduledTitle = new String(
+                        payload, record.position(), record.remaining(), StandardCharsets.UTF_8
+                );
+                recoveryHandler.onPriorityUpdateScheduled(new ScheduledPriorityUpdate(scheduledTitle, schedule, nextUpdate));
+                return true;
+            }
+            case PRIORITY_UPDATES_MOVED: {
+                if (payloadLength != SCHEDULE_SIZE + 2 * TIME_SIZE + Long.BYTES) return false;
+                final ByteBuffer record = ByteBuffer.wrap(payload, 0, payloadLength);
+                final CardPriorityUpdateSchedule schedule = readSchedule(record);
+                if (schedule == null) return false;
+                final LocalDateTime from = readTime(record);
+                final long spreadOffsetMillis = record.getLong();
+                recoveryHandler.onPriorityUpdatesMoved(schedule, from, spreadOffsetMillis, readTime(record));
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    @Nullable
+    private static CardPriorityUpdateSchedule readSchedule(@NotNull final ByteBuffer record) {
+        final int timeUnit = record.get();
+        final long period = record.getLong();
+        if (timeUnit < 0 || timeUnit >= TIME_UNITS.length) return null;
+        try {
+            return new CardPriorityUpdateSchedule(TIME_UNITS[timeUnit], period);
+        } catch (IncorrectCardPriorityScheduleException e) {
+            return null;
+        }
+    }
+
+    @NotNull
+    private static LocalDateTime readTime(@NotNull final ByteBuffer record) {
+        final long epochSecond = record.getLong();
+        return LocalDateTime.ofEpochSecond(epochSecond, record.getInt(), ZoneOffset.UTC);
+    }
+
+    private static void writeSchedule(@NotNull final ByteBuffer record, @NotNull final CardPriorityUpdateSchedule schedule) {
+        record.put((byte) schedule.getTimeUnit().ordinal()).putLong(schedule.getPeriod());
+    }
+
+    private static void writeTime(@NotNull final ByteBuffer record, @NotNull final LocalDateTime time) {
+        record.putLong(time.toEpochSecond(ZoneOffset.UTC)).putInt(time.getNano());
+    }
+
+    /**
+     * @return the logical position right after the last appended record
+     */
+    public long getAppendedPosition() {
+        synchronized (appendLock) {
+            return appendedPosition;
+        }
+    }
+
+    public boolean hasAppendedRecords() {
+        return getAppendedPosition() > startPosition;
+    }
+
+    /**
+     * @return the log position which has to become durable to consider the record persisted
+     */
+    public long appendCardCreated(@NotNull final String title, @NotNull final CardPriority priority) throws IOException {
+        return append(CARD_CREATED, priority.ordinal(), title);
+    }
+
+    /**
+     * @return the log position which has to become durable to consider the record persisted
+     */
+    public long appendCardUpdated(@NotNull final String title, @NotNull final CardPriority priority) throws IOException {
+        return append(CARD_UPDATED, priority.ordinal(), title);
+    }
+
+    /**
+     * @return the log position which has to become durable to consider the record persisted
+     */
+    public long appendCardRemoved(@NotNull final String title) throws IOException {
+        return append(CARD_REMOVED, -1, title);
+    }
+
+    /**
+     * @return the log position which has to become durable to consider the record persisted
+     */
+    public long appendPriorityUpdateScheduled(@NotNull final ScheduledPriorityUpdate priorityUpdate) throws IOException {
+        final byte[] titleBytes = priorityUpdate.getTitle().getBytes(StandardCharsets.UTF_8);
+        final int payloadLength = SCHEDULE_SIZE + TIME_SIZE + titleBytes.length;
+        if (payloadLength > MAX_PAYLOAD_SIZE) {
+            throw new IOException("Card title: " + priorityUpdate.getTitle() + " is too long to be stored");
+        }
+        final ByteBuffer record = ByteBuffer.allocate(payloadLength);
+        writeSchedule(record, priorityUpdate.getSchedule());
+        writeTime(record, priorityUpdate.getNextUpdate());
+        record.put(titleBytes);
+        return appendPayload(PRIORITY_UPDATE_SCHEDULED, -1, record.array(), payloadLength);
+    }
+
+    /**
+     * Records that all the priority updates with the schedule, the time and the spread offset were moved
+     * to the next time, one record replaces the records of every moved card.
+     *
+     * @return the log position which has to become durable to consider the record persisted
+     */
+    public long appendPriorityUpdatesMoved(@NotNull final CardPriorityUpdateSchedule schedule,
+                                           @NotNull final LocalDateTime from,
+                                           final long spreadOffsetMillis,
+                                           @NotNull final LocalDateTime nextUpdate) throws IOException {
+        final ByteBuffer record = ByteBuffer.allocate(SCHEDULE_SIZE + 2 * TIME_SIZE + Long.BYTES);
+        writeSchedule(record, schedule);
+        writeTime(record, from);
+        record.putLong(spreadOffsetMillis);
+        writeTime(record, nextUpdate);
+        return appendPayload(PRIORITY_UPDATES_MOVED, -1, record.array(), record.capacity());
+    }
+
+    /**
+     * Blocks until the record ending at the given position is forced to the disk, unless the log works in the
+     * {@link FsyncPolicy#PERIODIC} mode which never makes the writers wait.
+     * <p>
+     * The writers waiting for the flush in progress check their position again when it is done: the records
+     * written by the flush are already forced, so one force serves the whole group of the waiting writers.
+     * The writer which forces the records while the others wait for it delays the force by the group commit delay,
+     * the writers which are appending during the delay are forced together with it.
+     */
+    public void awaitDurable(final long position) throws IOException {
+        if (fsyncPolicy == FsyncPolicy.PERIODIC || durablePosition >= position) return;
+        awaitingWriters.incrementAndGet();
+        try {
+            synchronized (flushLock) {
+                if (durablePosition < position) {
+                    if (awaitingWriters.get() > 1) {
+                        final long delayNanos = Math.min(groupCommitDelayNanos, lastForceNanos / 2);
+                        if (delayNanos > 0) LockSupport.parkNanos(delayNanos);
+                    }
+                    flush();
+                }
+            }
+        } finally {
+            awaitingWriters.decrementAndGet();
+        }
+        if (durablePosition < position) {
+            final IOException flushFailure = failure;
+            throw flushFailure != null ? flushFailure : new IOException("Cards log: " + logFile + " was not flushed");
+        }
+    }
+
+    private long append(final byte type, final int priorityOrdinal, @NotNull final String title) throws IOException {
+        final byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+        final int payloadLength = titleBytes.length + (priorityOrdinal >= 0 ? 1 : 0);
+        if (payloadLength > MAX_PAYLOAD_SIZE) {
+            throw new IOException("Card title: " + title + " is too long to be stored");
+        }
+        return appendPayload(type, priorityOrdinal, titleBytes, payloadLength);
+    }
+
+    /**
+     * @param priorityOrdinal the priority byte written before the payload bytes, not written when negative
+     */
+    private long appendPayload(final byte type,
+                               final int priorityOrdinal,
+                               final byte[] payloadBytes,
+                               final int payloadLength) throws IOException {
+        ensureWritable();
+        if (fsyncPolicy == FsyncPolicy.PER_OPERATION) {
+            synchronized (flushLock) {
+                final long position = writeRecord(type, priorityOrdinal, payloadBytes, payloadLength);
+                flush();
+                return position;
+            }
+        }
+        final long position = writeRecord(type, priorityOrdinal, payloadBytes, payloadLength);
+        if (pendingBytes() >= MAX_PENDING_BYTES) {
+            flush();
+        }
+        return position;
+    }
+
+    private long writeRecord(final byte type,
+                             final int priorityOrdinal,
+                             final byte[] payloadBytes,
+                             final int payloadLength) {
+        synchronized (appendLock) {
+            ensureCapacity(RECORD_OVERHEAD + payloadLength);
+            checksum.reset();
+            checksum.update(type);
+            pendingRecords.putInt(payloadLength).put(type);
+            if (priorityOrdinal >= 0) {
+                pendingRecords.put((byte) priorityOrdinal);
+                checksum.update(priorityOrdinal);
+            }
+            pendingRecords.put(payloadBytes);
+            checksum.update(payloadBytes, 0, payloadBytes.length);
+            pendingRecords.putInt((int) checksum.getValue());
+            appendedPosition += RECORD_OVERHEAD + payloadLength;
+            return appendedPosition;
+        }
+    }
+
+    private int pendingBytes() {
+        synchronized (appendLock) {
+            return pendingRecords.position();
+        }
+    }
+
+    private void ensureCapacity(final int recordLength) {
+        if (pendingRecords.remaining() >= recordLength) return;
+        final ByteBuffer extendedBuffer = ByteBuffer.allocate(
+                Math.max(pendingRecords.capacity() * 2, pendingRecords.position() + recordLength)
+        );
+        pendingRecords.flip();
+        extendedBuffer.put(pendingRecords);
+        pendingRecords = extendedBuffer;
+    }
+
+    private void ensureWritable() throws IOException {
+        if (closed) {
+            throw new IOException("Cards log: " + logFile + " is closed");
+        }
+        final IOException flushFailure = failure;
+        if (flushFailure != null) {
+            throw new IOException("Cards log: " + logFile + " is not writable after a failure", flushFailure);
+        }
+    }
+
+    /**
+     * Writes all the pending records and forces them to the disk.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            final ByteBuffer recordsToWrite;
+            final long flushedPosition;
+            synchronized (appendLock) {
+                if (pendingRecords.position() == 0) return;
+                recordsToWrite = pendingRecords;
+                // the spare buffer is only handed over under the flush lock, so it is always available here
+                pendingRecords = spareBuffer != null ? spareBuffer : ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+                spareBuffer = null;
+                flushedPosition = appendedPosition;
+            }
+            try {
+                recordsToWrite.flip();
+                while (recordsToWrite.hasRemaining()) {
+                    channel.write(recordsToWrite);
+                }
+                final long forceStartedAt = System.nanoTime();
+                channel.force(false);
+                lastForceNanos = System.nanoTime() - forceStartedAt;
+                durablePosition = flushedPosition;
+            } catch (IOException e) {
+                log.error("Cards log: " + logFile + " was not flushed because of: " + e.getMessage() + ".");
+                failure = e;
+                throw e;
+            } finally {
+                recordsToWrite.clear();
+                spareBuffer = recordsToWrite;
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // already reported by the flush itself
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+            log.debug("Cards log: " + logFile + " was closed.");
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.cards_tracker.storage;
+
+public enum FsyncPolicy {
+    // every record is forced to the disk before the operation returns
+    PER_OPERATION,
+    // concurrent operations wait for a shared force of all the records appended so far
+    GROUP_COMMIT,
+    // records are forced by the background task once per configured interval, operations never wait
+    PERIODIC
+}
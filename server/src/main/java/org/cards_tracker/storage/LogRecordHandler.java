@@ -0,0 +1,31 @@
+package org.cards_tracker.storage;
+
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDateTime;
+
+/**
+ * Receives the records restored from the storage snapshots and logs, in the order they were written.
+ */
+public interface LogRecordHandler {
+
+    void onCardCreated(@NotNull final String title, @NotNull final CardPriority priority);
+
+    void onCardUpdated(@NotNull final String title, @NotNull final CardPriority priority);
+
+    void onCardRemoved(@NotNull final String title);
+
+    void onPriorityUpdateScheduled(@NotNull final ScheduledPriorityUpdate priorityUpdate);
+
+    /**
+     * All the priority updates restored so far with the schedule, the next update at the given time
+     * and the spread offset were executed and moved to the next update.
+     */
+    void onPriorityUpdatesMoved(@NotNull final CardPriorityUpdateSchedule schedule,
+                                @NotNull final LocalDateTime from,
+                                final long spreadOffsetMillis,
+                                @NotNull final LocalDateTime nextUpdate);
+}
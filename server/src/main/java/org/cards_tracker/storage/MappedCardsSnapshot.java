@@ -0,0 +1,473 @@
+package org.cards_tracker.storage;
+
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.cards_tracker.error.IncorrectCardPriorityScheduleException;
+import org.cards_tracker.error.IncorrectCardTitleException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-optimised snapshot of the card registry, which is memory-mapped and read lazily:
+ * opening it does not depend on the number of cards, the cards are materialised only on access.
+ * <p>
+ * Layout (all the numbers are big-endian):
+ * <pre>
+ * header:          magic, version, cards count, unused (int each), title offsets, titles, priorities,
+ *                  schedules, priority order positions and the file length (long each)
+ * title offsets:   cards count + 1 ints, the title of the card i is [offset i, offset i + 1) of the titles
+ * titles:          UTF-8 titles, sorted as unsigned bytes, so a title is found with the binary search
+ * priorities:      one priority ordinal byte per card
+ * schedules:       one fixed-size entry per card: time unit ordinal byte (-1 without a scheduled update),
+ *                  period long, next update epoch second (UTC) long and nanos int
+ * priority order:  cards count ints, the card positions grouped by the priority ordinal,
+ *                  each group in the order the cards were given to the snapshot
+ * priority starts: priorities count + 1 ints, the cards with the priority ordinal p are
+ *                  [start p, start p + 1) of the priority order
+ * </pre>
+ * Every column but the priority order is indexed by the card position in the sorted titles.
+ * There is no checksum of the whole file to not read it during the startup: the snapshot is forced
+ * and atomically renamed once it is complete. The title offsets and the priority order are validated
+ * when they are read for the same reason.
+ * <p>
+ * The snapshots of the previous version have no priority order, it is built from the priorities when they are mapped.
+ */
+public final class MappedCardsSnapshot {
+
+    static final int MAGIC = 0x43534E50;
+    static final int VERSION = 3;
+    // the version without the priority order
+    private static final int UNORDERED_VERSION = 2;
+
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + 6 * Long.BYTES;
+    private static final int UNORDERED_HEADER_SIZE = 4 * Integer.BYTES + 5 * Long.BYTES;
+    private static final int SCHEDULE_ENTRY_SIZE = Byte.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final byte NO_SCHEDULE = -1;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final CardPriority[] PRIORITIES = CardPriority.values();
+    private static final TimeUnit[] TIME_UNITS = TimeUnit.values();
+
+    @NotNull
+    private final Path snapshotFile;
+    // absolute reads only, so the buffer is shared by all the reading threads
+    @NotNull
+    private final ByteBuffer buffer;
+    private final int cardsCount;
+    private final int titleOffsetsPosition;
+    private final int titlesPosition;
+    private final int prioritiesPosition;
+    private final int schedulesPosition;
+    private final int priorityOrderPosition;
+    // indexed by the priority ordinal, with the end of the priority order as the last element
+    @NotNull
+    private final int[] priorityStarts;
+    // the priority order built in memory for the snapshots of the previous version
+    @Nullable
+    private final int[] unorderedPriorityOrder;
+
+    private MappedCardsSnapshot(@NotNull final Path snapshotFile,
+                                @NotNull final ByteBuffer buffer,
+                                final int cardsCount,
+                                final int titleOffsetsPosition,
+                                final int titlesPosition,
+                                final int prioritiesPosition,
+                                final int schedulesPosition,
+                                final int priorityOrderPosition,
+                                @NotNull final int[] priorityStarts,
+                                @Nullable final int[] unorderedPriorityOrder) {
+        this.snapshotFile = snapshotFile;
+        this.buffer = buffer;
+        this.cardsCount = cardsCount;
+        this.titleOffsetsPosition = titleOffsetsPosition;
+        this.titlesPosition = titlesPosition;
+        this.prioritiesPosition = prioritiesPosition;
+        this.schedulesPosition = schedulesPosition;
+        this.priorityOrderPosition = priorityOrderPosition;
+        this.priorityStarts = priorityStarts;
+        this.unorderedPriorityOrder = unorderedPriorityOrder;
+    }
+
+    private static final class SnapshotEntry {
+        @NotNull
+        private final byte[] title;
+        @NotNull
+        private final Card card;
+        // the position of the card among the given cards
+        private final int order;
+
+        private SnapshotEntry(@NotNull final byte[] title, @NotNull final Card card, final int order) {
+            this.title = title;
+            this.card = card;
+            this.order = order;
+        }
+    }
+
+    static void write(@NotNull final Path snapshotFile,
+                      @NotNull final Iterable<Card> cards,
+                      @NotNull final Collection<ScheduledPriorityUpdate> scheduledUpdates) throws IOException {
+        final List<SnapshotEntry> entries = new ArrayList<>();
+        for (Card card : cards) {
+            entries.add(new SnapshotEntry(card.getTitle().getBytes(StandardCharsets.UTF_8), card, entries.size()));
+        }
+        entries.sort((first, second) -> Arrays.compareUnsigned(first.title, second.title));
+        final Map<String, ScheduledPriorityUpdate> updatesByTitle = new HashMap<>(scheduledUpdates.size());
+        for (ScheduledPriorityUpdate scheduledUpdate : scheduledUpdates) {
+            updatesByTitle.put(scheduledUpdate.getTitle(), scheduledUpdate);
+        }
+        // the cards changed while the image is collected can be met twice, the log has their latest state anyway
+        final List<SnapshotEntry> uniqueEntries = new ArrayList<>(entries.size());
+        long titlesLength = 0;
+        for (SnapshotEntry entry : entries) {
+            if (!uniqueEntries.isEmpty() && Arrays.equals(uniqueEntries.get(uniqueEntries.size() - 1).title, entry.title)) {
+                continue;
+            }
+            uniqueEntries.add(entry);
+            titlesLength += entry.title.length;
+        }
+        final int cardsCount = uniqueEntries.size();
+        final long titleOffsetsPosition = HEADER_SIZE;
+        final long titlesPosition = titleOffsetsPosition + (long) (cardsCount + 1) * Integer.BYTES;
+        final long prioritiesPosition = titlesPosition + titlesLength;
+        final long schedulesPosition = prioritiesPosition + cardsCount;
+        final long priorityOrderPosition = schedulesPosition + (long) cardsCount * SCHEDULE_ENTRY_SIZE;
+        final long fileLength = priorityOrderPosition + (long) cardsCount * Integer.BYTES
+                + (long) (PRIORITIES.length + 1) * Integer.BYTES;
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IOException("Cards snapshot of " + fileLength + " bytes can not be memory-mapped");
+        }
+
+        final FileOutputStream fileStream = new FileOutputStream(snapshotFile.toFile());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileStream, BUFFER_SIZE))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(cardsCount);
+            output.writeInt(0);
+            output.writeLong(titleOffsetsPosition);
+            output.writeLong(titlesPosition);
+            output.writeLong(prioritiesPosition);
+            output.writeLong(schedulesPosition);
+            output.writeLong(priorityOrderPosition);
+            output.writeLong(fileLength);
+            int titleOffset = 0;
+            output.writeInt(titleOffset);
+            for (SnapshotEntry entry : uniqueEntries) {
+                titleOffset += entry.title.length;
+                output.writeInt(titleOffset);
+            }
+            for (SnapshotEntry entry : uniqueEntries) {
+                output.write(entry.title);
+            }
+            for (SnapshotEntry entry : uniqueEntries) {
+                output.writeByte(entry.card.getCardPriority().ordinal());
+            }
+            for (SnapshotEntry entry : uniqueEntries) {
+                final ScheduledPriorityUpdate scheduledUpdate = updatesByTitle.get(entry.card.getTitle());
+                if (scheduledUpdate == null) {
+                    output.writeByte(NO_SCHEDULE);
+                    output.writeLong(0L);
+                    output.writeLong(0L);
+                    output.writeInt(0);
+                } else {
+                    output.writeByte(scheduledUpdate.getSchedule().getTimeUnit().ordinal());
+                    output.writeLong(scheduledUpdate.getSchedule().getPeriod());
+                    output.writeLong(scheduledUpdate.getNextUpdate().toEpochSecond(ZoneOffset.UTC));
+                    output.writeInt(scheduledUpdate.getNextUpdate().getNano());
+                }
+            }
+            final List<List<Integer>> priorityGroups = new ArrayList<>(PRIORITIES.length);
+            for (int i = 0; i < PRIORITIES.length; i++) {
+                priorityGroups.add(new ArrayList<>());
+            }
+            for (int i = 0; i < cardsCount; i++) {
+                priorityGroups.get(uniqueEntries.get(i).card.getCardPriority().ordinal()).add(i);
+            }
+            for (List<Integer> priorityGroup : priorityGroups) {
+                priorityGroup.sort(Comparator.comparingInt(index -> uniqueEntries.get(index).order));
+                for (Integer index : priorityGroup) {
+                    output.writeInt(index);
+                }
+            }
+            int priorityStart = 0;
+            output.writeInt(priorityStart);
+            for (List<Integer> priorityGroup : priorityGroups) {
+                priorityStart += priorityGroup.size();
+                output.writeInt(priorityStart);
+            }
+            output.flush();
+            fileStream.getFD().sync();
+        }
+    }
+
+    /**
+     * Maps the snapshot file, only the header and the priority starts are validated.
+     */
+    @NotNull
+    public static MappedCardsSnapshot open(@NotNull final Path snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            final long fileLength = channel.size();
+            if (fileLength < UNORDERED_HEADER_SIZE || fileLength > Integer.MAX_VALUE) {
+                throw new IOException("Cards snapshot: " + snapshotFile + " has an unexpected length: " + fileLength);
+            }
+            // the mapping stays valid after the channel is closed
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+            final int version = buffer.getInt(Integer.BYTES);
+            if (buffer.getInt(0) != MAGIC || (version != VERSION && version != UNORDERED_VERSION)) {
+                throw new IOException("File: " + snapshotFile + " is not a supported cards snapshot");
+            }
+            final int headerSize = version == VERSION ? HEADER_SIZE : UNORDERED_HEADER_SIZE;
+            if (fileLength < headerSize) {
+                throw new IOException("Cards snapshot: " + snapshotFile + " has an unexpected length: " + fileLength);
+            }
+            final int cardsCount = buffer.getInt(2 * Integer.BYTES);
+            final long titleOffsetsPosition = buffer.getLong(4 * Integer.BYTES);
+            final long titlesPosition = buffer.getLong(4 * Integer.BYTES + Long.BYTES);
+            final long prioritiesPosition = buffer.getLong(4 * Integer.BYTES + 2 * Long.BYTES);
+            final long schedulesPosition = buffer.getLong(4 * Integer.BYTES + 3 * Long.BYTES);
+            final long priorityOrderPosition = version == VERSION
+                    ? buffer.getLong(4 * Integer.BYTES + 4 * Long.BYTES)
+                    : schedulesPosition + (long) cardsCount * SCHEDULE_ENTRY_SIZE;
+            final long expectedLength = buffer.getLong(headerSize - Long.BYTES);
+            if (expectedLength != fileLength) {
+                throw new IOException("Cards snapshot: " + snapshotFile + " is incomplete");
+            }
+            final long orderLength = version == VERSION
+                    ? (long) cardsCount * Integer.BYTES + (long) (PRIORITIES.length + 1) * Integer.BYTES
+                    : 0;
+            if (cardsCount < 0
+                    || titleOffsetsPosition != headerSize
+                    || titlesPosition != titleOffsetsPosition + (long) (cardsCount + 1) * Integer.BYTES
+                    || prioritiesPosition < titlesPosition
+                    || schedulesPosition != prioritiesPosition + cardsCount
+                    || priorityOrderPosition != schedulesPosition + (long) cardsCount * SCHEDULE_ENTRY_SIZE
+                    || fileLength != priorityOrderPosition + orderLength) {
+                throw new IOException("Cards snapshot: " + snapshotFile + " has an incorrect layout");
+            }
+            final int[] priorityStarts;
+            int[] unorderedPriorityOrder = null;
+            if (version == VERSION) {
+                priorityStarts = readPriorityStarts(
+                        snapshotFile, buffer, (int) priorityOrderPosition + cardsCount * Integer.BYTES, cardsCount
+                );
+            } else {
+                priorityStarts = new int[PRIORITIES.length + 1];
+                unorderedPriorityOrder = buildPriorityOrder(
+                        snapshotFile, buffer, (int) prioritiesPosition, cardsCount, priorityStarts
+                );
+            }
+            return new MappedCardsSnapshot(
+                    snapshotFile, buffer, cardsCount,
+                    (int) titleOffsetsPosition, (int) titlesPosition, (int) prioritiesPosition, (int) schedulesPosition,
+                    (int) priorityOrderPosition, priorityStarts, unorderedPriorityOrder
+            );
+        }
+    }
+
+    @NotNull
+    private static int[] readPriorityStarts(@NotNull final Path snapshotFile,
+                                            @NotNull final ByteBuffer buffer,
+                                            final int priorityStartsPosition,
+                                            final int cardsCount) throws IOException {
+        final int[] priorityStarts = new int[PRIORITIES.length + 1];
+        for (int i = 0; i < priorityStarts.length; i++) {
+            priorityStarts[i] = buffer.getInt(priorityStartsPosition + i * Integer.BYTES);
+            if (i == 0 ? priorityStarts[i] != 0 : priorityStarts[i] < priorityStarts[i - 1]) {
+                throw new IOException("Cards snapshot: " + snapshotFile + " has incorrect priority starts");
+            }
+        }
+        if (priorityStarts[PRIORITIES.length] != cardsCount) {
+            throw new IOException("Cards snapshot: " + snapshotFile + " has incorrect priority starts");
+        }
+        return priorityStarts;
+    }
+
+    /**
+     * Groups the card positions by the priority ordinal, keeping the snapshot order inside every group.
+     */
+    @NotNull
+    private static int[] buildPriorityOrder(@NotNull final Path snapshotFile,
+                                            @NotNull final ByteBuffer buffer,
+                                            final int prioritiesPosition,
+                                            final int cardsCount,
+                                            @NotNull final int[] priorityStarts) throws IOException {
+        for (int i = 0; i < cardsCount; i++) {
+            final int priority = Byte.toUnsignedInt(buffer.get(prioritiesPosition + i));
+            if (priority >= PRIORITIES.length) {
+                throw new IOException("Cards snapshot: " + snapshotFile + " has an unknown card priority");
+            }
+            priorityStarts[priority + 1]++;
+        }
+        for (int i = 1; i < priorityStarts.length; i++) {
+            priorityStarts[i] += priorityStarts[i - 1];
+        }
+        final int[] priorityOrder = new int[cardsCount];
+        final int[] nextPositions = Arrays.copyOf(priorityStarts, PRIORITIES.length);
+        for (int i = 0; i < cardsCount; i++) {
+            priorityOrder[nextPositions[Byte.toUnsignedInt(buffer.get(prioritiesPosition + i))]++] = i;
+        }
+        return priorityOrder;
+    }
+
+    /**
+     * @return the start of the title of the card in the titles, validated against the titles bounds
+     */
+    private int titleStart(final int index) {
+        final int start = titleOffset(index);
+        if (start < 0 || start > prioritiesPosition - titlesPosition) {
+            throw new IllegalStateException("Cards snapshot: " + snapshotFile + " has incorrect title offsets");
+        }
+        return titlesPosition + start;
+    }
+
+    private int titleLength(final int index, final int titleStart) {
+        final int length = titlesPosition + titleOffset(index + 1) - titleStart;
+        if (length <= 0 || titleStart + length > prioritiesPosition) {
+            throw new IllegalStateException("Cards snapshot: " + snapshotFile + " has incorrect title offsets");
+        }
+        return length;
+    }
+
+    private int titleOffset(final int index) {
+        return buffer.getInt(titleOffsetsPosition + index * Integer.BYTES);
+    }
+
+    public int size() {
+        return cardsCount;
+    }
+
+    /**
+     * @return the position of the card with the title or -1 when the snapshot does not contain it
+     */
+    public int indexOf(@NotNull final String title) {
+        final byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = cardsCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int comparison = compareTitleAt(middle, titleBytes);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compareTitleAt(final int index, @NotNull final byte[] titleBytes) {
+        final int start = titleStart(index);
+        final int length = titleLength(index, start);
+        final int commonLength = Math.min(length, titleBytes.length);
+        for (int i = 0; i < commonLength; i++) {
+            final int comparison = Byte.toUnsignedInt(buffer.get(start + i)) - Byte.toUnsignedInt(titleBytes[i]);
+            if (comparison != 0) return comparison;
+        }
+        return length - titleBytes.length;
+    }
+
+    @NotNull
+    public String titleAt(final int index) {
+        final int start = titleStart(index);
+        final byte[] titleBytes = new byte[titleLength(index, start)];
+        for (int i = 0; i < titleBytes.length; i++) {
+            titleBytes[i] = buffer.get(start + i);
+        }
+        return new String(titleBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the first position of the cards with the priority in the priority order
+     */
+    public int priorityOrderStart(@NotNull final CardPriority priority) {
+        return priorityStarts[priority.ordinal()];
+    }
+
+    /**
+     * @return the position right after the last card with the priority in the priority order
+     */
+    public int priorityOrderEnd(@NotNull final CardPriority priority) {
+        return priorityStarts[priority.ordinal() + 1];
+    }
+
+    /**
+     * @return the position of the card which is at the position of the priority order
+     */
+    public int priorityOrderAt(final int position) {
+        final int index = unorderedPriorityOrder != null
+                ? unorderedPriorityOrder[position]
+                : buffer.getInt(priorityOrderPosition + position * Integer.BYTES);
+        if (index < 0 || index >= cardsCount) {
+            throw new IllegalStateException("Cards snapshot: " + snapshotFile + " has an incorrect priority order");
+        }
+        return index;
+    }
+
+    @NotNull
+    public CardPriority priorityAt(final int index) {
+        final int priority = Byte.toUnsignedInt(buffer.get(prioritiesPosition + index));
+        if (priority >= PRIORITIES.length) {
+            throw new IllegalStateException("Cards snapshot: " + snapshotFile + " has an unknown card priority");
+        }
+        return PRIORITIES[priority];
+    }
+
+    @NotNull
+    public Card cardAt(final int index) {
+        final String title = titleAt(index);
+        try {
+            return new Card(title, priorityAt(index));
+        } catch (IncorrectCardTitleException e) {
+            throw new IllegalStateException("Cards snapshot: " + snapshotFile + " has an incorrect card title: " + title);
+        }
+    }
+
+    /**
+     * @return the card priority update which was scheduled when the snapshot was written, if any
+     */
+    @Nullable
+    public ScheduledPriorityUpdate scheduledUpdateAt(final int index) {
+        final int position = schedulesPosition + index * SCHEDULE_ENTRY_SIZE;
+        final byte timeUnit = buffer.get(position);
+        if (timeUnit == NO_SCHEDULE) return null;
+        if (timeUnit < 0 || timeUnit >= TIME_UNITS.length) {
+            throw new IllegalStateException("Cards snapshot: " + snapshotFile + " has an unknown schedule time unit");
+        }
+        final long period = buffer.getLong(position + Byte.BYTES);
+        final LocalDateTime nextUpdate = LocalDateTime.ofEpochSecond(
+                buffer.getLong(position + Byte.BYTES + Long.BYTES),
+                buffer.getInt(position + Byte.BYTES + 2 * Long.BYTES),
+                ZoneOffset.UTC
+        );
+        try {
+            return new ScheduledPriorityUpdate(
+                    titleAt(index), new CardPriorityUpdateSchedule(TIME_UNITS[timeUnit], period), nextUpdate
+            );
+        } catch (IncorrectCardPriorityScheduleException e) {
+            throw new IllegalStateException("Cards snapshot: " + snapshotFile + " has an incorrect schedule", e);
+        }
+    }
+
+    @Override
+    @NotNull
+    public String toString() {
+        return "MappedCardsSnapshot{" +
+                "snapshotFile=" + snapshotFile +
+                ", cardsCount=" + cardsCount +
+                '}';
+    }
+}
@@ -0,0 +1,167 @@
+package org.cards_tracker.controller;
+
+import io.javalin.http.Context;
+import io.javalin.http.ContextResolver;
+import io.javalin.http.ContextResolverKt;
+import io.javalin.http.Handler;
+import io.javalin.http.HttpCode;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdmissionControlTest {
+
+    private final BodyCodecs bodyCodecs = new BodyCodecs(JsonBinding.REFLECTION);
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final AtomicInteger admittedRequests = new AtomicInteger();
+    private final Handler handler = ctx -> admittedRequests.incrementAndGet();
+
+    @Mock
+    private HttpServletResponse response;
+
+    private AdmissionControl createAdmissionControl(final long clientRequestsPerSecond,
+                                                    final long clientBurst,
+                                                    final int maxConcurrentRequests,
+                                                    final int maxTrackedClients) throws Exception {
+        return new AdmissionControl(
+                bodyCodecs, clientRequestsPerSecond, clientBurst, maxConcurrentRequests,
+                () -> 0, 100, maxTrackedClients, nanoTime::get
+        );
+    }
+
+    private Context request(final String client) {
+        final HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getRemoteAddr()).thenReturn(client);
+        // the request is described in the log only when it is rejected
+        Mockito.lenient().when(request.getMethod()).thenReturn("POST");
+        Mockito.lenient().when(request.getRequestURI()).thenReturn("/card");
+        return new Context(request, response, Map.of(ContextResolverKt.CONTEXT_RESOLVER_KEY, new ContextResolver()));
+    }
+
+    private void advanceSeconds(final double seconds) {
+        nanoTime.addAndGet((long) (seconds * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    public void shouldRejectClientWhichSpentItsBucketUntilItIsRefilled() throws Exception {
+        // arrange
+        final AdmissionControl admissionControl = createAdmissionControl(2, 3, 10, 10);
+        final Handler admittedHandler = admissionControl.admit(handler);
+        for (int i = 0; i < 3; i++) {
+            admittedHandler.handle(request("client1"));
+        }
+        // act
+        admittedHandler.handle(request("client1"));
+        final int admittedBeforeRefill = admittedRequests.get();
+        advanceSeconds(1);
+        admittedHandler.handle(request("client1"));
+        admittedHandler.handle(request("client1"));
+        admittedHandler.handle(request("client1"));
+        // assert
+        Assert.assertEquals(3, admittedBeforeRefill);
+        // two tokens were refilled in a second
+        Assert.assertEquals(5, admittedRequests.get());
+        Assert.assertEquals(5, admissionControl.getMetrics().getAdmittedRequests());
+        Assert.assertEquals(2, admissionControl.getMetrics().getRateLimitedRequests());
+        Mockito.verify(response, Mockito.times(2)).setStatus(HttpCode.TOO_MANY_REQUESTS.getStatus());
+    }
+
+    @Test
+    public void shouldNotRefillBucketOverItsBurst() throws Exception {
+        // arrange
+        final AdmissionControl admissionControl = createAdmissionControl(1, 2, 10, 10);
+        final Handler admittedHandler = admissionControl.admit(handler);
+        advanceSeconds(100);
+        // act
+        for (int i = 0; i < 3; i++) {
+            admittedHandler.handle(request("client1"));
+        }
+        // assert
+        Assert.assertEquals(2, admittedRequests.get());
+    }
+
+    @Test
+    public void shouldAnswerWithSecondsUntilNextToken() throws Exception {
+        // arrange
+        final AdmissionControl admissionControl = createAdmissionControl(1, 1, 10, 10);
+        final Handler admittedHandler = admissionControl.admit(handler);
+        admittedHandler.handle(request("client1"));
+        // act
+        advanceSeconds(0.25);
+        admittedHandler.handle(request("client1"));
+        // assert
+        Mockito.verify(response).setStatus(HttpCode.TOO_MANY_REQUESTS.getStatus());
+        Mockito.verify(response).setHeader("Retry-After", "1");
+    }
+
+    @Test
+    public void shouldHoldConcurrencyPermitUntilRequestFutureIsCompleted() throws Exception {
+        // arrange
+        final AdmissionControl admissionControl = createAdmissionControl(100, 100, 1, 10);
+        final CompletableFuture<Object> dispatchedRequest = new CompletableFuture<>();
+        admissionControl.admit(ctx -> ctx.future(dispatchedRequest)).handle(request("client1"));
+        final Handler admittedHandler = admissionControl.admit(handler);
+        // act
+        admittedHandler.handle(request("client2"));
+        final int concurrentRequests = admissionControl.getMetrics().getConcurrentRequests();
+        dispatchedRequest.complete(null);
+        admittedHandler.handle(request("client2"));
+        // assert
+        Assert.assertEquals(1, concurrentRequests);
+        Assert.assertEquals(1, admittedRequests.get());
+        Assert.assertEquals(1, admissionControl.getMetrics().getConcurrencyLimitedRequests());
+        Assert.assertEquals(0, admissionControl.getMetrics().getConcurrentRequests());
+        Mockito.verify(response).setHeader("Retry-After", "1");
+    }
+
+    @Test
+    public void shouldReleaseConcurrencyPermitWhenHandlerFails() throws Exception {
+        // arrange
+        final AdmissionControl admissionControl = createAdmissionControl(100, 100, 1, 10);
+        // act
+        try {
+            admissionControl.admit(ctx -> {
+                throw new IllegalStateException("handler failed");
+            }).handle(request("client1"));
+            Assert.fail("An error should be thrown.");
+        } catch (IllegalStateException e) {
+            // do nothing
+        }
+        admissionControl.admit(handler).handle(request("client1"));
+        // assert
+        Assert.assertEquals(1, admittedRequests.get());
+        Assert.assertEquals(0, admissionControl.getMetrics().getConcurrentRequests());
+    }
+
+    @Test
+    public void shouldForgetLeastRecentlySeenClients() throws Exception {
+        // arrange
+        final AdmissionControl admissionControl = createAdmissionControl(1, 1, 10, 2);
+        final Handler admittedHandler = admissionControl.admit(handler);
+        admittedHandler.handle(request("client1"));
+        admittedHandler.handle(request("client2"));
+        // the client1 is seen again, so the client2 is the least recently seen one
+        admittedHandler.handle(request("client1"));
+        // act
+        admittedHandler.handle(request("client3"));
+        admittedHandler.handle(request("client1"));
+        admittedHandler.handle(request("client2"));
+        // assert
+        Assert.assertEquals(2, admissionControl.getMetrics().getClients());
+        // the forgotten client2 got a new full bucket, the client1 is still limited
+        Assert.assertEquals(4, admittedRequests.get());
+        Assert.assertEquals(2, admissionControl.getMetrics().getRateLimitedRequests());
+    }
+}
@@ -0,0 +1,64 @@
+package org.cards_tracker.controller;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BodyCodecsTest {
+
+    private final BodyCodecs bodyCodecs = new BodyCodecs(JsonBinding.REFLECTION);
+
+    private void assertResponseFormat(final BodyFormat expectedFormat, final String accept) {
+        Assert.assertEquals(expectedFormat.getContentType(), bodyCodecs.forResponse(accept).getContentType());
+    }
+
+    @Test
+    public void shouldChooseJsonWithoutSupportedAcceptedFormat() {
+        assertResponseFormat(BodyFormat.JSON, null);
+        assertResponseFormat(BodyFormat.JSON, "");
+        assertResponseFormat(BodyFormat.JSON, "text/html, application/xml;q=0.9");
+    }
+
+    @Test
+    public void shouldChooseAcceptedFormatIgnoringParametersAndCase() {
+        assertResponseFormat(BodyFormat.CBOR, "application/cbor");
+        assertResponseFormat(BodyFormat.SMILE, " Application/X-Jackson-Smile ; charset=utf-8");
+        assertResponseFormat(BodyFormat.CBOR, "text/html, application/cbor");
+    }
+
+    @Test
+    public void shouldChooseFormatWithHighestQuality() {
+        assertResponseFormat(BodyFormat.SMILE, "application/cbor;q=0.5, application/x-jackson-smile;q=0.8");
+        assertResponseFormat(BodyFormat.CBOR, "application/json;q=0.1, application/cbor");
+        // the earlier format is chosen from the formats with the same quality
+        assertResponseFormat(BodyFormat.SMILE, "application/x-jackson-smile, application/cbor");
+        // the incorrect quality is ignored
+        assertResponseFormat(BodyFormat.CBOR, "application/json;q=0.5, application/cbor;q=high");
+    }
+
+    @Test
+    public void shouldChooseJsonForWildcards() {
+        assertResponseFormat(BodyFormat.JSON, "*/*");
+        assertResponseFormat(BodyFormat.JSON, "application/*");
+        assertResponseFormat(BodyFormat.JSON, "application/cbor;q=0.5, */*;q=0.8");
+        assertResponseFormat(BodyFormat.CBOR, "application/cbor, */*;q=0.8");
+    }
+
+    @Test
+    public void shouldNotChooseFormatWithZeroQuality() {
+        assertResponseFormat(BodyFormat.JSON, "application/cbor;q=0");
+        assertResponseFormat(BodyFormat.SMILE, "application/cbor;q=0, application/x-jackson-smile;q=0.1");
+        // the wildcard stands for the first format which was not excluded
+        assertResponseFormat(BodyFormat.CBOR, "application/json;q=0, */*");
+        assertResponseFormat(BodyFormat.SMILE, "application/json;q=0.0, application/cbor;q=0, application/*;q=0.5");
+    }
+
+    @Test
+    public void shouldChooseRequestFormatByContentType() {
+        Assert.assertEquals(BodyFormat.JSON.getContentType(), bodyCodecs.forRequest(null).getContentType());
+        Assert.assertEquals(BodyFormat.JSON.getContentType(), bodyCodecs.forRequest("text/plain").getContentType());
+        Assert.assertEquals(
+                BodyFormat.CBOR.getContentType(),
+                bodyCodecs.forRequest("application/cbor; charset=utf-8").getContentType()
+        );
+    }
+}
@@ -0,0 +1,285 @@
+package org.cards_tracker.controller;
+
+import io.javalin.http.Context;
+import io.javalin.http.ContextResolver;
+import io.javalin.http.ContextResolverKt;
+import io.javalin.http.Handler;
+import io.javalin.http.HttpCode;
+import io.javalin.http.util.ContextUtil;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IdempotencyCacheTest {
+
+    private final BodyCodecs bodyCodecs = new BodyCodecs(JsonBinding.REFLECTION);
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final AtomicInteger handledRequests = new AtomicInteger();
+    // answers with the request body, so the replayed response shows which request was handled
+    private final Handler handler = ctx -> {
+        handledRequests.incrementAndGet();
+        ctx.status(HttpCode.CREATED).contentType("text/plain").result(ctx.bodyAsInputStream().readAllBytes());
+    };
+
+    @Mock
+    private HttpServletResponse response;
+
+    private IdempotencyCache createIdempotencyCache(final long timeToLiveSeconds,
+                                                    final int maxResponses,
+                                                    final long maxBytes) throws Exception {
+        return new IdempotencyCache(bodyCodecs, TimeUnit.SECONDS, timeToLiveSeconds, maxResponses, maxBytes, nanoTime::get);
+    }
+
+    private Context request(final String idempotencyKey, final String body) throws IOException {
+        // the cache is used behind the dispatcher, so the response is recorded before it is written
+        return request(idempotencyKey, body, new RequestDispatcher.RecordedResponse(response));
+    }
+
+    private Context request(final String idempotencyKey,
+                            final String body,
+                            final HttpServletResponse response) throws IOException {
+        final HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getRemoteAddr()).thenReturn("client1");
+        Mockito.when(request.getMethod()).thenReturn("POST");
+        Mockito.when(request.getRequestURI()).thenReturn("/card");
+        Mockito.when(request.getHeader(IdempotencyCache.IDEMPOTENCY_KEY_HEADER)).thenReturn(idempotencyKey);
+        Mockito.when(request.getInputStream()).thenReturn(bodyStream(body));
+        // the app attributes which the server gives to every request context
+        return new Context(request, response, Map.of(
+                ContextResolverKt.CONTEXT_RESOLVER_KEY, new ContextResolver(),
+                ContextUtil.maxRequestSizeKey, 1_000_000L
+        ));
+    }
+
+    private static ServletInputStream bodyStream(final String body) {
+        final InputStream bodyStream = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        return new ServletInputStream() {
+            @Override
+            public boolean isFinished() {
+                return false;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(final ReadListener readListener) {
+            }
+
+            @Override
+            public int read() throws IOException {
+                return bodyStream.read();
+            }
+        };
+    }
+
+    private static String result(final Context ctx) throws IOException {
+        final InputStream result = ctx.resultStream();
+        return result == null ? null : new String(result.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private void advanceSeconds(final long seconds) {
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    @Test
+    public void shouldReplayResponseOfRetriedRequest() throws Exception {
+        // arrange
+        final Handler idempotentHandler = createIdempotencyCache(60, 10, 10_000).replay(handler);
+        final Context firstRequest = request("key1", "card1");
+        idempotentHandler.handle(firstRequest);
+        final Context retriedRequest = request("key1", "card1");
+        // act
+        idempotentHandler.handle(retriedRequest);
+        // assert
+        Assert.assertEquals(1, handledRequests.get());
+        Assert.assertEquals("card1", result(firstRequest));
+        Assert.assertEquals(HttpCode.CREATED.getStatus(), retriedRequest.status());
+        Assert.assertEquals("text/plain", retriedRequest.res.getContentType());
+        Assert.assertEquals("true", retriedRequest.res.getHeader("Idempotent-Replayed"));
+        Assert.assertEquals("card1", result(retriedRequest));
+    }
+
+    @Test
+    public void shouldHandleRetriedRequestAgainWhenItsResponseExpired() throws Exception {
+        // arrange
+        final Handler idempotentHandler = createIdempotencyCache(60, 10, 10_000).replay(handler);
+        idempotentHandler.handle(request("key1", "card1"));
+        advanceSeconds(59);
+        idempotentHandler.handle(request("key1", "card1"));
+        final int handledBeforeExpiration = handledRequests.get();
+        advanceSeconds(1);
+        final Context retriedRequest = request("key1", "card1");
+        // act
+        idempotentHandler.handle(retriedRequest);
+        // assert
+        Assert.assertEquals(1, handledBeforeExpiration);
+        Assert.assertEquals(2, handledRequests.get());
+        Assert.assertNull(retriedRequest.res.getHeader("Idempotent-Replayed"));
+    }
+
+    @Test
+    public void shouldEvictOldestResponseWhenResponsesAreOverLimit() throws Exception {
+        // arrange
+        final Handler idempotentHandler = createIdempotencyCache(60, 2, 10_000).replay(handler);
+        idempotentHandler.handle(request("key1", "card1"));
+        idempotentHandler.handle(request("key2", "card2"));
+        idempotentHandler.handle(request("key3", "card3"));
+        // act
+        idempotentHandler.handle(request("key3", "card3"));
+        idempotentHandler.handle(request("key2", "card2"));
+        idempotentHandler.handle(request("key1", "card1"));
+        // assert
+        // only the first response was evicted
+        Assert.assertEquals(4, handledRequests.get());
+    }
+
+    @Test
+    public void shouldEvictOldestResponseWhenResponsesSizeIsOverLimit() throws Exception {
+        // arrange
+        final String body = "c".repeat(1_000);
+        // the limit fits two responses with their keys, hashes and overheads, but not three
+        final Handler idempotentHandler = createIdempotencyCache(60, 10, 2_500).replay(handler);
+        idempotentHandler.handle(request("key1", body));
+        idempotentHandler.handle(request("key2", body));
+        idempotentHandler.handle(request("key3", body));
+        // act
+        idempotentHandler.handle(request("key3", body));
+        idempotentHandler.handle(request("key2", body));
+        idempotentHandler.handle(request("key1", body));
+        // assert
+        Assert.assertEquals(4, handledRequests.get());
+    }
+
+    @Test
+    public void shouldNotKeepResponseLargerThanLimit() throws Exception {
+        // arrange
+        final String body = "c".repeat(1_000);
+        final Handler idempotentHandler = createIdempotencyCache(60, 10, 500).replay(handler);
+        final Context firstRequest = request("key1", body);
+        idempotentHandler.handle(firstRequest);
+        // act
+        idempotentHandler.handle(request("key1", body));
+        // assert
+        Assert.assertEquals(body, result(firstRequest));
+        Assert.assertEquals(2, handledRequests.get());
+    }
+
+    @Test
+    public void shouldRejectRetryWhileRequestIsHandled() throws Exception {
+        // arrange
+        final IdempotencyCache idempotencyCache = createIdempotencyCache(60, 10, 10_000);
+        final Context retriedRequest = request("key1", "card1");
+        final Handler[] idempotentHandler = new Handler[1];
+        idempotentHandler[0] = idempotencyCache.replay(ctx -> {
+            handledRequests.incrementAndGet();
+            idempotentHandler[0].handle(retriedRequest);
+            ctx.status(HttpCode.CREATED);
+        });
+        final Context firstRequest = request("key1", "card1");
+        // act
+        idempotentHandler[0].handle(firstRequest);
+        // assert
+        Assert.assertEquals(1, handledRequests.get());
+        Assert.assertEquals(HttpCode.CREATED.getStatus(), firstRequest.status());
+        Assert.assertEquals(HttpCode.CONFLICT.getStatus(), retriedRequest.status());
+        Assert.assertNotNull(result(retriedRequest));
+    }
+
+    @Test
+    public void shouldHandleRetryOfRejectedRequest() throws Exception {
+        // arrange
+        final AtomicInteger rejectedRequests = new AtomicInteger();
+        final Handler idempotentHandler = createIdempotencyCache(60, 10, 10_000).replay(ctx -> {
+            handledRequests.incrementAndGet();
+            if (rejectedRequests.getAndIncrement() == 0) {
+                ctx.status(HttpCode.TOO_MANY_REQUESTS).result("try later");
+            } else {
+                ctx.status(HttpCode.SERVICE_UNAVAILABLE).result("try later");
+            }
+        });
+        final Context firstRequest = request("key1", "card1");
+        idempotentHandler.handle(firstRequest);
+        final Context secondRequest = request("key1", "card1");
+        // act
+        idempotentHandler.handle(secondRequest);
+        idempotentHandler.handle(request("key1", "card1"));
+        // assert
+        Assert.assertEquals(3, handledRequests.get());
+        Assert.assertEquals("try later", result(firstRequest));
+        Assert.assertEquals(HttpCode.SERVICE_UNAVAILABLE.getStatus(), secondRequest.status());
+        Assert.assertEquals("try later", result(secondRequest));
+    }
+
+    @Test
+    public void shouldRejectRetryWithAnotherBody() throws Exception {
+        // arrange
+        final Handler idempotentHandler = createIdempotencyCache(60, 10, 10_000).replay(handler);
+        idempotentHandler.handle(request("key1", "card1"));
+        final Context retriedRequest = request("key1", "card2");
+        // act
+        idempotentHandler.handle(retriedRequest);
+        idempotentHandler.handle(request("key1", "card1"));
+        // assert
+        Assert.assertEquals(1, handledRequests.get());
+        Assert.assertEquals(HttpCode.UNPROCESSABLE_ENTITY.getStatus(), retriedRequest.status());
+        Assert.assertNull(retriedRequest.res.getHeader("Idempotent-Replayed"));
+    }
+
+    @Test
+    public void shouldHandleRequestsWithoutKeyEveryTime() throws Exception {
+        // arrange
+        final Handler idempotentHandler = createIdempotencyCache(60, 10, 10_000).replay(handler);
+        idempotentHandler.handle(request(null, "card1"));
+        final Context secondRequest = request(null, "card1");
+        // act
+        idempotentHandler.handle(secondRequest);
+        // assert
+        Assert.assertEquals(2, handledRequests.get());
+        Assert.assertEquals("card1", result(secondRequest));
+    }
+
+    @Test
+    public void shouldReplayResponseBehindAsynchronousDispatcher() throws Exception {
+        // arrange
+        final List<Runnable> pendingTasks = new ArrayList<>();
+        final Handler dispatchedHandler = new RequestDispatcher(bodyCodecs, pendingTasks::add)
+                .dispatch(createIdempotencyCache(60, 10, 10_000).replay(handler));
+        final Context firstRequest = request("key1", "card1", response);
+        dispatchedHandler.handle(firstRequest);
+        pendingTasks.remove(0).run();
+        final Context retriedRequest = request("key1", "card1", response);
+        // act
+        dispatchedHandler.handle(retriedRequest);
+        pendingTasks.remove(0).run();
+        // assert
+        Assert.assertEquals(1, handledRequests.get());
+        Assert.assertEquals("card1", readBody(firstRequest.resultFuture().get(30, TimeUnit.SECONDS)));
+        Assert.assertEquals("card1", readBody(retriedRequest.resultFuture().get(30, TimeUnit.SECONDS)));
+    }
+
+    private static String readBody(final Object body) throws IOException {
+        return new String(((InputStream) body).readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
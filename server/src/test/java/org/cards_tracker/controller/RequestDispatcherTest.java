@@ -0,0 +1,152 @@
+package org.cards_tracker.controller;
+
+import io.javalin.http.Context;
+import io.javalin.http.ContextResolver;
+import io.javalin.http.ContextResolverKt;
+import io.javalin.http.Handler;
+import io.javalin.http.HttpCode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RequestDispatcherTest {
+
+    private final BodyCodecs bodyCodecs = new BodyCodecs(JsonBinding.REFLECTION);
+    private final List<Runnable> pendingTasks = new ArrayList<>();
+
+    @Mock
+    private HttpServletRequest request;
+    @Mock
+    private HttpServletResponse response;
+
+    private Context ctx;
+
+    @Before
+    public void setUp() {
+        ctx = new Context(request, response, Map.of(ContextResolverKt.CONTEXT_RESOLVER_KEY, new ContextResolver()));
+    }
+
+    private static String readBody(final Object body) throws Exception {
+        return new String(((InputStream) body).readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldExecuteHandlerOnRequestThreadWithoutServiceExecutor() throws Exception {
+        // arrange
+        final Handler handler = Mockito.mock(Handler.class);
+        final RequestDispatcher requestDispatcher = new RequestDispatcher(bodyCodecs, null);
+        // act
+        requestDispatcher.dispatch(handler).handle(ctx);
+        // assert
+        Mockito.verify(handler).handle(ctx);
+    }
+
+    @Test
+    public void shouldCompleteRequestFutureWithResponseOfDispatchedHandler() throws Exception {
+        // arrange
+        final AtomicReference<HttpServletResponse> recordedResponse = new AtomicReference<>();
+        final RequestDispatcher requestDispatcher = new RequestDispatcher(bodyCodecs, pendingTasks::add);
+        // act
+        requestDispatcher.dispatch(handlerCtx -> {
+            recordedResponse.set(handlerCtx.res);
+            handlerCtx
+                    .status(HttpCode.CREATED)
+                    .header("ETag", "\"1\"")
+                    .contentType("application/json")
+                    .result("{}".getBytes(StandardCharsets.UTF_8));
+        }).handle(ctx);
+        final boolean completedBeforeExecution = ctx.resultFuture().isDone();
+        pendingTasks.remove(0).run();
+        // assert
+        Assert.assertFalse(completedBeforeExecution);
+        Assert.assertEquals("{}", readBody(ctx.resultFuture().get(30, TimeUnit.SECONDS)));
+        // the request response is changed only by the callback of the future
+        Mockito.verifyNoInteractions(response);
+        RequestDispatcher.respond(
+                ctx, (RequestDispatcher.RecordedResponse) recordedResponse.get(), new ByteArrayInputStream(new byte[0])
+        );
+        Mockito.verify(response).setStatus(HttpCode.CREATED.getStatus());
+        Mockito.verify(response).setHeader("ETag", "\"1\"");
+        Mockito.verify(response).setContentType("application/json");
+    }
+
+    @Test
+    public void shouldKeepAppAttributesInDispatchedHandlerContext() throws Exception {
+        // arrange
+        Mockito.when(request.getRemoteAddr()).thenReturn("client1");
+        final RequestDispatcher requestDispatcher = new RequestDispatcher(bodyCodecs, pendingTasks::add);
+        // act
+        requestDispatcher.dispatch(handlerCtx -> handlerCtx.result(handlerCtx.ip())).handle(ctx);
+        pendingTasks.remove(0).run();
+        // assert
+        Assert.assertEquals("client1", readBody(ctx.resultFuture().get(30, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void shouldFailRequestFutureWhenDispatchedHandlerFails() throws Exception {
+        // arrange
+        final RequestDispatcher requestDispatcher = new RequestDispatcher(bodyCodecs, pendingTasks::add);
+        // act
+        requestDispatcher.dispatch(handlerCtx -> {
+            throw new IllegalStateException("handler failed");
+        }).handle(ctx);
+        pendingTasks.remove(0).run();
+        // assert
+        Assert.assertTrue(ctx.resultFuture().isCompletedExceptionally());
+        Mockito.verifyNoInteractions(response);
+    }
+
+    @Test
+    public void shouldAnswerServiceUnavailableWhenServiceExecutorRejectsRequest() throws Exception {
+        // arrange
+        Mockito.when(request.getMethod()).thenReturn("POST");
+        Mockito.when(request.getRequestURI()).thenReturn("/card");
+        final Handler handler = Mockito.mock(Handler.class);
+        final RequestDispatcher requestDispatcher = new RequestDispatcher(bodyCodecs, task -> {
+            throw new RejectedExecutionException("executor is full");
+        });
+        // act
+        requestDispatcher.dispatch(handler).handle(ctx);
+        // assert
+        Mockito.verify(handler, Mockito.never()).handle(Mockito.any());
+        Assert.assertEquals(
+                new String(bodyCodecs.getCodec(BodyFormat.JSON).writeError("The service is overloaded, try again later"),
+                        StandardCharsets.UTF_8),
+                readBody(ctx.resultFuture().get(30, TimeUnit.SECONDS))
+        );
+        Mockito.verifyNoInteractions(response);
+    }
+
+    @Test
+    public void shouldRecordHeadersCaseInsensitively() {
+        // arrange
+        final RequestDispatcher.RecordedResponse recordedResponse = new RequestDispatcher.RecordedResponse(response);
+        // act
+        recordedResponse.setHeader("Retry-After", "1");
+        recordedResponse.setHeader("retry-after", "2");
+        recordedResponse.addHeader("Vary", "Accept");
+        recordedResponse.addHeader("vary", "Origin");
+        // assert
+        Assert.assertEquals("2", recordedResponse.getHeader("RETRY-AFTER"));
+        Assert.assertEquals("Accept, Origin", recordedResponse.getHeader("Vary"));
+        Assert.assertEquals(HttpCode.OK.getStatus(), recordedResponse.getStatus());
+        Mockito.verifyNoInteractions(response);
+    }
+}
@@ -0,0 +1,132 @@
+package org.cards_tracker.controller;
+
+import org.cards_tracker.service.VersionedTodayCards;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TodayCardsStreamTest {
+
+    private final JsonCodec jsonCodec = new JsonCodec(JsonBinding.REFLECTION, BodyFormat.JSON);
+    private final List<Runnable> pendingTasks = new ArrayList<>();
+    private ScheduledExecutorService writeTimeoutExecutor;
+
+    @Mock
+    private TodayCardsStream.Connection connection;
+
+    @Before
+    public void setUp() {
+        writeTimeoutExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        writeTimeoutExecutor.shutdownNow();
+    }
+
+    private void runPendingTasks() {
+        while (!pendingTasks.isEmpty()) {
+            pendingTasks.remove(0).run();
+        }
+    }
+
+    private void verifyPushed(final long version, final int times) throws Exception {
+        Mockito.verify(connection, Mockito.times(times)).send(
+                Mockito.eq(TodayCardsStream.TODAY_CARDS_EVENT), Mockito.any(), Mockito.eq(String.valueOf(version))
+        );
+    }
+
+    @Test
+    public void shouldPushBurstOfChangesOnceWithLatestCards() throws Exception {
+        // arrange
+        final TodayCardsStream stream = new TodayCardsStream(
+                jsonCodec, pendingTasks::add, writeTimeoutExecutor, TimeUnit.MINUTES.toMillis(1), 16
+        );
+        stream.connect(connection, new VersionedTodayCards(0, List.of("card1")));
+        // act
+        stream.onTodayCardsChanged(new VersionedTodayCards(1, List.of("card2")));
+        stream.onTodayCardsChanged(new VersionedTodayCards(3, List.of("card2", "card3", "card1")));
+        stream.onTodayCardsChanged(new VersionedTodayCards(2, List.of("card2", "card1")));
+        runPendingTasks();
+        // assert
+        verifyPushed(0, 1);
+        verifyPushed(1, 0);
+        verifyPushed(2, 0);
+        verifyPushed(3, 1);
+        Assert.assertEquals(1, stream.getClientsCount());
+    }
+
+    @Test
+    public void shouldDisconnectClientWhichOverflowsItsBuffer() throws Exception {
+        // arrange
+        final TodayCardsStream stream = new TodayCardsStream(
+                jsonCodec, pendingTasks::add, writeTimeoutExecutor, TimeUnit.MINUTES.toMillis(1), 2
+        );
+        stream.connect(connection, new VersionedTodayCards(0, List.of("card1")));
+        // act
+        // the broadcasts are run before the push of the connected client, which does not keep up with them
+        stream.onTodayCardsChanged(new VersionedTodayCards(1, List.of("card2")));
+        pendingTasks.remove(1).run();
+        stream.onTodayCardsChanged(new VersionedTodayCards(2, List.of("card3")));
+        pendingTasks.remove(1).run();
+        runPendingTasks();
+        // assert
+        Assert.assertEquals(0, stream.getClientsCount());
+        Mockito.verify(connection).close();
+        Mockito.verify(connection, Mockito.never()).send(Mockito.anyString(), Mockito.any(), Mockito.anyString());
+    }
+
+    @Test
+    public void shouldPushCardsPublishedBeforeLateClientWasConnected() throws Exception {
+        // arrange
+        final TodayCardsStream stream = new TodayCardsStream(
+                jsonCodec, pendingTasks::add, writeTimeoutExecutor, TimeUnit.MINUTES.toMillis(1), 16
+        );
+        stream.onTodayCardsChanged(new VersionedTodayCards(5, List.of("card1", "card2")));
+        runPendingTasks();
+        // act
+        stream.connect(connection, new VersionedTodayCards(4, List.of("card1")));
+        runPendingTasks();
+        // assert
+        verifyPushed(4, 0);
+        verifyPushed(5, 1);
+        Assert.assertEquals(1, stream.getClientsCount());
+    }
+
+    @Test
+    public void shouldDisconnectClientWhichDoesNotTakePushInWriteTimeout() throws Exception {
+        // arrange
+        final CountDownLatch abortLatch = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            // the blocked write fails only when the connection is aborted
+            if (!abortLatch.await(30, TimeUnit.SECONDS)) Assert.fail("The write should be aborted.");
+            throw new IllegalStateException("connection was aborted");
+        }).when(connection).send(Mockito.anyString(), Mockito.any(), Mockito.anyString());
+        Mockito.doAnswer(invocation -> {
+            abortLatch.countDown();
+            return null;
+        }).when(connection).abort();
+        final TodayCardsStream stream = new TodayCardsStream(jsonCodec, Runnable::run, writeTimeoutExecutor, 50, 16);
+        // act
+        stream.connect(connection, new VersionedTodayCards(0, List.of("card1")));
+        stream.onTodayCardsChanged(new VersionedTodayCards(1, List.of("card2")));
+        // assert
+        Assert.assertEquals(0, stream.getClientsCount());
+        Mockito.verify(connection).abort();
+        verifyPushed(0, 1);
+        verifyPushed(1, 0);
+    }
+}
@@ -0,0 +1,102 @@
+package org.cards_tracker.executor;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ServiceExecutorTest {
+
+    private ServiceExecutor serviceExecutor;
+
+    @Before
+    public void setUp() {
+        serviceExecutor = new ServiceExecutor("test", 1, 1);
+    }
+
+    @After
+    public void tearDown() {
+        serviceExecutor.shutdown();
+    }
+
+    private void awaitCompletedTasks(final long completedTasks) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (serviceExecutor.getMetrics().getCompletedTasks() < completedTasks) {
+            if (System.nanoTime() > deadline) Assert.fail("The tasks should be completed.");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void shouldRejectTasksOverItsThreadsAndQueue() throws Exception {
+        // arrange
+        final CountDownLatch startedTask = new CountDownLatch(1);
+        final CountDownLatch releasedTasks = new CountDownLatch(1);
+        serviceExecutor.execute(() -> {
+            startedTask.countDown();
+            try {
+                releasedTasks.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        serviceExecutor.execute(() -> {
+        });
+        Assert.assertTrue(startedTask.await(30, TimeUnit.SECONDS));
+        // act
+        try {
+            serviceExecutor.execute(() -> {
+            });
+            Assert.fail("An error should be thrown.");
+        } catch (RejectedExecutionException e) {
+            // do nothing
+        }
+        final ExecutorMetrics busyMetrics = serviceExecutor.getMetrics();
+        releasedTasks.countDown();
+        awaitCompletedTasks(2);
+        // assert
+        // the virtual threads start every accepted task at once, the fixed pool queues the task over its threads
+        Assert.assertEquals(2, busyMetrics.getActiveThreads() + busyMetrics.getQueueDepth());
+        Assert.assertEquals(0, busyMetrics.getCompletedTasks());
+        final ExecutorMetrics idleMetrics = serviceExecutor.getMetrics();
+        Assert.assertEquals(0, idleMetrics.getActiveThreads());
+        Assert.assertEquals(0, idleMetrics.getQueueDepth());
+        Assert.assertEquals("test", idleMetrics.getName());
+    }
+
+    @Test
+    public void shouldAcceptTasksAgainWhenAcceptedOnesAreCompleted() throws Exception {
+        // arrange
+        serviceExecutor.execute(() -> {
+        });
+        serviceExecutor.execute(() -> {
+        });
+        awaitCompletedTasks(2);
+        // act
+        final CountDownLatch executedTask = new CountDownLatch(1);
+        serviceExecutor.execute(executedTask::countDown);
+        // assert
+        Assert.assertTrue(executedTask.await(30, TimeUnit.SECONDS));
+        awaitCompletedTasks(3);
+        Assert.assertEquals(3, serviceExecutor.getMetrics().getCompletedTasks());
+    }
+
+    @Test
+    public void shouldReleaseAcceptedTaskWhenItFails() throws Exception {
+        // arrange
+        serviceExecutor.execute(() -> {
+            throw new IllegalStateException("task failed");
+        });
+        awaitCompletedTasks(1);
+        // act
+        final CountDownLatch executedTasks = new CountDownLatch(2);
+        serviceExecutor.execute(executedTasks::countDown);
+        serviceExecutor.execute(executedTasks::countDown);
+        // assert
+        Assert.assertTrue(executedTasks.await(30, TimeUnit.SECONDS));
+    }
+}
@@ -9,8 +9,11 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.*;
 
 public class InMemoryCardRegistryTest {
 
@@ -38,6 +41,54 @@ public class InMemoryCardRegistryTest {
         Assert.assertEquals("card1", actualCardsList.get(3).getTitle());
     }
 
+    @Test
+    public void shouldReturnPrioritizedCardsListAfterPriorityChanges() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT));
+        cardRegistry.createCard(new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        cardRegistry.createCard(new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        // act
+        cardRegistry.increaseCardPriority("card3");
+        cardRegistry.bottomCardPriority("card2");
+        cardRegistry.updateCard(new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        cardRegistry.removeCard("card4");
+        final List<Card> actualCardsList = cardRegistry.getPrioritizedCards();
+        // assert
+        Assert.assertEquals(3, actualCardsList.size());
+        Assert.assertEquals(new Card("card3", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT), actualCardsList.get(0));
+        Assert.assertEquals(new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY), actualCardsList.get(1));
+        Assert.assertEquals(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW), actualCardsList.get(2));
+    }
+
+    @Test
+    public void shouldReturnLimitedTopPrioritizedCards() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT));
+        cardRegistry.createCard(new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        cardRegistry.createCard(new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        // act
+        final List<Card> actualCardsList = cardRegistry.getTopPrioritizedCards(2);
+        // assert
+        Assert.assertEquals(2, actualCardsList.size());
+        Assert.assertEquals("card2", actualCardsList.get(0).getTitle());
+        Assert.assertEquals("card3", actualCardsList.get(1).getTitle());
+    }
+
+    @Test
+    public void shouldReturnAllTopPrioritizedCardsWhenLimitIsBigger() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT));
+        // act
+        final List<Card> actualCardsList = cardRegistry.getTopPrioritizedCards(Integer.MAX_VALUE);
+        // assert
+        Assert.assertEquals(2, actualCardsList.size());
+        Assert.assertEquals("card2", actualCardsList.get(0).getTitle());
+        Assert.assertEquals("card1", actualCardsList.get(1).getTitle());
+    }
+
     @Test
     public void shouldReturnAllCreatedCards() throws IncorrectCardTitleException {
         // arrange
@@ -220,4 +271,142 @@ public class InMemoryCardRegistryTest {
 
         Assert.assertTrue(actualCards.stream().noneMatch(cardToRemove::equals));
     }
+
+    @Test
+    public void shouldKeepPriorityBucketsConsistentUnderConcurrentChanges() throws Exception {
+        // arrange
+        final int cardsCount = 100;
+        for (int i = 0; i < cardsCount; i++) {
+            cardRegistry.createCard(new Card("card" + i, CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Future<?>> changes = new ArrayList<>();
+        // act
+        for (int thread = 0; thread < 4; thread++) {
+            final boolean increasing = thread % 2 == 0;
+            changes.add(executorService.submit(() -> {
+                startLatch.await();
+                for (int iteration = 0; iteration < 200; iteration++) {
+                    for (int i = 0; i < cardsCount; i++) {
+                        if (increasing) {
+                            cardRegistry.increaseCardPriority("card" + i);
+                        } else {
+                            cardRegistry.bottomCardPriority("card" + i);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> change : changes) {
+            change.get(30, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+        // assert
+        final List<Card> actualCards = cardRegistry.getPrioritizedCards();
+        Assert.assertEquals(cardsCount, actualCards.size());
+        Assert.assertEquals(new HashSet<>(actualCards), cardRegistry.getAllCards());
+    }
+
+    @Test
+    public void shouldCreateAndRemoveCardsBatch() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        // act
+        final Set<String> actualExistingCards = cardRegistry.createCards(List.of(
+                new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
+                new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
+                new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
+                new Card("card3", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
+        ));
+        final Set<String> actualMissingCards = cardRegistry.removeCards(List.of("card1", "card3", "card3", "card4"));
+        // assert
+        Assert.assertEquals(Set.of("card1"), actualExistingCards);
+        Assert.assertEquals(Set.of("card4"), actualMissingCards);
+        Assert.assertEquals(
+                List.of(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)),
+                cardRegistry.getPrioritizedCards()
+        );
+    }
+
+    @Test
+    public void shouldIncreaseCardPrioritiesBatch() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT));
+        // act
+        final Set<String> actualMissingCards = cardRegistry.increaseCardPriorities(List.of("card1", "card2", "card3"));
+        // assert
+        Assert.assertEquals(Set.of("card3"), actualMissingCards);
+        Assert.assertEquals(
+                List.of(
+                        new Card("card2", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT),
+                        new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY)
+                ),
+                cardRegistry.getPrioritizedCards()
+        );
+    }
+
+    @Test
+    public void shouldBottomCardPrioritiesBatch() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        cardRegistry.createCard(new Card("card2", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT));
+        // act
+        final Set<String> actualMissingCards = cardRegistry.bottomCardPriorities(List.of("card1", "card2", "card3"));
+        // assert
+        Assert.assertEquals(Set.of("card3"), actualMissingCards);
+        Assert.assertEquals(
+                Set.of(
+                        new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
+                        new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
+                ),
+                cardRegistry.getAllCards()
+        );
+    }
+
+    @Test
+    public void shouldIncreaseCardPrioritiesBatchInParallel() throws Exception {
+        // arrange
+        final int cardsCount = InMemoryCardRegistry.PARALLEL_TRANSITION_THRESHOLD * 2;
+        final List<String> titles = new ArrayList<>();
+        for (int i = 0; i < cardsCount; i++) {
+            cardRegistry.createCard(new Card("card" + i, CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+            titles.add("card" + i);
+        }
+        titles.add("missingCard");
+        // act
+        final Set<String> actualMissingCards = cardRegistry.increaseCardPriorities(titles);
+        // assert
+        Assert.assertEquals(Set.of("missingCard"), actualMissingCards);
+        final List<Card> actualCards = cardRegistry.getTopPrioritizedCards(cardsCount);
+        Assert.assertEquals(cardsCount, actualCards.size());
+        for (Card card : actualCards) {
+            Assert.assertEquals(CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY, card.getCardPriority());
+        }
+    }
+
+    @Test
+    public void shouldOrderCardsOfTheSamePriorityByTheTimeTheyReachedIt() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card3", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card5", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        // act
+        cardRegistry.increaseCardPriorities(List.of("card4", "card2"));
+        cardRegistry.increaseCardPriority("card1");
+        cardRegistry.updateCard(new Card("card2", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        final List<Card> actualTopCards = cardRegistry.getTopPrioritizedCards(4);
+        // assert
+        final List<String> actualTitles = new ArrayList<>();
+        for (Card card : actualTopCards) {
+            actualTitles.add(card.getTitle());
+        }
+        Assert.assertEquals(List.of("card2", "card4", "card1", "card3"), actualTitles);
+        Assert.assertEquals(actualTopCards, cardRegistry.getPrioritizedCards().subList(0, 4));
+    }
 }
@@ -1,6 +1,9 @@
 package org.cards_tracker.service;
 
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
 import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
 import org.cards_tracker.error.IncorrectCardPriorityScheduleException;
 import org.cards_tracker.error.NotExistingCardException;
 import org.junit.Assert;
@@ -13,6 +16,7 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import java.time.LocalDateTime;
 import java.time.Month;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -155,4 +159,136 @@ public class InMemoryCardsUpdateSchedulerTest {
         final Set<String> actualScheduledCards = cardsUpdateScheduler.getActiveScheduleFor(secondCardScheduledTime);
         Assert.assertEquals(1, actualScheduledCards.size());
     }
+
+    @Test
+    public void shouldRestoreExportedPriorityUpdates() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.DAYS, 1L);
+        final ScheduledPriorityUpdate storedUpdate = new ScheduledPriorityUpdate(
+                "card1", updateSchedule, LocalDateTime.of(2007, Month.AUGUST, 22, 0, 0)
+        );
+        final ScheduledPriorityUpdate removedCardUpdate = new ScheduledPriorityUpdate(
+                "card2", updateSchedule, LocalDateTime.of(2007, Month.AUGUST, 22, 0, 0)
+        );
+        Mockito.when(cardRegistry.isCardExist("card1")).thenReturn(true);
+        Mockito.when(cardRegistry.isCardExist("card2")).thenReturn(false);
+        Mockito.when(cardRegistry.getAllCards())
+                .thenReturn(Set.of(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)));
+        // act
+        cardsUpdateScheduler.restorePriorityUpdates(List.of(storedUpdate, removedCardUpdate));
+        // assert
+        Assert.assertEquals(List.of(storedUpdate), cardsUpdateScheduler.getScheduledPriorityUpdates());
+    }
+
+    @Test
+    public void shouldScheduleCardsBatchWithOneExecution() throws Exception {
+        // arrange
+        Mockito.when(cardRegistry.isCardExist("card1")).thenReturn(true);
+        Mockito.when(cardRegistry.isCardExist("card2")).thenReturn(true);
+        Mockito.when(cardRegistry.isCardExist("card3")).thenReturn(false);
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(testTimeUnit, 1L);
+        final LocalDateTime expectedScheduledTime = LocalDateTime.now().plusHours(1);
+        Mockito.when(priorityUpdateCalendar.nextPriorityUpdateFrom(Mockito.eq(updateSchedule), Mockito.any()))
+                .thenReturn(expectedScheduledTime);
+        // act
+        final Set<String> actualMissingCards =
+                cardsUpdateScheduler.schedulePriorityUpdates(List.of("card1", "card2", "card3"), updateSchedule);
+        // assert
+        Assert.assertEquals(Set.of("card3"), actualMissingCards);
+        Assert.assertEquals(Set.of("card1", "card2"), cardsUpdateScheduler.getActiveScheduleFor(expectedScheduledTime));
+        Mockito.verify(executorService, Mockito.times(1))
+                .schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    public void shouldEvictExecutedSchedule() throws Exception {
+        // arrange
+        Mockito.when(cardRegistry.isCardExist("card1")).thenReturn(true);
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(testTimeUnit, 1L);
+        final LocalDateTime cardCreation = LocalDateTime.of(2007, Month.AUGUST, 21, 12, 40);
+        final LocalDateTime firstIteration = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
+        final LocalDateTime secondIteration = LocalDateTime.of(2007, Month.AUGUST, 21, 14, 0);
+        Mockito.when(priorityUpdateCalendar.nextPriorityUpdateFrom(updateSchedule, cardCreation))
+                .thenReturn(firstIteration);
+        Mockito.when(priorityUpdateCalendar.nextPriorityUpdateFrom(updateSchedule, firstIteration))
+                .thenReturn(secondIteration);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(cardCreation, "card1", updateSchedule);
+        // act
+        cardsUpdateScheduler.updateCardsNewPriorityLevel(firstIteration);
+        // assert
+        Assert.assertTrue(cardsUpdateScheduler.getActiveScheduleFor(firstIteration).isEmpty());
+        Assert.assertEquals(
+                List.of(new ScheduledPriorityUpdate("card1", updateSchedule, secondIteration)),
+                cardsUpdateScheduler.getScheduledPriorityUpdates()
+        );
+    }
+
+    @Test
+    public void shouldNotUpdateUnscheduledCards() throws Exception {
+        // arrange
+        Mockito.when(cardRegistry.isCardExist(Mockito.anyString())).thenReturn(true);
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(testTimeUnit, 1L);
+        final LocalDateTime cardCreation = LocalDateTime.of(2007, Month.AUGUST, 21, 12, 40);
+        final LocalDateTime firstIteration = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
+        Mockito.when(priorityUpdateCalendar.nextPriorityUpdateFrom(updateSchedule, cardCreation))
+                .thenReturn(firstIteration);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(cardCreation, "card1", updateSchedule);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(cardCreation, "card2", updateSchedule);
+        // act
+        cardsUpdateScheduler.unschedulePriorityUpdates(List.of("card1", "card2"));
+        cardsUpdateScheduler.updateCardsNewPriorityLevel(firstIteration);
+        // assert
+        Assert.assertTrue(cardsUpdateScheduler.getScheduledPriorityUpdates().isEmpty());
+        Mockito.verify(cardRegistry, Mockito.never()).increaseCardPriorities(Mockito.any());
+    }
+
+    @Test
+    public void shouldUnscheduleOnlyGivenCards() throws Exception {
+        // arrange
+        Mockito.when(cardRegistry.isCardExist(Mockito.anyString())).thenReturn(true);
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(testTimeUnit, 1L);
+        final LocalDateTime firstCardCreation = LocalDateTime.of(2007, Month.AUGUST, 21, 12, 40);
+        final LocalDateTime secondCardCreation = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 40);
+        final LocalDateTime firstIteration = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
+        final LocalDateTime secondIteration = LocalDateTime.of(2007, Month.AUGUST, 21, 14, 0);
+        Mockito.when(priorityUpdateCalendar.nextPriorityUpdateFrom(updateSchedule, firstCardCreation))
+                .thenReturn(firstIteration);
+        Mockito.when(priorityUpdateCalendar.nextPriorityUpdateFrom(updateSchedule, secondCardCreation))
+                .thenReturn(secondIteration);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(firstCardCreation, "card1", updateSchedule);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(firstCardCreation, "card2", updateSchedule);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(secondCardCreation, "card3", updateSchedule);
+        // act
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(secondCardCreation, "card2", updateSchedule);
+        cardsUpdateScheduler.unschedulePriorityUpdates(List.of("card1", "card3", "card4"));
+        // assert
+        Assert.assertTrue(cardsUpdateScheduler.getActiveScheduleFor(firstIteration).isEmpty());
+        Assert.assertEquals(
+                List.of(new ScheduledPriorityUpdate("card2", updateSchedule, secondIteration)),
+                cardsUpdateScheduler.getScheduledPriorityUpdates()
+        );
+    }
+
+    @Test
+    public void shouldMoveExecutedScheduleAsWhole() throws Exception {
+        // arrange
+        Mockito.when(cardRegistry.isCardExist(Mockito.anyString())).thenReturn(true);
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(testTimeUnit, 1L);
+        final LocalDateTime firstIteration = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
+        final LocalDateTime secondIteration = LocalDateTime.of(2007, Month.AUGUST, 21, 14, 0);
+        Mockito.when(priorityUpdateCalendar.nextPriorityUpdateFrom(Mockito.eq(updateSchedule), Mockito.any()))
+                .thenReturn(firstIteration);
+        cardsUpdateScheduler.schedulePriorityUpdates(List.of("card1", "card2", "card3"), updateSchedule);
+        Mockito.when(priorityUpdateCalendar.nextPriorityUpdateFrom(updateSchedule, firstIteration))
+                .thenReturn(secondIteration);
+        Mockito.when(cardRegistry.increaseCardPriorities(Set.of("card1", "card2", "card3"))).thenReturn(Set.of("card2"));
+        // act
+        cardsUpdateScheduler.updateCardsNewPriorityLevel(firstIteration);
+        // assert
+        Assert.assertEquals(Set.of("card1", "card3"), cardsUpdateScheduler.getActiveScheduleFor(secondIteration));
+        Mockito.verify(cardRegistry, Mockito.times(1)).increaseCardPriorities(Mockito.any());
+        Mockito.verify(priorityUpdateCalendar, Mockito.times(1)).nextPriorityUpdateFrom(updateSchedule, firstIteration);
+        Mockito.verify(executorService, Mockito.times(2))
+                .schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any());
+    }
 }
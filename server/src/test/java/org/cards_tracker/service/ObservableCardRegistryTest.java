@@ -0,0 +1,79 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ObservableCardRegistryTest {
+
+    private ObservableCardRegistry cardRegistry;
+
+    @Mock
+    private CardRegistryListener listener;
+
+    @Before
+    public void setUp() {
+        cardRegistry = new ObservableCardRegistry(new InMemoryCardRegistry());
+        cardRegistry.addListener(listener, Runnable::run);
+    }
+
+    @Test
+    public void shouldPublishOnlyAppliedChanges() throws Exception {
+        // arrange
+        final Card card1 = new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW);
+        final Card card2 = new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW);
+        cardRegistry.createCard(card1);
+        // act
+        cardRegistry.createCards(List.of(card1, card2, new Card("card2", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY)));
+        cardRegistry.increaseCardPriorities(List.of("card1", "card3"));
+        cardRegistry.removeCards(Set.of("card2", "card4"));
+        // assert
+        Mockito.verify(listener).onCardsCreated(List.of(card1));
+        Mockito.verify(listener).onCardsCreated(List.of(card2));
+        Mockito.verify(listener).onCardsPriorityChanged(List.of("card1"));
+        Mockito.verify(listener).onCardsRemoved(List.of("card2"));
+    }
+
+    @Test
+    public void shouldDeliverEventsOnListenerExecutor() throws Exception {
+        // arrange
+        final List<Runnable> pendingEvents = new ArrayList<>();
+        final CardRegistryListener delayedListener = Mockito.mock(CardRegistryListener.class);
+        cardRegistry.addListener(delayedListener, pendingEvents::add);
+        // act
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.removeCard("card1");
+        // assert
+        Mockito.verify(delayedListener, Mockito.never()).onCardsCreated(Mockito.any());
+        Assert.assertEquals(2, pendingEvents.size());
+        pendingEvents.forEach(Runnable::run);
+        Mockito.verify(delayedListener).onCardsCreated(List.of(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)));
+        Mockito.verify(delayedListener).onCardsRemoved(List.of("card1"));
+    }
+
+    @Test
+    public void shouldApplyChangeEvenIfEventIsRejected() throws Exception {
+        // arrange
+        final CardRegistryListener rejectedListener = Mockito.mock(CardRegistryListener.class);
+        cardRegistry.addListener(rejectedListener, event -> {
+            throw new RejectedExecutionException("executor is shut down");
+        });
+        // act
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        // assert
+        Assert.assertTrue(cardRegistry.isCardExist("card1"));
+        Mockito.verify(listener).onCardsCreated(List.of(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)));
+    }
+}
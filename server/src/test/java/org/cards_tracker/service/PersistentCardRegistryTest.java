@@ -0,0 +1,474 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.Card;
+import org.cards_tracker.domain.CardPriority;
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.cards_tracker.error.CardAlreadyExistsException;
+import org.cards_tracker.storage.FsyncPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class PersistentCardRegistryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path storageDirectory;
+    private PersistentCardRegistry cardRegistry;
+
+    @Before
+    public void setUp() throws Exception {
+        storageDirectory = temporaryFolder.newFolder("storage").toPath();
+        cardRegistry = new PersistentCardRegistry(storageDirectory, FsyncPolicy.GROUP_COMMIT, 1000L, 200L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cardRegistry.close();
+    }
+
+    private void restart(final FsyncPolicy fsyncPolicy) throws Exception {
+        cardRegistry.close();
+        cardRegistry = new PersistentCardRegistry(storageDirectory, fsyncPolicy, 1000L, 200L);
+    }
+
+    private List<Path> listStorageFiles() throws Exception {
+        try (Stream<Path> files = Files.list(storageDirectory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void shouldRecoverCardsAfterRestart() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        cardRegistry.increaseCardPriority("card2");
+        cardRegistry.increaseCardPriority("card2");
+        cardRegistry.bottomCardPriority("card3");
+        cardRegistry.removeCard("card1");
+        // act
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        final List<Card> actualCards = cardRegistry.getPrioritizedCards();
+        Assert.assertEquals(2, actualCards.size());
+        Assert.assertEquals(new Card("card2", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT), actualCards.get(0));
+        Assert.assertEquals(new Card("card3", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW), actualCards.get(1));
+    }
+
+    @Test
+    public void shouldRecoverCardsWrittenWithEveryFsyncPolicy() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        restart(FsyncPolicy.PER_OPERATION);
+        cardRegistry.createCard(new Card("card2", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        restart(FsyncPolicy.PERIODIC);
+        cardRegistry.createCard(new Card("card3", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT));
+        // act
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        Assert.assertEquals(3, cardRegistry.getAllCards().size());
+        Assert.assertTrue(cardRegistry.isCardExist("card1"));
+        Assert.assertTrue(cardRegistry.isCardExist("card2"));
+        Assert.assertTrue(cardRegistry.isCardExist("card3"));
+    }
+
+    @Test
+    public void shouldRecoverCardsOfConcurrentWritersSharingGroupCommit() throws Exception {
+        // arrange
+        final ExecutorService writers = Executors.newFixedThreadPool(8);
+        final List<Future<?>> writes = new ArrayList<>();
+        // act
+        try {
+            for (int writer = 0; writer < 8; writer++) {
+                final int firstCard = writer * 50;
+                writes.add(writers.submit(() -> {
+                    for (int i = firstCard; i < firstCard + 50; i++) {
+                        cardRegistry.createCard(new Card("card" + i, CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            writers.shutdownNow();
+        }
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        Assert.assertEquals(400, cardRegistry.getAllCards().size());
+    }
+
+    @Test
+    public void shouldDiscardIncompleteLogTail() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        cardRegistry.close();
+        try (FileChannel logChannel = FileChannel.open(listStorageFiles().get(0), StandardOpenOption.APPEND)) {
+            // a record header which promises more bytes than were written before the crash
+            logChannel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 20, 1, 2, 'c'}));
+        }
+        // act
+        cardRegistry = new PersistentCardRegistry(storageDirectory, FsyncPolicy.GROUP_COMMIT, 1000L, 200L);
+        cardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        Assert.assertEquals(2, cardRegistry.getAllCards().size());
+        Assert.assertEquals(
+                new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY),
+                cardRegistry.getCard("card1")
+        );
+        Assert.assertTrue(cardRegistry.isCardExist("card2"));
+    }
+
+    @Test
+    public void shouldRecoverCardsFromSnapshotAndLaterChanges() throws Exception {
+        // arrange
+        final ScheduledPriorityUpdate scheduledUpdate = new ScheduledPriorityUpdate(
+                "card1",
+                new CardPriorityUpdateSchedule(TimeUnit.DAYS, 1L),
+                LocalDateTime.of(2007, Month.AUGUST, 22, 0, 0)
+        );
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.snapshot(() -> List.of(scheduledUpdate));
+        cardRegistry.increaseCardPriority("card1");
+        cardRegistry.removeCard("card2");
+        cardRegistry.createCard(new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        // act
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        final List<Card> actualCards = cardRegistry.getPrioritizedCards();
+        Assert.assertEquals(2, actualCards.size());
+        Assert.assertTrue(actualCards.contains(new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY)));
+        Assert.assertTrue(actualCards.contains(new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY)));
+        Assert.assertEquals(List.of(scheduledUpdate), cardRegistry.getRecoveredPriorityUpdates(title -> 0L));
+    }
+
+    @Test
+    public void shouldRemoveLogSegmentsReplacedBySnapshot() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.snapshot(List::of);
+        cardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        // act
+        cardRegistry.snapshot(List::of);
+        // assert
+        final List<String> actualFiles = listStorageFiles().stream()
+                .map(file -> file.getFileName().toString())
+                .collect(Collectors.toList());
+        Assert.assertEquals(
+                List.of("cards-00000000000000000002.log", "cards-00000000000000000002.snapshot"),
+                actualFiles
+        );
+        restart(FsyncPolicy.GROUP_COMMIT);
+        Assert.assertEquals(2, cardRegistry.getAllCards().size());
+    }
+
+    @Test
+    public void shouldNotWriteSnapshotWithoutChanges() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.snapshot(List::of);
+        final List<Path> expectedFiles = listStorageFiles();
+        // act
+        cardRegistry.snapshot(List::of);
+        // assert
+        Assert.assertEquals(expectedFiles, listStorageFiles());
+    }
+
+    @Test
+    public void shouldKeepCardsPriorityOrderAfterRestoringFromSnapshot() throws Exception {
+        // arrange
+        for (int i = 0; i < 20; i++) {
+            cardRegistry.createCard(new Card("card" + i, CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        }
+        for (int i = 19; i >= 0; i -= 3) {
+            cardRegistry.increaseCardPriority("card" + i);
+        }
+        cardRegistry.snapshot(List::of);
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // the second snapshot is written from the mapped snapshot and the changes made after it
+        cardRegistry.increaseCardPriority("card1");
+        cardRegistry.createCard(new Card("card20", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        cardRegistry.snapshot(List::of);
+        final List<Card> expectedCards = cardRegistry.getPrioritizedCards();
+        // act
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        Assert.assertEquals(expectedCards, cardRegistry.getPrioritizedCards());
+        Assert.assertEquals(expectedCards.subList(0, 5), cardRegistry.getTopPrioritizedCards(5));
+    }
+
+    @Test
+    public void shouldChangeCardsServedFromSnapshot() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        cardRegistry.createCard(new Card("card3", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.snapshot(List::of);
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // act
+        cardRegistry.increaseCardPriority("card1");
+        cardRegistry.increaseCardPriority("card1");
+        cardRegistry.removeCard("card2");
+        cardRegistry.createCard(new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        try {
+            cardRegistry.createCard(new Card("card3", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+            Assert.fail("An error should be thrown.");
+        } catch (CardAlreadyExistsException e) {
+            // do nothing
+        }
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        Assert.assertFalse(cardRegistry.isCardExist("card2"));
+        Assert.assertEquals(
+                new Card("card3", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
+                cardRegistry.getCard("card3")
+        );
+        final List<Card> actualCards = cardRegistry.getPrioritizedCards();
+        Assert.assertEquals(3, actualCards.size());
+        Assert.assertEquals(new Card("card1", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT), actualCards.get(0));
+        Assert.assertEquals(
+                List.of(new Card("card1", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT)),
+                cardRegistry.getTopPrioritizedCards(1)
+        );
+    }
+
+    @Test
+    public void shouldSkipHiddenSnapshotCardsOfTopPriority() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT));
+        cardRegistry.createCard(new Card("card2", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT));
+        cardRegistry.createCard(new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        cardRegistry.createCard(new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.snapshot(List::of);
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // act
+        cardRegistry.removeCard("card1");
+        cardRegistry.bottomCardPriority("card2");
+        // assert
+        Assert.assertEquals(
+                List.of(new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY)),
+                cardRegistry.getTopPrioritizedCards(1)
+        );
+        Assert.assertEquals(
+                List.of(
+                        new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY),
+                        new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
+                ),
+                cardRegistry.getTopPrioritizedCards(2)
+        );
+        Assert.assertTrue(cardRegistry.isCardExist("card2"));
+    }
+
+    @Test
+    public void shouldRecoverPriorityUpdatesOfRemainingSnapshotCards() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.DAYS, 1L);
+        final LocalDateTime nextUpdate = LocalDateTime.of(2007, Month.AUGUST, 22, 0, 0);
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.snapshot(() -> List.of(
+                new ScheduledPriorityUpdate("card1", updateSchedule, nextUpdate),
+                new ScheduledPriorityUpdate("card2", updateSchedule, nextUpdate)
+        ));
+        cardRegistry.increaseCardPriority("card1");
+        cardRegistry.removeCard("card2");
+        // act
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        Assert.assertEquals(
+                List.of(new ScheduledPriorityUpdate("card1", updateSchedule, nextUpdate)),
+                cardRegistry.getRecoveredPriorityUpdates(title -> 0L)
+        );
+    }
+
+    @Test
+    public void shouldRecoverCardsBatchChanges() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.snapshot(List::of);
+        cardRegistry.createCards(List.of(
+                new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
+                new Card("card3", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
+                new Card("card3", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
+        ));
+        cardRegistry.removeCards(List.of("card1", "card3"));
+        // act
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        Assert.assertEquals(
+                List.of(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)),
+                cardRegistry.getPrioritizedCards()
+        );
+    }
+
+    @Test
+    public void shouldRecoverIncreasedCardPrioritiesBatch() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.snapshot(List::of);
+        cardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.increaseCardPriorities(List.of("card1", "card2", "card3"));
+        cardRegistry.increaseCardPriorities(List.of("card1"));
+        // act
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        Assert.assertEquals(
+                List.of(
+                        new Card("card1", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT),
+                        new Card("card2", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY)
+                ),
+                cardRegistry.getPrioritizedCards()
+        );
+    }
+
+    @Test
+    public void shouldRecoverLoggedPriorityUpdatesMoves() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.HOURS, 1L);
+        final LocalDateTime firstUpdate = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
+        final LocalDateTime secondUpdate = LocalDateTime.of(2007, Month.AUGUST, 21, 14, 0);
+        final LocalDateTime thirdUpdate = LocalDateTime.of(2007, Month.AUGUST, 21, 15, 0);
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.snapshot(() -> List.of(new ScheduledPriorityUpdate("card1", updateSchedule, firstUpdate)));
+        cardRegistry.recordPriorityUpdatesMoved(updateSchedule, firstUpdate, 0L, secondUpdate);
+        cardRegistry.recordPriorityUpdatesScheduled(List.of(new ScheduledPriorityUpdate("card2", updateSchedule, secondUpdate)));
+        cardRegistry.recordPriorityUpdatesMoved(updateSchedule, secondUpdate, 0L, thirdUpdate);
+        // act
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        final List<ScheduledPriorityUpdate> actualUpdates = cardRegistry.getRecoveredPriorityUpdates(title -> 0L);
+        Assert.assertEquals(2, actualUpdates.size());
+        Assert.assertTrue(actualUpdates.contains(new ScheduledPriorityUpdate("card1", updateSchedule, thirdUpdate)));
+        Assert.assertTrue(actualUpdates.contains(new ScheduledPriorityUpdate("card2", updateSchedule, thirdUpdate)));
+    }
+
+    @Test
+    public void shouldRecoverPriorityUpdatesMovesOfDifferentSpreadOffsets() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.HOURS, 1L);
+        final LocalDateTime firstUpdate = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
+        final LocalDateTime notSpreadUpdate = LocalDateTime.of(2007, Month.AUGUST, 21, 14, 0);
+        // the update of the same time with another spread offset comes from another calendar time, so it moves elsewhere
+        final LocalDateTime spreadUpdate = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 30);
+        final Map<String, Long> spreadOffsets = Map.of("card1", 0L, "card2", 60_000L);
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.recordPriorityUpdatesScheduled(List.of(
+                new ScheduledPriorityUpdate("card1", updateSchedule, firstUpdate),
+                new ScheduledPriorityUpdate("card2", updateSchedule, firstUpdate)
+        ));
+        cardRegistry.recordPriorityUpdatesMoved(updateSchedule, firstUpdate, 0L, notSpreadUpdate);
+        cardRegistry.recordPriorityUpdatesMoved(updateSchedule, firstUpdate, 60_000L, spreadUpdate);
+        // act
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        final List<ScheduledPriorityUpdate> actualUpdates = cardRegistry.getRecoveredPriorityUpdates(spreadOffsets::get);
+        Assert.assertEquals(2, actualUpdates.size());
+        Assert.assertTrue(actualUpdates.contains(new ScheduledPriorityUpdate("card1", updateSchedule, notSpreadUpdate)));
+        Assert.assertTrue(actualUpdates.contains(new ScheduledPriorityUpdate("card2", updateSchedule, spreadUpdate)));
+    }
+
+    @Test
+    public void shouldRecoverPriorityIncreasesAndMovesRecordedInBatch() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.HOURS, 1L);
+        final LocalDateTime firstUpdate = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
+        final LocalDateTime secondUpdate = LocalDateTime.of(2007, Month.AUGUST, 21, 14, 0);
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.recordPriorityUpdatesScheduled(List.of(new ScheduledPriorityUpdate("card1", updateSchedule, firstUpdate)));
+        // act
+        cardRegistry.recordInBatch(() -> {
+            cardRegistry.increaseCardPriorities(List.of("card1"));
+            cardRegistry.recordPriorityUpdatesMoved(updateSchedule, firstUpdate, 0L, secondUpdate);
+            return null;
+        });
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        Assert.assertEquals(
+                List.of(new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY)),
+                cardRegistry.getPrioritizedCards()
+        );
+        Assert.assertEquals(
+                List.of(new ScheduledPriorityUpdate("card1", updateSchedule, secondUpdate)),
+                cardRegistry.getRecoveredPriorityUpdates(title -> 0L)
+        );
+    }
+
+    @Test
+    public void shouldRecoverPriorityUpdateScheduledAfterSnapshot() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.DAYS, 1L);
+        final ScheduledPriorityUpdate rescheduledUpdate = new ScheduledPriorityUpdate(
+                "card1", new CardPriorityUpdateSchedule(TimeUnit.MINUTES, 5L), LocalDateTime.of(2007, Month.AUGUST, 21, 12, 45)
+        );
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.snapshot(() -> List.of(
+                new ScheduledPriorityUpdate("card1", updateSchedule, LocalDateTime.of(2007, Month.AUGUST, 22, 0, 0))
+        ));
+        cardRegistry.recordPriorityUpdatesScheduled(List.of(rescheduledUpdate));
+        // act
+        restart(FsyncPolicy.GROUP_COMMIT);
+        // assert
+        Assert.assertEquals(List.of(rescheduledUpdate), cardRegistry.getRecoveredPriorityUpdates(title -> 0L));
+    }
+
+    @Test
+    public void shouldNotApplyChangesWhichWereNotLogged() throws Exception {
+        // arrange
+        cardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        cardRegistry.close();
+        // act
+        try {
+            cardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+            Assert.fail("An error should be thrown.");
+        } catch (UncheckedIOException e) {
+            // do nothing
+        }
+        try {
+            cardRegistry.increaseCardPriorities(List.of("card1"));
+            Assert.fail("An error should be thrown.");
+        } catch (UncheckedIOException e) {
+            // do nothing
+        }
+        try {
+            cardRegistry.removeCard("card1");
+            Assert.fail("An error should be thrown.");
+        } catch (UncheckedIOException e) {
+            // do nothing
+        }
+        // assert
+        Assert.assertEquals(
+                List.of(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)),
+                cardRegistry.getPrioritizedCards()
+        );
+    }
+}
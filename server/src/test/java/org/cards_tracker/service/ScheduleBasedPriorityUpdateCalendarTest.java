@@ -6,8 +6,11 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.Month;
+import java.time.ZoneId;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class ScheduleBasedPriorityUpdateCalendarTest {
@@ -29,4 +32,31 @@ public class ScheduleBasedPriorityUpdateCalendarTest {
         final LocalDateTime expectedUpdateTime = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
         Assert.assertEquals(expectedUpdateTime, nextUpdate);
     }
+
+    @Test
+    public void shouldReturnSameEpochNextUpdateAsLocalDateTimeNextUpdate() throws IncorrectCardPriorityScheduleException {
+        // arrange
+        final ZoneId zoneId = ZoneId.of("Europe/Berlin");
+        priorityUpdateCalendar = new ScheduleBasedPriorityUpdateCalendar(zoneId);
+        final List<CardPriorityUpdateSchedule> schedules = List.of(
+                new CardPriorityUpdateSchedule(TimeUnit.SECONDS, 30L),
+                new CardPriorityUpdateSchedule(TimeUnit.MINUTES, 1L),
+                new CardPriorityUpdateSchedule(TimeUnit.HOURS, 5L),
+                new CardPriorityUpdateSchedule(TimeUnit.DAYS, 1L)
+        );
+        // the days around the daylight saving time changes are included
+        final long until = LocalDateTime.of(2007, Month.NOVEMBER, 1, 0, 0).atZone(zoneId).toInstant().toEpochMilli();
+        long fromEpochMillis = LocalDateTime.of(2007, Month.MARCH, 20, 0, 17, 10).atZone(zoneId).toInstant().toEpochMilli();
+        while (fromEpochMillis < until) {
+            final LocalDateTime from = LocalDateTime.ofInstant(Instant.ofEpochMilli(fromEpochMillis), zoneId);
+            for (CardPriorityUpdateSchedule schedule : schedules) {
+                // act
+                final long nextUpdate = priorityUpdateCalendar.nextPriorityUpdateFrom(schedule, fromEpochMillis);
+                // assert
+                final LocalDateTime expectedUpdateTime = priorityUpdateCalendar.nextPriorityUpdateFrom(schedule, from);
+                Assert.assertEquals(expectedUpdateTime.atZone(zoneId).toInstant().toEpochMilli(), nextUpdate);
+            }
+            fromEpochMillis += TimeUnit.MINUTES.toMillis(47);
+        }
+    }
 }
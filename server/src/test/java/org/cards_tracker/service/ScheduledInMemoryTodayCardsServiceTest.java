@@ -13,9 +13,10 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ScheduledInMemoryTodayCardsServiceTest {
@@ -54,7 +55,8 @@ public class ScheduledInMemoryTodayCardsServiceTest {
                 new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
                 new Card("card5", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
         );
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(prioritizedCards);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(maxTodayCards))
+                .thenReturn(prioritizedCards.subList(0, maxTodayCards));
         todayCardsService.fillTheCardsForToday();
         // act
         final List<String> actualCards = todayCardsService.getCardsForToday();
@@ -68,7 +70,7 @@ public class ScheduledInMemoryTodayCardsServiceTest {
     @Test
     public void shouldReturnEmptyCardsList() {
         // arrange
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(List.of());
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Integer.MAX_VALUE)).thenReturn(List.of());
         todayCardsService.fillTheCardsForToday();
         // act
         final List<String> actualCards = todayCardsService.getCardsForToday();
@@ -93,7 +95,8 @@ public class ScheduledInMemoryTodayCardsServiceTest {
                 new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
                 new Card("card5", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
         );
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(prioritizedCards);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(maxTodayCards))
+                .thenReturn(prioritizedCards.subList(0, maxTodayCards));
         final String addedCardTitle = prioritizedCards.get(3).getTitle();
         Mockito.when(cardRegistry.isCardExist(addedCardTitle)).thenReturn(true);
         todayCardsService.fillTheCardsForToday();
@@ -109,7 +112,7 @@ public class ScheduledInMemoryTodayCardsServiceTest {
     @Test
     public void shouldNotAddNonExistingCardForToday() {
         // arrange
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(List.of());
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Integer.MAX_VALUE)).thenReturn(List.of());
         final String nonExistingCard = "test";
         Mockito.when(cardRegistry.isCardExist(nonExistingCard)).thenReturn(false);
         todayCardsService.fillTheCardsForToday();
@@ -133,7 +136,7 @@ public class ScheduledInMemoryTodayCardsServiceTest {
                 new Card("card2", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY),
                 new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY)
         );
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(prioritizedCards);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Integer.MAX_VALUE)).thenReturn(prioritizedCards);
         final String completedCard = prioritizedCards.get(1).getTitle();
         Mockito.doNothing().when(cardRegistry).bottomCardPriority(completedCard);
         todayCardsService.fillTheCardsForToday();
@@ -156,7 +159,7 @@ public class ScheduledInMemoryTodayCardsServiceTest {
                 new Card("card2", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY),
                 new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY)
         );
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(prioritizedCards);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Integer.MAX_VALUE)).thenReturn(prioritizedCards);
         final String completedCard = prioritizedCards.get(1).getTitle();
         Mockito.doThrow(NotExistingCardException.class).when(cardRegistry).bottomCardPriority(completedCard);
         todayCardsService.fillTheCardsForToday();
@@ -174,7 +177,7 @@ public class ScheduledInMemoryTodayCardsServiceTest {
     @Test
     public void shouldNotCompleteNotExistingCard() {
         // arrange
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(List.of());
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Integer.MAX_VALUE)).thenReturn(List.of());
         todayCardsService.fillTheCardsForToday();
         // act
         try {
@@ -197,7 +200,7 @@ public class ScheduledInMemoryTodayCardsServiceTest {
                 new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
                 new Card("card5", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
         );
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(prioritizedCards);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Integer.MAX_VALUE)).thenReturn(prioritizedCards);
         todayCardsService.fillTheCardsForToday();
         // act
         final List<String> updatedCards = List.of(
@@ -233,7 +236,7 @@ public class ScheduledInMemoryTodayCardsServiceTest {
                 new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
                 new Card("card5", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
         );
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(prioritizedCards);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Integer.MAX_VALUE)).thenReturn(prioritizedCards);
         todayCardsService.fillTheCardsForToday();
         // act
         final List<String> updatedCards = List.of(
@@ -272,7 +275,7 @@ public class ScheduledInMemoryTodayCardsServiceTest {
                 new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
                 new Card("card5", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
         );
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(prioritizedCards);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Integer.MAX_VALUE)).thenReturn(prioritizedCards);
         todayCardsService.fillTheCardsForToday();
         // act
         final List<String> updatedCards = List.of(
@@ -311,7 +314,7 @@ public class ScheduledInMemoryTodayCardsServiceTest {
                 new Card("card4", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
                 new Card("card5", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
         );
-        Mockito.when(cardRegistry.getPrioritizedCards()).thenReturn(prioritizedCards);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Integer.MAX_VALUE)).thenReturn(prioritizedCards);
         todayCardsService.fillTheCardsForToday();
         // act
         final List<String> updatedCards = List.of(
@@ -336,4 +339,311 @@ public class ScheduledInMemoryTodayCardsServiceTest {
         Assert.assertEquals(prioritizedCards.get(3).getTitle(), actualCards.get(3));
         Assert.assertEquals(prioritizedCards.get(4).getTitle(), actualCards.get(4));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldTakeCreatedCardForTodayInsteadOfLowestPrioritizedCard() throws IncorrectCardTitleException, NotExistingCardException {
+        // arrange
+        int maxTodayCards = 3;
+        todayCardsService = new ScheduledInMemoryTodayCardsService(
+                delayedTasksExecutor,
+                cardRegistry,
+                TimeUnit.MINUTES,
+                null,
+                maxTodayCards);
+        final List<Card> prioritizedCards = List.of(
+                new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY),
+                new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW),
+                new Card("card3", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
+        );
+        Mockito.when(cardRegistry.getTopPrioritizedCards(maxTodayCards)).thenReturn(prioritizedCards);
+        todayCardsService.fillTheCardsForToday();
+        final Card createdCard = new Card("card4", CardPriority.LEAVE_EVERYTHING_AND_START_WORKING_ON_IT);
+        Mockito.when(cardRegistry.getCard(createdCard.getTitle())).thenReturn(createdCard);
+        // act
+        todayCardsService.onCardsCreated(List.of(
+                createdCard,
+                new Card("card5", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW)
+        ));
+        // assert
+        Assert.assertEquals(List.of("card4", "card1", "card2"), todayCardsService.getCardsForToday());
+    }
+
+    @Test
+    public void shouldFillTheFreePositionWhenTodayCardIsRemoved() throws IncorrectCardTitleException, NotExistingCardException {
+        // arrange
+        int maxTodayCards = 2;
+        todayCardsService = new ScheduledInMemoryTodayCardsService(
+                delayedTasksExecutor,
+                cardRegistry,
+                TimeUnit.MINUTES,
+                null,
+                maxTodayCards);
+        final Card card1 = new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY);
+        final Card card2 = new Card("card2", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY);
+        final Card card3 = new Card("card3", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(maxTodayCards)).thenReturn(List.of(card1, card2));
+        todayCardsService.fillTheCardsForToday();
+        Mockito.when(cardRegistry.getCard(card1.getTitle())).thenThrow(new NotExistingCardException(card1.getTitle()));
+        Mockito.when(cardRegistry.getTopPrioritizedCards(maxTodayCards)).thenReturn(List.of(card2, card3));
+        // act
+        todayCardsService.onCardsRemoved(List.of(card1.getTitle()));
+        // assert
+        Assert.assertEquals(List.of("card2", "card3"), todayCardsService.getCardsForToday());
+    }
+
+    @Test
+    public void shouldNotTakeCompletedCardForTodayUntilItsPriorityIsIncreased() throws IncorrectCardTitleException, NotExistingCardException {
+        // arrange
+        int maxTodayCards = 2;
+        todayCardsService = new ScheduledInMemoryTodayCardsService(
+                delayedTasksExecutor,
+                cardRegistry,
+                TimeUnit.MINUTES,
+                null,
+                maxTodayCards);
+        final Card card1 = new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY);
+        final Card card2 = new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(maxTodayCards)).thenReturn(List.of(card1, card2));
+        Mockito.when(cardRegistry.getInitialCardPriority()).thenReturn(CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW);
+        todayCardsService.fillTheCardsForToday();
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Mockito.anyInt())).thenReturn(List.of(card2));
+        todayCardsService.completeCardForToday(card1.getTitle());
+        Mockito.when(cardRegistry.getCard(card1.getTitle()))
+                .thenReturn(new Card(card1.getTitle(), CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        // act
+        todayCardsService.onCardsPriorityChanged(List.of(card1.getTitle()));
+        final List<String> completedCards = todayCardsService.getCardsForToday();
+        Mockito.when(cardRegistry.getCard(card1.getTitle()))
+                .thenReturn(new Card(card1.getTitle(), CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        todayCardsService.onCardsPriorityChanged(List.of(card1.getTitle()));
+        // assert
+        Assert.assertEquals(List.of("card2"), completedCards);
+        Assert.assertEquals(List.of("card1", "card2"), todayCardsService.getCardsForToday());
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentlyAddedCards() throws Exception {
+        // arrange
+        final int cardsCount = 1000;
+        final InMemoryCardRegistry inMemoryCardRegistry = new InMemoryCardRegistry();
+        for (int i = 0; i < cardsCount; i++) {
+            inMemoryCardRegistry.createCard(new Card("card" + i, CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        }
+        todayCardsService = new ScheduledInMemoryTodayCardsService(
+                delayedTasksExecutor,
+                inMemoryCardRegistry,
+                TimeUnit.MINUTES,
+                null,
+                1);
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Future<?>> changes = new ArrayList<>();
+        // act
+        for (int thread = 0; thread < 4; thread++) {
+            final int firstCard = thread;
+            changes.add(executorService.submit(() -> {
+                startLatch.await();
+                for (int i = firstCard; i < cardsCount; i += 4) {
+                    todayCardsService.addAdditionalCardForToday("card" + i);
+                }
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        todayCardsService.fillTheCardsForToday();
+        for (Future<?> change : changes) {
+            change.get(30, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+        // assert
+        final List<String> actualCards = todayCardsService.getCardsForToday();
+        Assert.assertEquals(cardsCount, actualCards.size());
+        Assert.assertEquals(cardsCount, new HashSet<>(actualCards).size());
+    }
+
+    @Test
+    public void shouldReadRegistryOnlyOnceForEveryConcurrentChange() throws Exception {
+        // arrange
+        final int changesCount = 400;
+        todayCardsService = new ScheduledInMemoryTodayCardsService(
+                delayedTasksExecutor,
+                cardRegistry,
+                TimeUnit.MINUTES,
+                null,
+                changesCount);
+        for (int i = 0; i < changesCount; i++) {
+            final Card card = new Card("card" + i, CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW);
+            Mockito.when(cardRegistry.getCard(card.getTitle())).thenReturn(card);
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Future<?>> changes = new ArrayList<>();
+        // act
+        for (int thread = 0; thread < 4; thread++) {
+            final int firstCard = thread;
+            changes.add(executorService.submit(() -> {
+                startLatch.await();
+                for (int i = firstCard; i < changesCount; i += 4) {
+                    todayCardsService.onCardsPriorityChanged(List.of("card" + i));
+                }
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> change : changes) {
+            change.get(30, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+        // assert
+        Assert.assertEquals(changesCount, todayCardsService.getCardsForToday().size());
+        for (int i = 0; i < changesCount; i++) {
+            Mockito.verify(cardRegistry, Mockito.times(1)).getCard("card" + i);
+        }
+    }
+
+    @Test
+    public void shouldIncreaseVersionOnlyWhenTodayCardsAreChanged() throws IncorrectCardTitleException, NotExistingCardException {
+        // arrange
+        int maxTodayCards = 2;
+        todayCardsService = new ScheduledInMemoryTodayCardsService(
+                delayedTasksExecutor,
+                cardRegistry,
+                TimeUnit.MINUTES,
+                null,
+                maxTodayCards);
+        final Card card1 = new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY);
+        final Card card2 = new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Mockito.anyInt())).thenReturn(List.of(card1, card2));
+        Mockito.when(cardRegistry.getCard(card1.getTitle())).thenReturn(card1);
+        todayCardsService.fillTheCardsForToday();
+        final VersionedTodayCards formedCards = todayCardsService.getVersionedCardsForToday();
+        // act
+        todayCardsService.fillTheCardsForToday();
+        todayCardsService.onCardsPriorityChanged(List.of(card1.getTitle()));
+        final VersionedTodayCards unchangedCards = todayCardsService.getVersionedCardsForToday();
+        try {
+            todayCardsService.reshuffleTodayCards(List.of(card2.getTitle(), card1.getTitle()));
+        } catch (CardAlreadyExistsException e) {
+            Assert.fail(e.getMessage());
+        }
+        final VersionedTodayCards reshuffledCards = todayCardsService.getVersionedCardsForToday();
+        // assert
+        Assert.assertEquals(formedCards.getVersion(), unchangedCards.getVersion());
+        Assert.assertEquals(formedCards.getVersion() + 1, reshuffledCards.getVersion());
+        Assert.assertEquals(List.of("card2", "card1"), reshuffledCards.getCards());
+    }
+
+    @Test
+    public void shouldPublishOnlyChangedTodayCards() throws IncorrectCardTitleException, NotExistingCardException {
+        // arrange
+        int maxTodayCards = 2;
+        todayCardsService = new ScheduledInMemoryTodayCardsService(
+                delayedTasksExecutor,
+                cardRegistry,
+                TimeUnit.MINUTES,
+                null,
+                maxTodayCards);
+        final List<VersionedTodayCards> publishedCards = new ArrayList<>();
+        todayCardsService.addListener(publishedCards::add);
+        final Card card1 = new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY);
+        Mockito.when(cardRegistry.getTopPrioritizedCards(Mockito.anyInt())).thenReturn(List.of(card1));
+        Mockito.when(cardRegistry.getCard(card1.getTitle())).thenReturn(card1);
+        // act
+        todayCardsService.fillTheCardsForToday();
+        todayCardsService.onCardsPriorityChanged(List.of(card1.getTitle()));
+        todayCardsService.fillTheCardsForToday();
+        // assert
+        Assert.assertEquals(1, publishedCards.size());
+        Assert.assertEquals(List.of("card1"), publishedCards.get(0).getCards());
+        Assert.assertEquals(todayCardsService.getVersionedCardsForToday(), publishedCards.get(0));
+    }
+
+    @Test
+    public void shouldApplyChangesWhileListenerIsBlocked() throws Exception {
+        // arrange
+        final Card card1 = new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY);
+        final Card card2 = new Card("card2", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY);
+        Mockito.when(cardRegistry.getCard(card1.getTitle())).thenReturn(card1);
+        Mockito.when(cardRegistry.getCard(card2.getTitle())).thenReturn(card2);
+        final CountDownLatch listenerBlocked = new CountDownLatch(1);
+        final CountDownLatch listenerReleased = new CountDownLatch(1);
+        final List<VersionedTodayCards> publishedCards = new CopyOnWriteArrayList<>();
+        todayCardsService.addListener(cards -> {
+            if (publishedCards.isEmpty()) {
+                listenerBlocked.countDown();
+                try {
+                    listenerReleased.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            publishedCards.add(cards);
+        });
+        final ExecutorService blockedWriter = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> blockedChange = blockedWriter.submit(() -> todayCardsService.onCardsCreated(List.of(card1)));
+            Assert.assertTrue(listenerBlocked.await(30, TimeUnit.SECONDS));
+            // act
+            todayCardsService.onCardsCreated(List.of(card2));
+            final List<String> cardsWhileBlocked = todayCardsService.getCardsForToday();
+            listenerReleased.countDown();
+            blockedChange.get(30, TimeUnit.SECONDS);
+            // assert
+            Assert.assertEquals(List.of("card1", "card2"), cardsWhileBlocked);
+            // the blocked change delivers the version of the change made meanwhile
+            Assert.assertEquals(2, publishedCards.size());
+            Assert.assertEquals(todayCardsService.getVersionedCardsForToday(), publishedCards.get(1));
+        } finally {
+            blockedWriter.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldApplyChangesWhenListenerFails() throws Exception {
+        // arrange
+        final Card card1 = new Card("card1", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY);
+        final Card card2 = new Card("card2", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY);
+        Mockito.when(cardRegistry.getCard(card1.getTitle())).thenReturn(card1);
+        Mockito.when(cardRegistry.getCard(card2.getTitle())).thenReturn(card2);
+        final List<VersionedTodayCards> publishedCards = new ArrayList<>();
+        todayCardsService.addListener(cards -> {
+            throw new IllegalStateException("listener failed");
+        });
+        todayCardsService.addListener(publishedCards::add);
+        // act
+        todayCardsService.onCardsCreated(List.of(card1));
+        todayCardsService.onCardsCreated(List.of(card2));
+        // assert
+        Assert.assertEquals(List.of("card1", "card2"), todayCardsService.getCardsForToday());
+        Assert.assertEquals(2, publishedCards.size());
+        Assert.assertEquals(todayCardsService.getVersionedCardsForToday(), publishedCards.get(1));
+    }
+
+    @Test
+    public void shouldKeepTodayCardsUpToDateWithRegistryChanges() throws Exception {
+        // arrange
+        int maxTodayCards = 2;
+        final ObservableCardRegistry observableCardRegistry = new ObservableCardRegistry(new InMemoryCardRegistry());
+        todayCardsService = new ScheduledInMemoryTodayCardsService(
+                delayedTasksExecutor,
+                observableCardRegistry,
+                TimeUnit.MINUTES,
+                null,
+                maxTodayCards);
+        observableCardRegistry.addListener(todayCardsService, Runnable::run);
+        todayCardsService.fillTheCardsForToday();
+        // act
+        observableCardRegistry.createCard(new Card("card1", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        observableCardRegistry.createCard(new Card("card2", CardPriority.I_NEED_TO_DO_IT_TODAY_OR_TOMORROW));
+        observableCardRegistry.createCard(new Card("card3", CardPriority.WOW_I_NEEDED_TO_DO_IT_YESTERDAY));
+        observableCardRegistry.increaseCardPriorities(List.of("card2", "card3"));
+        final List<String> escalatedCards = todayCardsService.getCardsForToday();
+        observableCardRegistry.removeCard("card3");
+        final List<String> remainingCards = todayCardsService.getCardsForToday();
+        todayCardsService.completeCardForToday("card2");
+        // assert
+        Assert.assertEquals(List.of("card3", "card2"), escalatedCards);
+        Assert.assertEquals(List.of("card2", "card1"), remainingCards);
+        Assert.assertEquals(List.of("card1"), todayCardsService.getCardsForToday());
+    }
+}
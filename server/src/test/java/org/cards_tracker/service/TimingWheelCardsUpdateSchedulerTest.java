@@ -0,0 +1,334 @@
+package org.cards_tracker.service;
+
+import org.cards_tracker.domain.CardPriorityUpdateSchedule;
+import org.cards_tracker.domain.ScheduledPriorityUpdate;
+import org.cards_tracker.executor.PartitionedExecutor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TimingWheelCardsUpdateSchedulerTest {
+
+    private static final LocalDateTime TEST_BEGINNING = LocalDateTime.of(2007, Month.AUGUST, 21, 12, 40, 10);
+
+    private TimingWheelCardsUpdateScheduler cardsUpdateScheduler;
+
+    @Mock
+    private ScheduledExecutorService executorService;
+    @Mock
+    private CardRegistry cardRegistry;
+    @Mock
+    private PriorityUpdateJournal priorityUpdateJournal;
+
+    @Before
+    public void setUp() throws Exception {
+        final Clock clock = Clock.fixed(TEST_BEGINNING.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        cardsUpdateScheduler = new TimingWheelCardsUpdateScheduler(
+                executorService,
+                new ScheduleBasedPriorityUpdateCalendar(ZoneOffset.UTC),
+                cardRegistry,
+                TimeUnit.HOURS, 5L,
+                1000L, 0L, priorityUpdateJournal, null, clock
+        );
+        Mockito.when(cardRegistry.isCardExist(Mockito.anyString())).thenReturn(true);
+        Mockito.lenient().when(priorityUpdateJournal.recordInBatch(Mockito.any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+    }
+
+    private static long toEpochMillis(final LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    @Test
+    public void shouldUpdateCardPriorityNotEarlierThanScheduled() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.HOURS, 1L);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(toEpochMillis(TEST_BEGINNING), "card1", updateSchedule);
+        // act
+        cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 12, 59, 59)));
+        // assert
+        Mockito.verify(cardRegistry, Mockito.never()).increaseCardPriorities(Mockito.any());
+        cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0)));
+        Mockito.verify(cardRegistry, Mockito.times(1)).increaseCardPriorities(List.of("card1"));
+        Assert.assertEquals(
+                List.of(new ScheduledPriorityUpdate("card1", updateSchedule, LocalDateTime.of(2007, Month.AUGUST, 21, 14, 0))),
+                cardsUpdateScheduler.getScheduledPriorityUpdates()
+        );
+    }
+
+    @Test
+    public void shouldUpdateFarFutureCardPriorityOnce() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.DAYS, 40L);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(toEpochMillis(TEST_BEGINNING), "card1", updateSchedule);
+        // act
+        cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.SEPTEMBER, 29, 23, 59, 59)));
+        // assert
+        Mockito.verify(cardRegistry, Mockito.never()).increaseCardPriorities(Mockito.any());
+        cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.SEPTEMBER, 30, 0, 0, 1)));
+        Mockito.verify(cardRegistry, Mockito.times(1)).increaseCardPriorities(List.of("card1"));
+    }
+
+    @Test
+    public void shouldReplacePreviousCardPriorityUpdate() throws Exception {
+        // arrange
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(
+                toEpochMillis(TEST_BEGINNING), "card1", new CardPriorityUpdateSchedule(TimeUnit.MINUTES, 1L)
+        );
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.HOURS, 1L);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(toEpochMillis(TEST_BEGINNING), "card1", updateSchedule);
+        // act
+        cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 12, 59)));
+        // assert
+        Mockito.verify(cardRegistry, Mockito.never()).increaseCardPriorities(Mockito.any());
+        Assert.assertEquals(1, cardsUpdateScheduler.getScheduledPriorityUpdates().size());
+    }
+
+    @Test
+    public void shouldForgetRemovedCardPriorityUpdate() throws Exception {
+        // arrange
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(
+                toEpochMillis(TEST_BEGINNING), "card1", new CardPriorityUpdateSchedule(TimeUnit.MINUTES, 1L)
+        );
+        Mockito.when(cardRegistry.increaseCardPriorities(List.of("card1"))).thenReturn(Set.of("card1"));
+        // act
+        cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 12, 42)));
+        // assert
+        Mockito.verify(cardRegistry, Mockito.times(1)).increaseCardPriorities(List.of("card1"));
+        Assert.assertTrue(cardsUpdateScheduler.getScheduledPriorityUpdates().isEmpty());
+    }
+
+    @Test
+    public void shouldCatchUpRestoredOverduePriorityUpdatesInBulk() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.HOURS, 1L);
+        final LocalDateTime nextUpdate = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
+        // 3 updates were missed, but the priority can be increased only twice
+        final ScheduledPriorityUpdate longOverdueUpdate = new ScheduledPriorityUpdate(
+                "card1", updateSchedule, LocalDateTime.of(2007, Month.AUGUST, 21, 10, 0)
+        );
+        final ScheduledPriorityUpdate overdueUpdate = new ScheduledPriorityUpdate(
+                "card2", updateSchedule, LocalDateTime.of(2007, Month.AUGUST, 21, 12, 0)
+        );
+        // act
+        cardsUpdateScheduler.restorePriorityUpdates(List.of(overdueUpdate, longOverdueUpdate));
+        cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 12, 59, 59)));
+        // assert
+        Mockito.verify(cardRegistry, Mockito.times(1)).increaseCardPriorities(List.of("card1", "card2"));
+        Mockito.verify(cardRegistry, Mockito.times(1)).increaseCardPriorities(List.of("card1"));
+        Mockito.verify(priorityUpdateJournal, Mockito.times(1)).recordPriorityUpdatesScheduled(List.of(
+                new ScheduledPriorityUpdate("card1", updateSchedule, nextUpdate),
+                new ScheduledPriorityUpdate("card2", updateSchedule, nextUpdate)
+        ));
+        final List<ScheduledPriorityUpdate> actualUpdates = cardsUpdateScheduler.getScheduledPriorityUpdates();
+        Assert.assertEquals(2, actualUpdates.size());
+        Assert.assertTrue(actualUpdates.contains(new ScheduledPriorityUpdate("card1", updateSchedule, nextUpdate)));
+        Assert.assertTrue(actualUpdates.contains(new ScheduledPriorityUpdate("card2", updateSchedule, nextUpdate)));
+    }
+
+    @Test
+    public void shouldCatchUpLongDowntimeWithFirstUpdateAfterNow() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.SECONDS, 1L);
+        final ScheduledPriorityUpdate yearsOverdueUpdate = new ScheduledPriorityUpdate(
+                "card1", updateSchedule, LocalDateTime.of(1997, Month.AUGUST, 21, 12, 0)
+        );
+        // act
+        cardsUpdateScheduler.restorePriorityUpdates(List.of(yearsOverdueUpdate));
+        // assert
+        Mockito.verify(cardRegistry, Mockito.times(2)).increaseCardPriorities(List.of("card1"));
+        Assert.assertEquals(
+                List.of(new ScheduledPriorityUpdate("card1", updateSchedule, TEST_BEGINNING.plusSeconds(1))),
+                cardsUpdateScheduler.getScheduledPriorityUpdates()
+        );
+    }
+
+    @Test
+    public void shouldNotCatchUpRestoredPriorityUpdatesOfRemovedCards() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.HOURS, 1L);
+        Mockito.when(cardRegistry.isCardExist("card1")).thenReturn(false);
+        // act
+        cardsUpdateScheduler.restorePriorityUpdates(List.of(
+                new ScheduledPriorityUpdate("card1", updateSchedule, LocalDateTime.of(2007, Month.AUGUST, 21, 10, 0))
+        ));
+        // assert
+        Mockito.verify(cardRegistry, Mockito.never()).increaseCardPriorities(Mockito.any());
+        Assert.assertTrue(cardsUpdateScheduler.getScheduledPriorityUpdates().isEmpty());
+    }
+
+    @Test
+    public void shouldRecordScheduledAndExecutedPriorityUpdates() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.HOURS, 1L);
+        final LocalDateTime firstUpdate = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
+        // act
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(toEpochMillis(TEST_BEGINNING), "card1", updateSchedule);
+        cardsUpdateScheduler.advanceTo(toEpochMillis(firstUpdate));
+        // assert
+        Mockito.verify(priorityUpdateJournal, Mockito.times(1)).recordPriorityUpdatesScheduled(
+                List.of(new ScheduledPriorityUpdate("card1", updateSchedule, firstUpdate))
+        );
+        Mockito.verify(priorityUpdateJournal, Mockito.times(1)).recordPriorityUpdatesMoved(
+                updateSchedule, firstUpdate, 0L, LocalDateTime.of(2007, Month.AUGUST, 21, 14, 0)
+        );
+    }
+
+    @Test
+    public void shouldRecordExecutedPriorityUpdatesInOneBatch() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.MINUTES, 1L);
+        cardsUpdateScheduler.schedulePriorityUpdates(List.of("card1", "card2"), updateSchedule);
+        // act
+        cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 12, 41)));
+        // assert
+        Mockito.verify(priorityUpdateJournal, Mockito.times(1)).recordInBatch(Mockito.any());
+        Mockito.verify(cardRegistry, Mockito.times(1)).increaseCardPriorities(Mockito.any());
+        Mockito.verify(priorityUpdateJournal, Mockito.times(1)).recordPriorityUpdatesMoved(
+                updateSchedule,
+                LocalDateTime.of(2007, Month.AUGUST, 21, 12, 41),
+                0L,
+                LocalDateTime.of(2007, Month.AUGUST, 21, 12, 42)
+        );
+    }
+
+    @Test
+    public void shouldRetryPriorityUpdatesWhichFailedToIncrease() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.MINUTES, 1L);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(toEpochMillis(TEST_BEGINNING), "card1", updateSchedule);
+        Mockito.when(cardRegistry.increaseCardPriorities(List.of("card1")))
+                .thenThrow(new IllegalStateException("Card registry is not writable"))
+                .thenReturn(Set.of());
+        try {
+            cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 12, 41)));
+            Assert.fail("An error should be thrown.");
+        } catch (IllegalStateException e) {
+            // do nothing
+        }
+        // act
+        cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 12, 41, 1)));
+        // assert
+        Mockito.verify(cardRegistry, Mockito.times(2)).increaseCardPriorities(List.of("card1"));
+        Assert.assertEquals(
+                List.of(new ScheduledPriorityUpdate("card1", updateSchedule, LocalDateTime.of(2007, Month.AUGUST, 21, 12, 42))),
+                cardsUpdateScheduler.getScheduledPriorityUpdates()
+        );
+    }
+
+    @Test
+    public void shouldNotUpdateUnscheduledCardPriority() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.MINUTES, 1L);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(toEpochMillis(TEST_BEGINNING), "card1", updateSchedule);
+        cardsUpdateScheduler.scheduleCardPriorityUpdateFrom(toEpochMillis(TEST_BEGINNING), "card2", updateSchedule);
+        // act
+        cardsUpdateScheduler.unschedulePriorityUpdate("card1");
+        cardsUpdateScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 12, 41)));
+        // assert
+        Mockito.verify(cardRegistry, Mockito.times(1)).increaseCardPriorities(List.of("card2"));
+        Assert.assertEquals(1, cardsUpdateScheduler.getScheduledPriorityUpdates().size());
+    }
+
+    @Test
+    public void shouldPurgeCancelledPriorityUpdates() throws Exception {
+        // arrange
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.DAYS, 1L);
+        final List<String> titles = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            titles.add("card" + i);
+        }
+        cardsUpdateScheduler.schedulePriorityUpdates(titles, updateSchedule);
+        cardsUpdateScheduler.advanceTo(toEpochMillis(TEST_BEGINNING.plusSeconds(1)));
+        // act
+        cardsUpdateScheduler.unschedulePriorityUpdates(titles);
+        cardsUpdateScheduler.advanceTo(toEpochMillis(TEST_BEGINNING.plusSeconds(2)));
+        // assert
+        Assert.assertEquals(0, cardsUpdateScheduler.getWheelSize());
+    }
+
+    @Test
+    public void shouldSpreadPriorityUpdatesWithStableCardOffsets() throws Exception {
+        // arrange
+        final Clock clock = Clock.fixed(TEST_BEGINNING.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        final TimingWheelCardsUpdateScheduler spreadingScheduler = new TimingWheelCardsUpdateScheduler(
+                executorService,
+                new ScheduleBasedPriorityUpdateCalendar(ZoneOffset.UTC),
+                cardRegistry,
+                TimeUnit.HOURS, 5L,
+                1000L, 60_000L, null, null, clock
+        );
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.HOURS, 1L);
+        final List<String> titles = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            titles.add("card" + i);
+        }
+        spreadingScheduler.schedulePriorityUpdates(titles, updateSchedule);
+        final Map<String, LocalDateTime> firstUpdates = new HashMap<>();
+        for (ScheduledPriorityUpdate priorityUpdate : spreadingScheduler.getScheduledPriorityUpdates()) {
+            firstUpdates.put(priorityUpdate.getTitle(), priorityUpdate.getNextUpdate());
+        }
+        // act
+        spreadingScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 13, 1)));
+        // assert
+        final LocalDateTime boundary = LocalDateTime.of(2007, Month.AUGUST, 21, 13, 0);
+        for (LocalDateTime firstUpdate : firstUpdates.values()) {
+            Assert.assertFalse(firstUpdate.isBefore(boundary));
+            Assert.assertTrue(firstUpdate.isBefore(boundary.plusMinutes(1)));
+        }
+        Assert.assertTrue(new HashSet<>(firstUpdates.values()).size() > 1);
+        for (ScheduledPriorityUpdate priorityUpdate : spreadingScheduler.getScheduledPriorityUpdates()) {
+            Assert.assertEquals(firstUpdates.get(priorityUpdate.getTitle()).plusHours(1), priorityUpdate.getNextUpdate());
+        }
+    }
+
+    @Test
+    public void shouldIncreaseCardPrioritiesByTitlePartitions() throws Exception {
+        // arrange
+        final PartitionedExecutor escalationWorkers = new PartitionedExecutor("escalation", 2);
+        final Clock clock = Clock.fixed(TEST_BEGINNING.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        final TimingWheelCardsUpdateScheduler partitionedScheduler = new TimingWheelCardsUpdateScheduler(
+                executorService,
+                new ScheduleBasedPriorityUpdateCalendar(ZoneOffset.UTC),
+                cardRegistry,
+                TimeUnit.HOURS, 5L,
+                1000L, 0L, null, escalationWorkers, clock
+        );
+        final CardPriorityUpdateSchedule updateSchedule = new CardPriorityUpdateSchedule(TimeUnit.MINUTES, 1L);
+        final List<String> titles = new ArrayList<>();
+        final List<List<String>> expectedPartitions = List.of(new ArrayList<>(), new ArrayList<>());
+        for (int i = 0; i < 20; i++) {
+            titles.add("card" + i);
+            expectedPartitions.get(escalationWorkers.partitionOf("card" + i)).add("card" + i);
+        }
+        partitionedScheduler.schedulePriorityUpdates(titles, updateSchedule);
+        // act
+        partitionedScheduler.advanceTo(toEpochMillis(LocalDateTime.of(2007, Month.AUGUST, 21, 12, 41)));
+        // assert
+        escalationWorkers.shutdown();
+        for (List<String> expectedPartition : expectedPartitions) {
+            Assert.assertFalse(expectedPartition.isEmpty());
+            Mockito.verify(cardRegistry, Mockito.times(1)).increaseCardPriorities(expectedPartition);
+        }
+        Assert.assertEquals(20, partitionedScheduler.getScheduledPriorityUpdates().size());
+    }
+}